@@ -0,0 +1,30 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching an include pattern and writes the results as JSON for regression tracking.
+ * Arguments: include pattern, number of synthetic concepts, result file.
+ * Run using the benchmark Maven profile.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : ".*";
+		String syntheticConcepts = args.length > 1 ? args[1] : "10000";
+		String resultFile = args.length > 2 ? args[2] : "target/jmh-result.json";
+
+		Options options = new OptionsBuilder()
+				.include(BenchmarkRunner.class.getPackage().getName() + ".*" + include + ".*")
+				.param(SnowstormState.SYNTHETIC_CONCEPTS_PARAM, syntheticConcepts)
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultFile)
+				.build();
+		new Runner(options).run();
+	}
+
+}
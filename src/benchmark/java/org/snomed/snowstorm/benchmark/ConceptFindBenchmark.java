@@ -0,0 +1,45 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.snomed.snowstorm.benchmark.SnowstormState.BRANCH;
+import static org.snomed.snowstorm.config.Config.DEFAULT_LANGUAGE_DIALECTS;
+
+/**
+ * Loads full concepts, joining descriptions, language reference set members, relationships and axioms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConceptFindBenchmark {
+
+	@Param({"1", "100", "1000"})
+	public int conceptCount;
+
+	private List<String> conceptIds;
+
+	@Setup(Level.Trial)
+	public void setup(SnowstormState state) {
+		conceptIds = new ArrayList<>();
+		int count = Math.min(conceptCount, state.syntheticConcepts);
+		for (int i = 0; i < count; i++) {
+			conceptIds.add(SyntheticHierarchy.conceptId(i));
+		}
+	}
+
+	@Benchmark
+	public Collection<Concept> find(SnowstormState state) {
+		return state.getBean(ConceptService.class).find(BRANCH, conceptIds, DEFAULT_LANGUAGE_DIALECTS);
+	}
+
+}
@@ -0,0 +1,43 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.TooCostlyException;
+import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
+import org.snomed.snowstorm.core.data.services.pojo.PageWithBucketAggregations;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.snomed.snowstorm.benchmark.SnowstormState.BRANCH;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DescriptionSearchBenchmark {
+
+	private static final PageRequest PAGE = PageRequest.of(0, 50);
+
+	@Benchmark
+	public PageWithBucketAggregations<Description> singleWord(SnowstormState state) throws TooCostlyException {
+		return search(state, new DescriptionCriteria().term("lesion"));
+	}
+
+	@Benchmark
+	public PageWithBucketAggregations<Description> multipleWordPrefix(SnowstormState state) throws TooCostlyException {
+		return search(state, new DescriptionCriteria().term("chron inflam"));
+	}
+
+	@Benchmark
+	public PageWithBucketAggregations<Description> semanticTagFilter(SnowstormState state) throws TooCostlyException {
+		return search(state, new DescriptionCriteria().term("acute").semanticTag("finding"));
+	}
+
+	private PageWithBucketAggregations<Description> search(SnowstormState state, DescriptionCriteria criteria) throws TooCostlyException {
+		return state.getBean(DescriptionService.class).findDescriptionsWithAggregations(BRANCH, criteria, PAGE);
+	}
+
+}
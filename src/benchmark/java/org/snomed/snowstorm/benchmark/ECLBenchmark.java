@@ -0,0 +1,50 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.ecl.ECLQueryService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.snomed.snowstorm.benchmark.SnowstormState.BRANCH;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ECLBenchmark {
+
+	private static final PageRequest PAGE = PageRequest.of(0, 100);
+
+	@Benchmark
+	public Page<Long> descendants(SnowstormState state) {
+		return select(state, "<< 138875005");
+	}
+
+	@Benchmark
+	public Page<Long> refinement(SnowstormState state) {
+		return select(state, "<< 138875005 : 363698007 = *");
+	}
+
+	@Benchmark
+	public Page<Long> nestedRefinement(SnowstormState state) {
+		return select(state, "<< 138875005 : 363698007 = (<< " + SyntheticHierarchy.conceptId(0) + " OR << " + SyntheticHierarchy.conceptId(1) + ")");
+	}
+
+	@Benchmark
+	public Page<Long> compound(SnowstormState state) {
+		return select(state, "(<< " + SyntheticHierarchy.conceptId(0) + " OR < " + SyntheticHierarchy.conceptId(1) + ") MINUS << " + SyntheticHierarchy.conceptId(5));
+	}
+
+	@Benchmark
+	public Page<Long> ancestors(SnowstormState state) {
+		return select(state, "> " + SyntheticHierarchy.conceptId(state.syntheticConcepts - 1));
+	}
+
+	private Page<Long> select(SnowstormState state, String ecl) {
+		return state.getBean(ECLQueryService.class).selectConceptIds(ecl, state.getBranchCriteria(), BRANCH, false, PAGE);
+	}
+
+}
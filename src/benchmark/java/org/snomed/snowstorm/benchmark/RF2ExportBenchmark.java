@@ -0,0 +1,37 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.export.ExportException;
+import org.snomed.snowstorm.core.rf2.export.ExportService;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.snomed.snowstorm.benchmark.SnowstormState.BRANCH;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RF2ExportBenchmark {
+
+	@Benchmark
+	public long exportSnapshot(SnowstormState state) throws ExportException {
+		return export(state, RF2Type.SNAPSHOT);
+	}
+
+	@Benchmark
+	public long exportDelta(SnowstormState state) throws ExportException {
+		return export(state, RF2Type.DELTA);
+	}
+
+	private long export(SnowstormState state, RF2Type type) throws ExportException {
+		File exportFile = state.getBean(ExportService.class).exportRF2ArchiveFile(BRANCH, "20500131", type, false);
+		long length = exportFile.length();
+		exportFile.delete();
+		return length;
+	}
+
+}
@@ -0,0 +1,36 @@
+package org.snomed.snowstorm.benchmark;
+
+import io.kaicode.elasticvc.api.BranchService;
+import org.openjdk.jmh.annotations.*;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.snomed.snowstorm.benchmark.SnowstormState.BRANCH;
+
+/**
+ * Imports the dummy snapshot once per invocation, each time on a new branch.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RF2ImportBenchmark {
+
+	private int importCount;
+	private String importBranch;
+
+	@Setup(Level.Invocation)
+	public void createImportBranch(SnowstormState state) {
+		importBranch = BRANCH + "/BENCHMARK-IMPORT-" + importCount++;
+		state.getBean(BranchService.class).create(importBranch);
+	}
+
+	@Benchmark
+	public void importSnapshot(SnowstormState state) throws Exception {
+		state.importArchive(importBranch, RF2Type.SNAPSHOT);
+	}
+
+}
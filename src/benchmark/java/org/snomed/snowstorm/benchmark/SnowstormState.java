@@ -0,0 +1,94 @@
+package org.snomed.snowstorm.benchmark;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.snomedboot.testutil.ZipUtil;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.rf2import.ImportService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+/**
+ * Application context on an Elasticsearch test container, loaded with the dummy SNOMED CT content plus a synthetic hierarchy.
+ * Created once per fork and shared by all benchmark threads.
+ */
+@State(Scope.Benchmark)
+public class SnowstormState {
+
+	static final String SYNTHETIC_CONCEPTS_PARAM = "syntheticConcepts";
+	static final String BRANCH = "MAIN";
+	static final String BASE_SNAPSHOT = "src/test/resources/dummy-snomed-content/SnomedCT_MiniRF2_Base_snapshot";
+
+	@Param("10000")
+	public int syntheticConcepts;
+
+	private AnnotationConfigApplicationContext applicationContext;
+	private SyntheticHierarchy hierarchy;
+	private File baseSnapshotArchive;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		applicationContext = new AnnotationConfigApplicationContext(TestConfig.class);
+		deleteAll();
+		getBean(BranchService.class).create(BRANCH);
+
+		baseSnapshotArchive = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines(BASE_SNAPSHOT);
+		importArchive(BRANCH, RF2Type.SNAPSHOT);
+
+		hierarchy = new SyntheticHierarchy(SNOMEDCT_ROOT, syntheticConcepts);
+		logger.info("Creating {} synthetic concepts.", syntheticConcepts);
+		getBean(ConceptService.class).batchCreate(hierarchy.createConcepts(), BRANCH);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		deleteAll();
+		applicationContext.close();
+		if (baseSnapshotArchive != null) {
+			baseSnapshotArchive.delete();
+		}
+	}
+
+	void importArchive(String branch, RF2Type type) throws Exception {
+		ImportService importService = getBean(ImportService.class);
+		String importId = importService.createJob(type, branch, false, false);
+		try (InputStream inputStream = new FileInputStream(baseSnapshotArchive)) {
+			importService.importArchive(importId, inputStream);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to read dummy content archive.", e);
+		}
+	}
+
+	private void deleteAll() {
+		getBean(BranchService.class).deleteAll();
+		getBean(ConceptService.class).deleteAll();
+		getBean(CodeSystemService.class).deleteAll();
+	}
+
+	<T> T getBean(Class<T> beanClass) {
+		return applicationContext.getBean(beanClass);
+	}
+
+	BranchCriteria getBranchCriteria() {
+		return getBean(VersionControlHelper.class).getBranchCriteria(BRANCH);
+	}
+
+	SyntheticHierarchy getHierarchy() {
+		return hierarchy;
+	}
+}
@@ -0,0 +1,71 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.identifier.VerhoeffCheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.snomed.snowstorm.core.data.domain.Concepts.*;
+
+/**
+ * Generates a balanced is-a hierarchy of a given size below a root concept.
+ * Every third concept also has a finding site pointing at a concept in the first level, so attribute refinements have something to match.
+ */
+class SyntheticHierarchy {
+
+	static final int BRANCHING_FACTOR = 5;
+
+	private static final long FIRST_ITEM_ID = 9_000_000;
+
+	private static final String[] WORDS = {"acute", "chronic", "disorder", "lesion", "structure", "inflammation", "injury", "pain", "region", "tissue"};
+
+	private final String rootId;
+	private final int size;
+
+	SyntheticHierarchy(String rootId, int size) {
+		this.rootId = rootId;
+		this.size = size;
+	}
+
+	static String conceptId(int index) {
+		String withoutCheckDigit = (FIRST_ITEM_ID + index) + "00";
+		return withoutCheckDigit + VerhoeffCheck.calculateChecksum(withoutCheckDigit, false);
+	}
+
+	// Parent index of a node, -1 for nodes directly below the root
+	static int parentIndex(int index) {
+		return index < BRANCHING_FACTOR ? -1 : index / BRANCHING_FACTOR - 1;
+	}
+
+	String parentId(int index) {
+		int parent = parentIndex(index);
+		return parent == -1 ? rootId : conceptId(parent);
+	}
+
+	List<Concept> createConcepts() {
+		List<Concept> concepts = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			String conceptId = conceptId(i);
+			Concept concept = new Concept(conceptId)
+					.addDescription(new Description(term(i) + " (finding)").setTypeId(FSN).addLanguageRefsetMember(US_EN_LANG_REFSET, PREFERRED))
+					.addDescription(new Description(term(i)).setTypeId(SYNONYM).addLanguageRefsetMember(US_EN_LANG_REFSET, PREFERRED))
+					.addRelationship(new Relationship(ISA, parentId(i)));
+			if (i % 3 == 0 && i >= BRANCHING_FACTOR) {
+				concept.addRelationship(new Relationship(FINDING_SITE, conceptId(i % BRANCHING_FACTOR)));
+			}
+			concepts.add(concept);
+		}
+		return concepts;
+	}
+
+	static String term(int index) {
+		return WORDS[index % WORDS.length] + " " + WORDS[(index / WORDS.length) % WORDS.length] + " " + index;
+	}
+
+	int getSize() {
+		return size;
+	}
+}
@@ -0,0 +1,60 @@
+package org.snomed.snowstorm.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.Graph;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilder;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilderException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the transitive closure of the synthetic hierarchy in memory, as done during semantic index updates, without Elasticsearch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransitiveClosureBenchmark {
+
+	@Param("10000")
+	public int syntheticConcepts;
+
+	private long[] sourceIds;
+	private long[] destinationIds;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		sourceIds = new long[syntheticConcepts];
+		destinationIds = new long[syntheticConcepts];
+		SyntheticHierarchy hierarchy = new SyntheticHierarchy("138875005", syntheticConcepts);
+		for (int i = 0; i < syntheticConcepts; i++) {
+			sourceIds[i] = Long.parseLong(SyntheticHierarchy.conceptId(i));
+			destinationIds[i] = Long.parseLong(hierarchy.parentId(i));
+		}
+	}
+
+	@Benchmark
+	public Graph build() {
+		return createGraph();
+	}
+
+	@Benchmark
+	public void buildAndReadAllClosures(Blackhole blackhole) throws GraphBuilderException {
+		Graph graph = createGraph();
+		for (int node = 0; node < graph.getNodeCount(); node++) {
+			blackhole.consume(graph.getTransitiveClosure(node, "MAIN", true));
+		}
+	}
+
+	private Graph createGraph() {
+		GraphBuilder graphBuilder = new GraphBuilder(syntheticConcepts + 1);
+		for (int i = 0; i < sourceIds.length; i++) {
+			graphBuilder.addParent(sourceIds[i], destinationIds[i]);
+		}
+		return graphBuilder.build();
+	}
+
+}
@@ -14,18 +14,24 @@ import org.snomed.langauges.ecl.ECLQueryBuilder;
 import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.domain.CodeSystemVersion;
 import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.ECLView;
+import org.snomed.snowstorm.core.data.domain.ECLViewMember;
 import org.snomed.snowstorm.core.data.domain.SnomedComponent;
 import org.snomed.snowstorm.core.data.domain.classification.Classification;
 import org.snomed.snowstorm.core.data.domain.classification.EquivalentConcepts;
 import org.snomed.snowstorm.core.data.domain.classification.RelationshipChange;
 import org.snomed.snowstorm.core.data.domain.jobs.ExportConfiguration;
 import org.snomed.snowstorm.core.data.domain.jobs.IdentifiersForRegistration;
+import org.snomed.snowstorm.core.data.domain.jobs.TraceabilityOutboxMessage;
 import org.snomed.snowstorm.core.data.services.*;
+import org.snomed.snowstorm.core.data.services.hierarchy.HierarchyCacheService;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierCacheManager;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierSource;
 import org.snomed.snowstorm.core.data.services.identifier.LocalRandomIdentifierSource;
 import org.snomed.snowstorm.core.data.services.identifier.SnowstormCISClient;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.snomed.snowstorm.ecl.ECLResultCacheService;
+import org.snomed.snowstorm.ecl.ECLViewService;
 import org.snomed.snowstorm.ecl.SECLObjectFactory;
 import org.snomed.snowstorm.mrcm.MRCMUpdateService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +39,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDataAutoConfiguration;
 import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration;
+import org.springframework.boot.autoconfigure.jms.activemq.ActiveMQConnectionFactoryCustomizer;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.aws.autoconfigure.context.ContextStackAutoConfiguration;
@@ -98,9 +105,14 @@ public abstract class Config extends ElasticsearchConfig {
 	public static final String DEFAULT_MODULE_ID_KEY = "defaultModuleId";
 	public static final String DEFAULT_NAMESPACE_KEY = "defaultNamespace";
 
+	public static final String JMS_TYPE_ID_PROPERTY_NAME = "_type";
+
 	@Value("${elasticsearch.index.max.terms.count}")
 	private int indexMaxTermsCount;
 
+	@Value("${jms.compression.enabled:false}")
+	private boolean jmsCompression;
+
 	@Autowired
 	private DomainEntityConfiguration domainEntityConfiguration;
 
@@ -110,6 +122,9 @@ public abstract class Config extends ElasticsearchConfig {
 	@Autowired
 	private ConceptDefinitionStatusUpdateService conceptDefinitionStatusUpdateService;
 
+	@Autowired
+	private DescriptionFacetUpdateService descriptionFacetUpdateService;
+
 	@Autowired
 	private SemanticIndexUpdateService semanticIndexUpdateService;
 
@@ -128,16 +143,37 @@ public abstract class Config extends ElasticsearchConfig {
 	@Autowired
 	private IntegrityService integrityService;
 
+	@Autowired
+	private HierarchyCacheService hierarchyCacheService;
+
+	@Autowired
+	private ECLResultCacheService eclResultCacheService;
+
+	@Autowired
+	private ECLViewService eclViewService;
+
+	@Autowired
+	private DescriptionFacetCacheService descriptionFacetCacheService;
+
+	@Autowired
+	private ConceptMiniCacheService conceptMiniCacheService;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@PostConstruct
 	public void configureCommitListeners() {
 		// Commit listeners will be called in this order
 		branchService.addCommitListener(conceptDefinitionStatusUpdateService);
+		branchService.addCommitListener(descriptionFacetUpdateService);
 		branchService.addCommitListener(semanticIndexUpdateService);
 		branchService.addCommitListener(mrcmUpdateService);
 		branchService.addCommitListener(traceabilityLogService);
 		branchService.addCommitListener(integrityService);
+		branchService.addCommitListener(hierarchyCacheService);
+		branchService.addCommitListener(eclResultCacheService);
+		branchService.addCommitListener(eclViewService);
+		branchService.addCommitListener(descriptionFacetCacheService);
+		branchService.addCommitListener(conceptMiniCacheService);
 		branchService.addCommitListener(commit -> {
 			logger.info("Completed commit on {} in {} seconds.", commit.getBranch().getPath(), secondsDuration(commit.getTimepoint()));
 		});
@@ -233,10 +269,15 @@ public abstract class Config extends ElasticsearchConfig {
 	public MessageConverter jacksonJmsMessageConverter() {
 		MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
 		converter.setTargetType(MessageType.TEXT);
-		converter.setTypeIdPropertyName("_type");
+		converter.setTypeIdPropertyName(JMS_TYPE_ID_PROPERTY_NAME);
 		return converter;
 	}
 
+	@Bean // Message bodies are decompressed by the ActiveMQ client of the consumer
+	public ActiveMQConnectionFactoryCustomizer activeMQCompressionCustomizer() {
+		return connectionFactory -> connectionFactory.setUseCompression(jmsCompression);
+	}
+
 	protected void updateIndexMaxTermsSettingForAllSnomedComponents() {
 		for (Class<? extends SnomedComponent> componentClass : domainEntityConfiguration.getComponentTypeRepositoryMap().keySet()) {
 			updateIndexMaxTermsSetting(componentClass);
@@ -275,7 +316,10 @@ public abstract class Config extends ElasticsearchConfig {
 					RelationshipChange.class,
 					EquivalentConcepts.class,
 					IdentifiersForRegistration.class,
-					ExportConfiguration.class
+					ExportConfiguration.class,
+					ECLView.class,
+					ECLViewMember.class,
+					TraceabilityOutboxMessage.class
 			);
 			for (Class aClass : objectsNotVersionControlled) {
 				IndexCoordinates indexCoordinates = elasticsearchTemplate.getIndexCoordinatesFor(aClass);
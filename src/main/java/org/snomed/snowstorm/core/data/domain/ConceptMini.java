@@ -84,6 +84,10 @@ public class ConceptMini implements Serializable {
 		return effectiveTime;
 	}
 
+	public void setEffectiveTime(String effectiveTime) {
+		this.effectiveTime = effectiveTime;
+	}
+
 	@JsonView(value = View.Component.class)
 	public TermLangPojo getFsn() {
 		return DescriptionHelper.getFsnDescriptionTermAndLang(activeDescriptions, requestedLanguageDialects);
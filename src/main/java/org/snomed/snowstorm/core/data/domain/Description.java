@@ -10,6 +10,8 @@ import org.springframework.data.annotation.Transient;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.util.*;
@@ -25,11 +27,14 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 		String DESCRIPTION_ID = "descriptionId";
 		String TERM = "term";
 		String TERM_FOLDED = "termFolded";
+		String TERM_FOLDED_TYPEAHEAD = "termFolded.typeahead";
 		String TERM_LEN = "termLen";
 		String TAG = "tag";
 		String CONCEPT_ID = "conceptId";
 		String TYPE_ID = "typeId";
 		String LANGUAGE_CODE = "languageCode";
+		String CONCEPT_SEMANTIC_TAGS = "conceptSemanticTags";
+		String CONCEPT_REFSETS = "conceptRefsets";
 	}
 
 	@JsonView(value = View.Component.class)
@@ -42,7 +47,9 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 	@NotNull
 	private String term;
 
-	@Field(type = FieldType.Text)
+	// The typeahead sub-field indexes edge n-grams and shingles of the folded term for as-you-type prefix matching
+	@MultiField(mainField = @Field(type = FieldType.Text),
+			otherFields = @InnerField(suffix = "typeahead", type = FieldType.Search_As_You_Type))
 	private String termFolded;
 
 	@Field(type = FieldType.Integer)
@@ -78,6 +85,14 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 	@Size(min = 5, max = 18)
 	private String caseSignificanceId;
 
+	// Semantic tags of the concept's active FSNs, only maintained when description aggregations are denormalised
+	@Field(type = FieldType.Keyword)
+	private Set<String> conceptSemanticTags;
+
+	// Refsets the concept is an active member of, only maintained when description aggregations are denormalised
+	@Field(type = FieldType.Keyword)
+	private Set<String> conceptRefsets;
+
 	// Populated when requesting an update
 	@Transient
 	private Map<String, String> acceptabilityMap;
@@ -429,6 +444,24 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 		return this;
 	}
 
+	@JsonIgnore
+	public Set<String> getConceptSemanticTags() {
+		return conceptSemanticTags;
+	}
+
+	public void setConceptSemanticTags(Set<String> conceptSemanticTags) {
+		this.conceptSemanticTags = conceptSemanticTags;
+	}
+
+	@JsonIgnore
+	public Set<String> getConceptRefsets() {
+		return conceptRefsets;
+	}
+
+	public void setConceptRefsets(Set<String> conceptRefsets) {
+		this.conceptRefsets = conceptRefsets;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -0,0 +1,150 @@
+package org.snomed.snowstorm.core.data.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+/**
+ * Named ECL definition on a branch whose members are kept materialised in the {@link ECLViewMember} index.
+ */
+@Document(indexName = "ecl-view")
+public class ECLView {
+
+	public interface Fields {
+		String BRANCH = "branch";
+		String NAME = "name";
+	}
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String id;
+
+	@Field(type = FieldType.Keyword)
+	private String branch;
+
+	@Field(type = FieldType.Keyword)
+	private String name;
+
+	@Field(type = FieldType.Keyword)
+	private String ecl;
+
+	@Field(type = FieldType.Boolean)
+	private boolean stated;
+
+	// Branch head timestamp which the members were last updated for
+	@Field(type = FieldType.Long)
+	private Long headTimestamp;
+
+	@Field(type = FieldType.Integer)
+	private int memberCount;
+
+	// Identifies the members written by the last full refresh
+	@Field(type = FieldType.Keyword)
+	private String refreshId;
+
+	// Set when read, true if the members were not updated for the current branch head
+	@Transient
+	private boolean stale;
+
+	public ECLView() {
+	}
+
+	public ECLView(String branch, String name, String ecl, boolean stated) {
+		this.id = toId(branch, name);
+		this.branch = branch;
+		this.name = name;
+		this.ecl = ecl;
+		this.stated = stated;
+	}
+
+	public static String toId(String branch, String name) {
+		return branch + "|" + name;
+	}
+
+	@JsonIgnore
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getBranch() {
+		return branch;
+	}
+
+	public void setBranch(String branch) {
+		this.branch = branch;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getEcl() {
+		return ecl;
+	}
+
+	public void setEcl(String ecl) {
+		this.ecl = ecl;
+	}
+
+	public boolean isStated() {
+		return stated;
+	}
+
+	public void setStated(boolean stated) {
+		this.stated = stated;
+	}
+
+	public Long getHeadTimestamp() {
+		return headTimestamp;
+	}
+
+	public void setHeadTimestamp(Long headTimestamp) {
+		this.headTimestamp = headTimestamp;
+	}
+
+	public int getMemberCount() {
+		return memberCount;
+	}
+
+	public void setMemberCount(int memberCount) {
+		this.memberCount = memberCount;
+	}
+
+	@JsonIgnore
+	public String getRefreshId() {
+		return refreshId;
+	}
+
+	public void setRefreshId(String refreshId) {
+		this.refreshId = refreshId;
+	}
+
+	public boolean isStale() {
+		return stale;
+	}
+
+	public void setStale(boolean stale) {
+		this.stale = stale;
+	}
+
+	@Override
+	public String toString() {
+		return "ECLView{" +
+				"branch='" + branch + '\'' +
+				", name='" + name + '\'' +
+				", ecl='" + ecl + '\'' +
+				", stated=" + stated +
+				'}';
+	}
+}
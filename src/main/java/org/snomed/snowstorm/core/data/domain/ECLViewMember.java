@@ -0,0 +1,79 @@
+package org.snomed.snowstorm.core.data.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+/**
+ * Concept which currently matches an {@link ECLView}, one document per view and concept.
+ */
+@Document(indexName = "ecl-view-member")
+public class ECLViewMember {
+
+	public interface Fields {
+		String VIEW_ID = "viewId";
+		String CONCEPT_ID = "conceptId";
+		String REFRESH_ID = "refreshId";
+	}
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String id;
+
+	@Field(type = FieldType.Keyword)
+	private String viewId;
+
+	@Field(type = FieldType.Long)
+	private Long conceptId;
+
+	// Full refresh of the view which last wrote this member
+	@Field(type = FieldType.Keyword)
+	private String refreshId;
+
+	public ECLViewMember() {
+	}
+
+	public ECLViewMember(String viewId, Long conceptId, String refreshId) {
+		this.id = toId(viewId, conceptId);
+		this.viewId = viewId;
+		this.conceptId = conceptId;
+		this.refreshId = refreshId;
+	}
+
+	public static String toId(String viewId, Long conceptId) {
+		return viewId + "|" + conceptId;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getViewId() {
+		return viewId;
+	}
+
+	public void setViewId(String viewId) {
+		this.viewId = viewId;
+	}
+
+	public Long getConceptId() {
+		return conceptId;
+	}
+
+	public void setConceptId(Long conceptId) {
+		this.conceptId = conceptId;
+	}
+
+	public String getRefreshId() {
+		return refreshId;
+	}
+
+	public void setRefreshId(String refreshId) {
+		this.refreshId = refreshId;
+	}
+}
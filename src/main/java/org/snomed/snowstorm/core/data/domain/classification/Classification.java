@@ -59,6 +59,12 @@ public class Classification {
 	@Field(type = FieldType.Boolean)
 	private Boolean equivalentConceptsFound;
 
+	@Field(type = FieldType.Integer)
+	private Integer inferredRelationshipChangesToSave;
+
+	@Field(type = FieldType.Integer)
+	private Integer inferredRelationshipChangesSaved;
+
 	public Classification() {
 	}
 
@@ -165,4 +171,20 @@ public class Classification {
 	public void setEquivalentConceptsFound(Boolean equivalentConceptsFound) {
 		this.equivalentConceptsFound = equivalentConceptsFound;
 	}
+
+	public Integer getInferredRelationshipChangesToSave() {
+		return inferredRelationshipChangesToSave;
+	}
+
+	public void setInferredRelationshipChangesToSave(Integer inferredRelationshipChangesToSave) {
+		this.inferredRelationshipChangesToSave = inferredRelationshipChangesToSave;
+	}
+
+	public Integer getInferredRelationshipChangesSaved() {
+		return inferredRelationshipChangesSaved;
+	}
+
+	public void setInferredRelationshipChangesSaved(Integer inferredRelationshipChangesSaved) {
+		this.inferredRelationshipChangesSaved = inferredRelationshipChangesSaved;
+	}
 }
@@ -7,6 +7,7 @@ import org.springframework.data.elasticsearch.annotations.Document;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 @Document(indexName = "export-config", type = "exportconfiguration")
@@ -39,6 +40,12 @@ public class ExportConfiguration {
 
 	private Set<String> moduleIds;
 
+	@ApiModelProperty(notes = "Number of files in the export, set when the export starts.")
+	private Integer fileCount;
+
+	@ApiModelProperty(notes = "Files written so far with their line counts, in order of completion.")
+	private List<ExportedFile> exportedFiles;
+
 	public ExportConfiguration() {
 	}
 
@@ -118,4 +125,50 @@ public class ExportConfiguration {
 	public void setModuleIds(Set<String> moduleIds) {
 		this.moduleIds = moduleIds;
 	}
+
+	public Integer getFileCount() {
+		return fileCount;
+	}
+
+	public void setFileCount(Integer fileCount) {
+		this.fileCount = fileCount;
+	}
+
+	public List<ExportedFile> getExportedFiles() {
+		return exportedFiles;
+	}
+
+	public void setExportedFiles(List<ExportedFile> exportedFiles) {
+		this.exportedFiles = exportedFiles;
+	}
+
+	public static class ExportedFile {
+
+		private String file;
+		private int lines;
+
+		public ExportedFile() {
+		}
+
+		public ExportedFile(String file, int lines) {
+			this.file = file;
+			this.lines = lines;
+		}
+
+		public String getFile() {
+			return file;
+		}
+
+		public void setFile(String file) {
+			this.file = file;
+		}
+
+		public int getLines() {
+			return lines;
+		}
+
+		public void setLines(int lines) {
+			this.lines = lines;
+		}
+	}
 }
@@ -0,0 +1,122 @@
+package org.snomed.snowstorm.core.data.domain.jobs;
+
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.util.UUID;
+
+/**
+ * Traceability activity message written within the authoring commit when the traceability outbox is enabled.
+ * These documents are sent to the JMS queue in the background and deleted once sent.
+ * Messages which fail to send too many times are parked and skipped until they are retried using the admin API.
+ */
+@Document(indexName = "traceability-outbox")
+public class TraceabilityOutboxMessage {
+
+	public interface Fields {
+		String COMMIT_TIMESTAMP = "commitTimestamp";
+		String SEQUENCE = "sequence";
+		String PARKED = "parked";
+	}
+
+	private String id;
+
+	@Field(type = FieldType.Keyword)
+	private String branchPath;
+
+	@Field(type = FieldType.Long)
+	private Long commitTimestamp;
+
+	// Order of the message within a commit with several messages
+	@Field(type = FieldType.Integer)
+	private int sequence;
+
+	@Field(type = FieldType.Long)
+	private long created;
+
+	@Field(type = FieldType.Integer)
+	private int attempts;
+
+	@Field(type = FieldType.Boolean)
+	private boolean parked;
+
+	@Field(type = FieldType.Text, index = false)
+	private String message;
+
+	public TraceabilityOutboxMessage(String branchPath, Long commitTimestamp, int sequence, String message) {
+		id = UUID.randomUUID().toString();
+		this.branchPath = branchPath;
+		this.commitTimestamp = commitTimestamp;
+		this.sequence = sequence;
+		this.message = message;
+		created = System.currentTimeMillis();
+	}
+
+	public TraceabilityOutboxMessage() {
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getBranchPath() {
+		return branchPath;
+	}
+
+	public void setBranchPath(String branchPath) {
+		this.branchPath = branchPath;
+	}
+
+	public Long getCommitTimestamp() {
+		return commitTimestamp;
+	}
+
+	public void setCommitTimestamp(Long commitTimestamp) {
+		this.commitTimestamp = commitTimestamp;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(int sequence) {
+		this.sequence = sequence;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public void setCreated(long created) {
+		this.created = created;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public boolean isParked() {
+		return parked;
+	}
+
+	public void setParked(boolean parked) {
+		this.parked = parked;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+}
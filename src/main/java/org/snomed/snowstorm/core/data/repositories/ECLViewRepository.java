@@ -0,0 +1,12 @@
+package org.snomed.snowstorm.core.data.repositories;
+
+import org.snomed.snowstorm.core.data.domain.ECLView;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+import java.util.List;
+
+public interface ECLViewRepository extends ElasticsearchRepository<ECLView, String> {
+
+	List<ECLView> findByBranch(String branch);
+
+}
@@ -0,0 +1,8 @@
+package org.snomed.snowstorm.core.data.repositories.jobs;
+
+import org.snomed.snowstorm.core.data.domain.jobs.TraceabilityOutboxMessage;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+public interface TraceabilityOutboxMessageRepository extends ElasticsearchRepository<TraceabilityOutboxMessage, String> {
+
+}
@@ -0,0 +1,42 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import org.snomed.snowstorm.core.pojo.BranchHead;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Creates branch criteria for the head of a branch and remembers which branch head each one selects.
+ * Caches of query results use this to tell if content selected by some branch criteria can be shared between requests.
+ * Branch criteria created any other way (open commits, historic timepoints) are unknown here so are never cached.
+ */
+@Service
+public class BranchHeadCriteriaService {
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private BranchService branchService;
+
+	// Weak keys use identity comparison and are released with the branch criteria
+	private final Cache<BranchCriteria, BranchHead> branchHeads = Caffeine.newBuilder().weakKeys().build();
+
+	public BranchCriteria getBranchCriteria(String path) {
+		Branch branch = branchService.findBranchOrThrow(path);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		branchHeads.put(branchCriteria, new BranchHead(path, branch.getHeadTimestamp()));
+		return branchCriteria;
+	}
+
+	public Optional<BranchHead> getBranchHead(BranchCriteria branchCriteria) {
+		return Optional.ofNullable(branchHeads.getIfPresent(branchCriteria));
+	}
+}
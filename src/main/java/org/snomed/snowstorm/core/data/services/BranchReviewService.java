@@ -2,13 +2,16 @@ package org.snomed.snowstorm.core.data.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -23,6 +26,7 @@ import org.snomed.snowstorm.core.data.repositories.MergeReviewRepository;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
@@ -33,12 +37,15 @@ import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static java.lang.Long.parseLong;
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -76,11 +83,20 @@ public class BranchReviewService {
 	@Autowired
 	private ExecutorService executorService;
 
+	@Value("${cache.branch-review.max-entries:50}")
+	private int changeReportCacheMaxEntries;
+
+	// Change reports cover committed history so stay valid for the same branch head and time range
+	private Cache<String, LongOpenHashSet> changeReports;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@PostConstruct
 	public void init() {
 		branchMergeService.setBranchReviewService(this);
+		changeReports = Caffeine.newBuilder()
+				.maximumSize(Math.max(0, changeReportCacheMaxEntries))
+				.build();
 	}
 
 	public MergeReview createMergeReview(String source, String target) {
@@ -97,8 +113,12 @@ public class BranchReviewService {
 
 		executorService.submit(() -> {
 			try {
-				lookupBranchReviewConceptChanges(sourceToTarget);
-				lookupBranchReviewConceptChanges(targetToSource);
+				if (sourceToTarget.getStatus() != ReviewStatus.CURRENT) {
+					lookupBranchReviewConceptChanges(sourceToTarget);
+				}
+				if (targetToSource.getStatus() != ReviewStatus.CURRENT) {
+					lookupBranchReviewConceptChanges(targetToSource);
+				}
 				mergeReview.setStatus(ReviewStatus.CURRENT);
 				mergeReviewRepository.save(mergeReview);
 			} catch (Exception e) {
@@ -360,7 +380,21 @@ public class BranchReviewService {
 	}
 
 	Set<Long> createConceptChangeReportOnBranchForTimeRange(String path, Date start, Date end, boolean sourceIsParent) {
+		Branch branch = branchService.findBranchOrThrow(path);
+		if (end.getTime() != branch.getHeadTimestamp()) {
+			// Only reports ending at the branch head are cached, other ranges may still have commits to come
+			return buildConceptChangeReport(branch, start, end, sourceIsParent);
+		}
+		// The synonym filter uses the current branch content so the head is part of the key
+		String key = String.join("|", path, Long.toString(branch.getHeadTimestamp()), Long.toString(start.getTime()), Long.toString(end.getTime()),
+				Boolean.toString(sourceIsParent));
+		LongOpenHashSet changedConcepts = changeReports.get(key, k -> buildConceptChangeReport(branch, start, end, sourceIsParent));
+		// Copy so the cached report can not be changed by the caller
+		return new LongOpenHashSet(changedConcepts);
+	}
 
+	private LongOpenHashSet buildConceptChangeReport(Branch branch, Date start, Date end, boolean sourceIsParent) {
+		String path = branch.getPath();
 		logger.info("Creating change report: branch {} time range {} ({}) to {} ({})", path, start.getTime(), start, end.getTime(), end);
 
 		List<Branch> startTimeSlice;
@@ -378,13 +412,9 @@ public class BranchReviewService {
 		}
 
 		if (startTimeSlice.equals(endTimeSlice)) {
-			return Collections.emptySet();
+			return new LongOpenHashSet();
 		}
 
-		// Find components of each type that are on the target branch and have been ended on the source branch
-		final Set<Long> changedConcepts = new LongOpenHashSet();
-		final Map<Long, Long> referenceComponentIdToConceptMap = new Long2ObjectOpenHashMap<>();
-		Branch branch = branchService.findBranchOrThrow(path);
 		logger.debug("Collecting versions replaced for change report: branch {} time range {} to {}", path, start, end);
 
 		Map<String, Set<String>> changedVersionsReplaced = new HashMap<>();
@@ -398,34 +428,6 @@ public class BranchReviewService {
 					endVersionsReplaced.getOrDefault(type, Collections.emptySet()),
 					startVersionsReplaced.getOrDefault(type, Collections.emptySet())));
 		}
-		if (!changedVersionsReplaced.getOrDefault(Concept.class.getSimpleName(), Collections.emptySet()).isEmpty()) {
-			try (final SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(
-					componentsReplacedCriteria(changedVersionsReplaced.get(Concept.class.getSimpleName()), Concept.Fields.CONCEPT_ID).build(), Concept.class)) {
-				stream.forEachRemaining(hit -> changedConcepts.add(parseLong(hit.getContent().getConceptId())));
-			}
-		}
-		if (!changedVersionsReplaced.getOrDefault(Description.class.getSimpleName(), Collections.emptySet()).isEmpty()) {
-			NativeSearchQueryBuilder fsnQuery = componentsReplacedCriteria(changedVersionsReplaced.get(Description.class.getSimpleName()), Description.Fields.CONCEPT_ID)
-					.withFilter(termQuery(Description.Fields.TYPE_ID, Concepts.FSN));
-			try (final SearchHitsIterator<Description> stream = elasticsearchTemplate.searchForStream(fsnQuery.build(), Description.class)) {
-				stream.forEachRemaining(hit -> changedConcepts.add(parseLong(hit.getContent().getConceptId())));
-			}
-		}
-		if (!changedVersionsReplaced.getOrDefault(Relationship.class.getSimpleName(), Collections.emptySet()).isEmpty()) {
-			try (final SearchHitsIterator<Relationship> stream = elasticsearchTemplate.searchForStream(
-					componentsReplacedCriteria(changedVersionsReplaced.get(Relationship.class.getSimpleName()), Relationship.Fields.SOURCE_ID).build(), Relationship.class)) {
-				stream.forEachRemaining(hit -> changedConcepts.add(parseLong(hit.getContent().getSourceId())));
-			}
-		}
-		if (!changedVersionsReplaced.getOrDefault(ReferenceSetMember.class.getSimpleName(), Collections.emptySet()).isEmpty()) {
-			// Refsets with the internal "conceptId" field are related to a concept in terms of authoring
-			NativeSearchQueryBuilder refsetQuery = componentsReplacedCriteria(changedVersionsReplaced.get(ReferenceSetMember.class.getSimpleName()),
-					ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.Fields.CONCEPT_ID)
-					.withFilter(boolQuery().must(existsQuery(ReferenceSetMember.Fields.CONCEPT_ID)));
-			try (final SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(refsetQuery.build(), ReferenceSetMember.class)) {
-				stream.forEachRemaining(hit -> referenceComponentIdToConceptMap.put(parseLong(hit.getContent().getReferencedComponentId()), parseLong(hit.getContent().getConceptId())));
-			}
-		}
 
 		// Technique: Search for ended versions
 		BoolQueryBuilder updatesDuringRange;
@@ -435,83 +437,133 @@ public class BranchReviewService {
 			updatesDuringRange = versionControlHelper.getUpdatesOnBranchDuringRangeCriteria(path, start, end);
 		}
 
-		// Find new or ended versions of each component type and collect the conceptId they relate to
+		// Find replaced, new or ended versions of each component type and collect the conceptId they relate to.
+		// Each component type is streamed concurrently into its own collection.
 		logger.debug("Collecting concept changes for change report: branch {} time range {} to {}", path, start, end);
-
 		TimerUtil timerUtil = new TimerUtil("Collecting changes");
-		NativeSearchQuery conceptsWithNewVersionsQuery = new NativeSearchQueryBuilder()
-				.withQuery(updatesDuringRange)
-				.withPageable(LARGE_PAGE)
-				.withSort(SortBuilders.fieldSort("start"))
-				.withFields(Concept.Fields.CONCEPT_ID)
-				.build();
-		try (final SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(conceptsWithNewVersionsQuery, Concept.class)) {
-			stream.forEachRemaining(hit -> changedConcepts.add(parseLong(hit.getContent().getConceptId())));
-		}
-
-		logger.debug("Collecting description changes for change report: branch {} time range {} to {}", path, start, end);
-		AtomicLong descriptions = new AtomicLong();
-		NativeSearchQuery descQuery = newSearchQuery(updatesDuringRange)
-				.withFilter(termQuery(Description.Fields.TYPE_ID, Concepts.FSN))
-				.withFields(Description.Fields.CONCEPT_ID)
-				.build();
-		try (final SearchHitsIterator<Description> stream = elasticsearchTemplate.searchForStream(descQuery, Description.class)) {
-			stream.forEachRemaining(hit -> {
-				changedConcepts.add(parseLong(hit.getContent().getConceptId()));
-				descriptions.incrementAndGet();
-			});
-		}
-		timerUtil.checkpoint("descriptions " + descriptions.get());
-
-		logger.debug("Collecting relationship changes for change report: branch {} time range {} to {}", path, start, end);
-		AtomicLong relationships = new AtomicLong();
-		NativeSearchQuery relQuery = newSearchQuery(updatesDuringRange)
-				.withFields(Relationship.Fields.SOURCE_ID)
-				.build();
-		try (final SearchHitsIterator<Relationship> stream = elasticsearchTemplate.searchForStream(relQuery, Relationship.class)) {
-			stream.forEachRemaining(hit -> {
-				changedConcepts.add(parseLong(hit.getContent().getSourceId()));
-				relationships.incrementAndGet();
-			});
-		}
-		timerUtil.checkpoint("relationships " + relationships.get());
+		Future<LongOpenHashSet> conceptChanges = executorService.submit(() -> {
+			LongOpenHashSet conceptIds = new LongOpenHashSet();
+			Set<String> replaced = changedVersionsReplaced.getOrDefault(Concept.class.getSimpleName(), Collections.emptySet());
+			if (!replaced.isEmpty()) {
+				streamInto(componentsReplacedCriteria(replaced, Concept.Fields.CONCEPT_ID).build(), Concept.class,
+						concept -> conceptIds.add(parseLong(concept.getConceptId())));
+			}
+			NativeSearchQuery conceptsWithNewVersionsQuery = new NativeSearchQueryBuilder()
+					.withQuery(updatesDuringRange)
+					.withPageable(LARGE_PAGE)
+					.withSort(SortBuilders.fieldSort("start"))
+					.withFields(Concept.Fields.CONCEPT_ID)
+					.build();
+			streamInto(conceptsWithNewVersionsQuery, Concept.class, concept -> conceptIds.add(parseLong(concept.getConceptId())));
+			return conceptIds;
+		});
+		Future<LongOpenHashSet> descriptionChanges = executorService.submit(() -> {
+			LongOpenHashSet conceptIds = new LongOpenHashSet();
+			Set<String> replaced = changedVersionsReplaced.getOrDefault(Description.class.getSimpleName(), Collections.emptySet());
+			if (!replaced.isEmpty()) {
+				NativeSearchQueryBuilder fsnQuery = componentsReplacedCriteria(replaced, Description.Fields.CONCEPT_ID)
+						.withFilter(termQuery(Description.Fields.TYPE_ID, Concepts.FSN));
+				streamInto(fsnQuery.build(), Description.class, description -> conceptIds.add(parseLong(description.getConceptId())));
+			}
+			NativeSearchQuery descQuery = newSearchQuery(updatesDuringRange)
+					.withFilter(termQuery(Description.Fields.TYPE_ID, Concepts.FSN))
+					.withFields(Description.Fields.CONCEPT_ID)
+					.build();
+			streamInto(descQuery, Description.class, description -> conceptIds.add(parseLong(description.getConceptId())));
+			return conceptIds;
+		});
+		Future<LongOpenHashSet> relationshipChanges = executorService.submit(() -> {
+			LongOpenHashSet conceptIds = new LongOpenHashSet();
+			Set<String> replaced = changedVersionsReplaced.getOrDefault(Relationship.class.getSimpleName(), Collections.emptySet());
+			if (!replaced.isEmpty()) {
+				streamInto(componentsReplacedCriteria(replaced, Relationship.Fields.SOURCE_ID).build(), Relationship.class,
+						relationship -> conceptIds.add(parseLong(relationship.getSourceId())));
+			}
+			NativeSearchQuery relQuery = newSearchQuery(updatesDuringRange)
+					.withFields(Relationship.Fields.SOURCE_ID)
+					.build();
+			streamInto(relQuery, Relationship.class, relationship -> conceptIds.add(parseLong(relationship.getSourceId())));
+			return conceptIds;
+		});
+		Future<Long2LongOpenHashMap> memberChanges = executorService.submit(() -> {
+			// Refsets with the internal "conceptId" field are related to a concept in terms of authoring
+			Long2LongOpenHashMap referencedComponentToConcept = new Long2LongOpenHashMap();
+			Set<String> replaced = changedVersionsReplaced.getOrDefault(ReferenceSetMember.class.getSimpleName(), Collections.emptySet());
+			if (!replaced.isEmpty()) {
+				NativeSearchQueryBuilder refsetQuery = componentsReplacedCriteria(replaced,
+						ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.Fields.CONCEPT_ID)
+						.withFilter(boolQuery().must(existsQuery(ReferenceSetMember.Fields.CONCEPT_ID)));
+				streamInto(refsetQuery.build(), ReferenceSetMember.class,
+						member -> referencedComponentToConcept.put(parseLong(member.getReferencedComponentId()), parseLong(member.getConceptId())));
+			}
+			NativeSearchQuery memberQuery = newSearchQuery(updatesDuringRange)
+					.withFilter(boolQuery().must(existsQuery(ReferenceSetMember.Fields.CONCEPT_ID)))
+					.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.Fields.CONCEPT_ID)
+					.build();
+			streamInto(memberQuery, ReferenceSetMember.class,
+					member -> referencedComponentToConcept.put(parseLong(member.getReferencedComponentId()), parseLong(member.getConceptId())));
+			return referencedComponentToConcept;
+		});
 
-		logger.debug("Collecting refset member changes for change report: branch {} time range {} to {}", path, start, end);
-		NativeSearchQuery memberQuery = newSearchQuery(updatesDuringRange)
-				.withFilter(boolQuery().must(existsQuery(ReferenceSetMember.Fields.CONCEPT_ID)))
-				.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.Fields.CONCEPT_ID)
-				.build();
-		try (final SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(memberQuery, ReferenceSetMember.class)) {
-			stream.forEachRemaining(hit -> referenceComponentIdToConceptMap.put(parseLong(hit.getContent().getReferencedComponentId()), parseLong(hit.getContent().getConceptId())));
-		}
+		final LongOpenHashSet changedConcepts = new LongOpenHashSet();
+		changedConcepts.addAll(getChanges(conceptChanges));
+		timerUtil.checkpoint("concepts");
+		changedConcepts.addAll(getChanges(descriptionChanges));
+		timerUtil.checkpoint("descriptions");
+		changedConcepts.addAll(getChanges(relationshipChanges));
+		timerUtil.checkpoint("relationships");
+		final Long2LongOpenHashMap referenceComponentIdToConceptMap = getChanges(memberChanges);
+		timerUtil.checkpoint("refset members " + referenceComponentIdToConceptMap.size());
 
 		// Filter out changes for active Synonyms
 		// Inactive synonym changes should be included to avoid inactivation indicator / association clashes
-		List<Long> synonymAndTextDefIds = new LongArrayList();
-		NativeSearchQueryBuilder synonymQuery = new NativeSearchQueryBuilder()
-				.withQuery(versionControlHelper.getBranchCriteria(branch).getEntityBranchCriteria(Description.class))
-				.withFilter(boolQuery()
-						.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.FSN))
-						.must(termsQuery(Description.Fields.DESCRIPTION_ID, referenceComponentIdToConceptMap.keySet()))
-						.must(termQuery(Description.Fields.ACTIVE, true)));
-		try (final SearchHitsIterator<Description> stream = elasticsearchTemplate.searchForStream(synonymQuery.build(), Description.class)) {
-			stream.forEachRemaining(hit -> synonymAndTextDefIds.add(parseLong(hit.getContent().getDescriptionId())));
-		}
-
-		Set<Long> changedComponents = referenceComponentIdToConceptMap.keySet()
-				.stream()
-				.filter(r -> !synonymAndTextDefIds.contains(r))
-				.collect(Collectors.toSet());
-
-		for (Long componentId : changedComponents) {
-			changedConcepts.add(referenceComponentIdToConceptMap.get(componentId));
+		LongOpenHashSet synonymAndTextDefIds = new LongOpenHashSet();
+		BoolQueryBuilder descriptionBranchCriteria = versionControlHelper.getBranchCriteria(branch).getEntityBranchCriteria(Description.class);
+		for (List<Long> referencedComponentIds : Iterables.partition(referenceComponentIdToConceptMap.keySet(), CLAUSE_LIMIT)) {
+			NativeSearchQueryBuilder synonymQuery = new NativeSearchQueryBuilder()
+					.withQuery(descriptionBranchCriteria)
+					.withFilter(boolQuery()
+							.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.FSN))
+							.must(termsQuery(Description.Fields.DESCRIPTION_ID, referencedComponentIds))
+							.must(termQuery(Description.Fields.ACTIVE, true)))
+					.withFields(Description.Fields.DESCRIPTION_ID)
+					.withPageable(LARGE_PAGE);
+			streamInto(synonymQuery.build(), Description.class, description -> synonymAndTextDefIds.add(parseLong(description.getDescriptionId())));
+		}
+
+		for (LongIterator iterator = referenceComponentIdToConceptMap.keySet().iterator(); iterator.hasNext(); ) {
+			long componentId = iterator.nextLong();
+			if (!synonymAndTextDefIds.contains(componentId)) {
+				changedConcepts.add(referenceComponentIdToConceptMap.get(componentId));
+			}
 		}
+		timerUtil.finish();
 
 		logger.info("Change report complete for branch {} time range {} to {}", path, start, end);
 
 		return changedConcepts;
 	}
 
+	private <T> void streamInto(NativeSearchQuery query, Class<T> componentClass, Consumer<T> consumer) {
+		try (final SearchHitsIterator<T> stream = elasticsearchTemplate.searchForStream(query, componentClass)) {
+			stream.forEachRemaining(hit -> consumer.accept(hit.getContent()));
+		}
+	}
+
+	private <T> T getChanges(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while collecting changes for change report.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to collect changes for change report.", e.getCause());
+		}
+	}
+
 	private NativeSearchQueryBuilder componentsReplacedCriteria(Set<String> versionsReplaced, String... limitFieldsFetched) {
 		NativeSearchQueryBuilder builder = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
@@ -0,0 +1,300 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.collect.Iterables;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Commit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.snomed.snowstorm.core.pojo.BranchHead;
+import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static io.kaicode.elasticvc.domain.Commit.CommitType.CONTENT;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+
+/**
+ * Opt-in, bounded cache of the language independent parts of concept minis: definition status, module and active descriptions
+ * with their language reference set members. Entries are keyed by branch head so only branch criteria created through
+ * {@link BranchHeadCriteriaService} are answered from the cache.
+ * A small content commit carries the entries of concepts it did not change over to the new branch head, other commits remove all entries of the branch.
+ */
+@Service
+public class ConceptMiniCacheService implements CommitListener {
+
+	@Value("${cache.concept-mini.enabled:false}")
+	private boolean enabled;
+
+	@Value("${cache.concept-mini.max-entries:200000}")
+	private int maxEntries;
+
+	@Value("${cache.concept-mini.carry-over-max-changes:10000}")
+	private int carryOverMaxChanges;
+
+	@Autowired
+	private BranchHeadCriteriaService branchHeadCriteriaService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	private Cache<ConceptMiniKey, CachedConceptMini> minis;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		minis = Caffeine.newBuilder()
+				.maximumSize(maxEntries)
+				.recordStats()
+				.build();
+		if (enabled) {
+			logger.info("Concept mini cache enabled with a maximum of {} entries.", maxEntries);
+		}
+	}
+
+	/**
+	 * @return the branch head to use as the cache key or empty if caching is disabled or the branch criteria is not at a branch head.
+	 */
+	public Optional<BranchHead> getBranchHead(BranchCriteria branchCriteria) {
+		if (!enabled) {
+			return Optional.empty();
+		}
+		return branchHeadCriteriaService.getBranchHead(branchCriteria);
+	}
+
+	public CachedConceptMini getIfPresent(BranchHead branchHead, String conceptId) {
+		return minis.getIfPresent(new ConceptMiniKey(branchHead, conceptId));
+	}
+
+	public void put(BranchHead branchHead, CachedConceptMini conceptMini) {
+		minis.put(new ConceptMiniKey(branchHead, conceptMini.conceptId), conceptMini);
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		if (!enabled) {
+			return;
+		}
+		String path = commit.getBranch().getPath();
+		long previousHeadTimestamp = commit.getBranch().getHeadTimestamp();
+		BranchHead newHead = new BranchHead(path, commit.getTimepoint().getTime());
+
+		// Take the entries of the previous branch head out in one pass over the cache
+		Map<String, CachedConceptMini> previousHeadEntries = new HashMap<>();
+		minis.asMap().forEach((key, conceptMini) -> {
+			if (key.branchHead.getPath().equals(path) && key.branchHead.getHeadTimestamp() == previousHeadTimestamp) {
+				previousHeadEntries.put(key.conceptId, conceptMini);
+			}
+		});
+		minis.asMap().keySet().removeIf(key -> key.branchHead.getPath().equals(path));
+
+		// Rebase and promotion bring in changes from other branches, only content commits are carried over.
+		if (commit.getCommitType() != CONTENT || previousHeadEntries.isEmpty()) {
+			return;
+		}
+		Set<String> changedConceptIds = getConceptsChangedInCommit(commit);
+		if (changedConceptIds == null) {
+			logger.debug("More than {} changes in commit on {}, concept mini cache entries not carried over.", carryOverMaxChanges, path);
+			return;
+		}
+		previousHeadEntries.forEach((conceptId, conceptMini) -> {
+			if (!changedConceptIds.contains(conceptId)) {
+				minis.put(new ConceptMiniKey(newHead, conceptId), conceptMini);
+			}
+		});
+	}
+
+	/*
+	 * Returns null when the commit has more changed components than the carry over limit, a large commit such as an import
+	 * would take longer to inspect than the cache saves.
+	 */
+	private Set<String> getConceptsChangedInCommit(Commit commit) {
+		BranchCriteria changesCriteria = versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit);
+		Set<String> conceptIds = new HashSet<>();
+		int changes = 0;
+		try (SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(changesCriteria.getEntityBranchCriteria(Concept.class))
+				.withFields(Concept.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			while (stream.hasNext()) {
+				if (++changes > carryOverMaxChanges) {
+					return null;
+				}
+				conceptIds.add(stream.next().getContent().getConceptId());
+			}
+		}
+		try (SearchHitsIterator<Description> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(changesCriteria.getEntityBranchCriteria(Description.class))
+				.withFields(Description.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Description.class)) {
+			while (stream.hasNext()) {
+				if (++changes > carryOverMaxChanges) {
+					return null;
+				}
+				conceptIds.add(stream.next().getContent().getConceptId());
+			}
+		}
+
+		// Language reference set members change the preferred terms of the concept of the description
+		Set<String> memberDescriptionIds = new HashSet<>();
+		try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(changesCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+				.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), ReferenceSetMember.class)) {
+			while (stream.hasNext()) {
+				if (++changes > carryOverMaxChanges) {
+					return null;
+				}
+				ReferenceSetMember member = stream.next().getContent();
+				if (member.getConceptId() != null) {
+					conceptIds.add(member.getConceptId());
+				} else if (IdentifierService.isDescriptionId(member.getReferencedComponentId())) {
+					memberDescriptionIds.add(member.getReferencedComponentId());
+				}
+			}
+		}
+		if (!memberDescriptionIds.isEmpty()) {
+			BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+			for (List<String> batch : Iterables.partition(memberDescriptionIds, CLAUSE_LIMIT)) {
+				try (SearchHitsIterator<Description> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(branchCriteria.getEntityBranchCriteria(Description.class))
+								.must(termsQuery(Description.Fields.DESCRIPTION_ID, batch)))
+						.withFields(Description.Fields.CONCEPT_ID)
+						.withPageable(LARGE_PAGE)
+						.build(), Description.class)) {
+					stream.forEachRemaining(hit -> conceptIds.add(hit.getContent().getConceptId()));
+				}
+			}
+		}
+		return conceptIds;
+	}
+
+	public Map<String, Object> getStats() {
+		CacheStats stats = minis.stats();
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("enabled", enabled);
+		map.put("entries", minis.estimatedSize());
+		map.put("hits", stats.hitCount());
+		map.put("misses", stats.missCount());
+		map.put("hitRate", stats.hitRate());
+		map.put("evictions", stats.evictionCount());
+		return map;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	void setCarryOverMaxChanges(int carryOverMaxChanges) {
+		this.carryOverMaxChanges = carryOverMaxChanges;
+	}
+
+	int getCarryOverMaxChanges() {
+		return carryOverMaxChanges;
+	}
+
+	/**
+	 * Concept mini data which does not depend on the requested language dialects.
+	 * The description copies are shared between the minis created from an entry and must not be modified.
+	 */
+	public static final class CachedConceptMini {
+
+		private final String conceptId;
+		private final String effectiveTime;
+		private final Boolean active;
+		private final String definitionStatusId;
+		private final String moduleId;
+		private final Set<Description> activeDescriptions;
+
+		public CachedConceptMini(Concept concept, Collection<Description> activeDescriptions) {
+			this.conceptId = concept.getConceptId();
+			this.effectiveTime = concept.getEffectiveTime();
+			this.active = concept.isActive();
+			this.definitionStatusId = concept.getDefinitionStatusId();
+			this.moduleId = concept.getModuleId();
+			// Copies so later changes to the loaded concept do not change the cache
+			this.activeDescriptions = Collections.unmodifiableSet(activeDescriptions.stream().map(CachedConceptMini::copy).collect(Collectors.toSet()));
+		}
+
+		private static Description copy(Description description) {
+			Description copy = new Description(description.getDescriptionId(), description.getEffectiveTimeI(), description.isActive(), description.getModuleId(),
+					description.getConceptId(), description.getLanguageCode(), description.getTypeId(), description.getTerm(), description.getCaseSignificanceId());
+			description.getLangRefsetMembers().values().stream().filter(ReferenceSetMember::isActive).forEach(copy::addLanguageRefsetMember);
+			return copy;
+		}
+
+		public CachedConceptMini(Concept concept) {
+			this(concept, concept.getDescriptions().stream().filter(SnomedComponent::isActive).collect(Collectors.toSet()));
+		}
+
+		public ConceptMini toConceptMini(List<LanguageDialect> languageDialects) {
+			ConceptMini conceptMini = new ConceptMini(conceptId, languageDialects);
+			conceptMini.setEffectiveTime(effectiveTime);
+			conceptMini.setActive(active);
+			addTo(conceptMini);
+			return conceptMini;
+		}
+
+		/**
+		 * Completes a relationship type or target placeholder, these do not include the active flag or effective time.
+		 */
+		public void addTo(ConceptMini conceptMini) {
+			conceptMini.setDefinitionStatusId(definitionStatusId);
+			conceptMini.setModuleId(moduleId);
+			conceptMini.addActiveDescriptions(activeDescriptions);
+		}
+	}
+
+	private static final class ConceptMiniKey {
+
+		private final BranchHead branchHead;
+		private final String conceptId;
+
+		private ConceptMiniKey(BranchHead branchHead, String conceptId) {
+			this.branchHead = branchHead;
+			this.conceptId = conceptId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			ConceptMiniKey that = (ConceptMiniKey) o;
+			return conceptId.equals(that.conceptId) && branchHead.equals(that.branchHead);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(branchHead, conceptId);
+		}
+	}
+}
@@ -21,16 +21,19 @@ import org.slf4j.LoggerFactory;
 import org.snomed.otf.owltoolkit.conversion.ConversionException;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.*;
+import org.snomed.snowstorm.core.data.services.ConceptMiniCacheService.CachedConceptMini;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.AsyncConceptChangeBatch;
 import org.snomed.snowstorm.core.data.services.pojo.PersistedComponents;
 import org.snomed.snowstorm.core.data.services.pojo.ResultMapPage;
 import org.snomed.snowstorm.core.data.services.pojo.SAxiomRepresentation;
+import org.snomed.snowstorm.core.pojo.BranchHead;
 import org.snomed.snowstorm.core.pojo.BranchTimepoint;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -44,6 +47,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.Function;
@@ -99,8 +104,19 @@ public class ConceptService extends ComponentService {
 	@Autowired
 	private ConceptAttributeSortHelper conceptAttributeSortHelper;
 
+	@Autowired
+	private BranchHeadCriteriaService branchHeadCriteriaService;
+
+	@Autowired
+	private ConceptMiniCacheService conceptMiniCacheService;
+
+	@Value("${search.concept.join-threads:8}")
+	private int joinThreads;
+
 	private final Cache<String, AsyncConceptChangeBatch> batchConceptChanges;
 
+	private ExecutorService joinExecutor;
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	public static final String DISABLE_CONTENT_AUTOMATIONS_METADATA_KEY = "disableContentAutomations";
@@ -109,6 +125,16 @@ public class ConceptService extends ComponentService {
 		batchConceptChanges = CacheBuilder.newBuilder().expireAfterWrite(2, TimeUnit.HOURS).build();
 	}
 
+	@PostConstruct
+	public void init() {
+		joinExecutor = Executors.newFixedThreadPool(Math.max(1, joinThreads));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		joinExecutor.shutdownNow();
+	}
+
 	public Concept find(String id, String path) {
 		return find(id, DEFAULT_LANGUAGE_DIALECTS, path);
 	}
@@ -187,7 +213,7 @@ public class ConceptService extends ComponentService {
 		} else if (branchTimepoint.getTimepoint() != null) {
 			return versionControlHelper.getBranchCriteriaAtTimepoint(branchTimepoint.getBranchPath(), branchTimepoint.getTimepoint());
 		} else {
-			return versionControlHelper.getBranchCriteria(branchTimepoint.getBranchPath());
+			return branchHeadCriteriaService.getBranchCriteria(branchTimepoint.getBranchPath());
 		}
 	}
 
@@ -195,7 +221,7 @@ public class ConceptService extends ComponentService {
 		if (conceptIds.isEmpty()) {
 			return new ResultMapPage<>(new HashMap<>(), 0);
 		}
-		final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
+		final BranchCriteria branchCriteria = branchHeadCriteriaService.getBranchCriteria(path);
 		return findConceptMinis(branchCriteria, conceptIds, languageDialects);
 	}
 
@@ -214,6 +240,10 @@ public class ConceptService extends ComponentService {
 		if (conceptIds != null && conceptIds.isEmpty()) {
 			return new ResultMapPage<>(new HashMap<>(), 0);
 		}
+		Optional<BranchHead> branchHead = conceptMiniCacheService.getBranchHead(branchCriteria);
+		if (conceptIds != null && branchHead.isPresent()) {
+			return findConceptMinisUsingCache(branchCriteria, branchHead.get(), conceptIds, languageDialects);
+		}
 		Page<Concept> concepts = doFind(conceptIds, languageDialects, branchCriteria, pageRequest, false, false);
 		Map<String, Concept> conceptMap = new HashMap<>();
 		for (Concept concept : concepts) {
@@ -231,6 +261,29 @@ public class ConceptService extends ComponentService {
 				concepts.getTotalElements());
 	}
 
+	private ResultMapPage<String, ConceptMini> findConceptMinisUsingCache(BranchCriteria branchCriteria, BranchHead branchHead, Collection<?> conceptIds,
+			List<LanguageDialect> languageDialects) {
+
+		Map<String, ConceptMini> conceptMinis = new HashMap<>();
+		Set<String> conceptIdsToFetch = new HashSet<>();
+		for (Object conceptId : conceptIds) {
+			CachedConceptMini cachedConceptMini = conceptMiniCacheService.getIfPresent(branchHead, conceptId.toString());
+			if (cachedConceptMini != null) {
+				conceptMinis.put(conceptId.toString(), cachedConceptMini.toConceptMini(languageDialects));
+			} else {
+				conceptIdsToFetch.add(conceptId.toString());
+			}
+		}
+		if (!conceptIdsToFetch.isEmpty()) {
+			Page<Concept> concepts = doFind(conceptIdsToFetch, languageDialects, branchCriteria, PageRequest.of(0, conceptIdsToFetch.size()), false, false);
+			// Loaded concepts are added to the cache by doFind
+			for (Concept concept : concepts) {
+				conceptMinis.put(concept.getConceptId(), new ConceptMini(concept, languageDialects));
+			}
+		}
+		return new ResultMapPage<>(conceptMinis, conceptMinis.size());
+	}
+
 	private void populateConceptMinis(BranchCriteria branchCriteria, Map<String, ConceptMini> minisToPopulate, List<LanguageDialect> languageDialects) {
 		if (!minisToPopulate.isEmpty()) {
 			Set<String> conceptIds = minisToPopulate.keySet();
@@ -291,63 +344,86 @@ public class ConceptService extends ComponentService {
 			concept.getRelationships().clear();
 		}
 
-		Map<String, ConceptMini> conceptMiniMap = new HashMap<>();
+		if (conceptIdMap.isEmpty()) {
+			timer.finish();
+			return concepts;
+		}
+
+		// Independent joins are fetched concurrently. The description joins add descriptions to the concepts and concept minis on a join thread
+		// while the calling thread sets their relationships, axioms, definition status and module. Each side writes different fields
+		// and every description join is completed with getJoin, which also publishes its writes, before the descriptions are read.
+		Future<?> descriptionsJoin = joinExecutor.submit(() ->
+				descriptionService.joinDescriptions(branchCriteria, conceptIdMap, null, null, includeDescriptionInactivationInfo));
 
+		Map<String, ConceptMini> conceptMiniMap = new HashMap<>();
 		if (includeRelationships) {
-			// Fetch Relationships
-			for (List<String> conceptIds : Iterables.partition(conceptIdMap.keySet(), CLAUSE_LIMIT)) {
-				queryBuilder.withQuery(boolQuery()
-						.must(termsQuery("sourceId", conceptIds))
-						.must(branchCriteria.getEntityBranchCriteria(Relationship.class)))
-						.withPageable(LARGE_PAGE);
-				try (final SearchHitsIterator<Relationship> relationships = elasticsearchTemplate.searchForStream(queryBuilder.build(), Relationship.class)) {
-					relationships.forEachRemaining(hit -> {
-						Relationship relationship = hit.getContent();
-						// Join Relationships
-						conceptIdMap.get(relationship.getSourceId()).addRelationship(relationship);
-
-						// Add placeholders for relationship type and target details
-						relationship.setType(getConceptMini(conceptMiniMap, relationship.getTypeId(), languageDialects));
-						relationship.setTarget(getConceptMini(conceptMiniMap, relationship.getDestinationId(), languageDialects));
-					});
-				}
+			Future<List<Relationship>> relationshipsFetch = joinExecutor.submit(() -> findRelationships(conceptIdMap.keySet(), branchCriteria));
+			Future<List<ReferenceSetMember>> axiomsFetch = joinExecutor.submit(() -> findAxiomMembers(conceptIdMap.keySet(), branchCriteria));
+
+			for (Relationship relationship : getJoin(relationshipsFetch)) {
+				// Join Relationships
+				conceptIdMap.get(relationship.getSourceId()).addRelationship(relationship);
+
+				// Add placeholders for relationship type and target details
+				relationship.setType(getConceptMini(conceptMiniMap, relationship.getTypeId(), languageDialects));
+				relationship.setTarget(getConceptMini(conceptMiniMap, relationship.getDestinationId(), languageDialects));
 			}
 			timer.checkpoint("get relationships " + getFetchCount(conceptIdMap.size()));
 
-			// Fetch Axioms
-			for (List<String> conceptIds : Iterables.partition(conceptIdMap.keySet(), CLAUSE_LIMIT)) {
-				queryBuilder.withQuery(boolQuery()
-						.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
-						.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
-						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class)))
-						.withPageable(LARGE_PAGE);
+			for (ReferenceSetMember axiomMember : getJoin(axiomsFetch)) {
+				joinAxiom(axiomMember, conceptIdMap, conceptMiniMap, languageDialects);
+			}
+			timer.checkpoint("get axioms " + getFetchCount(conceptIdMap.size()));
+		}
 
-				try (final SearchHitsIterator<ReferenceSetMember> axiomMembers = elasticsearchTemplate.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
-					axiomMembers.forEachRemaining(axiomMember -> joinAxiom(axiomMember.getContent(), conceptIdMap, conceptMiniMap, languageDialects));
+		// Concept minis of concepts being loaded are completed from the concepts, others from the cache or fetched
+		BranchHead branchHead = conceptMiniCacheService.getBranchHead(branchCriteria).orElse(null);
+		Map<String, ConceptMini> otherConceptMinis = new HashMap<>();
+		for (Map.Entry<String, ConceptMini> entry : conceptMiniMap.entrySet()) {
+			if (!conceptIdMap.containsKey(entry.getKey())) {
+				CachedConceptMini cachedConceptMini = branchHead != null ? conceptMiniCacheService.getIfPresent(branchHead, entry.getKey()) : null;
+				if (cachedConceptMini != null) {
+					cachedConceptMini.addTo(entry.getValue());
+				} else {
+					otherConceptMinis.put(entry.getKey(), entry.getValue());
 				}
 			}
-			timer.checkpoint("get axioms " + getFetchCount(conceptIdMap.size()));
 		}
+		if (!otherConceptMinis.isEmpty()) {
+			Future<?> otherMiniDescriptionsJoin = joinExecutor.submit(() ->
+					descriptionService.joinDescriptions(branchCriteria, null, otherConceptMinis, null, false));
+			Future<List<Concept>> otherMiniConceptsFetch = joinExecutor.submit(() -> findDefinitionStatuses(otherConceptMinis.keySet(), branchCriteria));
+
+			List<Concept> otherMiniConcepts = getJoin(otherMiniConceptsFetch);
+			for (Concept concept : otherMiniConcepts) {
+				ConceptMini conceptMini = otherConceptMinis.get(concept.getConceptId());
+				conceptMini.setDefinitionStatusId(concept.getDefinitionStatusId());
+				conceptMini.setModuleId(concept.getModuleId());
+			}
+			timer.checkpoint("get relationship def status " + getFetchCount(otherConceptMinis.size()));
+			getJoin(otherMiniDescriptionsJoin);
 
-		// Fetch ConceptMini definition statuses
-		for (List<String> conceptIds : Iterables.partition(conceptMiniMap.keySet(), CLAUSE_LIMIT)) {
-			queryBuilder.withQuery(boolQuery()
-					.must(termsQuery("conceptId", conceptIds))
-					.must(branchCriteria.getEntityBranchCriteria(Concept.class)))
-					.withPageable(LARGE_PAGE);
-			try (final SearchHitsIterator<Concept> conceptsForMini = elasticsearchTemplate.searchForStream(queryBuilder.build(), Concept.class)) {
-				conceptsForMini.forEachRemaining(hit ->
-				{
-					Concept concept = hit.getContent();
-					ConceptMini conceptMini = conceptMiniMap.get(concept.getConceptId());
-					conceptMini.setDefinitionStatusId(concept.getDefinitionStatusId());
-					conceptMini.setModuleId(concept.getModuleId());
-				});
+			if (branchHead != null) {
+				for (Concept concept : otherMiniConcepts) {
+					conceptMiniCacheService.put(branchHead, new CachedConceptMini(concept, otherConceptMinis.get(concept.getConceptId()).getActiveDescriptions()));
+				}
 			}
 		}
-		timer.checkpoint("get relationship def status " + getFetchCount(conceptMiniMap.size()));
 
-		descriptionService.joinDescriptions(branchCriteria, conceptIdMap, conceptMiniMap, timer, includeDescriptionInactivationInfo);
+		getJoin(descriptionsJoin);
+		for (Map.Entry<String, ConceptMini> entry : conceptMiniMap.entrySet()) {
+			Concept concept = conceptIdMap.get(entry.getKey());
+			if (concept != null) {
+				ConceptMini conceptMini = entry.getValue();
+				conceptMini.setDefinitionStatusId(concept.getDefinitionStatusId());
+				conceptMini.setModuleId(concept.getModuleId());
+				conceptMini.addActiveDescriptions(concept.getDescriptions().stream().filter(SnomedComponent::isActive).collect(Collectors.toSet()));
+			}
+		}
+		if (branchHead != null) {
+			conceptIdMap.values().forEach(concept -> conceptMiniCacheService.put(branchHead, new CachedConceptMini(concept)));
+		}
+		timer.checkpoint("get descriptions " + getFetchCount(conceptIdMap.size() + otherConceptMinis.size()));
 
 		conceptAttributeSortHelper.sortAttributes(conceptIdMap.values());
 		timer.checkpoint("Sort attributes");
@@ -357,6 +433,67 @@ public class ConceptService extends ComponentService {
 		return concepts;
 	}
 
+	private List<Relationship> findRelationships(Collection<String> conceptIds, BranchCriteria branchCriteria) {
+		List<Relationship> relationships = new ArrayList<>();
+		for (List<String> batch : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			try (final SearchHitsIterator<Relationship> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(termsQuery("sourceId", batch))
+							.must(branchCriteria.getEntityBranchCriteria(Relationship.class)))
+					.withPageable(LARGE_PAGE)
+					.build(), Relationship.class)) {
+				stream.forEachRemaining(hit -> relationships.add(hit.getContent()));
+			}
+		}
+		return relationships;
+	}
+
+	private List<ReferenceSetMember> findAxiomMembers(Collection<String> conceptIds, BranchCriteria branchCriteria) {
+		List<ReferenceSetMember> axiomMembers = new ArrayList<>();
+		for (List<String> batch : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			try (final SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
+							.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, batch))
+							.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class)))
+					.withPageable(LARGE_PAGE)
+					.build(), ReferenceSetMember.class)) {
+				stream.forEachRemaining(hit -> axiomMembers.add(hit.getContent()));
+			}
+		}
+		return axiomMembers;
+	}
+
+	private List<Concept> findDefinitionStatuses(Collection<String> conceptIds, BranchCriteria branchCriteria) {
+		List<Concept> concepts = new ArrayList<>();
+		for (List<String> batch : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			try (final SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(termsQuery("conceptId", batch))
+							.must(branchCriteria.getEntityBranchCriteria(Concept.class)))
+					.withFields(Concept.Fields.CONCEPT_ID, Concept.Fields.ACTIVE, Concept.Fields.EFFECTIVE_TIME, Concept.Fields.DEFINITION_STATUS_ID, Concept.Fields.MODULE_ID)
+					.withPageable(LARGE_PAGE)
+					.build(), Concept.class)) {
+				stream.forEachRemaining(hit -> concepts.add(hit.getContent()));
+			}
+		}
+		return concepts;
+	}
+
+	private <T> T getJoin(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading concepts.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to load concepts.", e.getCause());
+		}
+	}
+
 	/**
 	 * Converts axiom owlExpression to axiom objects containing relationship and adds to the correct concept in the concept map.
 	 * Only works for regular or GCI axioms. Transitive/reflexive/property-chain axioms will be ignored.
@@ -526,6 +663,28 @@ public class ConceptService extends ComponentService {
 		return persistedComponents;
 	}
 
+	/**
+	 * Saves relationship changes without loading or saving their source concepts, for large sets of classification results.
+	 * New relationships must have their source and module set.
+	 */
+	public PersistedComponents updateRelationshipsWithinCommit(Collection<Relationship> relationships, Commit commit) throws ServiceException {
+		if (relationships.isEmpty()) {
+			return new PersistedComponents();
+		}
+
+		List<Relationship> persistedRelationships = conceptUpdateHelper.saveRelationships(relationships, commit);
+		// Source concepts are not changed, only their ids are needed to group the traceability activity
+		Set<Concept> concepts = persistedRelationships.stream().map(relationship -> new Concept(relationship.getSourceId())).collect(Collectors.toSet());
+		PersistedComponents persistedComponents = new PersistedComponents(concepts, Collections.emptySet(), persistedRelationships, Collections.emptySet());
+
+		// Log traceability activity
+		if (traceabilityLogService.isEnabled()) {
+			traceabilityLogService.logActivity(SecurityUtil.getUsername(), commit, persistedComponents);
+		}
+
+		return persistedComponents;
+	}
+
 	public void deleteConceptAndComponents(String conceptId, String path, boolean force) {
 		try (final Commit commit = branchService.openCommit(path, branchMetadataHelper.getBranchLockMetadata("Deleting concept " + conceptId))) {
 			List<Concept> deletedConcepts = deleteConceptsAndComponentsWithinCommit(Collections.singleton(conceptId), commit, force);
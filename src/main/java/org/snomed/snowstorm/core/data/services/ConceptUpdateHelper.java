@@ -262,6 +262,33 @@ public class ConceptUpdateHelper extends ComponentService {
 		return new PersistedComponents(concepts, descriptionsToPersist, relationshipsToPersist, refsetMembersToPersist);
 	}
 
+	/**
+	 * Saves relationships without their concepts. New relationships, without an id, are assigned one.
+	 * Changed relationships take the default module of the branch if one is set.
+	 */
+	List<Relationship> saveRelationships(Collection<Relationship> relationships, Commit commit) throws ServiceException {
+		Map<String, String> metadata = branchService.findBranchOrThrow(commit.getBranch().getPath(), true).getMetadata();
+		String defaultModuleId = metadata != null ? metadata.get(Config.DEFAULT_MODULE_ID_KEY) : null;
+		String defaultNamespace = metadata != null ? metadata.get(Config.DEFAULT_NAMESPACE_KEY) : null;
+
+		List<Relationship> newRelationships = relationships.stream().filter(relationship -> relationship.getRelationshipId() == null).collect(Collectors.toList());
+		IdentifierReservedBlock reservedIds = identifierService.reserveRelationshipIdentifierBlock(newRelationships.size(), defaultNamespace);
+		newRelationships.forEach(relationship -> relationship.setRelationshipId(reservedIds.getNextId(ComponentType.Relationship).toString()));
+
+		if (defaultModuleId != null) {
+			relationships.stream().filter(DomainEntity::isChanged).forEach(e -> e.setModuleId(defaultModuleId));
+		}
+
+		List<Relationship> relationshipsToPersist = new ArrayList<>(relationships);
+		doSaveBatchRelationships(relationshipsToPersist, commit);
+		doDeleteMembersWhereReferencedComponentDeleted(commit.getEntitiesDeleted(), commit);
+
+		// Store assigned identifiers for registration with CIS
+		identifierService.persistAssignedIdsForRegistration(reservedIds);
+
+		return relationshipsToPersist;
+	}
+
 	private void validateConcepts(Collection<Concept> concepts) {
 		validatorService.validate(concepts);
 		for (Concept concept : concepts) {
@@ -0,0 +1,278 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.collect.Iterables;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.services.pojo.DescriptionFacets;
+import org.snomed.snowstorm.core.pojo.BranchHead;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static io.kaicode.elasticvc.domain.Commit.CommitType.CONTENT;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.snomed.snowstorm.config.Config.AGGREGATION_SEARCH_SIZE;
+import static org.snomed.snowstorm.config.Config.PAGE_OF_ONE;
+
+/**
+ * Bounded cache of the description search aggregations of whole branches, keyed by branch head.
+ * Used to answer the unfiltered description search and the semantic tag counts without aggregation queries.
+ * The configured warm branches are loaded in the background after each content commit so the first request after an import
+ * or authoring change is also answered from the cache.
+ */
+@Service
+public class DescriptionFacetCacheService implements CommitListener {
+
+	private static final int WARM_CHECK_SECONDS = 1;
+	private static final int WARM_MAX_CHECKS = 120;
+
+	// Number of buckets returned by a terms aggregation when no size is given
+	private static final int DEFAULT_BUCKET_COUNT = 10;
+
+	@Value("${cache.description-facets.max-entries:100}")
+	private int maxEntries;
+
+	@Value("${cache.description-facets.warm-branches:}")
+	private String warmBranchesConfig;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	@Autowired
+	private ExecutorService executorService;
+
+	private Cache<BranchHead, DescriptionFacets> facets;
+
+	private Set<String> warmBranches;
+
+	private ScheduledExecutorService warmScheduler;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		facets = Caffeine.newBuilder()
+				.maximumSize(maxEntries)
+				.recordStats()
+				.build();
+		warmBranches = new HashSet<>();
+		for (String path : warmBranchesConfig.split(",")) {
+			if (!path.trim().isEmpty()) {
+				warmBranches.add(path.trim());
+			}
+		}
+		warmScheduler = Executors.newSingleThreadScheduledExecutor();
+		if (!warmBranches.isEmpty()) {
+			logger.info("Description facets will be loaded after each commit on branches {}.", warmBranches);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		warmScheduler.shutdownNow();
+	}
+
+	/**
+	 * @return the aggregations of all descriptions at the current head of the branch, loaded if not already cached.
+	 */
+	public DescriptionFacets getFacets(String path) {
+		Branch branch = branchService.findBranchOrThrow(path);
+		return facets.get(new BranchHead(path, branch.getHeadTimestamp()), key -> load(key, branch));
+	}
+
+	private DescriptionFacets load(BranchHead branchHead, Branch branch) {
+		TimerUtil timer = new TimerUtil("Load description facets " + branchHead);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+
+		List<Long> allConcepts = new LongArrayList();
+		List<Long> activeConcepts = new LongArrayList();
+		try (SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(Concept.class))
+				.withFields(Concept.Fields.CONCEPT_ID, Concept.Fields.ACTIVE)
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			stream.forEachRemaining(hit -> {
+				Concept concept = hit.getContent();
+				allConcepts.add(concept.getConceptIdAsLong());
+				if (concept.isActive()) {
+					activeConcepts.add(concept.getConceptIdAsLong());
+				}
+			});
+		}
+		timer.checkpoint("Collect concept ids");
+
+		// Semantic tags of all concepts, then of active concepts only
+		Map<String, Long> semanticTags = getSemanticTagCounts(branchCriteria, null);
+		Map<String, Long> activeConceptSemanticTags = getSemanticTagCounts(branchCriteria, activeConcepts);
+		timer.checkpoint("Semantic tag aggregations");
+
+		// Concepts are partitioned to keep within the terms limit, each refset is counted in full in every partition then the counts are added up
+		Map<String, Long> membership = new HashMap<>();
+		for (List<Long> batch : Iterables.partition(allConcepts, CLAUSE_LIMIT)) {
+			SearchHits<ReferenceSetMember> membershipResults = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+							.must(termsQuery(ReferenceSetMember.Fields.ACTIVE, true))
+							.filter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, batch))
+					)
+					.withPageable(PAGE_OF_ONE)
+					.addAggregation(AggregationBuilders.terms("membership").field(ReferenceSetMember.Fields.REFSET_ID).size(AGGREGATION_SEARCH_SIZE))
+					.build(), ReferenceSetMember.class);
+			addBuckets(membership, membershipResults.getAggregations(), "membership");
+		}
+		timer.checkpoint("Concept refset membership aggregation");
+
+		SearchHits<Description> descriptionResults = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(Description.class))
+				.withPageable(PAGE_OF_ONE)
+				.addAggregation(AggregationBuilders.terms("module").field(Description.Fields.MODULE_ID))
+				.addAggregation(AggregationBuilders.terms("language").field(Description.Fields.LANGUAGE_CODE))
+				.build(), Description.class);
+		timer.finish();
+
+		return new DescriptionFacets(semanticTags, activeConceptSemanticTags,
+				// The same number of buckets as the uncached membership aggregation
+				getLargestBuckets(membership, DEFAULT_BUCKET_COUNT),
+				getBuckets(descriptionResults.getAggregations(), "module"),
+				getBuckets(descriptionResults.getAggregations(), "language"));
+	}
+
+	private Map<String, Long> getSemanticTagCounts(BranchCriteria branchCriteria, List<Long> conceptIds) {
+		if (conceptIds == null) {
+			return new TreeMap<>(getBuckets(searchSemanticTags(branchCriteria, null), "semanticTags"));
+		}
+		Map<String, Long> semanticTags = new HashMap<>();
+		for (List<Long> batch : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			addBuckets(semanticTags, searchSemanticTags(branchCriteria, batch), "semanticTags");
+		}
+		return new TreeMap<>(getLargestBuckets(semanticTags, AGGREGATION_SEARCH_SIZE));
+	}
+
+	private Aggregations searchSemanticTags(BranchCriteria branchCriteria, Collection<Long> conceptIds) {
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(Description.class))
+						.must(termQuery(Description.Fields.ACTIVE, true))
+						.must(termQuery(Description.Fields.TYPE_ID, Concepts.FSN)))
+				.withPageable(PAGE_OF_ONE)
+				.addAggregation(AggregationBuilders.terms("semanticTags").field(Description.Fields.TAG).size(AGGREGATION_SEARCH_SIZE));
+		if (conceptIds != null) {
+			queryBuilder.withFilter(termsQuery(Description.Fields.CONCEPT_ID, conceptIds));
+		}
+		return elasticsearchTemplate.search(queryBuilder.build(), Description.class).getAggregations();
+	}
+
+	private Map<String, Long> getBuckets(Aggregations aggregations, String name) {
+		Map<String, Long> buckets = new HashMap<>();
+		addBuckets(buckets, aggregations, name);
+		return buckets;
+	}
+
+	private void addBuckets(Map<String, Long> buckets, Aggregations aggregations, String name) {
+		if (aggregations != null && aggregations.get(name) instanceof Terms) {
+			for (Terms.Bucket bucket : ((Terms) aggregations.get(name)).getBuckets()) {
+				buckets.merge(bucket.getKeyAsString(), bucket.getDocCount(), Long::sum);
+			}
+		}
+	}
+
+	private Map<String, Long> getLargestBuckets(Map<String, Long> buckets, int size) {
+		Map<String, Long> largest = new HashMap<>();
+		buckets.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+				.limit(size)
+				.forEach(entry -> largest.put(entry.getKey(), entry.getValue()));
+		return largest;
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		// Facets are only requested for the current head of a branch, those of the old head are dropped and warm branches reloaded below.
+		String path = commit.getBranch().getPath();
+		facets.asMap().keySet().removeIf(key -> key.getPath().equals(path));
+
+		if (commit.getCommitType() == CONTENT && warmBranches.contains(path)) {
+			scheduleWarm(path, commit.getTimepoint().getTime(), 1);
+		}
+	}
+
+	// The new head is only readable once the commit completes and the branch lock is released
+	private void scheduleWarm(String path, long timepoint, int check) {
+		warmScheduler.schedule(() -> {
+			try {
+				Branch branch = branchService.findLatest(path);
+				if (branch.isLocked()) {
+					if (check < WARM_MAX_CHECKS) {
+						scheduleWarm(path, timepoint, check + 1);
+					} else {
+						logger.info("Branch {} still locked, description facets will be loaded on first use.", path);
+					}
+				} else if (branch.getHeadTimestamp() == timepoint) {
+					executorService.submit(() -> warm(path));
+				}
+				// Otherwise the commit failed or a later commit will load the facets
+			} catch (Exception e) {
+				logger.warn("Failed to check branch {} before loading description facets.", path, e);
+			}
+		}, WARM_CHECK_SECONDS, TimeUnit.SECONDS);
+	}
+
+	private void warm(String path) {
+		try {
+			getFacets(path);
+		} catch (Exception e) {
+			logger.warn("Failed to load description facets of branch {}.", path, e);
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		CacheStats stats = facets.stats();
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("warmBranches", warmBranches);
+		map.put("entries", facets.estimatedSize());
+		map.put("hits", stats.hitCount());
+		map.put("misses", stats.missCount());
+		map.put("hitRate", stats.hitRate());
+		map.put("evictions", stats.evictionCount());
+		map.put("averageLoadMillis", TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty()));
+		return map;
+	}
+}
@@ -0,0 +1,276 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.collect.Iterables;
+import io.kaicode.elasticvc.api.*;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.repositories.DescriptionRepository;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.UpdateQuery;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static io.kaicode.elasticvc.domain.Commit.CommitType.CONTENT;
+import static io.kaicode.elasticvc.domain.Commit.CommitType.REBASE;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.snomed.snowstorm.config.Config.BATCH_SAVE_SIZE;
+
+/**
+ * Keeps the semantic tags and refset memberships of each concept on all of its descriptions
+ * so the description search can return every aggregation from a single search.
+ * Only active when search.description.aggregation.denormalised is enabled.
+ * Content commits update the concepts changed in the commit. A rebase rechecks the concepts with descriptions or members changed on the branch
+ * because versions on the branch may hold fields computed before the parent content they now sit on. Promotion needs no update because the
+ * branch must be up to date with its parent before it can be promoted.
+ */
+@Service
+public class DescriptionFacetUpdateService extends ComponentService implements CommitListener {
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	@Autowired
+	private DescriptionRepository descriptionRepository;
+
+	@Autowired
+	private BranchMetadataHelper branchMetadataHelper;
+
+	@Value("${search.description.aggregation.denormalised:false}")
+	private boolean enabled;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		if (enabled && (commit.getCommitType() == CONTENT || commit.getCommitType() == REBASE)) {
+			try {
+				performUpdate(false, commit);
+			} catch (Exception e) {
+				throw new IllegalStateException("Failed to update description aggregation fields.", e);
+			}
+		}
+	}
+
+	public void rebuildAllDescriptionFacets(String path) throws ServiceException {
+		logger.info("Updating description aggregation fields of all concepts on branch {}.", path);
+		try (Commit commit = branchService.openCommit(path, branchMetadataHelper.getBranchLockMetadata("Updating description aggregation fields."))) {
+			performUpdate(true, commit);
+			commit.markSuccessful();
+		} catch (Exception e) {
+			throw new ServiceException("Failed to update description aggregation fields.", e);
+		}
+		logger.info("Completed updating description aggregation fields on branch {}.", path);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	private void performUpdate(boolean allConcepts, Commit commit) {
+		Set<Long> conceptIds;
+		if (allConcepts) {
+			conceptIds = getAllConcepts(commit);
+		} else if (commit.getCommitType() == REBASE) {
+			Branch branch = commit.getBranch();
+			conceptIds = getConceptsWithFacetChanges(versionControlHelper.getChangesOnBranchCriteria(branch),
+					branch.getVersionsReplaced(Description.class), branch.getVersionsReplaced(ReferenceSetMember.class));
+		} else {
+			conceptIds = getConceptsWithFacetChanges(versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit),
+					Collections.emptySet(), Collections.emptySet());
+		}
+		if (conceptIds.isEmpty()) {
+			return;
+		}
+		logger.info("Checking description aggregation fields of {} concepts.", conceptIds.size());
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+		int updated = 0;
+		for (List<Long> batch : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			Map<String, Set<String>> conceptSemanticTags = getConceptSemanticTags(batch, branchCriteria);
+			Map<String, Set<String>> conceptRefsets = getConceptRefsets(batch, branchCriteria);
+
+			List<Description> descriptionsToUpdate = new ArrayList<>();
+			try (SearchHitsIterator<Description> descriptions = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Description.class))
+							.must(termsQuery(Description.Fields.CONCEPT_ID, batch)))
+					.withPageable(LARGE_PAGE)
+					.build(), Description.class)) {
+				descriptions.forEachRemaining(hit -> {
+					Description description = hit.getContent();
+					Set<String> semanticTags = conceptSemanticTags.getOrDefault(description.getConceptId(), Collections.emptySet());
+					Set<String> refsets = conceptRefsets.getOrDefault(description.getConceptId(), Collections.emptySet());
+					if (!semanticTags.equals(nullToEmpty(description.getConceptSemanticTags())) || !refsets.equals(nullToEmpty(description.getConceptRefsets()))) {
+						description.setConceptSemanticTags(semanticTags);
+						description.setConceptRefsets(refsets);
+						descriptionsToUpdate.add(description);
+					}
+				});
+			}
+			saveChanges(descriptionsToUpdate, commit);
+			updated += descriptionsToUpdate.size();
+		}
+		logger.info("Updated aggregation fields of {} descriptions.", updated);
+	}
+
+	private Set<Long> getAllConcepts(Commit commit) {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+		Set<Long> conceptIds = new LongOpenHashSet();
+		try (SearchHitsIterator<Concept> concepts = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(Concept.class))
+				.withFields(Concept.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			concepts.forEachRemaining(hit -> conceptIds.add(hit.getContent().getConceptIdAsLong()));
+		}
+		return conceptIds;
+	}
+
+	/*
+	 * Collects the concepts of the changed descriptions and members plus those of the parent versions replaced on the branch.
+	 */
+	private Set<Long> getConceptsWithFacetChanges(BranchCriteria changesCriteria, Set<String> replacedDescriptionIds, Set<String> replacedMemberIds) {
+		Set<Long> conceptIds = new LongOpenHashSet();
+
+		// New or changed descriptions need the fields set, changed FSNs may change the semantic tag
+		collectDescriptionConceptIds(changesCriteria.getEntityBranchCriteria(Description.class), conceptIds);
+		for (List<String> batch : Iterables.partition(replacedDescriptionIds, CLAUSE_LIMIT)) {
+			collectDescriptionConceptIds(boolQuery().filter(termsQuery("internalId", batch)), conceptIds);
+		}
+
+		// Members of concepts may change the refset memberships
+		collectMemberConceptIds(changesCriteria.getEntityBranchCriteria(ReferenceSetMember.class), conceptIds);
+		for (List<String> batch : Iterables.partition(replacedMemberIds, CLAUSE_LIMIT)) {
+			collectMemberConceptIds(boolQuery().filter(termsQuery("internalId", batch)), conceptIds);
+		}
+		return conceptIds;
+	}
+
+	private void collectDescriptionConceptIds(QueryBuilder query, Set<Long> conceptIds) {
+		try (SearchHitsIterator<Description> descriptions = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(query)
+				.withFields(Description.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Description.class)) {
+			descriptions.forEachRemaining(hit -> conceptIds.add(Long.parseLong(hit.getContent().getConceptId())));
+		}
+	}
+
+	private void collectMemberConceptIds(QueryBuilder query, Set<Long> conceptIds) {
+		try (SearchHitsIterator<ReferenceSetMember> members = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(query)
+				.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), ReferenceSetMember.class)) {
+			members.forEachRemaining(hit -> {
+				String referencedComponentId = hit.getContent().getReferencedComponentId();
+				if (IdentifierService.isConceptId(referencedComponentId)) {
+					conceptIds.add(Long.parseLong(referencedComponentId));
+				}
+			});
+		}
+	}
+
+	private Map<String, Set<String>> getConceptSemanticTags(Collection<Long> conceptIds, BranchCriteria branchCriteria) {
+		Map<String, Set<String>> conceptSemanticTags = new HashMap<>();
+		try (SearchHitsIterator<Description> fsns = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(Description.class))
+						.must(termQuery(Description.Fields.ACTIVE, true))
+						.must(termQuery(Description.Fields.TYPE_ID, Concepts.FSN))
+						.must(termsQuery(Description.Fields.CONCEPT_ID, conceptIds)))
+				.withFields(Description.Fields.CONCEPT_ID, Description.Fields.TERM, Description.Fields.TYPE_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Description.class)) {
+			fsns.forEachRemaining(hit -> {
+				Description fsn = hit.getContent();
+				String tag = fsn.getTag();
+				if (tag != null) {
+					conceptSemanticTags.computeIfAbsent(fsn.getConceptId(), id -> new HashSet<>()).add(tag);
+				}
+			});
+		}
+		return conceptSemanticTags;
+	}
+
+	private Map<String, Set<String>> getConceptRefsets(Collection<Long> conceptIds, BranchCriteria branchCriteria) {
+		Map<String, Set<String>> conceptRefsets = new HashMap<>();
+		try (SearchHitsIterator<ReferenceSetMember> members = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+						.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true))
+						.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds)))
+				.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.Fields.REFSET_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), ReferenceSetMember.class)) {
+			members.forEachRemaining(hit -> {
+				ReferenceSetMember member = hit.getContent();
+				conceptRefsets.computeIfAbsent(member.getReferencedComponentId(), id -> new HashSet<>()).add(member.getRefsetId());
+			});
+		}
+		return conceptRefsets;
+	}
+
+	private void saveChanges(List<Description> descriptions, Commit commit) {
+		for (List<Description> batch : Iterables.partition(descriptions, BATCH_SAVE_SIZE)) {
+			// Descriptions already saved in this commit are updated in place to avoid two versions in the same commit
+			Set<Description> editedDescriptions = batch.stream()
+					.filter(description -> description.getStart().equals(commit.getTimepoint()))
+					.collect(Collectors.toSet());
+			updateViaUpdateQuery(editedDescriptions);
+
+			Set<Description> toSave = batch.stream()
+					.filter(description -> !editedDescriptions.contains(description))
+					.collect(Collectors.toSet());
+			toSave.forEach(Description::markChanged);
+			doSaveBatchComponents(toSave, commit, Description.Fields.DESCRIPTION_ID, descriptionRepository);
+		}
+	}
+
+	private void updateViaUpdateQuery(Collection<Description> descriptions) {
+		List<UpdateQuery> updateQueries = new ArrayList<>();
+		for (Description description : descriptions) {
+			Map<String, Object> params = new HashMap<>();
+			params.put("tags", new ArrayList<>(description.getConceptSemanticTags()));
+			params.put("refsets", new ArrayList<>(description.getConceptRefsets()));
+			updateQueries.add(UpdateQuery.builder(description.getInternalId())
+					.withScript("ctx._source." + Description.Fields.CONCEPT_SEMANTIC_TAGS + "=params.tags;" +
+							"ctx._source." + Description.Fields.CONCEPT_REFSETS + "=params.refsets")
+					.withParams(params)
+					.withLang("painless")
+					.build());
+		}
+		if (!updateQueries.isEmpty()) {
+			elasticsearchTemplate.bulkUpdate(updateQueries, elasticsearchTemplate.getIndexCoordinatesFor(Description.class));
+			elasticsearchTemplate.indexOps(Description.class).refresh();
+		}
+	}
+
+	private static Set<String> nullToEmpty(Set<String> set) {
+		return set != null ? set : Collections.emptySet();
+	}
+}
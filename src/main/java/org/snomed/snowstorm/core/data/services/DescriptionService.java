@@ -7,7 +7,6 @@ import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.ComponentService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
-import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
@@ -20,12 +19,16 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
 import org.elasticsearch.index.query.Operator;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
-import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.IncludeExclude;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.Cardinality;
+import org.elasticsearch.search.aggregations.metrics.CardinalityAggregationBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +36,7 @@ import org.snomed.snowstorm.config.SearchLanguagesConfiguration;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
+import org.snomed.snowstorm.core.data.services.pojo.DescriptionFacets;
 import org.snomed.snowstorm.core.data.services.pojo.PageWithBucketAggregations;
 import org.snomed.snowstorm.core.data.services.pojo.PageWithBucketAggregationsFactory;
 import org.snomed.snowstorm.core.data.services.pojo.SimpleAggregation;
@@ -56,7 +60,6 @@ import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -82,15 +85,22 @@ public class DescriptionService extends ComponentService {
 	@Autowired
 	private ConceptUpdateHelper conceptUpdateHelper;
 
-	private final Map<String, SemanticTagCacheEntry> semanticTagAggregationCache = new ConcurrentHashMap<>();
+	@Autowired
+	private DescriptionFacetUpdateService descriptionFacetUpdateService;
+
+	@Autowired
+	private DescriptionFacetCacheService descriptionFacetCacheService;
 
 	@Value("${search.description.aggregation.maxProcessableResultsSize}")
 	private int aggregationMaxProcessableResultsSize;
 
 	public enum SearchMode {
-		STANDARD, REGEX, WHOLE_WORD
+		STANDARD, REGEX, WHOLE_WORD, TYPEAHEAD
 	}
 
+	// Typeahead fetches more descriptions than requested to leave enough once duplicate and inactive concepts are removed
+	private static final int TYPEAHEAD_FETCH_FACTOR = 5;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public Description findDescription(String path, String descriptionId) {
@@ -183,6 +193,10 @@ public class DescriptionService extends ComponentService {
 		final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
 		timer.checkpoint("Build branch criteria");
 
+		if (criteria.hasNoFilters()) {
+			return findAllDescriptionsWithCachedAggregations(path, branchCriteria, pageRequest, timer);
+		}
+
 		// Fetch all matching description and concept ids
 		// ids of concepts where all descriptions and concept criteria are met
 		DescriptionMatches descriptionMatches = findDescriptionAndConceptIds(criteria, Collections.EMPTY_SET, branchCriteria, timer);
@@ -192,12 +206,7 @@ public class DescriptionService extends ComponentService {
 		BoolQueryBuilder descriptionFilter = boolQuery();
 		descriptionFilter.must(termsQuery(Description.Fields.DESCRIPTION_ID, descriptionMatches.getMatchedDescriptionIds()));
 
-		// Start fetching aggregations..
-		List<Aggregation> allAggregations = new ArrayList<>();
 		Set<Long> conceptIds = descriptionMatches.getMatchedConceptIds();
-
-		// Fetch FSN semantic tag aggregation
-		BoolQueryBuilder fsnClauses = boolQuery();
 		String semanticTag = criteria.getSemanticTag();
 		Set<String> semanticTags = criteria.getSemanticTags();
 		boolean semanticTagFiltering = !Strings.isNullOrEmpty(semanticTag) || !CollectionUtils.isEmpty(semanticTags);
@@ -209,6 +218,19 @@ public class DescriptionService extends ComponentService {
 			if (!CollectionUtils.isEmpty(semanticTags)) {
 				allSemanticTags.addAll(semanticTags);
 			}
+		}
+
+		if (descriptionFacetUpdateService.isEnabled()) {
+			descriptionFilter.must(termsQuery(Description.Fields.CONCEPT_ID, conceptIds));
+			return findDescriptionsWithDenormalisedAggregations(descriptionQuery, descriptionFilter, allSemanticTags, pageRequest, timer);
+		}
+
+		// Start fetching aggregations..
+		List<Aggregation> allAggregations = new ArrayList<>();
+
+		// Fetch FSN semantic tag aggregation
+		BoolQueryBuilder fsnClauses = boolQuery();
+		if (semanticTagFiltering) {
 			fsnClauses.must(termsQuery(Description.Fields.TAG, allSemanticTags));
 		}
 		NativeSearchQueryBuilder fsnQueryBuilder = new NativeSearchQueryBuilder()
@@ -276,6 +298,74 @@ public class DescriptionService extends ComponentService {
 		return PageWithBucketAggregationsFactory.createPage(descriptions, new Aggregations(allAggregations), pageRequest);
 	}
 
+	// Every description matches so the aggregations are those of the whole branch, which are cached per branch head
+	private PageWithBucketAggregations<Description> findAllDescriptionsWithCachedAggregations(String path, BranchCriteria branchCriteria, PageRequest pageRequest, TimerUtil timer) {
+		DescriptionFacets facets = descriptionFacetCacheService.getFacets(path);
+		timer.checkpoint("Cached aggregations");
+
+		NativeSearchQuery query = addTermSort(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(Description.class))
+				.withPageable(pageRequest)
+				.build());
+		query.setTrackTotalHits(true);
+		SearchHits<Description> descriptions = elasticsearchTemplate.search(query, Description.class);
+		timer.checkpoint("Fetch descriptions");
+		timer.finish();
+
+		return PageWithBucketAggregationsFactory.createPage(descriptions, new Aggregations(Arrays.asList(
+				new SimpleAggregation("semanticTags", facets.getSemanticTags()),
+				new SimpleAggregation("membership", facets.getMembership()),
+				new SimpleAggregation("module", facets.getModule()),
+				new SimpleAggregation("language", facets.getLanguage()))), pageRequest);
+	}
+
+	// Concept semantic tags and refset memberships are held on each description so all aggregations come from the paged search
+	private PageWithBucketAggregations<Description> findDescriptionsWithDenormalisedAggregations(BoolQueryBuilder descriptionQuery, BoolQueryBuilder descriptionFilter,
+			Set<String> semanticTags, PageRequest pageRequest, TimerUtil timer) {
+
+		TermsAggregationBuilder semanticTagAggregation = AggregationBuilders.terms("semanticTags").field(Description.Fields.CONCEPT_SEMANTIC_TAGS)
+				.size(AGGREGATION_SEARCH_SIZE)
+				.subAggregation(conceptCountAggregation());
+		if (!semanticTags.isEmpty()) {
+			descriptionFilter.must(termsQuery(Description.Fields.CONCEPT_SEMANTIC_TAGS, semanticTags));
+			// Concepts may have other tags in other languages, only count the tags requested
+			semanticTagAggregation.includeExclude(new IncludeExclude(semanticTags.toArray(new String[]{}), null));
+		}
+		final NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(descriptionQuery.filter(descriptionFilter))
+				.addAggregation(semanticTagAggregation)
+				.addAggregation(AggregationBuilders.terms("membership").field(Description.Fields.CONCEPT_REFSETS).subAggregation(conceptCountAggregation()))
+				.addAggregation(AggregationBuilders.terms("module").field(Description.Fields.MODULE_ID))
+				.addAggregation(AggregationBuilders.terms("language").field(Description.Fields.LANGUAGE_CODE))
+				.withPageable(pageRequest);
+		NativeSearchQuery aggregateQuery = addTermSort(queryBuilder.build());
+		aggregateQuery.setTrackTotalHits(true);
+		SearchHits<Description> descriptions = elasticsearchTemplate.search(aggregateQuery, Description.class);
+		timer.checkpoint("Fetch descriptions including all aggregations");
+		timer.finish();
+
+		// Semantic tag and membership buckets count concepts rather than descriptions
+		List<Aggregation> allAggregations = new ArrayList<>();
+		for (Aggregation aggregation : descriptions.getAggregations()) {
+			if (aggregation instanceof Terms && (aggregation.getName().equals("semanticTags") || aggregation.getName().equals("membership"))) {
+				Map<String, Long> conceptCounts = new HashMap<>();
+				for (Terms.Bucket bucket : ((Terms) aggregation).getBuckets()) {
+					Cardinality concepts = bucket.getAggregations().get("concepts");
+					conceptCounts.put(bucket.getKeyAsString(), concepts.getValue());
+				}
+				allAggregations.add(new SimpleAggregation(aggregation.getName(), conceptCounts));
+			} else {
+				allAggregations.add(aggregation);
+			}
+		}
+		return PageWithBucketAggregationsFactory.createPage(descriptions, new Aggregations(allAggregations), pageRequest);
+	}
+
+	private CardinalityAggregationBuilder conceptCountAggregation() {
+		// Counts are exact below the precision threshold
+		return AggregationBuilders.cardinality("concepts").field(Description.Fields.CONCEPT_ID).precisionThreshold(40_000);
+	}
+
 	void joinDescriptions(BranchCriteria branchCriteria, Map<String, Concept> conceptIdMap, Map<String, ConceptMini> conceptMiniMap,
 			TimerUtil timer, boolean fetchInactivationInfo) {
 
@@ -336,51 +426,7 @@ public class DescriptionService extends ComponentService {
 	}
 
 	public Map<String, Long> countActiveConceptsPerSemanticTag(String branch) {
-
-		Branch branchObject = branchService.findLatest(branch);
-
-		SemanticTagCacheEntry semanticTagCacheEntry = semanticTagAggregationCache.get(branch);
-		if (semanticTagCacheEntry != null) {
-			if (semanticTagCacheEntry.getBranchHeadTime() == branchObject.getHead().getTime()) {
-				return semanticTagCacheEntry.getTagCounts();
-			}
-		}
-
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
-
-		List<Long> activeConcepts = new LongArrayList();
-
-		try (SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteria.getEntityBranchCriteria(Concept.class))
-						.must(termQuery(Concept.Fields.ACTIVE, true)))
-				.withSourceFilter(new FetchSourceFilter(new String[] {Concept.Fields.CONCEPT_ID}, new String[] {}))
-				.withPageable(LARGE_PAGE).build(), Concept.class)) {
-			stream.forEachRemaining(hit -> activeConcepts.add(hit.getContent().getConceptIdAsLong()));
-		}
-
-		SearchHits<Description> page = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteria.getEntityBranchCriteria(Description.class))
-						.must(termQuery(Description.Fields.ACTIVE, true))
-						.must(termQuery(Description.Fields.TYPE_ID, Concepts.FSN))
-						.filter(termsQuery(Description.Fields.CONCEPT_ID, activeConcepts))
-				)
-				.addAggregation(AggregationBuilders.terms("semanticTags").field(Description.Fields.TAG).size(AGGREGATION_SEARCH_SIZE))
-				.build(), Description.class);
-
-		Map<String, Long> tagCounts = new TreeMap<>();
-		if (page.hasAggregations()) {
-			ParsedStringTerms semanticTags = page.getAggregations().get("semanticTags");
-			List<? extends Terms.Bucket> buckets = semanticTags.getBuckets();
-			for (Terms.Bucket bucket : buckets) {
-				tagCounts.put(bucket.getKeyAsString(), bucket.getDocCount());
-			}
-		}
-		// Cache result
-		semanticTagAggregationCache.put(branch, new SemanticTagCacheEntry(branchObject.getHead().getTime(), tagCounts));
-
-		return tagCounts;
+		return descriptionFacetCacheService.getFacets(branch).getActiveConceptSemanticTags();
 	}
 
 	private void joinInactivationIndicatorsAndAssociations(Map<String, Concept> conceptIdMap, Map<String, Description> descriptionIdMap,
@@ -480,6 +526,46 @@ public class DescriptionService extends ComponentService {
 		joinLangRefsetMembers(branchCriteria, conceptMiniMap.keySet(), descriptionIdMap);
 	}
 
+	/**
+	 * Active descriptions of active concepts where the words typed so far match, the last word as a prefix.
+	 * One description per concept, shortest terms first. Only a first page is returned so no counting or aggregation is needed.
+	 */
+	public List<Description> findTypeaheadDescriptions(String path, String term, Collection<String> languageCodes, int limit) {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
+		BoolQueryBuilder descriptionQuery = boolQuery()
+				.must(branchCriteria.getEntityBranchCriteria(Description.class))
+				.must(termQuery(Description.Fields.ACTIVE, true));
+		addTermClauses(term, languageCodes, null, descriptionQuery, SearchMode.TYPEAHEAD);
+		NativeSearchQuery query = addTermSort(new NativeSearchQueryBuilder()
+				.withQuery(descriptionQuery)
+				.withPageable(PageRequest.of(0, limit * TYPEAHEAD_FETCH_FACTOR))
+				.build());
+		Map<String, Description> conceptDescriptions = new LinkedHashMap<>();
+		for (SearchHit<Description> hit : elasticsearchTemplate.search(query, Description.class)) {
+			conceptDescriptions.putIfAbsent(hit.getContent().getConceptId(), hit.getContent());
+		}
+		if (conceptDescriptions.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		// Remove inactive concepts, the lookup is bounded by the size of the page
+		Set<String> activeConceptIds = new HashSet<>();
+		for (SearchHit<Concept> hit : elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+						.must(termQuery(Concept.Fields.ACTIVE, true))
+						.filter(termsQuery(Concept.Fields.CONCEPT_ID, conceptDescriptions.keySet())))
+				.withSourceFilter(new FetchSourceFilter(new String[] {Concept.Fields.CONCEPT_ID}, new String[]{}))
+				.withPageable(PageRequest.of(0, conceptDescriptions.size()))
+				.build(), Concept.class)) {
+			activeConceptIds.add(hit.getContent().getConceptId());
+		}
+		return conceptDescriptions.values().stream()
+				.filter(description -> activeConceptIds.contains(description.getConceptId()))
+				.limit(limit)
+				.collect(Collectors.toList());
+	}
+
 	DescriptionMatches findDescriptionAndConceptIds(DescriptionCriteria criteria, Set<Long> conceptIdsCriteria, BranchCriteria branchCriteria, TimerUtil timer) throws TooCostlyException {
 
 		// Build up the description criteria
@@ -694,6 +780,15 @@ public class DescriptionService extends ComponentService {
 						BoolQueryBuilder languageQuery = boolQuery();
 						if (SearchMode.WHOLE_WORD == searchMode) {
 							languageQuery.filter(matchQuery(Description.Fields.TERM_FOLDED, foldedSearchTerm).operator(Operator.AND));
+						} else if (SearchMode.TYPEAHEAD == searchMode) {
+							// The last word matches as a prefix using indexed edge n-grams. This clause only filters, results are sorted by term length,
+							// so matching words typed in order on the shingle fields does not rank those descriptions higher.
+							languageQuery.must(multiMatchQuery(foldedSearchTerm,
+									Description.Fields.TERM_FOLDED_TYPEAHEAD,
+									Description.Fields.TERM_FOLDED_TYPEAHEAD + "._2gram",
+									Description.Fields.TERM_FOLDED_TYPEAHEAD + "._3gram")
+									.type(MultiMatchQueryBuilder.Type.BOOL_PREFIX)
+									.operator(Operator.AND));
 						} else {
 							languageQuery.filter(simpleQueryStringQuery(constructSimpleQueryString(foldedSearchTerm))
 											.field(Description.Fields.TERM_FOLDED).defaultOperator(Operator.AND));
@@ -789,25 +884,6 @@ public class DescriptionService extends ComponentService {
 		return query;
 	}
 
-	private static class SemanticTagCacheEntry {
-
-		private final long branchHeadTime;
-		private final Map<String, Long> tagCounts;
-
-		SemanticTagCacheEntry(long branchHeadTime, Map<String, Long> tagCounts) {
-			this.branchHeadTime = branchHeadTime;
-			this.tagCounts = tagCounts;
-		}
-
-		private long getBranchHeadTime() {
-			return branchHeadTime;
-		}
-
-		private Map<String, Long> getTagCounts() {
-			return tagCounts;
-		}
-	}
-
 	static class DescriptionMatches {
 
 		private final Set<Long> conceptIds;
@@ -11,6 +11,8 @@ import org.elasticsearch.search.sort.SortBuilders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.services.hierarchy.BranchHierarchy;
+import org.snomed.snowstorm.core.data.services.hierarchy.HierarchyCacheService;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
 import org.snomed.snowstorm.core.data.services.pojo.ResultMapPage;
@@ -72,6 +74,12 @@ public class QueryService implements ApplicationContextAware {
 	@Autowired
 	private DescriptionService descriptionService;
 
+	@Autowired
+	private BranchHeadCriteriaService branchHeadCriteriaService;
+
+	@Autowired
+	private HierarchyCacheService hierarchyCacheService;
+
 	private ConceptService conceptService;
 
 	private static final Function<Long, Object[]> CONCEPT_ID_SEARCH_AFTER_EXTRACTOR =
@@ -84,7 +92,7 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Page<ConceptMini> search(ConceptQueryBuilder conceptQuery, String branchPath, PageRequest pageRequest) {
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		BranchCriteria branchCriteria = branchHeadCriteriaService.getBranchCriteria(branchPath);
 		Optional<SearchAfterPage<Long>> conceptIdPageOptional = doSearchForIds(conceptQuery, branchPath, branchCriteria, pageRequest);
 
 		if (conceptIdPageOptional.isPresent()) {
@@ -100,7 +108,7 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public SearchAfterPage<Long> searchForIds(ConceptQueryBuilder conceptQuery, String branchPath, PageRequest pageRequest) {
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		BranchCriteria branchCriteria = branchHeadCriteriaService.getBranchCriteria(branchPath);
 		return searchForIds(conceptQuery, branchPath, branchCriteria, pageRequest);
 	}
 
@@ -288,10 +296,14 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findAncestorIds(String conceptId, String path, boolean stated) {
-		return findAncestorIds(versionControlHelper.getBranchCriteria(path), path, stated, conceptId);
+		return findAncestorIds(branchHeadCriteriaService.getBranchCriteria(path), path, stated, conceptId);
 	}
 
 	public Set<Long> findParentIds(BranchCriteria branchCriteria, boolean stated, String conceptId) {
+		Optional<BranchHierarchy> hierarchy = hierarchyCacheService.getHierarchy(branchCriteria, stated);
+		if (hierarchy.isPresent()) {
+			return hierarchy.get().getParentIds(parseLong(conceptId));
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -306,6 +318,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findAncestorIds(BranchCriteria branchCriteria, String path, boolean stated, String conceptId) {
+		Optional<BranchHierarchy> hierarchy = hierarchyCacheService.getHierarchy(branchCriteria, stated);
+		if (hierarchy.isPresent()) {
+			return hierarchy.get().getAncestorIds(parseLong(conceptId));
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -324,6 +340,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findAncestorIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptId) {
+		Optional<BranchHierarchy> hierarchy = hierarchyCacheService.getHierarchy(branchCriteria, stated);
+		if (hierarchy.isPresent()) {
+			return hierarchy.get().getAncestorIdsAsUnion(conceptId);
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -342,6 +362,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public List<Long> findDescendantIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
+		Optional<BranchHierarchy> hierarchy = hierarchyCacheService.getHierarchy(branchCriteria, stated);
+		if (hierarchy.isPresent()) {
+			return hierarchy.get().getDescendantIdsAsUnion(conceptIds);
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -6,8 +6,8 @@ import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.*;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
-import io.kaicode.elasticvc.domain.Entity;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.slf4j.Logger;
@@ -17,9 +17,9 @@ import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.QueryConceptRepository;
 import org.snomed.snowstorm.core.data.services.pojo.SAxiomRepresentation;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.Graph;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilder;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilderException;
-import org.snomed.snowstorm.core.data.services.transitiveclosure.Node;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -32,12 +32,14 @@ import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilde
 import org.springframework.data.elasticsearch.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
 import static java.lang.String.format;
@@ -52,6 +54,15 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	@Value("${commit-hook.semantic-indexing.enabled:true}")
 	private boolean semanticIndexingEnabled;
 
+	@Value("${commit-hook.semantic-indexing.parallel.enabled:false}")
+	private boolean parallelIndexingEnabled;
+
+	@Value("${commit-hook.semantic-indexing.parallel.threads:4}")
+	private int parallelIndexingThreads;
+
+	@Value("${commit-hook.semantic-indexing.small-commit.max-changes:1000}")
+	private int smallCommitMaxChanges;
+
 	private static final long IS_A_TYPE = parseLong(Concepts.ISA);
 
 	@Autowired
@@ -72,8 +83,51 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	@Autowired
 	private AxiomConversionService axiomConversionService;
 
+	@Autowired
+	private ExecutorService executorService;
+
+	// Number of existing nodes loaded by the last update, for testing
+	private volatile int lastExistingNodeCount;
+
+	// Used to compute query concepts for partitions of the concept space when parallel indexing is enabled
+	private ForkJoinPool partitionPool;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
+	@PostConstruct
+	public void init() {
+		if (parallelIndexingEnabled) {
+			partitionPool = new ForkJoinPool(Math.max(1, parallelIndexingThreads));
+			logger.info("Parallel semantic indexing enabled with {} threads.", partitionPool.getParallelism());
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (partitionPool != null) {
+			partitionPool.shutdown();
+		}
+	}
+
+	void setSmallCommitMaxChanges(int smallCommitMaxChanges) {
+		this.smallCommitMaxChanges = smallCommitMaxChanges;
+	}
+
+	int getSmallCommitMaxChanges() {
+		return smallCommitMaxChanges;
+	}
+
+	int getLastExistingNodeCount() {
+		return lastExistingNodeCount;
+	}
+
+	void setParallelIndexingEnabled(boolean parallelIndexingEnabled) {
+		this.parallelIndexingEnabled = parallelIndexingEnabled;
+		if (parallelIndexingEnabled && partitionPool == null) {
+			init();
+		}
+	}
+
 	@Override
 	public void preCommitCompletion(Commit commit) throws IllegalStateException {
 		if (semanticIndexingEnabled) {
@@ -105,8 +159,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			List<Branch> timeSlice = versionControlHelper.getTimeSlice(commit.getBranch().getPath(), commit.getTimepoint());
 			Set<String> relationshipAndAxiomDeletionsToProcess = Sets.union(commit.getEntityVersionsReplaced().getOrDefault(ReferenceSetMember.class.getSimpleName(), Collections.emptySet()),
 					commit.getEntityVersionsReplaced().getOrDefault(Relationship.class.getSimpleName(), Collections.emptySet()));
-			updateSemanticIndex(Form.STATED, changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, timeSlice, false);
-			updateSemanticIndex(Form.INFERRED, changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, timeSlice, false);
+			updateStatedAndInferredSemanticIndex(changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, timeSlice, false);
 		}
 		// If promotion the semantic changes will be promoted with the rest of the content.
 	}
@@ -120,8 +173,48 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		List<Branch> timeSlice = versionControlHelper.getTimeSlice(branch.getPath(), commit.getTimepoint());
 		Set<String> relationshipAndAxiomDeletionsToProcess = Sets.union(branch.getVersionsReplaced(ReferenceSetMember.class), branch.getVersionsReplaced(Relationship.class));
 		boolean completeRebuild = branch.getPath().equals("MAIN");
-		updateSemanticIndex(Form.STATED, changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, timeSlice, completeRebuild);
-		updateSemanticIndex(Form.INFERRED, changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, timeSlice, completeRebuild);
+		updateStatedAndInferredSemanticIndex(changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, timeSlice, completeRebuild);
+	}
+
+	private void updateStatedAndInferredSemanticIndex(BranchCriteria changesBranchCriteria, Set<String> internalIdsOfDeletedComponents, Commit commit,
+			List<Branch> timeSlice, boolean completeRebuild) throws ConversionException, GraphBuilderException {
+
+		if (!parallelIndexingEnabled) {
+			updateSemanticIndex(Form.STATED, changesBranchCriteria, internalIdsOfDeletedComponents, commit, timeSlice, completeRebuild);
+			updateSemanticIndex(Form.INFERRED, changesBranchCriteria, internalIdsOfDeletedComponents, commit, timeSlice, completeRebuild);
+			return;
+		}
+
+		// Stated form in the background, inferred form on this thread
+		Future<Void> statedUpdate = executorService.submit(() -> {
+			updateSemanticIndex(Form.STATED, changesBranchCriteria, internalIdsOfDeletedComponents, commit, timeSlice, completeRebuild);
+			return null;
+		});
+		try {
+			updateSemanticIndex(Form.INFERRED, changesBranchCriteria, internalIdsOfDeletedComponents, commit, timeSlice, completeRebuild);
+		} finally {
+			// Always wait for the stated form so nothing is written after the commit is rolled back
+			awaitFormUpdate(statedUpdate);
+		}
+	}
+
+	private void awaitFormUpdate(Future<Void> formUpdate) throws ConversionException, GraphBuilderException {
+		try {
+			formUpdate.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for semantic index update.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ConversionException) {
+				throw (ConversionException) cause;
+			} else if (cause instanceof GraphBuilderException) {
+				throw (GraphBuilderException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException("Failed to update semantic index.", cause);
+		}
 	}
 
 	private void updateSemanticIndex(Form form, BranchCriteria changesBranchCriteria, Set<String> internalIdsOfDeletedComponents, Commit commit,
@@ -136,10 +229,13 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
 		timer.checkpoint("get branch criteria");
 
+		// Set when the small commit path converts the changed axioms, they are read again below so each expression is converted once
+		AtomicReference<Map<String, Optional<SAxiomRepresentation>>> axiomConversions = new AtomicReference<>();
+
 		// Identify concepts with modeling changes  and load relevant parts of the existing node graph
 		final GraphBuilder graphBuilder = new GraphBuilder();
 		Set<Long> updatedConceptIds = buildRelevantPartsOfExistingGraph(graphBuilder, completeRebuild, form,
-				changesBranchCriteria, branchCriteriaForAlreadyCommittedContent, internalIdsOfDeletedComponents, timer);
+				changesBranchCriteria, branchCriteriaForAlreadyCommittedContent, internalIdsOfDeletedComponents, axiomConversions, timer);
 		if (updatedConceptIds.isEmpty()) {
 			// Nothing to do
 			return;
@@ -209,7 +305,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 						.withSort(SortBuilders.fieldSort(Relationship.Fields.ACTIVE))
 						.withSort(SortBuilders.fieldSort("start"))
 						.withPageable(ConceptService.LARGE_PAGE).build(), ReferenceSetMember.class)) {
-					axiomStreamToRelationshipStream(activeAxioms, relationship -> true, relationshipConsumer);
+					axiomStreamToRelationshipStream(activeAxioms, relationship -> true, relationshipConsumer, axiomConversions.get());
 				}
 			}
 			timer.checkpoint("Update graph using axioms of concepts with changed modelling.");
@@ -223,16 +319,24 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			logger.warn("The following concepts have been referred to in relationships but are missing or inactive: " + inactiveOrMissingConceptIds);
 		}
 
+		// Step: Compute transitive closure
+		final Graph graph = graphBuilder.build();
+		timer.checkpoint("Compute transitive closure.");
+
 		// Step: Save changes
-		Map<Long, Node> nodesToSave = new Long2ObjectOpenHashMap<>();
-		graphBuilder.getNodes().stream()
-				.filter(node -> newGraph || completeRebuild || node.isAncestorOrSelfUpdated() || conceptAttributeChanges.containsKey(node.getId()))
-				.forEach(node -> nodesToSave.put(node.getId(), node));
-		Set<Long> nodesNotFound = new LongOpenHashSet(nodesToSave.keySet());
+		Set<Long> nodesToSave = new LongOpenHashSet();
+		for (int node = 0; node < graph.getNodeCount(); node++) {
+			long nodeId = graph.getNodeId(node);
+			if (newGraph || completeRebuild || graph.isAncestorOrSelfUpdated(node) || conceptAttributeChanges.containsKey(nodeId)) {
+				nodesToSave.add(nodeId);
+			}
+		}
+		Set<Long> nodesNotFound = new LongOpenHashSet(nodesToSave);
 		Set<QueryConcept> queryConceptsToSave = new HashSet<>();
+		int parallelQueryConceptsSaved = 0;
 
 		// Collect ids of nodes and attribute updates and convert to conceptIdForm
-		Set<Long> conceptIdsToUpdate = new LongOpenHashSet(nodesToSave.keySet());
+		Set<Long> conceptIdsToUpdate = new LongOpenHashSet(nodesToSave);
 		conceptIdsToUpdate.addAll(conceptAttributeChanges.keySet());
 
 		// If there is a loop found in the transitive closure we throw an exception,
@@ -240,57 +344,77 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		// either by authoring or importing the new version of the extension.
 		boolean throwExceptionIfTransitiveClosureLoopFound = !commit.isRebase();
 
-		try (final SearchHitsIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(QueryConcept.class))
-						.must(termsQuery(QueryConcept.Fields.STATED, form.isStated()))
-						.filter(boolQuery()
-								// Exclude those QueryConcepts which were removed in this commit
-								.mustNot(boolQuery()
-										.must(termQuery("path", branchPath))
-										.must(termQuery("end", commit.getTimepoint().getTime()))
-								)
-								.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, conceptIdsToUpdate)))
-				)
-				.withPageable(ConceptService.LARGE_PAGE).build(), QueryConcept.class)) {
-			while (existingQueryConcepts.hasNext()) {
-				QueryConcept queryConcept = existingQueryConcepts.next().getContent();
-				Long conceptId = queryConcept.getConceptIdL();
-				Node node = nodesToSave.get(conceptId);
-				boolean save = false;
-				if (node != null) {
-					// TC changes
-					queryConcept.setParents(node.getParents().stream().map(Node::getId).collect(Collectors.toSet()));
-					queryConcept.setAncestors(new HashSet<>(node.getTransitiveClosure(branchPath, throwExceptionIfTransitiveClosureLoopFound)));
-					save = true;
-				}
-				if (updatedConceptIds.contains(conceptId)) {
-					applyAttributeChanges(queryConcept, conceptId, conceptAttributeChanges);
-					save = true;
+		// When parallel indexing is enabled both existing and new query concepts are computed in partitions on the partition pool
+		PartitionSaver partitionSaver = parallelIndexingEnabled ? new PartitionSaver(commit) : null;
+		try {
+			try (final SearchHitsIterator<QueryConcept> existingQueryConcepts = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(QueryConcept.class))
+							.must(termsQuery(QueryConcept.Fields.STATED, form.isStated()))
+							.filter(boolQuery()
+									// Exclude those QueryConcepts which were removed in this commit
+									.mustNot(boolQuery()
+											.must(termQuery("path", branchPath))
+											.must(termQuery("end", commit.getTimepoint().getTime()))
+									)
+									.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, conceptIdsToUpdate)))
+					)
+					.withPageable(ConceptService.LARGE_PAGE).build(), QueryConcept.class)) {
+				List<QueryConcept> existingPartition = new ArrayList<>();
+				while (existingQueryConcepts.hasNext()) {
+					QueryConcept queryConcept = existingQueryConcepts.next().getContent();
+					Long conceptId = queryConcept.getConceptIdL();
+					nodesNotFound.remove(conceptId);
+					if (!nodesToSave.contains(conceptId) && !updatedConceptIds.contains(conceptId)) {
+						continue;
+					}
+					if (partitionSaver == null) {
+						updateQueryConcept(queryConcept, graph, nodesToSave, updatedConceptIds, conceptAttributeChanges, branchPath, throwExceptionIfTransitiveClosureLoopFound);
+						queryConceptsToSave.add(queryConcept);
+					} else {
+						existingPartition.add(queryConcept);
+						if (existingPartition.size() == Config.BATCH_SAVE_SIZE) {
+							submitExistingPartition(partitionSaver, existingPartition, graph, nodesToSave, updatedConceptIds, conceptAttributeChanges,
+									branchPath, throwExceptionIfTransitiveClosureLoopFound);
+							existingPartition = new ArrayList<>();
+						}
+					}
 				}
-				if (save) {
-					queryConceptsToSave.add(queryConcept);
+				if (partitionSaver != null && !existingPartition.isEmpty()) {
+					submitExistingPartition(partitionSaver, existingPartition, graph, nodesToSave, updatedConceptIds, conceptAttributeChanges,
+							branchPath, throwExceptionIfTransitiveClosureLoopFound);
 				}
-				nodesNotFound.remove(conceptId);
 			}
-		}
 
-		timer.checkpoint("Collect existingDescendants from QueryConcept.");
+			timer.checkpoint("Collect existingDescendants from QueryConcept.");
 
-		// The remaining nodes are new - create new QueryConcepts
-		for (Long nodeId : nodesNotFound) {
-			Node node = nodesToSave.get(nodeId);
-			final Set<Long> transitiveClosure = new HashSet<>(node.getTransitiveClosure(branchPath, throwExceptionIfTransitiveClosureLoopFound));
-			final Set<Long> parentIds = node.getParents().stream().map(Node::getId).collect(Collectors.toSet());
-			QueryConcept queryConcept = new QueryConcept(nodeId, parentIds, transitiveClosure, form.isStated());
-			applyAttributeChanges(queryConcept, nodeId, conceptAttributeChanges);
-			queryConceptsToSave.add(queryConcept);
+			// The remaining nodes are new - create new QueryConcepts
+			if (partitionSaver != null) {
+				for (List<Long> partition : Iterables.partition(new LongArrayList(nodesNotFound), Config.BATCH_SAVE_SIZE)) {
+					partitionSaver.submit(() -> {
+						List<QueryConcept> queryConcepts = new ArrayList<>(partition.size());
+						for (Long nodeId : partition) {
+							QueryConcept queryConcept = createQueryConcept(nodeId, graph, form, conceptAttributeChanges, branchPath, throwExceptionIfTransitiveClosureLoopFound);
+							prepareForSave(queryConcept);
+							queryConcepts.add(queryConcept);
+						}
+						return queryConcepts;
+					});
+				}
+				parallelQueryConceptsSaved = partitionSaver.finish();
+			} else {
+				for (Long nodeId : nodesNotFound) {
+					queryConceptsToSave.add(createQueryConcept(nodeId, graph, form, conceptAttributeChanges, branchPath, throwExceptionIfTransitiveClosureLoopFound));
+				}
+			}
+		} finally {
+			if (partitionSaver != null) {
+				// Cancel remaining work if one partition failed
+				partitionSaver.cancelRemaining();
+			}
 		}
 		if (!queryConceptsToSave.isEmpty()) {
-
-			// Delete query concepts which have no parents
-			queryConceptsToSave.stream().filter(c -> c.getParents().isEmpty() && !c.getConceptIdL().toString().equals(Concepts.SNOMEDCT_ROOT)).forEach(Entity::markDeleted);
-			queryConceptsToSave.forEach(QueryConcept::serializeGroupedAttributesMap);
+			queryConceptsToSave.forEach(this::prepareForSave);
 
 			// Save in batches
 			for (List<QueryConcept> queryConcepts : Iterables.partition(queryConceptsToSave, Config.BATCH_SAVE_SIZE)) {
@@ -298,11 +422,112 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			}
 		}
 		timer.checkpoint("Save updated QueryConcepts");
-		logger.debug("{} concepts updated within the {} semantic index.", queryConceptsToSave.size(), form.getName());
+		logger.debug("{} concepts updated within the {} semantic index.", queryConceptsToSave.size() + parallelQueryConceptsSaved, form.getName());
 
 		timer.finish();
 	}
 
+	private QueryConcept createQueryConcept(Long nodeId, Graph graph, Form form, Map<Long, AttributeChanges> conceptAttributeChanges,
+			String branchPath, boolean throwExceptionIfTransitiveClosureLoopFound) throws GraphBuilderException {
+
+		int node = graph.getNodeIndex(nodeId);
+		final Set<Long> transitiveClosure = graph.getTransitiveClosure(node, branchPath, throwExceptionIfTransitiveClosureLoopFound);
+		final Set<Long> parentIds = graph.getParentIds(node);
+		QueryConcept queryConcept = new QueryConcept(nodeId, parentIds, transitiveClosure, form.isStated());
+		applyAttributeChanges(queryConcept, nodeId, conceptAttributeChanges);
+		return queryConcept;
+	}
+
+	private void prepareForSave(QueryConcept queryConcept) {
+		// Delete query concepts which have no parents
+		if (queryConcept.getParents().isEmpty() && !queryConcept.getConceptIdL().toString().equals(Concepts.SNOMEDCT_ROOT)) {
+			queryConcept.markDeleted();
+		}
+		queryConcept.serializeGroupedAttributesMap();
+	}
+
+	private void updateQueryConcept(QueryConcept queryConcept, Graph graph, Set<Long> nodesToSave, Set<Long> updatedConceptIds,
+			Map<Long, AttributeChanges> conceptAttributeChanges, String branchPath, boolean throwExceptionIfTransitiveClosureLoopFound) throws GraphBuilderException {
+
+		Long conceptId = queryConcept.getConceptIdL();
+		if (nodesToSave.contains(conceptId)) {
+			// TC changes
+			int node = graph.getNodeIndex(conceptId);
+			queryConcept.setParents(graph.getParentIds(node));
+			queryConcept.setAncestors(graph.getTransitiveClosure(node, branchPath, throwExceptionIfTransitiveClosureLoopFound));
+		}
+		if (updatedConceptIds.contains(conceptId)) {
+			applyAttributeChanges(queryConcept, conceptId, conceptAttributeChanges);
+		}
+	}
+
+	private void submitExistingPartition(PartitionSaver partitionSaver, List<QueryConcept> partition, Graph graph, Set<Long> nodesToSave, Set<Long> updatedConceptIds,
+			Map<Long, AttributeChanges> conceptAttributeChanges, String branchPath, boolean throwExceptionIfTransitiveClosureLoopFound) throws GraphBuilderException {
+
+		partitionSaver.submit(() -> {
+			for (QueryConcept queryConcept : partition) {
+				updateQueryConcept(queryConcept, graph, nodesToSave, updatedConceptIds, conceptAttributeChanges, branchPath, throwExceptionIfTransitiveClosureLoopFound);
+				prepareForSave(queryConcept);
+			}
+			return partition;
+		});
+	}
+
+	/**
+	 * Computes partitions of query concepts on the partition pool and saves each partition as it completes.
+	 * The number of partitions in flight is bounded to keep memory flat regardless of the size of the graph.
+	 */
+	private class PartitionSaver {
+
+		private final Commit commit;
+		private final int maxInFlight;
+		private final Deque<Future<List<QueryConcept>>> inFlight = new ArrayDeque<>();
+		private int saved;
+
+		private PartitionSaver(Commit commit) {
+			this.commit = commit;
+			maxInFlight = partitionPool.getParallelism() * 2;
+		}
+
+		private void submit(Callable<List<QueryConcept>> partition) throws GraphBuilderException {
+			inFlight.add(partitionPool.submit(partition));
+			if (inFlight.size() >= maxInFlight) {
+				saveCompletedPartition(inFlight.poll());
+			}
+		}
+
+		/**
+		 * @return the number of query concepts saved.
+		 */
+		private int finish() throws GraphBuilderException {
+			while (!inFlight.isEmpty()) {
+				saveCompletedPartition(inFlight.poll());
+			}
+			return saved;
+		}
+
+		private void cancelRemaining() {
+			inFlight.forEach(future -> future.cancel(true));
+		}
+
+		private void saveCompletedPartition(Future<List<QueryConcept>> partition) throws GraphBuilderException {
+			List<QueryConcept> queryConcepts;
+			try {
+				queryConcepts = partition.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while building semantic index.", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof GraphBuilderException) {
+					throw (GraphBuilderException) e.getCause();
+				}
+				throw new IllegalStateException("Failed to build semantic index partition.", e.getCause());
+			}
+			doSaveBatch(queryConcepts, commit);
+			saved += queryConcepts.size();
+		}
+	}
+
 	private boolean activeNow(SnomedComponent component, List<Branch> timeSlice) {
 		if (!component.isActive()) {
 			return false;
@@ -323,7 +548,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 
 	private Set<Long> buildRelevantPartsOfExistingGraph(GraphBuilder graphBuilder, boolean completeRebuild, Form form,
 			BranchCriteria changesBranchCriteria, BranchCriteria branchCriteriaForAlreadyCommittedContent,
-			Set<String> internalIdsOfDeletedComponents, TimerUtil timer) throws ConversionException {
+			Set<String> internalIdsOfDeletedComponents, AtomicReference<Map<String, Optional<SAxiomRepresentation>>> axiomConversions, TimerUtil timer) throws ConversionException {
 
 		Set<Long> updateSource = new LongOpenHashSet();
 		Set<Long> updateDestination = new LongOpenHashSet();
@@ -333,7 +558,20 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		if (completeRebuild) {
 			logger.info("Performing rebuild of {} semantic index", form.getName());
 		}
+		else if (collectChangesOfSmallCommit(form, changesBranchCriteria, internalIdsOfDeletedComponents, updateSource, updateDestination, axiomConversions)) {
+			timer.checkpoint("Collect changes of small commit.");
+			if (!updateSource.isEmpty()) {
+				logger.info("Performing incremental update of {} semantic index for a small commit", form.getName());
+				loadGraphAroundChangedNodes(graphBuilder, form.isStated(), updateSource, updateDestination, branchCriteriaForAlreadyCommittedContent);
+				timer.checkpoint("Build existing graph around changed nodes.");
+				logger.info("{} existing nodes loaded.", graphBuilder.getNodeCount());
+				lastExistingNodeCount = graphBuilder.getNodeCount();
+			}
+			return updateSource;
+		}
 		else {
+			updateSource.clear();
+			updateDestination.clear();
 			// Step: Collect source and destinations of changed is-a relationships
 			try (final SearchHitsIterator<Relationship> changedIsARelationships = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
 					.withQuery(boolQuery().filter(
@@ -359,20 +597,8 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 
 			if (form.isStated()) {
 				// Step: Collect source and destinations of is-a fragments within changed axioms
-				try (final SearchHitsIterator<ReferenceSetMember> changedAxioms = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
-						.withQuery(boolQuery().filter(
-								boolQuery()
-										.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
-										.must(boolQuery()
-												// Either on this branch
-												.should(changesBranchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
-												// Or on parent branch and deleted/replaced on this branch
-												.should(termsQuery("internalId", internalIdsOfDeletedComponents))
-										)
-								)
-						)
-						.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION_FIELD_PATH)
-						.withPageable(ConceptService.LARGE_PAGE).build(), ReferenceSetMember.class)) {
+				try (final SearchHitsIterator<ReferenceSetMember> changedAxioms = elasticsearchTemplate.searchForStream(
+						getChangedAxiomsQuery(changesBranchCriteria, internalIdsOfDeletedComponents), ReferenceSetMember.class)) {
 					axiomStreamToRelationshipStream(
 							changedAxioms,
 							// filter
@@ -383,7 +609,8 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 								if (relationship.getTypeId().equals(Concepts.ISA)) {
 									updateDestination.add(parseLong(relationship.getDestinationId()));
 								}
-							});
+							},
+							null);
 				}
 				if (updateDestination.contains(CONCEPT_MODEL_OBJECT_ATTRIBUTE_LONG)) {
 					updateDestination.add(CONCEPT_MODEL_ATTRIBUTE_LONG);
@@ -515,7 +742,8 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 								long sourceId = parseLong(relationship.getSourceId());
 								graphBuilder.addParent(sourceId, parseLong(relationship.getDestinationId()));
 								updateSource.add(sourceId);
-							}
+							},
+							null
 					);
 				}
 				timer.checkpoint("Build existing graph from Axioms.");
@@ -523,9 +751,143 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		}
 
 		logger.info("{} existing nodes loaded.", graphBuilder.getNodeCount());
+		lastExistingNodeCount = graphBuilder.getNodeCount();
 		return updateSource;
 	}
 
+	/*
+	 * Collects the source and destination of changed relationships and axioms in a single pass over each.
+	 * Returns false, leaving the sets partly filled, if the commit has more changes than the small commit limit.
+	 * The conversions of the changed axioms are kept in the given holder for reuse when the graph is updated.
+	 */
+	private boolean collectChangesOfSmallCommit(Form form, BranchCriteria changesBranchCriteria, Set<String> internalIdsOfDeletedComponents,
+			Set<Long> updateSource, Set<Long> updateDestination, AtomicReference<Map<String, Optional<SAxiomRepresentation>>> axiomConversions) throws ConversionException {
+
+		if (smallCommitMaxChanges < 1 || internalIdsOfDeletedComponents.size() > smallCommitMaxChanges) {
+			return false;
+		}
+		int changes = 0;
+		try (SearchHitsIterator<Relationship> changedRelationships = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery().filter(
+						boolQuery()
+								.must(termsQuery("characteristicTypeId", form.getCharacteristicTypeIds()))
+								.must(boolQuery()
+										// Either on this branch
+										.should(changesBranchCriteria.getEntityBranchCriteria(Relationship.class))
+										// Or on parent branch and deleted/replaced on this branch
+										.should(idsQuery().addIds(internalIdsOfDeletedComponents.toArray(new String[]{})))
+								)
+						)
+				)
+				.withFields(Relationship.Fields.SOURCE_ID, Relationship.Fields.TYPE_ID, Relationship.Fields.DESTINATION_ID)
+				.withPageable(ConceptService.LARGE_PAGE).build(), Relationship.class)) {
+			while (changedRelationships.hasNext()) {
+				if (++changes > smallCommitMaxChanges) {
+					return false;
+				}
+				Relationship relationship = changedRelationships.next().getContent();
+				updateSource.add(parseLong(relationship.getSourceId()));
+				if (Concepts.ISA.equals(relationship.getTypeId())) {
+					updateDestination.add(parseLong(relationship.getDestinationId()));
+				}
+			}
+		}
+		if (form.isStated()) {
+			List<ReferenceSetMember> changedAxioms = new ArrayList<>();
+			try (SearchHitsIterator<ReferenceSetMember> changedAxiomStream = elasticsearchTemplate.searchForStream(
+					getChangedAxiomsQuery(changesBranchCriteria, internalIdsOfDeletedComponents), ReferenceSetMember.class)) {
+				while (changedAxiomStream.hasNext()) {
+					if (++changes > smallCommitMaxChanges) {
+						return false;
+					}
+					changedAxioms.add(changedAxiomStream.next().getContent());
+				}
+			}
+			Map<String, Optional<SAxiomRepresentation>> conversions = new HashMap<>();
+			for (ReferenceSetMember changedAxiom : changedAxioms) {
+				Optional<SAxiomRepresentation> representation = convertAxiom(changedAxiom, conversions);
+				if (representation.isPresent()) {
+					Long conceptId = representation.get().getLeftHandSideNamedConcept();
+					for (Relationship relationship : representation.get().getRightHandSideRelationships()) {
+						updateSource.add(conceptId);
+						if (relationship.getTypeId().equals(Concepts.ISA)) {
+							updateDestination.add(parseLong(relationship.getDestinationId()));
+						}
+					}
+				}
+			}
+			if (updateDestination.contains(CONCEPT_MODEL_OBJECT_ATTRIBUTE_LONG)) {
+				updateDestination.add(CONCEPT_MODEL_ATTRIBUTE_LONG);
+			}
+			axiomConversions.set(conversions);
+		}
+		return true;
+	}
+
+	private NativeSearchQuery getChangedAxiomsQuery(BranchCriteria changesBranchCriteria, Set<String> internalIdsOfDeletedComponents) {
+		return new NativeSearchQueryBuilder()
+				.withQuery(boolQuery().filter(
+						boolQuery()
+								.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
+								.must(boolQuery()
+										// Either on this branch
+										.should(changesBranchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+										// Or on parent branch and deleted/replaced on this branch
+										.should(termsQuery("internalId", internalIdsOfDeletedComponents))
+								)
+						)
+				)
+				.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION_FIELD_PATH)
+				.withPageable(ConceptService.LARGE_PAGE).build();
+	}
+
+	/*
+	 * Loads the existing nodes of the changed concepts, the descendants of the updated sources and all of their ancestors.
+	 * Only the sources change position in the hierarchy, so the descendants of destinations are not needed, as in the full path.
+	 * Each node is fetched once with its parents and ancestors, the ancestors found are then loaded in the next round.
+	 */
+	private void loadGraphAroundChangedNodes(GraphBuilder graphBuilder, boolean stated, Set<Long> updateSource, Set<Long> updateDestination,
+			BranchCriteria branchCriteriaForAlreadyCommittedContent) {
+		Set<Long> changedNodes = Sets.union(updateSource, updateDestination);
+		Set<Long> loaded = new LongOpenHashSet(changedNodes);
+		Set<Long> ancestorsToLoad = new LongOpenHashSet();
+		Consumer<QueryConcept> ancestorCollector = queryConcept -> {
+			for (Long ancestor : queryConcept.getAncestors()) {
+				if (!loaded.contains(ancestor)) {
+					ancestorsToLoad.add(ancestor);
+				}
+			}
+		};
+		buildGraphFromExistingNodes(changedNodes, stated, graphBuilder, branchCriteriaForAlreadyCommittedContent, ancestorCollector);
+
+		// Existing descendants of the updated sources
+		try (SearchHitsIterator<QueryConcept> descendants = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteriaForAlreadyCommittedContent.getEntityBranchCriteria(QueryConcept.class))
+						.must(termQuery(QueryConcept.Fields.STATED, stated))
+						.filter(termsQuery(QueryConcept.Fields.ANCESTORS, updateSource))
+						.mustNot(termsQuery(QueryConcept.Fields.CONCEPT_ID, changedNodes))
+				)
+				.withFields(QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS, QueryConcept.Fields.ANCESTORS)
+				.withPageable(LARGE_PAGE).build(), QueryConcept.class)) {
+			descendants.forEachRemaining(hit -> {
+				QueryConcept queryConcept = hit.getContent();
+				loaded.add(queryConcept.getConceptIdL());
+				for (Long parent : queryConcept.getParents()) {
+					graphBuilder.addParent(queryConcept.getConceptIdL(), parent);
+				}
+				ancestorCollector.accept(queryConcept);
+			});
+		}
+
+		while (!ancestorsToLoad.isEmpty()) {
+			Set<Long> batch = new LongOpenHashSet(ancestorsToLoad);
+			ancestorsToLoad.clear();
+			loaded.addAll(batch);
+			buildGraphFromExistingNodes(batch, stated, graphBuilder, branchCriteriaForAlreadyCommittedContent, ancestorCollector);
+		}
+	}
+
 	private void buildGraphFromExistingNodes(Set<Long> nodesToLoad, boolean stated, GraphBuilder graphBuilder, BranchCriteria branchCriteriaForAlreadyCommittedContent,
 			Consumer<QueryConcept> alternativeAncestorCollector) {
 
@@ -552,22 +914,18 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	}
 
 	private void axiomStreamToRelationshipStream(SearchHitsIterator<ReferenceSetMember> changedAxioms, Predicate<Relationship> relationshipPredicate,
-			BiConsumer<SnomedComponent, Relationship> relationshipConsumer) throws ConversionException {
+			BiConsumer<SnomedComponent, Relationship> relationshipConsumer, Map<String, Optional<SAxiomRepresentation>> axiomConversions) throws ConversionException {
 
 		AtomicReference<ConversionException> exceptionHolder = new AtomicReference<>();// Used to hold exceptions thrown within the lambda function
 		changedAxioms.forEachRemaining(hit -> {
 			try {
-				SAxiomRepresentation sAxiomRepresentation = axiomConversionService.convertAxiomMemberToAxiomRepresentation(hit.getContent());
-				if (sAxiomRepresentation == null) {
-					// Not a regular axiom so does not effect the semantic index
-					return;
-				}
-				Long conceptId = sAxiomRepresentation.getLeftHandSideNamedConcept();
-				Set<Relationship> relationships = sAxiomRepresentation.getRightHandSideRelationships();
-				if (conceptId == null || relationships == null) {
+				Optional<SAxiomRepresentation> sAxiomRepresentation = convertAxiom(hit.getContent(), axiomConversions);
+				if (!sAxiomRepresentation.isPresent()) {
 					// Not a regular axiom so does not effect the semantic index
 					return;
 				}
+				Long conceptId = sAxiomRepresentation.get().getLeftHandSideNamedConcept();
+				Set<Relationship> relationships = sAxiomRepresentation.get().getRightHandSideRelationships();
 				relationships.stream()
 						.filter(relationshipPredicate)
 						.forEach(relationship -> {
@@ -583,6 +941,28 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		}
 	}
 
+	/**
+	 * @return the axiom representation or empty if it is not a regular axiom and so does not effect the semantic index.
+	 * Conversions are remembered by expression when a map is given.
+	 */
+	private Optional<SAxiomRepresentation> convertAxiom(ReferenceSetMember axiomMember, Map<String, Optional<SAxiomRepresentation>> axiomConversions) throws ConversionException {
+		String owlExpression = axiomMember.getAdditionalField(ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION);
+		if (axiomConversions != null && owlExpression != null) {
+			Optional<SAxiomRepresentation> conversion = axiomConversions.get(owlExpression);
+			if (conversion != null) {
+				return conversion;
+			}
+		}
+		SAxiomRepresentation representation = axiomConversionService.convertAxiomMemberToAxiomRepresentation(axiomMember);
+		Optional<SAxiomRepresentation> conversion = representation != null
+				&& representation.getLeftHandSideNamedConcept() != null && representation.getRightHandSideRelationships() != null ?
+				Optional.of(representation) : Optional.empty();
+		if (axiomConversions != null && owlExpression != null) {
+			axiomConversions.put(owlExpression, conversion);
+		}
+		return conversion;
+	}
+
 	private void applyAttributeChanges(QueryConcept queryConcept, Long conceptId, Map<Long, AttributeChanges> conceptAttributeChanges) {
 		queryConcept.clearAttributes();
 		AttributeChanges attributeChanges = conceptAttributeChanges.get(conceptId);
@@ -614,7 +994,10 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	}
 
 	private void doSaveBatch(Collection<QueryConcept> queryConcepts, Commit commit) {
-		doSaveBatchComponents(queryConcepts, commit, "conceptIdForm", queryConceptRepository);
+		// Both forms may be saved concurrently within the same commit
+		synchronized (commit) {
+			doSaveBatchComponents(queryConcepts, commit, "conceptIdForm", queryConceptRepository);
+		}
 	}
 
 	private Set<Long> getInactiveOrMissingConceptIds(Set<Long> requiredActiveConcepts, BranchCriteria branchCriteria) {
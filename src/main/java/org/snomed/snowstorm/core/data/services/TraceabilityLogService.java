@@ -7,23 +7,42 @@ import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.CommitListener;
 import io.kaicode.elasticvc.api.PathUtil;
 import io.kaicode.elasticvc.domain.Commit;
-import it.unimi.dsi.fastutil.longs.Long2ObjectArrayMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.ihtsdo.sso.integration.SecurityUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.domain.jobs.TraceabilityOutboxMessage;
+import org.snomed.snowstorm.core.data.repositories.jobs.TraceabilityOutboxMessageRepository;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.PersistedComponents;
 import org.snomed.snowstorm.core.data.services.traceability.Activity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -31,6 +50,9 @@ import java.util.stream.StreamSupport;
 import static io.kaicode.elasticvc.domain.Commit.CommitType.CONTENT;
 import static io.kaicode.elasticvc.domain.Commit.CommitType.PROMOTION;
 import static java.lang.Long.parseLong;
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.elasticsearch.search.sort.SortBuilders.fieldSort;
 
 @Service
 public class TraceabilityLogService implements CommitListener {
@@ -47,13 +69,44 @@ public class TraceabilityLogService implements CommitListener {
 	@Value("${authoring.traceability.inferred-max}")
 	private int inferredMax;
 
+	@Value("${authoring.traceability.max-changes-per-message:1000}")
+	private int maxChangesPerMessage;
+
+	@Value("${authoring.traceability.async:false}")
+	private boolean async;
+
+	@Value("${authoring.traceability.outbox.enabled:false}")
+	private boolean outboxEnabled;
+
+	@Value("${authoring.traceability.outbox.batch-size:100}")
+	private int outboxBatchSize;
+
+	@Value("${authoring.traceability.outbox.max-attempts:10}")
+	private int outboxMaxAttempts;
+
+	@Value("${authoring.traceability.outbox.publisher-enabled:true}")
+	private boolean outboxPublisherEnabled;
+
 	@Autowired
 	private BranchService branchService;
 
+	@Autowired
+	private TraceabilityOutboxMessageRepository outboxRepository;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
 	private ObjectMapper objectMapper;
 
 	private Consumer<Activity> activityConsumer;
 
+	// Single thread so messages are sent in commit order
+	private ExecutorService sendExecutor;
+
+	private final AtomicLong outboxPublished = new AtomicLong();
+	private final AtomicLong outboxFailures = new AtomicLong();
+	private volatile int outboxLastBatchSize;
+	private volatile long outboxLastBatchMillis;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -61,7 +114,19 @@ public class TraceabilityLogService implements CommitListener {
 		objectMapper = Jackson2ObjectMapperBuilder.json()
 				.serializationInclusion(JsonInclude.Include.NON_NULL)
 				.build();
-		activityConsumer = activity -> jmsTemplate.convertAndSend(jmsQueuePrefix + ".traceability", activity);
+	}
+
+	@PostConstruct
+	public void init() {
+		sendExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		sendExecutor.shutdown();
+		if (!sendExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+			logger.warn("Traceability messages still being sent at shutdown.");
+		}
 	}
 
 	@Override
@@ -89,8 +154,8 @@ public class TraceabilityLogService implements CommitListener {
 		Set<Concept> concepts = StreamSupport.stream(persistedConcepts.spliterator(), false).collect(Collectors.toSet());
 
 		Activity activity = new Activity(userId, commit.getBranch().getPath(), commit.getTimepoint().getTime());
-		Map<Long, Activity.ConceptActivity> activityMap = new Long2ObjectArrayMap<>();
-		Map<Long, Long> componentToConceptIdMap = new Long2ObjectArrayMap<>();
+		Map<Long, Activity.ConceptActivity> activityMap = new Long2ObjectOpenHashMap<>(concepts.size());
+		Long2LongOpenHashMap componentToConceptIdMap = new Long2LongOpenHashMap();
 		for (Concept concept : concepts) {
 			Activity.ConceptActivity conceptActivity = activity.addConceptActivity(concept);
 			activityMap.put(concept.getConceptIdAsLong(), conceptActivity);
@@ -129,14 +194,13 @@ public class TraceabilityLogService implements CommitListener {
 						componentType = "Concept";
 					}
 				} else {
-					Long conceptId = componentToConceptIdMap.get(referencedComponentLong);
 					if (IdentifierService.isDescriptionId(referencedComponentId)) {
 						componentType = "Description";
 					} else if (IdentifierService.isRelationshipId(referencedComponentId)) {
 						componentType = "Relationship";
 					}
-					if (conceptId != null) {
-						conceptActivity = activityMap.get(conceptId);
+					if (componentToConceptIdMap.containsKey(referencedComponentLong)) {
+						conceptActivity = activityMap.get(componentToConceptIdMap.get(referencedComponentLong));
 					}
 				}
 				if (conceptActivity != null && componentType != null) {
@@ -198,13 +262,198 @@ public class TraceabilityLogService implements CommitListener {
 			}
 		}
 
-		try {
-			logger.info("{}", objectMapper.writeValueAsString(activity));
-		} catch (JsonProcessingException e) {
-			logger.error("Failed to serialize activity {} to JSON.", activity.getCommitTimestamp());
+		// Serialized within the commit because the persisted components are returned to the caller and may change
+		List<Activity> messages = activity.split(maxChangesPerMessage);
+		List<String> jsonMessages = new ArrayList<>();
+		for (Activity message : messages) {
+			try {
+				jsonMessages.add(objectMapper.writeValueAsString(message));
+			} catch (JsonProcessingException e) {
+				logger.error("Failed to serialize activity {} to JSON.", activity.getCommitTimestamp());
+				return;
+			}
+		}
+		if (messages.size() > 1) {
+			logger.info("Traceability activity {} split into {} messages.", activity.getCommitTimestamp(), messages.size());
+		}
+
+		if (outboxEnabled) {
+			// Saved to the outbox index while the commit is still open, sent later by publishOutbox.
+			// This is a separate write, the commit can not roll it back. If the save fails the exception fails the commit, so nothing is lost,
+			// but if the commit fails after the save the messages stay in the outbox and describe content which was never committed.
+			// A partly failed bulk save can likewise leave only some parts of the activity.
+			List<TraceabilityOutboxMessage> outboxMessages = new ArrayList<>();
+			for (int i = 0; i < jsonMessages.size(); i++) {
+				outboxMessages.add(new TraceabilityOutboxMessage(activity.getBranchPath(), activity.getCommitTimestamp(), i, jsonMessages.get(i)));
+			}
+			outboxRepository.saveAll(outboxMessages);
+		} else if (async) {
+			sendExecutor.submit(() -> send(messages, jsonMessages));
+		} else {
+			send(messages, jsonMessages);
 		}
+	}
 
-		activityConsumer.accept(activity);
+	private void send(List<Activity> messages, List<String> jsonMessages) {
+		for (int i = 0; i < messages.size(); i++) {
+			String json = jsonMessages.get(i);
+			logger.info("{}", json);
+			try {
+				if (activityConsumer != null) {
+					activityConsumer.accept(messages.get(i));
+				} else {
+					jmsTemplate.send(getQueueName(), session -> createTextMessage(session, json));
+				}
+			} catch (RuntimeException e) {
+				logger.error("Failed to send traceability activity {}.", messages.get(i).getCommitTimestamp(), e);
+				if (!async) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the messages in the traceability outbox to the JMS queue in commit order, in batches using one session.
+	 * Messages which fail to send stay in the outbox and are sent on a later run, a message which fails max-attempts times is parked
+	 * so it does not block the messages behind it. Failures to connect to the broker do not count as attempts.
+	 * Only synchronised within this instance, the publisher must only be enabled on one instance.
+	 */
+	@Scheduled(fixedDelayString = "${authoring.traceability.outbox.publish-interval-millis:1000}")
+	public synchronized void publishOutbox() {
+		if (!outboxEnabled || !outboxPublisherEnabled) {
+			return;
+		}
+		List<TraceabilityOutboxMessage> batch;
+		while (!(batch = getOutboxBatch(outboxBatchSize)).isEmpty()) {
+			long start = System.currentTimeMillis();
+			List<TraceabilityOutboxMessage> sent = new ArrayList<>();
+			TraceabilityOutboxMessage[] sending = {null};
+			RuntimeException failure = null;
+			try {
+				List<TraceabilityOutboxMessage> toSend = batch;
+				jmsTemplate.execute(session -> {
+					MessageProducer producer = session.createProducer(
+							jmsTemplate.getDestinationResolver().resolveDestinationName(session, getQueueName(), jmsTemplate.isPubSubDomain()));
+					try {
+						for (TraceabilityOutboxMessage outboxMessage : toSend) {
+							sending[0] = outboxMessage;
+							producer.send(createTextMessage(session, outboxMessage.getMessage()));
+							sent.add(outboxMessage);
+						}
+					} finally {
+						producer.close();
+					}
+					return null;
+				}, true);
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+
+			if (!sent.isEmpty()) {
+				sent.forEach(outboxMessage -> logger.info("{}", outboxMessage.getMessage()));
+				elasticsearchTemplate.delete(new NativeSearchQueryBuilder()
+						.withQuery(idsQuery().addIds(sent.stream().map(TraceabilityOutboxMessage::getId).toArray(String[]::new)))
+						.build(), TraceabilityOutboxMessage.class);
+				elasticsearchTemplate.indexOps(TraceabilityOutboxMessage.class).refresh();
+				outboxPublished.addAndGet(sent.size());
+				outboxLastBatchSize = sent.size();
+				outboxLastBatchMillis = System.currentTimeMillis() - start;
+			}
+			if (failure != null) {
+				outboxFailures.incrementAndGet();
+				TraceabilityOutboxMessage failed = sending[0];
+				if (failed == null) {
+					logger.warn("Failed to open traceability JMS session, the outbox will be sent on the next run.", failure);
+				} else if (sent.contains(failed)) {
+					logger.warn("Failed to close traceability JMS session after sending.", failure);
+				} else if (recordFailedAttempt(failed, failure)) {
+					// Carry on with the messages behind the parked one
+					continue;
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the message has been parked.
+	 */
+	boolean recordFailedAttempt(TraceabilityOutboxMessage failed, Exception failure) {
+		failed.setAttempts(failed.getAttempts() + 1);
+		if (failed.getAttempts() >= outboxMaxAttempts) {
+			failed.setParked(true);
+			logger.error("Failed to send traceability activity {} of {} on attempt {}, the message is parked and will not be sent again until retried.",
+					failed.getCommitTimestamp(), failed.getBranchPath(), failed.getAttempts(), failure);
+		} else {
+			logger.warn("Failed to send traceability activity {} on attempt {}, it will be sent on the next run.",
+					failed.getCommitTimestamp(), failed.getAttempts(), failure);
+		}
+		outboxRepository.save(failed);
+		return failed.isParked();
+	}
+
+	/**
+	 * Returns parked outbox messages to the queue of messages to send with their attempts reset.
+	 * @return the number of messages returned.
+	 */
+	public int retryParkedOutboxMessages() {
+		List<TraceabilityOutboxMessage> parked = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+				.withQuery(termQuery(TraceabilityOutboxMessage.Fields.PARKED, true))
+				.withPageable(LARGE_PAGE)
+				.build(), TraceabilityOutboxMessage.class).stream()
+				.map(SearchHit::getContent)
+				.collect(Collectors.toList());
+		if (!parked.isEmpty()) {
+			parked.forEach(message -> {
+				message.setParked(false);
+				message.setAttempts(0);
+			});
+			outboxRepository.saveAll(parked);
+			logger.info("{} parked traceability messages will be sent again.", parked.size());
+		}
+		return parked.size();
+	}
+
+	private List<TraceabilityOutboxMessage> getOutboxBatch(int size) {
+		NativeSearchQuery query = new NativeSearchQueryBuilder()
+				.withQuery(boolQuery().mustNot(termQuery(TraceabilityOutboxMessage.Fields.PARKED, true)))
+				.withSort(fieldSort(TraceabilityOutboxMessage.Fields.COMMIT_TIMESTAMP))
+				.withSort(fieldSort(TraceabilityOutboxMessage.Fields.SEQUENCE))
+				.withPageable(PageRequest.of(0, size))
+				.build();
+		return elasticsearchTemplate.search(query, TraceabilityOutboxMessage.class).stream()
+				.map(SearchHit::getContent)
+				.collect(Collectors.toList());
+	}
+
+	public Map<String, Object> getOutboxStats() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("enabled", outboxEnabled);
+		map.put("publisherEnabled", outboxPublisherEnabled);
+		map.put("pending", elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery().mustNot(termQuery(TraceabilityOutboxMessage.Fields.PARKED, true))).build(), TraceabilityOutboxMessage.class));
+		map.put("parked", elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+				.withQuery(termQuery(TraceabilityOutboxMessage.Fields.PARKED, true)).build(), TraceabilityOutboxMessage.class));
+		List<TraceabilityOutboxMessage> oldest = getOutboxBatch(1);
+		map.put("oldestPendingAgeMillis", oldest.isEmpty() ? 0 : System.currentTimeMillis() - oldest.get(0).getCreated());
+		map.put("oldestPendingAttempts", oldest.isEmpty() ? 0 : oldest.get(0).getAttempts());
+		map.put("published", outboxPublished.get());
+		map.put("failures", outboxFailures.get());
+		map.put("lastBatchSize", outboxLastBatchSize);
+		map.put("lastBatchMillis", outboxLastBatchMillis);
+		return map;
+	}
+
+	private String getQueueName() {
+		return jmsQueuePrefix + ".traceability";
+	}
+
+	private TextMessage createTextMessage(Session session, String json) throws JMSException {
+		TextMessage textMessage = session.createTextMessage(json);
+		// Type id read by the Jackson message converter of the consumer
+		textMessage.setStringProperty(Config.JMS_TYPE_ID_PROPERTY_NAME, Activity.class.getName());
+		return textMessage;
 	}
 
 	String createCommitComment(String userId, Commit commit, Collection<Concept> concepts, boolean anyStatedChanges) {
@@ -237,6 +486,22 @@ public class TraceabilityLogService implements CommitListener {
 		return enabled;
 	}
 
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	public void setOutboxEnabled(boolean outboxEnabled) {
+		this.outboxEnabled = outboxEnabled;
+	}
+
+	void setMaxChangesPerMessage(int maxChangesPerMessage) {
+		this.maxChangesPerMessage = maxChangesPerMessage;
+	}
+
+	int getMaxChangesPerMessage() {
+		return maxChangesPerMessage;
+	}
+
 	private Activity.ComponentChange getChange(SnomedComponent component) {
 		String type;
 		if (component.isCreating()) {
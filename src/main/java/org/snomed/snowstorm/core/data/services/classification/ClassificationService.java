@@ -1,5 +1,6 @@
 package org.snomed.snowstorm.core.data.services.classification;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
@@ -31,7 +32,6 @@ import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.data.services.classification.pojo.ClassificationStatusResponse;
 import org.snomed.snowstorm.core.data.services.classification.pojo.EquivalentConceptsResponse;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
-import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.rf2.export.ExportException;
 import org.snomed.snowstorm.core.rf2.export.ExportService;
 import org.snomed.snowstorm.core.util.DateUtil;
@@ -63,6 +63,7 @@ import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import static io.kaicode.elasticvc.api.ComponentService.CLAUSE_LIMIT;
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static java.lang.Long.parseLong;
 import static org.elasticsearch.index.query.QueryBuilders.*;
@@ -75,6 +76,9 @@ public class ClassificationService {
 	@Value("${classification-service.job.abort-after-minutes}")
 	private int abortRemoteClassificationAfterMinutes;
 
+	@Value("${classification-service.save.bulk-min-changes:10000}")
+	private int bulkSaveMinChanges;
+
 	@Autowired
 	private ElasticsearchOperations elasticsearchOperations;
 
@@ -324,7 +328,7 @@ public class ClassificationService {
 		}
 
 		try {
-			File deltaExport = exportService.exportRF2ArchiveFile(path, SIMPLE_DATE_FORMAT.format(new Date()), RF2Type.DELTA, true);
+			File deltaExport = exportService.exportRF2ArchiveFileForClassification(path, SIMPLE_DATE_FORMAT.format(new Date()));
 			String remoteClassificationId = serviceClient.createClassification(previousPackage, dependencyPackage, deltaExport, path, reasonerId);
 			classification.setId(remoteClassificationId);
 			classification.setStatus(ClassificationStatus.SCHEDULED);
@@ -346,7 +350,19 @@ public class ClassificationService {
 			Classification classification = classificationSaveStatusCheck(path, classificationId);
 
 			if (classification.getInferredRelationshipChangesFound()) {
+				NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+						.withQuery(termQuery("classificationId", classificationId))
+						.withSort(new FieldSortBuilder(RelationshipChange.Fields.SOURCE_ID))
+						.withSort(new FieldSortBuilder(RelationshipChange.Fields.GROUP))
+						.withSort(new FieldSortBuilder(RelationshipChange.Fields.SORT_NUMBER))// This gives a guaranteed sort order for a reliable stateless stream
+						.withPageable(LARGE_PAGE);
+				int changesToSave = (int) elasticsearchOperations.count(queryBuilder.build(), RelationshipChange.class);
+				boolean bulkSave = changesToSave >= bulkSaveMinChanges;
+				logger.info("Saving {} relationship changes of classification {} to {}{}.", changesToSave, classificationId, path, bulkSave ? " in bulk mode" : "");
+
 				classification.setStatus(SAVING_IN_PROGRESS);
+				classification.setInferredRelationshipChangesToSave(changesToSave);
+				classification.setInferredRelationshipChangesSaved(0);
 				classificationRepository.save(classification);
 
 				try {
@@ -354,12 +370,7 @@ public class ClassificationService {
 					try (Commit commit = branchService.openCommit(path, branchMetadataHelper.getBranchLockMetadata("Saving classification " + classification.getId()))) {
 						commit.getBranch().getMetadata().put(DISABLE_CONTENT_AUTOMATIONS_METADATA_KEY, "true");
 
-						NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-								.withQuery(termQuery("classificationId", classificationId))
-								.withSort(new FieldSortBuilder(RelationshipChange.Fields.SOURCE_ID))
-								.withSort(new FieldSortBuilder(RelationshipChange.Fields.GROUP))
-								.withSort(new FieldSortBuilder(RelationshipChange.Fields.SORT_NUMBER))// This gives a guaranteed sort order for a reliable stateless stream
-								.withPageable(LARGE_PAGE);
+						int changesSaved = 0;
 						try (SearchHitsIterator<RelationshipChange> relationshipChangeStream = elasticsearchOperations.searchForStream(queryBuilder.build(), RelationshipChange.class)) {
 							while (relationshipChangeStream.hasNext()) {
 								List<RelationshipChange> changesBatch = new ArrayList<>();
@@ -368,23 +379,31 @@ public class ClassificationService {
 									changesBatch.add(relationshipChangeStream.next().getContent());
 								}
 
-								// Group changes by concept
-								Map<Long, List<RelationshipChange>> conceptToChangeMap = new Long2ObjectOpenHashMap<>();
-								for (RelationshipChange relationshipChange : changesBatch) {
-									conceptToChangeMap.computeIfAbsent(parseLong(relationshipChange.getSourceId()), conceptId -> new ArrayList<>()).add(relationshipChange);
-								}
+								if (bulkSave) {
+									saveRelationshipChangesInBulk(changesBatch, commit);
+								} else {
+									// Group changes by concept
+									Map<Long, List<RelationshipChange>> conceptToChangeMap = new Long2ObjectOpenHashMap<>();
+									for (RelationshipChange relationshipChange : changesBatch) {
+										conceptToChangeMap.computeIfAbsent(parseLong(relationshipChange.getSourceId()), conceptId -> new ArrayList<>()).add(relationshipChange);
+									}
+
+									// Load concepts
+									Collection<Concept> concepts = conceptService.find(path, conceptToChangeMap.keySet(), Config.DEFAULT_LANGUAGE_DIALECTS);
 
-								// Load concepts
-								Collection<Concept> concepts = conceptService.find(path, conceptToChangeMap.keySet(), Config.DEFAULT_LANGUAGE_DIALECTS);
+									// Apply changes to concepts
+									for (Concept concept : concepts) {
+										List<RelationshipChange> relationshipChanges = conceptToChangeMap.get(concept.getConceptIdAsLong());
+										applyRelationshipChangesToConcept(concept, relationshipChanges, false);
+									}
 
-								// Apply changes to concepts
-								for (Concept concept : concepts) {
-									List<RelationshipChange> relationshipChanges = conceptToChangeMap.get(concept.getConceptIdAsLong());
-									applyRelationshipChangesToConcept(concept, relationshipChanges, false);
+									// Update concepts
+									conceptService.updateWithinCommit(concepts, commit);
 								}
 
-								// Update concepts
-								conceptService.updateWithinCommit(concepts, commit);
+								changesSaved += changesBatch.size();
+								classification.setInferredRelationshipChangesSaved(changesSaved);
+								classificationRepository.save(classification);
 							}
 						}
 
@@ -424,6 +443,125 @@ public class ClassificationService {
 		return classification;
 	}
 
+	// Applies the changes to the relationship documents directly, without loading the concepts and their descriptions
+	private void saveRelationshipChangesInBulk(List<RelationshipChange> relationshipChanges, Commit commit) throws ServiceException {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+
+		Set<String> relationshipIds = new HashSet<>();
+		Set<String> sourceIds = new HashSet<>();
+		for (RelationshipChange relationshipChange : relationshipChanges) {
+			sourceIds.add(relationshipChange.getSourceId());
+			if (!Strings.isNullOrEmpty(relationshipChange.getRelationshipId())) {
+				relationshipIds.add(relationshipChange.getRelationshipId());
+			}
+		}
+
+		Map<String, Relationship> existingRelationships = new HashMap<>();
+		for (List<String> batch : Iterables.partition(relationshipIds, CLAUSE_LIMIT)) {
+			try (SearchHitsIterator<Relationship> stream = elasticsearchOperations.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Relationship.class))
+							.must(termsQuery(Relationship.Fields.RELATIONSHIP_ID, batch)))
+					.withPageable(LARGE_PAGE)
+					.build(), Relationship.class)) {
+				stream.forEachRemaining(hit -> existingRelationships.put(hit.getContent().getRelationshipId(), hit.getContent()));
+			}
+		}
+
+		// Changes are only applied to concepts which still exist, new relationships take the module of their concept
+		Map<String, String> conceptModules = new HashMap<>();
+		for (List<String> batch : Iterables.partition(sourceIds, CLAUSE_LIMIT)) {
+			try (SearchHitsIterator<Concept> stream = elasticsearchOperations.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+							.must(termsQuery(Concept.Fields.CONCEPT_ID, batch)))
+					.withFields(Concept.Fields.CONCEPT_ID, Concept.Fields.MODULE_ID)
+					.withPageable(LARGE_PAGE)
+					.build(), Concept.class)) {
+				stream.forEachRemaining(hit -> conceptModules.put(hit.getContent().getConceptId(), hit.getContent().getModuleId()));
+			}
+		}
+
+		List<Relationship> relationships = new ArrayList<>();
+		int missingConceptChanges = 0;
+		for (RelationshipChange relationshipChange : relationshipChanges) {
+			if (!conceptModules.containsKey(relationshipChange.getSourceId())) {
+				// Concept no longer exists on the branch, skipped in the same way as when saving via the concepts
+				missingConceptChanges++;
+				continue;
+			}
+			Relationship relationship;
+			switch (relationshipChange.getChangeNature()) {
+				case INFERRED:
+					if (Strings.isNullOrEmpty(relationshipChange.getRelationshipId())) {
+						// Newly inferred relationship
+						relationship = new Relationship(
+								null,
+								null,
+								true,
+								conceptModules.get(relationshipChange.getSourceId()),
+								relationshipChange.getSourceId(),
+								relationshipChange.getDestinationId(),
+								relationshipChange.getGroup(),
+								relationshipChange.getTypeId(),
+								relationshipChange.getCharacteristicTypeId(),
+								relationshipChange.getModifierId());
+						relationship.setCreating(true);
+						relationship.setChanged(true);
+						relationships.add(relationship);
+					} else {
+						// Existing relationship change - could be a reactivation or group change
+						relationship = getExistingRelationship(existingRelationships, relationshipChange);
+						if (relationship == null) {
+							throw new ServiceException(String.format("Relationship %s not found within Concept %s so can not apply update.",
+									relationshipChange.getRelationshipId(), relationshipChange.getSourceId()));
+						}
+						if (!relationship.isActive() || relationship.getGroupId() != relationshipChange.getGroup()) {
+							relationship.setActive(true);
+							relationship.setGroupId(relationshipChange.getGroup());
+							relationship.setChanged(true);
+							relationship.updateEffectiveTime();
+							relationships.add(relationship);
+						}
+					}
+					break;
+				case REDUNDANT:
+					relationship = getExistingRelationship(existingRelationships, relationshipChange);
+					if (relationship == null) {
+						throw new ServiceException(String.format("Failed to remove relationship %s from concept %s.",
+								relationshipChange.getRelationshipId(), relationshipChange.getSourceId()));
+					}
+					if (relationship.isReleased()) {
+						relationship.setActive(false);
+						relationship.setChanged(true);
+						relationship.updateEffectiveTime();
+					} else {
+						relationship.markDeleted();
+					}
+					relationships.add(relationship);
+					break;
+			}
+		}
+		if (missingConceptChanges > 0) {
+			logger.warn("Skipped {} relationship changes because the source concept does not exist on branch {}.", missingConceptChanges, commit.getBranch().getPath());
+		}
+
+		conceptService.updateRelationshipsWithinCommit(relationships, commit);
+	}
+
+	void setBulkSaveMinChanges(int bulkSaveMinChanges) {
+		this.bulkSaveMinChanges = bulkSaveMinChanges;
+	}
+
+	int getBulkSaveMinChanges() {
+		return bulkSaveMinChanges;
+	}
+
+	private Relationship getExistingRelationship(Map<String, Relationship> existingRelationships, RelationshipChange relationshipChange) {
+		Relationship relationship = existingRelationships.get(relationshipChange.getRelationshipId());
+		return relationship != null && relationship.getSourceId().equals(relationshipChange.getSourceId()) ? relationship : null;
+	}
+
 	private void applyRelationshipChangesToConcept(Concept concept, List<RelationshipChange> relationshipChanges, boolean copyDescriptions) throws ServiceException {
 		for (RelationshipChange relationshipChange : relationshipChanges) {
 			Relationship relationship = null;
@@ -0,0 +1,157 @@
+package org.snomed.snowstorm.core.data.services.hierarchy;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Read only IS-A hierarchy of one form of a branch held in primitive arrays.
+ * Concept ids are sorted so the index of a concept is found by binary search,
+ * parent and child edges are held in CSR form (offset array + flat index array).
+ */
+public class BranchHierarchy {
+
+	private final long[] conceptIds;
+	private final int[] parentOffsets;
+	private final int[] parents;
+	private final int[] childOffsets;
+	private final int[] children;
+
+	/**
+	 * @param conceptIds ids of all concepts in the hierarchy, in any order, without duplicates.
+	 * @param edgeChildIds child side of each IS-A edge.
+	 * @param edgeParentIds parent side of each IS-A edge, same length as edgeChildIds.
+	 */
+	public BranchHierarchy(LongArrayList conceptIds, LongArrayList edgeChildIds, LongArrayList edgeParentIds) {
+		this.conceptIds = conceptIds.toLongArray();
+		Arrays.sort(this.conceptIds);
+
+		int nodeCount = this.conceptIds.length;
+		IntArrayList edgeChildren = new IntArrayList(edgeChildIds.size());
+		IntArrayList edgeParents = new IntArrayList(edgeParentIds.size());
+		for (int i = 0; i < edgeChildIds.size(); i++) {
+			int child = indexOf(edgeChildIds.getLong(i));
+			int parent = indexOf(edgeParentIds.getLong(i));
+			// Edges to concepts missing from the index can not be followed
+			if (child >= 0 && parent >= 0) {
+				edgeChildren.add(child);
+				edgeParents.add(parent);
+			}
+		}
+
+		parentOffsets = new int[nodeCount + 1];
+		parents = new int[edgeChildren.size()];
+		fill(edgeChildren, edgeParents, parentOffsets, parents);
+
+		childOffsets = new int[nodeCount + 1];
+		children = new int[edgeParents.size()];
+		fill(edgeParents, edgeChildren, childOffsets, children);
+	}
+
+	private static void fill(IntArrayList from, IntArrayList to, int[] offsets, int[] targets) {
+		int nodeCount = offsets.length - 1;
+		for (int i = 0; i < from.size(); i++) {
+			offsets[from.getInt(i) + 1]++;
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			offsets[node + 1] += offsets[node];
+		}
+		int[] cursor = Arrays.copyOf(offsets, nodeCount);
+		for (int i = 0; i < from.size(); i++) {
+			targets[cursor[from.getInt(i)]++] = to.getInt(i);
+		}
+	}
+
+	public boolean contains(long conceptId) {
+		return indexOf(conceptId) >= 0;
+	}
+
+	public LongSet getParentIds(long conceptId) {
+		LongSet parentIds = new LongOpenHashSet();
+		int node = indexOf(conceptId);
+		if (node >= 0) {
+			for (int i = parentOffsets[node]; i < parentOffsets[node + 1]; i++) {
+				parentIds.add(conceptIds[parents[i]]);
+			}
+		}
+		return parentIds;
+	}
+
+	public LongSet getAncestorIds(long conceptId) {
+		return getAncestorIdsAsUnion(LongArrayList.wrap(new long[]{conceptId}));
+	}
+
+	public LongSet getAncestorIdsAsUnion(Collection<Long> conceptIds) {
+		LongSet ancestorIds = new LongOpenHashSet();
+		BitSet found = walk(conceptIds, parentOffsets, parents);
+		for (int node = found.nextSetBit(0); node >= 0; node = found.nextSetBit(node + 1)) {
+			ancestorIds.add(this.conceptIds[node]);
+		}
+		return ancestorIds;
+	}
+
+	/**
+	 * @return descendants of any of the given concepts in ascending id order.
+	 */
+	public List<Long> getDescendantIdsAsUnion(Collection<Long> conceptIds) {
+		BitSet found = walk(conceptIds, childOffsets, children);
+		LongArrayList descendantIds = new LongArrayList(found.cardinality());
+		// Index order is id order
+		for (int node = found.nextSetBit(0); node >= 0; node = found.nextSetBit(node + 1)) {
+			descendantIds.add(this.conceptIds[node]);
+		}
+		return descendantIds;
+	}
+
+	// Breadth first walk of the given edges, excluding the start nodes unless reached through a loop
+	private BitSet walk(Collection<Long> startIds, int[] offsets, int[] targets) {
+		BitSet found = new BitSet(conceptIds.length);
+		IntArrayList queue = new IntArrayList();
+		for (Long startId : startIds) {
+			int node = indexOf(startId);
+			if (node >= 0) {
+				queue.add(node);
+			}
+		}
+		for (int head = 0; head < queue.size(); head++) {
+			int node = queue.getInt(head);
+			for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+				int target = targets[i];
+				if (!found.get(target)) {
+					found.set(target);
+					queue.add(target);
+				}
+			}
+		}
+		if (startIds.size() == 1) {
+			// A concept is never its own ancestor or descendant
+			int start = indexOf(startIds.iterator().next());
+			if (start >= 0) {
+				found.clear(start);
+			}
+		}
+		return found;
+	}
+
+	private int indexOf(long conceptId) {
+		int index = Arrays.binarySearch(conceptIds, conceptId);
+		return index >= 0 ? index : -1;
+	}
+
+	public int getConceptCount() {
+		return conceptIds.length;
+	}
+
+	/**
+	 * @return approximate heap size in bytes.
+	 */
+	public long getSizeInBytes() {
+		return 64L + conceptIds.length * 8L + (parentOffsets.length + parents.length + childOffsets.length + children.length) * 4L;
+	}
+}
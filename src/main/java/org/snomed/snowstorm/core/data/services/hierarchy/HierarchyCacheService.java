@@ -0,0 +1,169 @@
+package org.snomed.snowstorm.core.data.services.hierarchy;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.services.BranchHeadCriteriaService;
+import org.snomed.snowstorm.core.pojo.BranchHead;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * Opt-in, memory bounded cache of the stated and inferred IS-A hierarchy of branches at their head timepoint.
+ * Only branch criteria created through {@link BranchHeadCriteriaService} are answered from the cache, any other branch criteria
+ * (open commits, historic timepoints) fall through to Elasticsearch.
+ * A hierarchy is loaded from the semantic index in the background on first use, callers use Elasticsearch until it is ready.
+ */
+@Service
+public class HierarchyCacheService implements CommitListener {
+
+	@Value("${cache.hierarchy.enabled:false}")
+	private boolean enabled;
+
+	@Value("${cache.hierarchy.max-size-mb:512}")
+	private int maxSizeMb;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	@Autowired
+	private BranchHeadCriteriaService branchHeadCriteriaService;
+
+	@Autowired
+	private ExecutorService executorService;
+
+	private AsyncCache<HierarchyKey, BranchHierarchy> hierarchies;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		hierarchies = Caffeine.newBuilder()
+				// Weight in kilobytes
+				.maximumWeight(maxSizeMb * 1024L)
+				.weigher((HierarchyKey key, BranchHierarchy hierarchy) -> (int) Math.min(Integer.MAX_VALUE, hierarchy.getSizeInBytes() / 1024))
+				.executor(executorService)
+				.buildAsync();
+		if (enabled) {
+			logger.info("Hierarchy cache enabled with a maximum size of {} MB.", maxSizeMb);
+		}
+	}
+
+	/**
+	 * @return the cached hierarchy or empty if the branch criteria is not at a branch head or the hierarchy is not loaded yet.
+	 */
+	public Optional<BranchHierarchy> getHierarchy(BranchCriteria branchCriteria, boolean stated) {
+		if (!enabled) {
+			return Optional.empty();
+		}
+		BranchHead branchHead = branchHeadCriteriaService.getBranchHead(branchCriteria).orElse(null);
+		if (branchHead == null) {
+			return Optional.empty();
+		}
+		HierarchyKey key = new HierarchyKey(branchHead, stated);
+		CompletableFuture<BranchHierarchy> hierarchy = hierarchies.get(key, (k, executor) -> CompletableFuture.supplyAsync(() -> load(k, branchCriteria), executor));
+		try {
+			return Optional.ofNullable(hierarchy.getNow(null));
+		} catch (CompletionException e) {
+			// Failed loads are removed from the cache automatically and tried again next time
+			logger.warn("Failed to load {} hierarchy for {}, falling back to Elasticsearch.", stated ? "stated" : "inferred", branchHead.getPath(), e);
+			return Optional.empty();
+		}
+	}
+
+	private BranchHierarchy load(HierarchyKey key, BranchCriteria branchCriteria) {
+		TimerUtil timer = new TimerUtil("Load hierarchy " + key);
+		LongArrayList conceptIds = new LongArrayList();
+		LongArrayList edgeChildIds = new LongArrayList();
+		LongArrayList edgeParentIds = new LongArrayList();
+		try (SearchHitsIterator<QueryConcept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termQuery(QueryConcept.Fields.STATED, key.stated)))
+				.withFields(QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS)
+				.withPageable(LARGE_PAGE)
+				.build(), QueryConcept.class)) {
+			stream.forEachRemaining(hit -> {
+				QueryConcept queryConcept = hit.getContent();
+				long conceptId = queryConcept.getConceptIdL();
+				conceptIds.add(conceptId);
+				if (queryConcept.getParents() != null) {
+					for (Long parent : queryConcept.getParents()) {
+						edgeChildIds.add(conceptId);
+						edgeParentIds.add(parent);
+					}
+				}
+			});
+		}
+		BranchHierarchy hierarchy = new BranchHierarchy(conceptIds, edgeChildIds, edgeParentIds);
+		timer.finish();
+		logger.info("Loaded {} hierarchy with {} concepts for {}, approximately {} KB.",
+				key.stated ? "stated" : "inferred", hierarchy.getConceptCount(), key.branchHead.getPath(), hierarchy.getSizeInBytes() / 1024);
+		return hierarchy;
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		if (enabled) {
+			// A hierarchy of a large edition is hundreds of megabytes, drop those of the old head now rather than waiting for eviction.
+			// A hierarchy of the old head which is still loading is dropped too.
+			String path = commit.getBranch().getPath();
+			hierarchies.asMap().keySet().removeIf(key -> key.branchHead.getPath().equals(path));
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	private static final class HierarchyKey {
+
+		private final BranchHead branchHead;
+		private final boolean stated;
+
+		private HierarchyKey(BranchHead branchHead, boolean stated) {
+			this.branchHead = branchHead;
+			this.stated = stated;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			HierarchyKey that = (HierarchyKey) o;
+			return stated == that.stated && branchHead.equals(that.branchHead);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(branchHead, stated);
+		}
+
+		@Override
+		public String toString() {
+			return branchHead + (stated ? " stated" : " inferred");
+		}
+	}
+}
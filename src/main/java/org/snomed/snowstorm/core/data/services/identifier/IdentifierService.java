@@ -166,4 +166,9 @@ public class IdentifierService {
 		return getReservedBlock(namespaceInt, conceptIds, descriptionIds, relationshipIds);
 	}
 
+	public IdentifierReservedBlock reserveRelationshipIdentifierBlock(int relationshipIds, String namespace) throws ServiceException {
+		int namespaceInt = Strings.isNullOrEmpty(namespace) ? 0 : Integer.parseInt(namespace);
+		return getReservedBlock(namespaceInt, 0, 0, relationshipIds);
+	}
+
 }
@@ -34,6 +34,19 @@ public class DescriptionCriteria {
 				|| !CollectionUtils.isEmpty(preferredOrAcceptableIn);
 	}
 
+	/**
+	 * @return true if every description on the branch matches so the aggregations are those of the whole branch.
+	 */
+	public boolean hasNoFilters() {
+		return !hasDescriptionCriteria()
+				&& active == null
+				&& CollectionUtils.isEmpty(semanticTags)
+				&& CollectionUtils.isEmpty(type)
+				&& conceptActive == null
+				&& (conceptRefset == null || conceptRefset.isEmpty())
+				&& !groupByConcept;
+	}
+
 	public DescriptionCriteria term(String term) {
 		if (term != null && term.isEmpty()) {
 			term = null;
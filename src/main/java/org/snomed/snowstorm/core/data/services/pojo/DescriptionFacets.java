@@ -0,0 +1,45 @@
+package org.snomed.snowstorm.core.data.services.pojo;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Aggregations of all descriptions on a branch, as returned by the description search when no filters are given.
+ */
+public class DescriptionFacets {
+
+	private final Map<String, Long> semanticTags;
+	private final Map<String, Long> activeConceptSemanticTags;
+	private final Map<String, Long> membership;
+	private final Map<String, Long> module;
+	private final Map<String, Long> language;
+
+	public DescriptionFacets(Map<String, Long> semanticTags, Map<String, Long> activeConceptSemanticTags, Map<String, Long> membership,
+			Map<String, Long> module, Map<String, Long> language) {
+		this.semanticTags = Collections.unmodifiableMap(semanticTags);
+		this.activeConceptSemanticTags = Collections.unmodifiableMap(activeConceptSemanticTags);
+		this.membership = Collections.unmodifiableMap(membership);
+		this.module = Collections.unmodifiableMap(module);
+		this.language = Collections.unmodifiableMap(language);
+	}
+
+	public Map<String, Long> getSemanticTags() {
+		return semanticTags;
+	}
+
+	public Map<String, Long> getActiveConceptSemanticTags() {
+		return activeConceptSemanticTags;
+	}
+
+	public Map<String, Long> getMembership() {
+		return membership;
+	}
+
+	public Map<String, Long> getModule() {
+		return module;
+	}
+
+	public Map<String, Long> getLanguage() {
+		return language;
+	}
+}
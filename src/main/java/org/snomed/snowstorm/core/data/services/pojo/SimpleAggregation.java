@@ -10,13 +10,17 @@ import java.util.Map;
 public class SimpleAggregation implements Aggregation {
 
 	private final String name;
-	private final String bucket;
-	private final long count;
+	private final Map<String, Long> buckets;
 
 	public SimpleAggregation(String name, String bucket, long count) {
 		this.name = name;
-		this.bucket = bucket;
-		this.count = count;
+		this.buckets = new HashMap<>();
+		buckets.put(bucket, count);
+	}
+
+	public SimpleAggregation(String name, Map<String, Long> buckets) {
+		this.name = name;
+		this.buckets = buckets;
 	}
 
 	@Override
@@ -25,8 +29,6 @@ public class SimpleAggregation implements Aggregation {
 	}
 
 	public Map<String, Long> getBuckets() {
-		Map<String, Long> buckets = new HashMap<>();
-		buckets.put(bucket, count);
 		return buckets;
 	}
 
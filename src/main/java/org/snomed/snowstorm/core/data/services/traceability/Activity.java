@@ -3,10 +3,7 @@ package org.snomed.snowstorm.core.data.services.traceability;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.snomed.snowstorm.core.data.domain.Concept;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 public class Activity {
 
@@ -14,6 +11,9 @@ public class Activity {
 	private String commitComment;
 	private String branchPath;
 	private Long commitTimestamp;
+	// Position of this message within the activity and the number of messages, only set when an activity is split
+	private Integer part;
+	private Integer totalParts;
 	private Map<String, ConceptActivity> changes;
 
 	public Activity() {
@@ -33,6 +33,32 @@ public class Activity {
 		return conceptActivity;
 	}
 
+	/**
+	 * Splits the concept changes of a large activity into several activities with the same commit details.
+	 * Each activity is numbered with its part, starting at 1, and the total number of parts.
+	 * @param maxChanges maximum number of concept changes in each activity, zero or less to not split.
+	 */
+	public List<Activity> split(int maxChanges) {
+		if (maxChanges < 1 || changes == null || changes.size() <= maxChanges) {
+			return Collections.singletonList(this);
+		}
+		List<Activity> activities = new ArrayList<>();
+		Activity chunk = null;
+		for (Map.Entry<String, ConceptActivity> entry : changes.entrySet()) {
+			if (chunk == null || chunk.changes.size() == maxChanges) {
+				chunk = new Activity(userId, branchPath, commitTimestamp);
+				chunk.setCommitComment(commitComment);
+				activities.add(chunk);
+			}
+			chunk.changes.put(entry.getKey(), entry.getValue());
+		}
+		for (int i = 0; i < activities.size(); i++) {
+			activities.get(i).part = i + 1;
+			activities.get(i).totalParts = activities.size();
+		}
+		return activities;
+	}
+
 	public String getUserId() {
 		return userId;
 	}
@@ -49,6 +75,14 @@ public class Activity {
 		return commitTimestamp;
 	}
 
+	public Integer getPart() {
+		return part;
+	}
+
+	public Integer getTotalParts() {
+		return totalParts;
+	}
+
 	public Map<String, ConceptActivity> getChanges() {
 		return changes;
 	}
@@ -64,6 +98,8 @@ public class Activity {
 				", commitComment='" + commitComment + '\'' +
 				", branchPath='" + branchPath + '\'' +
 				", commitTimestamp=" + commitTimestamp +
+				", part=" + part +
+				", totalParts=" + totalParts +
 				'}';
 	}
 
@@ -0,0 +1,281 @@
+package org.snomed.snowstorm.core.data.services.transitiveclosure;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Immutable, int indexed IS-A graph created by {@link GraphBuilder}.
+ * Strongly connected components are found once, in topological order (ancestors first), so the ancestors of
+ * each component are computed exactly once and reused by all descendants rather than walking the graph per concept.
+ * Nodes within a loop share a component and are reported when their transitive closure is requested.
+ */
+public class Graph {
+
+	private static final int[] NONE = new int[0];
+
+	private final Long2IntMap nodeIndex;
+	private final long[] nodeIds;
+	private final int[] parentOffsets;
+	private final int[] parents;
+
+	private final int[] component;
+	private final int[] componentOffsets;
+	private final int[] componentMembers;
+	private final BitSet cyclicComponents;
+	private final BitSet updatedComponents;
+	private final int[][] componentAncestors;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Graph.class);
+
+	Graph(Long2IntMap nodeIndex, long[] nodeIds, int[] parentOffsets, int[] parents, BitSet updatedNodes) {
+		this.nodeIndex = nodeIndex;
+		this.nodeIds = nodeIds;
+		this.parentOffsets = parentOffsets;
+		this.parents = parents;
+
+		int nodeCount = nodeIds.length;
+		component = new int[nodeCount];
+		int componentCount = findComponents();
+
+		// Group nodes by component
+		componentOffsets = new int[componentCount + 1];
+		for (int node = 0; node < nodeCount; node++) {
+			componentOffsets[component[node] + 1]++;
+		}
+		for (int c = 0; c < componentCount; c++) {
+			componentOffsets[c + 1] += componentOffsets[c];
+		}
+		componentMembers = new int[nodeCount];
+		int[] cursor = Arrays.copyOf(componentOffsets, componentCount);
+		for (int node = 0; node < nodeCount; node++) {
+			componentMembers[cursor[component[node]]++] = node;
+		}
+
+		cyclicComponents = new BitSet(componentCount);
+		updatedComponents = new BitSet(componentCount);
+		componentAncestors = new int[componentCount][];
+		computeAncestors(componentCount, updatedNodes);
+	}
+
+	/**
+	 * Iterative version of Tarjan's algorithm following edges from child to parent.
+	 * Components are numbered as they complete so every component has a higher number than all of its ancestors.
+	 */
+	private int findComponents() {
+		int nodeCount = nodeIds.length;
+		int[] index = new int[nodeCount];
+		Arrays.fill(index, -1);
+		int[] lowLink = new int[nodeCount];
+		int[] edgeCursor = new int[nodeCount];
+		int[] stack = new int[nodeCount];
+		int[] callStack = new int[nodeCount];
+		BitSet onStack = new BitSet(nodeCount);
+		int stackSize = 0;
+		int counter = 0;
+		int componentCount = 0;
+
+		for (int start = 0; start < nodeCount; start++) {
+			if (index[start] != -1) {
+				continue;
+			}
+			int callStackSize = 0;
+			index[start] = lowLink[start] = counter++;
+			edgeCursor[start] = parentOffsets[start];
+			stack[stackSize++] = start;
+			onStack.set(start);
+			callStack[callStackSize++] = start;
+
+			while (callStackSize > 0) {
+				int node = callStack[callStackSize - 1];
+				if (edgeCursor[node] < parentOffsets[node + 1]) {
+					int parent = parents[edgeCursor[node]++];
+					if (index[parent] == -1) {
+						index[parent] = lowLink[parent] = counter++;
+						edgeCursor[parent] = parentOffsets[parent];
+						stack[stackSize++] = parent;
+						onStack.set(parent);
+						callStack[callStackSize++] = parent;
+					} else if (onStack.get(parent)) {
+						lowLink[node] = Math.min(lowLink[node], index[parent]);
+					}
+				} else {
+					callStackSize--;
+					if (callStackSize > 0) {
+						int caller = callStack[callStackSize - 1];
+						lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+					}
+					if (lowLink[node] == index[node]) {
+						int member;
+						do {
+							member = stack[--stackSize];
+							onStack.clear(member);
+							component[member] = componentCount;
+						} while (member != node);
+						componentCount++;
+					}
+				}
+			}
+		}
+		return componentCount;
+	}
+
+	private void computeAncestors(int componentCount, BitSet updatedNodes) {
+		// Stamps avoid clearing the scratch state between components
+		int[] nodeStamp = new int[nodeIds.length];
+		Arrays.fill(nodeStamp, -1);
+		int[] componentStamp = new int[componentCount];
+		Arrays.fill(componentStamp, -1);
+		IntArrayList scratch = new IntArrayList();
+
+		for (int c = 0; c < componentCount; c++) {
+			scratch.clear();
+			boolean cyclic = componentOffsets[c + 1] - componentOffsets[c] > 1;
+			boolean updated = false;
+			for (int m = componentOffsets[c]; m < componentOffsets[c + 1]; m++) {
+				int member = componentMembers[m];
+				updated |= updatedNodes.get(member);
+				for (int p = parentOffsets[member]; p < parentOffsets[member + 1]; p++) {
+					int parentComponent = component[parents[p]];
+					if (parentComponent == c) {
+						// Self loop or loop through other members
+						cyclic = true;
+					} else if (componentStamp[parentComponent] != c) {
+						componentStamp[parentComponent] = c;
+						updated |= updatedComponents.get(parentComponent);
+						for (int pm = componentOffsets[parentComponent]; pm < componentOffsets[parentComponent + 1]; pm++) {
+							addOnce(componentMembers[pm], c, nodeStamp, scratch);
+						}
+						for (int ancestor : componentAncestors[parentComponent]) {
+							addOnce(ancestor, c, nodeStamp, scratch);
+						}
+					}
+				}
+			}
+			if (cyclic) {
+				cyclicComponents.set(c);
+				for (int m = componentOffsets[c]; m < componentOffsets[c + 1]; m++) {
+					addOnce(componentMembers[m], c, nodeStamp, scratch);
+				}
+			}
+			if (updated) {
+				updatedComponents.set(c);
+			}
+			componentAncestors[c] = scratch.isEmpty() ? NONE : scratch.toIntArray();
+		}
+	}
+
+	private static void addOnce(int node, int stamp, int[] nodeStamp, IntArrayList scratch) {
+		if (nodeStamp[node] != stamp) {
+			nodeStamp[node] = stamp;
+			scratch.add(node);
+		}
+	}
+
+	public int getNodeCount() {
+		return nodeIds.length;
+	}
+
+	public long getNodeId(int node) {
+		return nodeIds[node];
+	}
+
+	/**
+	 * @return the index of the node with this id or -1 if the node is not part of the graph.
+	 */
+	public int getNodeIndex(long id) {
+		return nodeIndex.get(id);
+	}
+
+	public LongSet getParentIds(int node) {
+		LongSet parentIds = new LongOpenHashSet(parentOffsets[node + 1] - parentOffsets[node]);
+		for (int p = parentOffsets[node]; p < parentOffsets[node + 1]; p++) {
+			parentIds.add(nodeIds[parents[p]]);
+		}
+		return parentIds;
+	}
+
+	public boolean isAncestorOrSelfUpdated(int node) {
+		return updatedComponents.get(component[node]);
+	}
+
+	public LongSet getTransitiveClosure(int node, String path, boolean throwExceptionIfLoopFound) throws GraphBuilderException {
+		int nodeComponent = component[node];
+		int[] ancestors = componentAncestors[nodeComponent];
+		LongSet ancestorIds = new LongOpenHashSet(ancestors.length);
+		for (int ancestor : ancestors) {
+			if (ancestor != node) {
+				ancestorIds.add(nodeIds[ancestor]);
+			}
+		}
+		if (cyclicComponents.get(nodeComponent)) {
+			long id = nodeIds[node];
+			String message = String.format("Loop found in transitive closure for concept %s on branch %s. The concept %s is in its own set of ancestors: %s",
+					id, path, id, getAncestorsDepthFirst(node));
+			if (throwExceptionIfLoopFound) {
+				dumpTransitiveClosure(node);
+				throw new GraphBuilderException(message);
+			} else {
+				LOGGER.warn(message);
+			}
+		}
+		return ancestorIds;
+	}
+
+	// Only used to report loops so the order is stable and readable
+	private Set<Long> getAncestorsDepthFirst(int node) {
+		Set<Long> ancestorIds = new LinkedHashSet<>();
+		collectAncestorsDepthFirst(node, ancestorIds);
+		return ancestorIds;
+	}
+
+	private void collectAncestorsDepthFirst(int node, Set<Long> ancestorIds) {
+		for (int parent : getParentsSortedById(node)) {
+			if (ancestorIds.add(nodeIds[parent])) {
+				collectAncestorsDepthFirst(parent, ancestorIds);
+			}
+		}
+	}
+
+	private List<Integer> getParentsSortedById(int node) {
+		List<Integer> sorted = new ArrayList<>();
+		for (int p = parentOffsets[node]; p < parentOffsets[node + 1]; p++) {
+			sorted.add(parents[p]);
+		}
+		sorted.sort(Comparator.comparingLong(parent -> nodeIds[parent]));
+		return sorted;
+	}
+
+	private void dumpTransitiveClosure(int node) {
+		Set<Long> covered = new HashSet<>();
+		PrintStream printStream = System.out;
+		printStream.println();
+		printStream.println("Dumping transitive closure for concept " + nodeIds[node] + ", order is BOTTOM UP!");
+		doDumpTransitiveClosure(node, covered, "- ", printStream);
+		printStream.println();
+	}
+
+	private void doDumpTransitiveClosure(int node, Set<Long> covered, String indent, PrintStream printStream) {
+		long id = nodeIds[node];
+		printStream.print(indent + id);
+		if (covered.contains(id)) {
+			if (parentOffsets[node + 1] > parentOffsets[node]) {
+				printStream.print("(parents already output)");
+			}
+			printStream.println();
+		} else {
+			covered.add(id);
+			indent = "|" + indent;
+			printStream.println();
+			for (int parent : getParentsSortedById(node)) {
+				doDumpTransitiveClosure(parent, covered, indent, printStream);
+			}
+		}
+	}
+}
@@ -1,43 +1,127 @@
 package org.snomed.snowstorm.core.data.services.transitiveclosure;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.BitSet;
 
+/**
+ * Collects IS-A edges using primitive, index based storage.
+ * Concept ids are mapped to dense int indexes, edges are held as two parallel int lists
+ * and the adjacency (CSR) arrays are only created when {@link #build()} is called.
+ */
 public class GraphBuilder {
 
-	private Long2ObjectMap<Node> nodeLookup = new Long2ObjectOpenHashMap<>();
+	private final Long2IntOpenHashMap nodeIndex;
+	private final LongArrayList nodeIds;
+
+	// Edge list, source and destination are node indexes
+	private final IntArrayList edgeSources;
+	private final IntArrayList edgeDestinations;
+
+	// Edges of a node with an index lower than this marker were cleared
+	private final IntArrayList parentsClearedAtEdge;
+	private final BitSet updated;
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(GraphBuilder.class);
 
-	public Node addParent(Long sourceId, Long destinationId) {
-		LOGGER.debug("{} -> {}", sourceId, destinationId);
-		Node createNode = getCreateNode(sourceId);
-		createNode.addParent(getCreateNode(destinationId));
-		return createNode;
+	public GraphBuilder() {
+		this(1_024);
+	}
+
+	public GraphBuilder(int expectedNodeCount) {
+		nodeIndex = new Long2IntOpenHashMap(expectedNodeCount);
+		nodeIndex.defaultReturnValue(-1);
+		nodeIds = new LongArrayList(expectedNodeCount);
+		edgeSources = new IntArrayList(expectedNodeCount * 2);
+		edgeDestinations = new IntArrayList(expectedNodeCount * 2);
+		parentsClearedAtEdge = new IntArrayList(expectedNodeCount);
+		updated = new BitSet();
 	}
 
-	private Node getCreateNode(Long id) {
-		Node node = nodeLookup.get(id);
-		if (node == null) {
-			node = new Node(id);
-			nodeLookup.put(node.getId(), node);
+	public void addParent(long sourceId, long destinationId) {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("{} -> {}", sourceId, destinationId);
 		}
-		return node;
+		int source = getCreateNode(sourceId);
+		int destination = getCreateNode(destinationId);
+		edgeSources.add(source);
+		edgeDestinations.add(destination);
 	}
 
-	public Collection<Node> getNodes() {
-		return nodeLookup.values();
+	private int getCreateNode(long id) {
+		int index = nodeIndex.get(id);
+		if (index == -1) {
+			index = nodeIds.size();
+			nodeIds.add(id);
+			parentsClearedAtEdge.add(0);
+			nodeIndex.put(id, index);
+		}
+		return index;
 	}
 
 	public int getNodeCount() {
-		return nodeLookup.size();
+		return nodeIds.size();
+	}
+
+	public void clearParentsAndMarkUpdated(long sourceId) {
+		int node = getCreateNode(sourceId);
+		parentsClearedAtEdge.set(node, edgeSources.size());
+		updated.set(node);
 	}
 
-	public void clearParentsAndMarkUpdated(Long sourceId) {
-		getCreateNode(sourceId).markUpdated().getParents().clear();
+	/**
+	 * Creates the compact graph and computes the transitive closure of every node.
+	 * The builder should not be modified after this call.
+	 */
+	public Graph build() {
+		int nodeCount = nodeIds.size();
+		int edgeCount = edgeSources.size();
+
+		// Count parents per node, skipping cleared edges
+		int[] parentOffsets = new int[nodeCount + 1];
+		for (int edge = 0; edge < edgeCount; edge++) {
+			int source = edgeSources.getInt(edge);
+			if (edge >= parentsClearedAtEdge.getInt(source)) {
+				parentOffsets[source + 1]++;
+			}
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			parentOffsets[node + 1] += parentOffsets[node];
+		}
+
+		// Fill parent indexes
+		int[] parents = new int[parentOffsets[nodeCount]];
+		int[] cursor = Arrays.copyOf(parentOffsets, nodeCount);
+		for (int edge = 0; edge < edgeCount; edge++) {
+			int source = edgeSources.getInt(edge);
+			if (edge >= parentsClearedAtEdge.getInt(source)) {
+				parents[cursor[source]++] = edgeDestinations.getInt(edge);
+			}
+		}
+
+		// Remove duplicate edges in place
+		int write = 0;
+		int from = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			int to = parentOffsets[node + 1];
+			Arrays.sort(parents, from, to);
+			parentOffsets[node] = write;
+			int last = -1;
+			for (int i = from; i < to; i++) {
+				if (parents[i] != last) {
+					last = parents[i];
+					parents[write++] = last;
+				}
+			}
+			from = to;
+		}
+		parentOffsets[nodeCount] = write;
+
+		return new Graph(nodeIndex, nodeIds.toLongArray(), parentOffsets, Arrays.copyOf(parents, write), updated);
 	}
 }
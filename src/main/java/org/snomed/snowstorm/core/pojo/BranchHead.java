@@ -0,0 +1,44 @@
+package org.snomed.snowstorm.core.pojo;
+
+import java.util.Objects;
+
+/**
+ * A branch path and the head timestamp of the branch at the time it was read.
+ * Content of a branch head never changes so this is a safe key for caches.
+ */
+public class BranchHead {
+
+	private final String path;
+	private final long headTimestamp;
+
+	public BranchHead(String path, long headTimestamp) {
+		this.path = path;
+		this.headTimestamp = headTimestamp;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getHeadTimestamp() {
+		return headTimestamp;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		BranchHead that = (BranchHead) o;
+		return headTimestamp == that.headTimestamp && path.equals(that.path);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(path, headTimestamp);
+	}
+
+	@Override
+	public String toString() {
+		return path + "@" + headTimestamp;
+	}
+}
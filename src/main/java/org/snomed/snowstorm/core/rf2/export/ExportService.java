@@ -1,9 +1,15 @@
 package org.snomed.snowstorm.core.rf2.export;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.PathUtil;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.DomainEntity;
 import org.apache.tomcat.util.http.fileupload.util.Streams;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -21,6 +27,8 @@ import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.util.DateUtil;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
@@ -29,8 +37,16 @@ import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilde
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -59,14 +75,44 @@ public class ExportService {
 	@Autowired
 	private BranchMetadataHelper branchMetadataHelper;
 
+	@Value("${export.parallelism:4}")
+	private int exportParallelism;
+
+	@Value("${classification-service.export.base-cache-size:4}")
+	private int classificationBaseCacheSize;
+
+	@Value("${classification-service.export.max-branch-changes:10000}")
+	private int classificationMaxBranchChanges;
+
+	private ExecutorService exportExecutor;
+
+	// Delta of a parent branch at a timepoint, shared by the classifications of its child branches
+	private Cache<String, ClassificationBaseExport> classificationBaseExports;
+
 	private Set<String> refsetTypesRequiredForClassification = Sets.newHashSet(Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN, Concepts.OWL_EXPRESSION_TYPE_REFERENCE_SET);
 
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
+	@PostConstruct
+	public void init() {
+		exportExecutor = Executors.newFixedThreadPool(Math.max(1, exportParallelism));
+		classificationBaseExports = Caffeine.newBuilder()
+				.maximumSize(Math.max(0, classificationBaseCacheSize))
+				.removalListener((String key, ClassificationBaseExport baseExport, RemovalCause cause) -> {
+					if (baseExport != null) {
+						baseExport.delete();
+					}
+				})
+				.build();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		exportExecutor.shutdownNow();
+		classificationBaseExports.invalidateAll();
+	}
+
 	public String createJob(ExportConfiguration exportConfiguration) {
-		if (exportConfiguration.getType() == RF2Type.FULL) {
-			throw new IllegalArgumentException("FULL RF2 export is not implemented.");
-		}
 		if (exportConfiguration.getStartEffectiveTime() != null && exportConfiguration.getType() != RF2Type.SNAPSHOT) {
 			throw new IllegalArgumentException("The startEffectiveTime parameter can only be used with the SNAPSHOT export type.");
 		}
@@ -98,7 +144,7 @@ public class ExportService {
 
 		File exportFile = exportRF2ArchiveFile(exportConfiguration.getBranchPath(), exportConfiguration.getFilenameEffectiveDate(),
 				exportConfiguration.getType(), exportConfiguration.isConceptsAndRelationshipsOnly(),
-				exportConfiguration.getTransientEffectiveTime(), exportConfiguration.getStartEffectiveTime(), exportConfiguration.getModuleIds());
+				exportConfiguration.getTransientEffectiveTime(), exportConfiguration.getStartEffectiveTime(), exportConfiguration.getModuleIds(), exportConfiguration);
 		try (FileInputStream inputStream = new FileInputStream(exportFile)) {
 			Streams.copy(inputStream, outputStream, false);
 		} catch (IOException e) {
@@ -109,103 +155,268 @@ public class ExportService {
 	}
 
 	public File exportRF2ArchiveFile(String branchPath, String filenameEffectiveDate, RF2Type exportType, boolean forClassification) throws ExportException {
-		return exportRF2ArchiveFile(branchPath, filenameEffectiveDate, exportType, forClassification, null, null, null);
+		return exportRF2ArchiveFile(branchPath, filenameEffectiveDate, exportType, forClassification, null, null, null, null);
 	}
 
 	private File exportRF2ArchiveFile(String branchPath, String filenameEffectiveDate, RF2Type exportType, boolean forClassification,
-			String transientEffectiveTime, String startEffectiveTime, Set<String> moduleIds) throws ExportException {
-		if (exportType == RF2Type.FULL) {
-			throw new IllegalArgumentException("FULL RF2 export is not implemented.");
-		}
+			String transientEffectiveTime, String startEffectiveTime, Set<String> moduleIds, ExportConfiguration exportJob) throws ExportException {
 
 		logger.info("Starting {} export.", exportType);
 		Date startTime = new Date();
 
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		// Snapshot and delta read the current state, full reads every released version held in the branch history
+		Function<Class<? extends DomainEntity>, BoolQueryBuilder> componentCriteria = exportType == RF2Type.FULL ?
+				getFullHistoryCriteria(branchPath, branchCriteria) : branchCriteria::getEntityBranchCriteria;
 
+		List<ExportFile> exportFiles = new ArrayList<>();
 		try {
 			branchService.lockBranch(branchPath, branchMetadataHelper.getBranchLockMetadata("Exporting RF2 " + exportType.getName()));
-			File exportFile = File.createTempFile("export-" + new Date().getTime(), ".zip");
-			try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(exportFile))) {
-				// Write Concepts
-				int conceptLines = exportComponents(Concept.class, "Terminology/", "sct2_Concept_", filenameEffectiveDate, exportType, zipOutputStream,
-						getContentQuery(exportType, moduleIds, startEffectiveTime, branchCriteria.getEntityBranchCriteria(Concept.class)), transientEffectiveTime, null);
-				logger.info("{} concept states exported", conceptLines);
-
-				if (!forClassification) {
-					// Write Descriptions
-					BoolQueryBuilder descriptionBranchCriteria = branchCriteria.getEntityBranchCriteria(Description.class);
-					BoolQueryBuilder descriptionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
-					descriptionContentQuery.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
-					int descriptionLines = exportComponents(Description.class, "Terminology/", "sct2_Description_", filenameEffectiveDate, exportType, zipOutputStream,
-							descriptionContentQuery, transientEffectiveTime,null);
-					logger.info("{} description states exported", descriptionLines);
-
-					// Write Text Definitions
-					BoolQueryBuilder textDefinitionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
-					textDefinitionContentQuery.must(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
-					int textDefinitionLines = exportComponents(Description.class, "Terminology/", "sct2_TextDefinition_", filenameEffectiveDate, exportType, zipOutputStream,
-							textDefinitionContentQuery, transientEffectiveTime, null);
-					logger.info("{} text defintion states exported", textDefinitionLines);
-				}
 
-				// Write Stated Relationships
-				BoolQueryBuilder relationshipBranchCritera = branchCriteria.getEntityBranchCriteria(Relationship.class);
-				BoolQueryBuilder relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
-				relationshipQuery.must(termQuery("characteristicTypeId", Concepts.STATED_RELATIONSHIP));
-				int statedRelationshipLines = exportComponents(Relationship.class, "Terminology/", "sct2_StatedRelationship_", filenameEffectiveDate, exportType, zipOutputStream,
-						relationshipQuery, transientEffectiveTime, null);
-				logger.info("{} stated relationship states exported", statedRelationshipLines);
-
-				// Write Inferred Relationships
-				relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
-				// Not 'stated' will include inferred and additional
-				relationshipQuery.mustNot(termQuery("characteristicTypeId", Concepts.STATED_RELATIONSHIP));
-				int inferredRelationshipLines = exportComponents(Relationship.class, "Terminology/", "sct2_Relationship_", filenameEffectiveDate, exportType, zipOutputStream,
-						relationshipQuery, transientEffectiveTime, null);
-				logger.info("{} inferred and additional relationship states exported", inferredRelationshipLines);
-
-				// Write Reference Sets
-				List<ReferenceSetType> referenceSetTypes = getReferenceSetTypes(branchCriteria.getEntityBranchCriteria(ReferenceSetType.class)).stream()
-						.filter(type -> !forClassification || refsetTypesRequiredForClassification.contains(type.getConceptId()))
-						.collect(Collectors.toList());
-
-				logger.info("{} Reference Set Types found for this export: {}", referenceSetTypes.size(), referenceSetTypes);
-
-				BoolQueryBuilder memberBranchCriteria = branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class);
-				for (ReferenceSetType referenceSetType : referenceSetTypes) {
-					List<Long> refsetsOfThisType = new ArrayList<>(queryService.findDescendantIdsAsUnion(branchCriteria, true, Collections.singleton(Long.parseLong(referenceSetType.getConceptId()))));
-					refsetsOfThisType.add(Long.parseLong(referenceSetType.getConceptId()));
-					for (Long refsetToExport : refsetsOfThisType) {
-						BoolQueryBuilder memberQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, memberBranchCriteria);
-						memberQuery.must(QueryBuilders.termQuery(ReferenceSetMember.Fields.REFSET_ID, refsetToExport));
-						long memberCount = elasticsearchTemplate.count(getNativeSearchQuery(memberQuery), ReferenceSetMember.class);
-						if (memberCount > 0) {
-							logger.info("Exporting Reference Set {} {} with {} members", refsetToExport, referenceSetType.getName(), memberCount);
-							String exportDir = referenceSetType.getExportDir();
-							String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
-							String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (refsetsOfThisType.size() > 1 ? refsetToExport : "");
-							exportComponents(
-									ReferenceSetMember.class,
-									entryDirectory,
-									entryFilenamePrefix,
-									filenameEffectiveDate,
-									exportType,
-									zipOutputStream,
-									memberQuery,
-									transientEffectiveTime,
-									referenceSetType.getFieldNameList());
-						}
+			exportFiles = getExportFiles(exportType, forClassification, moduleIds, startEffectiveTime, branchCriteria, componentCriteria);
+			writeExportFiles(exportFiles, filenameEffectiveDate, exportType, transientEffectiveTime, exportJob);
+
+			File exportFile = writeArchive(exportFiles, filenameEffectiveDate, exportType);
+			logger.info("{} export complete in {} seconds.", exportType, TimerUtil.secondsSince(startTime));
+			return exportFile;
+		} catch (IOException e) {
+			throw new ExportException("Failed to write RF2 zip file.", e);
+		} finally {
+			deleteTempFiles(exportFiles);
+			branchService.unlock(branchPath);
+		}
+	}
+
+	/**
+	 * Delta export of the classification content of a branch.
+	 * The unreleased content of the parent branch at this branch's base is exported once and cached,
+	 * then each classification of a child branch only exports the components changed on that branch.
+	 */
+	public File exportRF2ArchiveFileForClassification(String branchPath, String filenameEffectiveDate) throws ExportException {
+		Branch branch = branchService.findBranchOrThrow(branchPath);
+		if (classificationBaseCacheSize < 1 || !branchPath.contains("/")) {
+			return exportRF2ArchiveFile(branchPath, filenameEffectiveDate, RF2Type.DELTA, true);
+		}
+
+		Date startTime = new Date();
+		List<ExportFile> exportFiles = new ArrayList<>();
+		try {
+			branchService.lockBranch(branchPath, branchMetadataHelper.getBranchLockMetadata("Exporting RF2 for classification"));
+
+			// Read the branch again now that it is locked
+			branch = branchService.findBranchOrThrow(branchPath);
+			Set<String> changedComponentIds = getComponentIdsChangedOnBranch(branch);
+			if (changedComponentIds != null) {
+				ClassificationBaseExport baseExport = getClassificationBaseExport(PathUtil.getParentPath(branchPath), branch.getBase());
+				BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+				exportFiles = getExportFiles(RF2Type.DELTA, true, null, null, branchCriteria, branchCriteria::getEntityBranchCriteria);
+				// A reference set created on the branch changes the file names, the base can not be used then
+				if (baseExport.hasSameFiles(exportFiles)) {
+					for (ExportFile file : exportFiles) {
+						// Only the components changed on this branch, the rest comes from the base
+						file.contentQuery.must(termsQuery(getIdField(file.componentClass), changedComponentIds));
+					}
+					writeExportFiles(exportFiles, filenameEffectiveDate, RF2Type.DELTA, null, null);
+					boolean baseUsed = true;
+					try {
+						baseExport.appendUnchanged(exportFiles, changedComponentIds);
+					} catch (ExportException e) {
+						logger.warn("Classification base of {} can not be read, it will be exported again.", branchPath, e);
+						classificationBaseExports.invalidate(getClassificationBaseKey(PathUtil.getParentPath(branchPath), branch.getBase()));
+						baseUsed = false;
+					}
+
+					if (baseUsed) {
+						File exportFile = writeArchive(exportFiles, filenameEffectiveDate, RF2Type.DELTA);
+						logger.info("Classification export of {} complete in {} seconds, {} components changed on the branch.",
+								branchPath, TimerUtil.secondsSince(startTime), changedComponentIds.size());
+						return exportFile;
 					}
 				}
 			}
-			logger.info("{} export complete in {} seconds.", exportType, TimerUtil.secondsSince(startTime));
-			return exportFile;
 		} catch (IOException e) {
 			throw new ExportException("Failed to write RF2 zip file.", e);
 		} finally {
+			deleteTempFiles(exportFiles);
 			branchService.unlock(branchPath);
 		}
+		logger.info("Classification base of {} can not be used, exporting the whole delta.", branchPath);
+		return exportRF2ArchiveFile(branchPath, filenameEffectiveDate, RF2Type.DELTA, true);
+	}
+
+	private String getClassificationBaseKey(String parentPath, Date base) {
+		return parentPath + "@" + base.getTime();
+	}
+
+	private ClassificationBaseExport getClassificationBaseExport(String parentPath, Date base) {
+		return classificationBaseExports.get(getClassificationBaseKey(parentPath, base), key -> {
+			logger.info("Exporting classification base of {} at {}.", parentPath, base.getTime());
+			BranchCriteria parentCriteria = versionControlHelper.getBranchCriteriaAtTimepoint(parentPath, base);
+			List<ExportFile> baseFiles = getExportFiles(RF2Type.DELTA, true, null, null, parentCriteria, parentCriteria::getEntityBranchCriteria);
+			try {
+				writeExportFiles(baseFiles, "base", RF2Type.DELTA, null, null);
+			} catch (IOException | ExportException e) {
+				deleteTempFiles(baseFiles);
+				throw new ExportException("Failed to export classification base.", e);
+			}
+			return new ClassificationBaseExport(baseFiles);
+		});
+	}
+
+	/**
+	 * @return the ids of components created, changed or deleted on the branch itself, or null if there are more than the configured maximum.
+	 */
+	private Set<String> getComponentIdsChangedOnBranch(Branch branch) {
+		BranchCriteria changesCriteria = versionControlHelper.getChangesOnBranchCriteria(branch);
+		Set<String> componentIds = new HashSet<>();
+		for (Class<? extends SnomedComponent> componentClass : Arrays.asList(Concept.class, Relationship.class, ReferenceSetMember.class)) {
+			Set<String> versionsReplaced = branch.getVersionsReplaced(componentClass);
+			if (versionsReplaced.size() > classificationMaxBranchChanges) {
+				return null;
+			}
+			BoolQueryBuilder query = boolQuery().should(changesCriteria.getEntityBranchCriteria(componentClass));
+			if (!versionsReplaced.isEmpty()) {
+				// Versions from ancestor branches which were replaced or deleted here
+				query.should(termsQuery("_id", versionsReplaced));
+			}
+			try (SearchHitsIterator<? extends SnomedComponent> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(query)
+					.withFields(getIdField(componentClass))
+					.withPageable(LARGE_PAGE)
+					.build(), componentClass)) {
+				while (stream.hasNext()) {
+					componentIds.add(stream.next().getContent().getId());
+					if (componentIds.size() > classificationMaxBranchChanges) {
+						return null;
+					}
+				}
+			}
+		}
+		return componentIds;
+	}
+
+	private List<ExportFile> getExportFiles(RF2Type exportType, boolean forClassification, Set<String> moduleIds, String startEffectiveTime,
+			BranchCriteria branchCriteria, Function<Class<? extends DomainEntity>, BoolQueryBuilder> componentCriteria) {
+
+		List<ExportFile> exportFiles = new ArrayList<>();
+
+		// Concepts
+		exportFiles.add(new ExportFile(Concept.class, "Terminology/", "sct2_Concept_",
+				getContentQuery(exportType, moduleIds, startEffectiveTime, componentCriteria.apply(Concept.class)), null, false));
+
+		if (!forClassification) {
+			// Descriptions
+			BoolQueryBuilder descriptionBranchCriteria = componentCriteria.apply(Description.class);
+			BoolQueryBuilder descriptionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
+			descriptionContentQuery.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
+			exportFiles.add(new ExportFile(Description.class, "Terminology/", "sct2_Description_", descriptionContentQuery, null, false));
+
+			// Text Definitions
+			BoolQueryBuilder textDefinitionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
+			textDefinitionContentQuery.must(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
+			exportFiles.add(new ExportFile(Description.class, "Terminology/", "sct2_TextDefinition_", textDefinitionContentQuery, null, false));
+		}
+
+		// Stated Relationships
+		BoolQueryBuilder relationshipBranchCritera = componentCriteria.apply(Relationship.class);
+		BoolQueryBuilder relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
+		relationshipQuery.must(termQuery("characteristicTypeId", Concepts.STATED_RELATIONSHIP));
+		exportFiles.add(new ExportFile(Relationship.class, "Terminology/", "sct2_StatedRelationship_", relationshipQuery, null, false));
+
+		// Inferred Relationships
+		relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
+		// Not 'stated' will include inferred and additional
+		relationshipQuery.mustNot(termQuery("characteristicTypeId", Concepts.STATED_RELATIONSHIP));
+		exportFiles.add(new ExportFile(Relationship.class, "Terminology/", "sct2_Relationship_", relationshipQuery, null, false));
+
+		// Reference Sets
+		List<ReferenceSetType> referenceSetTypes = getReferenceSetTypes(branchCriteria.getEntityBranchCriteria(ReferenceSetType.class)).stream()
+				.filter(type -> !forClassification || refsetTypesRequiredForClassification.contains(type.getConceptId()))
+				.collect(Collectors.toList());
+
+		logger.info("{} Reference Set Types found for this export: {}", referenceSetTypes.size(), referenceSetTypes);
+
+		BoolQueryBuilder memberBranchCriteria = componentCriteria.apply(ReferenceSetMember.class);
+		for (ReferenceSetType referenceSetType : referenceSetTypes) {
+			List<Long> refsetsOfThisType = new ArrayList<>(queryService.findDescendantIdsAsUnion(branchCriteria, true, Collections.singleton(Long.parseLong(referenceSetType.getConceptId()))));
+			refsetsOfThisType.add(Long.parseLong(referenceSetType.getConceptId()));
+			for (Long refsetToExport : refsetsOfThisType) {
+				BoolQueryBuilder memberQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, memberBranchCriteria);
+				memberQuery.must(QueryBuilders.termQuery(ReferenceSetMember.Fields.REFSET_ID, refsetToExport));
+				String exportDir = referenceSetType.getExportDir();
+				String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
+				String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (refsetsOfThisType.size() > 1 ? refsetToExport : "");
+				// Empty reference set files are left out of the archive, no need to count members up front
+				exportFiles.add(new ExportFile(ReferenceSetMember.class, entryDirectory, entryFilenamePrefix, memberQuery, referenceSetType.getFieldNameList(), true));
+			}
+		}
+		return exportFiles;
+	}
+
+	private File writeArchive(List<ExportFile> exportFiles, String filenameEffectiveDate, RF2Type exportType) throws IOException {
+		File exportFile = File.createTempFile("export-" + new Date().getTime(), ".zip");
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(exportFile))) {
+			for (ExportFile file : exportFiles) {
+				if (file.lines > 0 || !file.omitIfEmpty) {
+					zipOutputStream.putNextEntry(new ZipEntry(file.getEntryPath(filenameEffectiveDate, exportType)));
+					Files.copy(file.tempFile.toPath(), zipOutputStream);
+					zipOutputStream.closeEntry();
+				}
+			}
+		}
+		return exportFile;
+	}
+
+	private void deleteTempFiles(List<ExportFile> exportFiles) {
+		for (ExportFile file : exportFiles) {
+			if (file.tempFile != null) {
+				file.tempFile.delete();
+			}
+		}
+	}
+
+	// Writes each file into its own temporary file, several files at once
+	private void writeExportFiles(List<ExportFile> exportFiles, String filenameEffectiveDate, RF2Type exportType, String transientEffectiveTime,
+			ExportConfiguration exportJob) throws IOException {
+
+		logger.info("Writing {} export files, {} at a time.", exportFiles.size(), exportParallelism);
+		if (exportJob != null) {
+			exportJob.setFileCount(exportFiles.size());
+			exportJob.setExportedFiles(new ArrayList<>());
+			exportConfigurationRepository.save(exportJob);
+		}
+		for (ExportFile file : exportFiles) {
+			file.tempFile = File.createTempFile("export-file-", ".txt");
+		}
+
+		List<Future<?>> futures = new ArrayList<>();
+		for (ExportFile file : exportFiles) {
+			futures.add(exportExecutor.submit(() -> {
+				String entryPath = file.getEntryPath(filenameEffectiveDate, exportType);
+				file.lines = exportComponents(file.componentClass, entryPath, file.tempFile, file.contentQuery, exportType == RF2Type.FULL,
+						transientEffectiveTime, file.extraFieldNames);
+				logger.info("{} lines exported to {}", file.lines, entryPath);
+				if (exportJob != null) {
+					synchronized (exportJob) {
+						exportJob.getExportedFiles().add(new ExportConfiguration.ExportedFile(entryPath, file.lines));
+						exportConfigurationRepository.save(exportJob);
+					}
+				}
+			}));
+		}
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExportException("Export interrupted.", e);
+		} catch (ExecutionException e) {
+			throw new ExportException("Failed to export RF2 file.", e.getCause());
+		} finally {
+			// Stop the remaining files if one failed
+			futures.forEach(future -> future.cancel(true));
+		}
 	}
 
 	public String getFilename(ExportConfiguration exportConfiguration) {
@@ -215,6 +426,30 @@ public class ExportService {
 				exportConfiguration.getType().getName());
 	}
 
+	/*
+	 * Every version of a component that was ever visible on this branch is still held in the store.
+	 * The branch's own documents are all included, then each ancestor's documents up to the point where the child was last rebased.
+	 * Released versions come from that history, unreleased content only from the current state.
+	 */
+	private Function<Class<? extends DomainEntity>, BoolQueryBuilder> getFullHistoryCriteria(String branchPath, BranchCriteria branchCriteria) {
+		BoolQueryBuilder historyCriteria = boolQuery().should(termQuery("path", branchPath));
+		Branch branch = branchService.findBranchOrThrow(branchPath);
+		while (branch.getPath().contains("/")) {
+			String parentPath = PathUtil.getParentPath(branch.getPath());
+			historyCriteria.should(boolQuery()
+					.must(termQuery("path", parentPath))
+					.must(rangeQuery("start").lte(branch.getBase().getTime())));
+			branch = branchService.findAtTimepointOrThrow(parentPath, branch.getBase());
+		}
+		return componentClass -> boolQuery()
+				.should(boolQuery()
+						.must(historyCriteria)
+						.must(existsQuery(SnomedComponent.Fields.EFFECTIVE_TIME)))
+				.should(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(componentClass))
+						.mustNot(existsQuery(SnomedComponent.Fields.EFFECTIVE_TIME)));
+	}
+
 	private BoolQueryBuilder getContentQuery(RF2Type exportType, Set<String> moduleIds, String startEffectiveTime, QueryBuilder branchCriteria) {
 		BoolQueryBuilder contentQuery = boolQuery().must(branchCriteria);
 		if (exportType == RF2Type.DELTA) {
@@ -233,28 +468,40 @@ public class ExportService {
 		return contentQuery;
 	}
 
-	private <T> int exportComponents(Class<T> componentClass, String entryDirectory, String entryFilenamePrefix, String filenameEffectiveDate,
-									 RF2Type exportType, ZipOutputStream zipOutputStream, BoolQueryBuilder contentQuery, String transientEffectiveTime, List<String> extraFieldNames) {
+	private <T> int exportComponents(Class<T> componentClass, String componentFilePath, File file, BoolQueryBuilder contentQuery, boolean full,
+			String transientEffectiveTime, List<String> extraFieldNames) {
 
-		String componentFilePath = "SnomedCT_Export/RF2Release/" + entryDirectory + entryFilenamePrefix + String.format("%s_INT_%s.txt", exportType.getName(), filenameEffectiveDate);
 		logger.info("Exporting file {}", componentFilePath);
-		try {
-			// Open zip entry
-			zipOutputStream.putNextEntry(new ZipEntry(componentFilePath));
-
-			// Stream components into zip
-			try (ExportWriter<T> writer = getExportWriter(componentClass, zipOutputStream, extraFieldNames);
-					SearchHitsIterator<T> componentStream = elasticsearchTemplate.searchForStream(getNativeSearchQuery(contentQuery), componentClass)) {
-				writer.setTransientEffectiveTime(transientEffectiveTime);
-				writer.writeHeader();
+		NativeSearchQuery searchQuery = getNativeSearchQuery(contentQuery);
+		if (full) {
+			// Rows in id then effectiveTime order, unreleased last
+			searchQuery.addSort(Sort.by(getIdField(componentClass), SnomedComponent.Fields.EFFECTIVE_TIME));
+		}
+		// Stream components into the file
+		try (OutputStream outputStream = new FileOutputStream(file);
+				ExportWriter<T> writer = getExportWriter(componentClass, outputStream, extraFieldNames);
+				SearchHitsIterator<T> componentStream = elasticsearchTemplate.searchForStream(searchQuery, componentClass)) {
+			writer.setTransientEffectiveTime(transientEffectiveTime);
+			writer.writeHeader();
+			if (full) {
+				// The same version is held on more than one branch after versioning and rebase, write it once
+				String lastId = null;
+				Integer lastEffectiveTime = null;
+				while (componentStream.hasNext()) {
+					T component = componentStream.next().getContent();
+					IdAndEffectiveTimeComponent version = (IdAndEffectiveTimeComponent) component;
+					if (!version.getId().equals(lastId) || !Objects.equals(version.getEffectiveTimeI(), lastEffectiveTime)) {
+						writer.write(component);
+						lastId = version.getId();
+						lastEffectiveTime = version.getEffectiveTimeI();
+					}
+				}
+			} else {
 				componentStream.forEachRemaining(hit -> writer.write(hit.getContent()));
-				return writer.getContentLinesWritten();
-			} finally {
-				// Close zip entry
-				zipOutputStream.closeEntry();
 			}
+			return writer.getContentLinesWritten();
 		} catch (IOException e) {
-			throw new ExportException("Failed to write export zip entry '" + componentFilePath + "'", e);
+			throw new ExportException("Failed to write export file '" + componentFilePath + "'", e);
 		}
 	}
 
@@ -274,6 +521,19 @@ public class ExportService {
 		throw new UnsupportedOperationException("Not able to export component of type " + componentClass.getCanonicalName());
 	}
 
+	private String getIdField(Class<?> componentClass) {
+		if (componentClass.equals(Concept.class)) {
+			return Concept.Fields.CONCEPT_ID;
+		}
+		if (componentClass.equals(Description.class)) {
+			return Description.Fields.DESCRIPTION_ID;
+		}
+		if (componentClass.equals(Relationship.class)) {
+			return Relationship.Fields.RELATIONSHIP_ID;
+		}
+		return ReferenceSetMember.Fields.MEMBER_ID;
+	}
+
 	private List<ReferenceSetType> getReferenceSetTypes(QueryBuilder branchCriteria) {
 		BoolQueryBuilder contentQuery = getContentQuery(RF2Type.SNAPSHOT, null, null, branchCriteria);
 		return elasticsearchTemplate.search(new NativeSearchQueryBuilder()
@@ -294,4 +554,88 @@ public class ExportService {
 	private BufferedWriter getBufferedWriter(OutputStream outputStream) {
 		return new BufferedWriter(new OutputStreamWriter(outputStream));
 	}
+
+	private static final class ExportFile {
+
+		private final Class<?> componentClass;
+		private final String entryDirectory;
+		private final String entryFilenamePrefix;
+		private final BoolQueryBuilder contentQuery;
+		private final List<String> extraFieldNames;
+		private final boolean omitIfEmpty;
+		private File tempFile;
+		private volatile int lines;
+
+		private ExportFile(Class<?> componentClass, String entryDirectory, String entryFilenamePrefix, BoolQueryBuilder contentQuery,
+				List<String> extraFieldNames, boolean omitIfEmpty) {
+			this.componentClass = componentClass;
+			this.entryDirectory = entryDirectory;
+			this.entryFilenamePrefix = entryFilenamePrefix;
+			this.contentQuery = contentQuery;
+			this.extraFieldNames = extraFieldNames;
+			this.omitIfEmpty = omitIfEmpty;
+		}
+
+		private String getEntryPath(String filenameEffectiveDate, RF2Type exportType) {
+			return "SnomedCT_Export/RF2Release/" + entryDirectory + entryFilenamePrefix + String.format("%s_INT_%s.txt", exportType.getName(), filenameEffectiveDate);
+		}
+
+		private String getKey() {
+			return entryDirectory + entryFilenamePrefix;
+		}
+	}
+
+	private static final class ClassificationBaseExport {
+
+		private final Map<String, ExportFile> filesByKey = new HashMap<>();
+		private boolean deleted;
+
+		private ClassificationBaseExport(List<ExportFile> files) {
+			files.forEach(file -> filesByKey.put(file.getKey(), file));
+		}
+
+		private boolean hasSameFiles(List<ExportFile> files) {
+			return files.stream().map(ExportFile::getKey).collect(Collectors.toSet()).equals(filesByKey.keySet());
+		}
+
+		// Appends the base rows of components not changed on the branch to each branch file
+		private synchronized void appendUnchanged(List<ExportFile> branchFiles, Set<String> changedComponentIds) throws IOException {
+			if (deleted) {
+				throw new ExportException("Classification base export was evicted during use.");
+			}
+			for (ExportFile branchFile : branchFiles) {
+				ExportFile baseFile = filesByKey.get(branchFile.getKey());
+				if (baseFile == null) {
+					continue;
+				}
+				int lines = branchFile.lines;
+				try (BufferedReader reader = Files.newBufferedReader(baseFile.tempFile.toPath());
+						BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(branchFile.tempFile, true)))) {
+					// Skip header
+					reader.readLine();
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.isEmpty()) {
+							continue;
+						}
+						int idEnd = line.indexOf('\t');
+						if (idEnd == -1) {
+							throw new ExportException("Classification base export file " + baseFile.tempFile.getName() + " contains a line without an id column.");
+						}
+						if (!changedComponentIds.contains(line.substring(0, idEnd))) {
+							writer.write(line);
+							writer.write("\r\n");
+							lines++;
+						}
+					}
+				}
+				branchFile.lines = lines;
+			}
+		}
+
+		private synchronized void delete() {
+			deleted = true;
+			filesByKey.values().forEach(file -> file.tempFile.delete());
+		}
+	}
 }
@@ -15,8 +15,9 @@ public class FullImportComponentFactoryImpl extends ImportComponentFactoryImpl i
 	private final String stopImportAfterEffectiveTime;
 
 	FullImportComponentFactoryImpl(ConceptUpdateHelper conceptUpdateHelper, ReferenceSetMemberService memberService, BranchService branchService,
-			BranchMetadataHelper branchMetadataHelper, CodeSystemService codeSystemService, String path, String stopImportAfterEffectiveTime) {
-		super(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, path, null, false, false);
+			BranchMetadataHelper branchMetadataHelper, CodeSystemService codeSystemService, String path, String stopImportAfterEffectiveTime,
+			int flushInterval, int persistParallelism, ImportMetrics metrics) {
+		super(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, path, null, false, false, flushInterval, persistParallelism, metrics);
 		this.branchMetadataHelper = branchMetadataHelper;
 		this.basePath = path;
 		this.stopImportAfterEffectiveTime = stopImportAfterEffectiveTime;
@@ -38,6 +39,7 @@ public class FullImportComponentFactoryImpl extends ImportComponentFactoryImpl i
 
 		// Create codesystem version if there is one on this path
 		int effectiveDate = Integer.parseInt(releaseDate);
+		getMetrics().startPhase(ImportMetrics.Phase.VERSIONING);
 		codeSystemService.createVersionIfCodeSystemFoundOnPath(basePath, effectiveDate);
 
 		if (stopImportAfterEffectiveTime != null && stopImportAfterEffectiveTime.equals(releaseDate)) {
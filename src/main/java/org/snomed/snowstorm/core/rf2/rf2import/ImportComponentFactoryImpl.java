@@ -19,6 +19,7 @@ import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
@@ -31,12 +32,16 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 
 	private static Logger logger = LoggerFactory.getLogger(ImportComponentFactoryImpl.class);
-	private static final int FLUSH_INTERVAL = 5000;
 
 	private final BranchService branchService;
 	private final BranchMetadataHelper branchMetadataHelper;
 	private final VersionControlHelper versionControlHelper;
 	private final String path;
+	private final int flushInterval;
+	private final int persistParallelism;
+	// Only used when more than one batch per component type may be persisted at once
+	private final ExecutorService persistExecutor;
+	private final ImportMetrics metrics;
 	private Commit commit;
 	private BranchCriteria branchCriteriaBeforeOpenCommit;
 
@@ -47,60 +52,75 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	private List<PersistBuffer> persistBuffers;
 	private List<PersistBuffer> coreComponentPersistBuffers;
 	private MaxEffectiveTimeCollector maxEffectiveTimeCollector;
-	private Map<String, AtomicLong> componentTypeSkippedMap = new HashMap<>();
+	private Map<String, AtomicLong> componentTypeSkippedMap = new ConcurrentHashMap<>();
 
 	// A small number of stated relationships also appear in the inferred file. These should not be persisted when importing a snapshot.
 	Set<Long> statedRelationshipsToSkip = Sets.newHashSet(3187444026L, 3192499027L, 3574321020L);
 	boolean coreComponentsFlushed;
 
 	ImportComponentFactoryImpl(ConceptUpdateHelper conceptUpdateHelper, ReferenceSetMemberService memberService, BranchService branchService,
-			BranchMetadataHelper branchMetadataHelper, String path, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes) {
+			BranchMetadataHelper branchMetadataHelper, String path, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes,
+			int flushInterval, int persistParallelism, ImportMetrics metrics) {
 
 		this.branchService = branchService;
 		this.branchMetadataHelper = branchMetadataHelper;
 		this.path = path;
+		this.flushInterval = Math.max(1, flushInterval);
+		this.persistParallelism = Math.max(1, persistParallelism);
+		this.metrics = metrics;
+		if (this.persistParallelism > 1) {
+			// One thread per in flight batch of each component type
+			persistExecutor = Executors.newFixedThreadPool(this.persistParallelism * 4, runnable -> {
+				Thread thread = new Thread(runnable, "rf2-import-persist");
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			persistExecutor = null;
+		}
 		persistBuffers = new ArrayList<>();
 		maxEffectiveTimeCollector = new MaxEffectiveTimeCollector();
 		coreComponentPersistBuffers = new ArrayList<>();
 		ElasticsearchOperations elasticsearchTemplate = conceptUpdateHelper.getElasticsearchTemplate();
 		versionControlHelper = conceptUpdateHelper.getVersionControlHelper();
 
-		conceptPersistBuffer = new PersistBuffer<Concept>() {
+		conceptPersistBuffer = new PersistBuffer<Concept>("Concept") {
 			@Override
 			public void persistCollection(Collection<Concept> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Concept.class, copyReleaseFields, clearEffectiveTimes);
 				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchConcepts(entities, commit);
+					saveWithinCommit(() -> conceptUpdateHelper.doSaveBatchConcepts(entities, commit));
 				}
 			}
 		};
 		coreComponentPersistBuffers.add(conceptPersistBuffer);
 
-		descriptionPersistBuffer = new PersistBuffer<Description>() {
+		descriptionPersistBuffer = new PersistBuffer<Description>("Description") {
 			@Override
 			public void persistCollection(Collection<Description> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Description.class, copyReleaseFields, clearEffectiveTimes);
 				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchDescriptions(entities, commit);
+					saveWithinCommit(() -> conceptUpdateHelper.doSaveBatchDescriptions(entities, commit));
 				}
 			}
 		};
 		coreComponentPersistBuffers.add(descriptionPersistBuffer);
 
-		relationshipPersistBuffer = new PersistBuffer<Relationship>() {
+		relationshipPersistBuffer = new PersistBuffer<Relationship>("Relationship") {
 			@Override
 			public void persistCollection(Collection<Relationship> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Relationship.class, copyReleaseFields, clearEffectiveTimes);
 				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchRelationships(entities, commit);
+					saveWithinCommit(() -> conceptUpdateHelper.doSaveBatchRelationships(entities, commit));
 				}
 			}
 		};
 		coreComponentPersistBuffers.add(relationshipPersistBuffer);
 
-		memberPersistBuffer = new PersistBuffer<ReferenceSetMember>() {
+		memberPersistBuffer = new PersistBuffer<ReferenceSetMember>("ReferenceSetMember") {
 			@Override
-			public void persistCollection(Collection<ReferenceSetMember> entities) {
+			void beforePersist() {
+				// Runs on the loading thread, a persist thread must not wait for other persist threads
 				if (!coreComponentsFlushed) { // Avoid having to sync to check this
 					synchronized (this) {
 						if (!coreComponentsFlushed) {
@@ -109,14 +129,29 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 						}
 					}
 				}
+			}
+
+			@Override
+			public void persistCollection(Collection<ReferenceSetMember> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, ReferenceSetMember.class, copyReleaseFields, clearEffectiveTimes);
 				if (!entities.isEmpty()) {
-					memberService.doSaveBatchMembers(entities, commit);
+					saveWithinCommit(() -> memberService.doSaveBatchMembers(entities, commit));
 				}
 			}
 		};
 	}
 
+	/*
+	 * Batches of every component type may be saved by several persist threads at once.
+	 * Saving ends the old versions and records them on the commit, which is not thread safe, so only the
+	 * existing version lookups in processEntities run concurrently.
+	 */
+	private void saveWithinCommit(Runnable save) {
+		synchronized (commit) {
+			save.run();
+		}
+	}
+
 	/*
 		- Mark as changed for version control.
 		- Remove if earlier or equal effectiveTime to existing.
@@ -192,11 +227,13 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 
 	@Override
 	public void loadingComponentsStarting() {
+		metrics.startPhase(ImportMetrics.Phase.READING);
 		commit = branchService.openCommit(path, branchMetadataHelper.getBranchLockMetadata("Loading components from RF2 import."));
 		branchCriteriaBeforeOpenCommit = versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit);
 	}
 
 	protected void setCommit(Commit commit) {
+		metrics.startPhase(ImportMetrics.Phase.READING);
 		this.commit = commit;
 		branchCriteriaBeforeOpenCommit = versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit);
 	}
@@ -212,11 +249,21 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 				logger.info("{} components of type {} were not imported from RF2 because a newer version was found.", componentTypeSkippedMap.get(type).get(), type);
 			}
 		}
+		// All in flight batches are complete before the commit
+		metrics.startPhase(ImportMetrics.Phase.FLUSHING);
 		persistBuffers.forEach(PersistBuffer::flush);
+		// Commit listeners, including the semantic index update, run on close
+		metrics.startPhase(ImportMetrics.Phase.COMMITTING);
 		commit.markSuccessful();
 		commit.close();
 	}
 
+	void shutdown() {
+		if (persistExecutor != null) {
+			persistExecutor.shutdownNow();
+		}
+	}
+
 	@Override
 	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
 		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
@@ -291,28 +338,93 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 		return branchService;
 	}
 
+	protected ImportMetrics getMetrics() {
+		return metrics;
+	}
+
 	private boolean isActive(String active) {
 		return "1".equals(active);
 	}
 
 	private abstract class PersistBuffer<E extends Entity> {
 
+		private final String componentType;
 		private List<E> entities = new ArrayList<>();
+		private final Deque<Future<?>> batchesInFlight = new ArrayDeque<>();
 
-		PersistBuffer() {
+		PersistBuffer(String componentType) {
+			this.componentType = componentType;
 			persistBuffers.add(this);
 		}
 
 		synchronized void save(E entity) {
 			entities.add(entity);
-			if (entities.size() >= FLUSH_INTERVAL) {
-				flush();
+			if (entities.size() >= flushInterval) {
+				persistBatch();
 			}
 		}
 
 		synchronized void flush() {
-			persistCollection(entities);
-			entities.clear();
+			if (persistExecutor == null) {
+				persistBatch();
+			} else {
+				if (!entities.isEmpty()) {
+					persistBatch();
+				}
+				while (!batchesInFlight.isEmpty()) {
+					waitForBatch(batchesInFlight.removeFirst());
+				}
+			}
+		}
+
+		private void persistBatch() {
+			beforePersist();
+			if (persistExecutor == null) {
+				persistAndRecord(entities);
+				entities.clear();
+				return;
+			}
+			// Back-pressure, loading waits while the maximum number of batches of this type are being persisted
+			while (batchesInFlight.size() >= persistParallelism) {
+				waitForBatch(batchesInFlight.removeFirst());
+			}
+			List<E> batch = entities;
+			entities = new ArrayList<>();
+			batchesInFlight.add(persistExecutor.submit(() -> persistAndRecord(batch)));
+		}
+
+		private void persistAndRecord(List<E> batch) {
+			int rowsRead = batch.size();
+			long start = System.nanoTime();
+			try {
+				persistCollection(batch);
+			} catch (RuntimeException e) {
+				metrics.recordFailure(e);
+				throw e;
+			}
+			if (rowsRead > 0) {
+				// Rows with an existing newer version have been removed from the batch
+				metrics.recordBatch(componentType, rowsRead, batch.size(), System.nanoTime() - start);
+			}
+		}
+
+		private void waitForBatch(Future<?> batch) {
+			try {
+				batch.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while persisting RF2 components.", e);
+			} catch (ExecutionException e) {
+				batchesInFlight.forEach(future -> future.cancel(true));
+				batchesInFlight.clear();
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException("Failed to persist RF2 components.", e.getCause());
+			}
+		}
+
+		void beforePersist() {
 		}
 
 		abstract void persistCollection(Collection<E> entities);
@@ -22,6 +22,8 @@ public class ImportJob {
 
 	private String errorMessage;
 
+	private ImportMetrics metrics;
+
 	public void setStatus(ImportStatus status) {
 		this.status = status;
 	}
@@ -50,6 +52,14 @@ public class ImportJob {
 		return importConfiguration.isCreateCodeSystemVersion();
 	}
 
+	public Integer getPersistBatchSize() {
+		return importConfiguration.getPersistBatchSize();
+	}
+
+	public Integer getPersistParallelism() {
+		return importConfiguration.getPersistParallelism();
+	}
+
 	@JsonIgnore
 	public boolean isClearEffectiveTimes() {
 		return importConfiguration.isClearEffectiveTimes();
@@ -62,4 +72,12 @@ public class ImportJob {
 	public String getErrorMessage() {
 		return errorMessage;
 	}
+
+	public ImportMetrics getMetrics() {
+		return metrics;
+	}
+
+	void setMetrics(ImportMetrics metrics) {
+		this.metrics = metrics;
+	}
 }
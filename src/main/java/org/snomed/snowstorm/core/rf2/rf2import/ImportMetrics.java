@@ -0,0 +1,132 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import io.micrometer.core.instrument.Metrics;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and throughput of one RF2 import, shown on the import job and recorded as Micrometer metrics.
+ * Batch latency is the time to check and bulk save one batch of rows.
+ */
+public class ImportMetrics {
+
+	public enum Phase {
+		READING, FLUSHING, COMMITTING, VERSIONING
+	}
+
+	private final long startNanos = System.nanoTime();
+	private Long endNanos;
+	private Phase phase;
+	private long phaseStartNanos;
+	private final Map<Phase, Long> phaseMillis = new EnumMap<>(Phase.class);
+	private final Map<String, ComponentTypeMetrics> componentTypes = new TreeMap<>();
+	private final LongArrayList batchLatenciesNanos = new LongArrayList();
+	private final AtomicLong rejections = new AtomicLong();
+
+	synchronized void startPhase(Phase phase) {
+		endPhase();
+		this.phase = phase;
+		phaseStartNanos = System.nanoTime();
+	}
+
+	synchronized void complete() {
+		endPhase();
+		endNanos = System.nanoTime();
+	}
+
+	private void endPhase() {
+		if (phase != null) {
+			long nanos = System.nanoTime() - phaseStartNanos;
+			phaseMillis.merge(phase, TimeUnit.NANOSECONDS.toMillis(nanos), Long::sum);
+			Metrics.timer("snowstorm.import.phase", "phase", phase.name()).record(nanos, TimeUnit.NANOSECONDS);
+			phase = null;
+		}
+	}
+
+	void recordBatch(String componentType, int rowsRead, int rowsWritten, long latencyNanos) {
+		ComponentTypeMetrics typeMetrics;
+		synchronized (this) {
+			typeMetrics = componentTypes.computeIfAbsent(componentType, type -> new ComponentTypeMetrics());
+			batchLatenciesNanos.add(latencyNanos);
+		}
+		typeMetrics.rowsRead.addAndGet(rowsRead);
+		typeMetrics.rowsWritten.addAndGet(rowsWritten);
+		Metrics.counter("snowstorm.import.rows", "type", componentType, "outcome", "read").increment(rowsRead);
+		Metrics.counter("snowstorm.import.rows", "type", componentType, "outcome", "written").increment(rowsWritten);
+		Metrics.timer("snowstorm.import.batch", "type", componentType).record(latencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	void recordFailure(Throwable e) {
+		// Elasticsearch rejects bulk requests when its write queue is full
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			String message = cause.getMessage();
+			if (message != null && message.contains("rejected_execution")) {
+				rejections.incrementAndGet();
+				Metrics.counter("snowstorm.import.rejections").increment();
+				return;
+			}
+		}
+	}
+
+	public synchronized Phase getPhase() {
+		return phase;
+	}
+
+	public synchronized Map<Phase, Long> getPhaseDurationsMillis() {
+		Map<Phase, Long> durations = new EnumMap<>(phaseMillis);
+		if (phase != null) {
+			durations.merge(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - phaseStartNanos), Long::sum);
+		}
+		return durations;
+	}
+
+	public synchronized long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis((endNanos != null ? endNanos : System.nanoTime()) - startNanos);
+	}
+
+	public synchronized Map<String, Map<String, Number>> getComponentTypes() {
+		double seconds = Math.max(1, getElapsedMillis()) / 1000d;
+		Map<String, Map<String, Number>> types = new TreeMap<>();
+		componentTypes.forEach((type, typeMetrics) -> {
+			Map<String, Number> values = new LinkedHashMap<>();
+			long rowsWritten = typeMetrics.rowsWritten.get();
+			values.put("rowsRead", typeMetrics.rowsRead.get());
+			values.put("rowsWritten", rowsWritten);
+			values.put("rowsPerSecond", Math.round(rowsWritten / seconds));
+			types.put(type, values);
+		});
+		return types;
+	}
+
+	public synchronized Map<String, Number> getBatchLatencyMillis() {
+		Map<String, Number> latencies = new LinkedHashMap<>();
+		latencies.put("count", batchLatenciesNanos.size());
+		if (!batchLatenciesNanos.isEmpty()) {
+			long[] sorted = batchLatenciesNanos.toLongArray();
+			LongArrays.quickSort(sorted);
+			latencies.put("p50", percentileMillis(sorted, 0.5));
+			latencies.put("p95", percentileMillis(sorted, 0.95));
+			latencies.put("p99", percentileMillis(sorted, 0.99));
+			latencies.put("max", TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length - 1]));
+		}
+		return latencies;
+	}
+
+	public long getRejections() {
+		return rejections.get();
+	}
+
+	private static long percentileMillis(long[] sorted, double percentile) {
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+	}
+
+	private static final class ComponentTypeMetrics {
+		private final AtomicLong rowsRead = new AtomicLong();
+		private final AtomicLong rowsWritten = new AtomicLong();
+	}
+}
@@ -3,7 +3,6 @@ package org.snomed.snowstorm.core.rf2.rf2import;
 import io.kaicode.elasticvc.api.BranchService;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.ihtsdo.otf.snomedboot.ReleaseImporter;
-import org.ihtsdo.otf.snomedboot.factory.HistoryAwareComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +10,7 @@ import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -47,6 +47,12 @@ public class ImportService {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Value("${import.persist.batch-size:5000}")
+	private int defaultPersistBatchSize;
+
+	@Value("${import.persist.parallelism:1}")
+	private int defaultPersistParallelism;
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	public ImportService() {
@@ -94,6 +100,11 @@ public class ImportService {
 		}
 		metaData.put(DISABLE_MRCM_AUTO_UPDATE_METADATA_KEY, "true");
 		branchService.updateMetadata(branchPath, metaData);
+		int persistBatchSize = job.getPersistBatchSize() != null ? job.getPersistBatchSize() : defaultPersistBatchSize;
+		int persistParallelism = job.getPersistParallelism() != null ? job.getPersistParallelism() : defaultPersistParallelism;
+		ImportComponentFactoryImpl importComponentFactory = null;
+		ImportMetrics metrics = new ImportMetrics();
+		job.setMetrics(metrics);
 		try {
 			Date start = new Date();
 			logger.info("Starting RF2 {}{} import on branch {}. ID {}", importType, patchReleaseVersion != null ? " RELEASE PATCH on effectiveTime " + patchReleaseVersion : "", branchPath, importId);
@@ -108,19 +119,22 @@ public class ImportService {
 				case DELTA: {
 					// If we are not creating a new version copy the release fields from the existing components
 					boolean copyReleaseFields = !job.isCreateCodeSystemVersion();
-					ImportComponentFactoryImpl importComponentFactory = getImportComponentFactory(branchPath, patchReleaseVersion, copyReleaseFields, job.isClearEffectiveTimes());
+					importComponentFactory = getImportComponentFactory(branchPath, patchReleaseVersion, copyReleaseFields, job.isClearEffectiveTimes(),
+							persistBatchSize, persistParallelism, metrics);
 					releaseImporter.loadDeltaReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
 					maxEffectiveTime = importComponentFactory.getMaxEffectiveTime();
 					break;
 				}
 				case SNAPSHOT: {
-					ImportComponentFactoryImpl importComponentFactory = getImportComponentFactory(branchPath, patchReleaseVersion, false, false);
+					importComponentFactory = getImportComponentFactory(branchPath, patchReleaseVersion, false, false, persistBatchSize, persistParallelism, metrics);
 					releaseImporter.loadSnapshotReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
 					maxEffectiveTime = importComponentFactory.getMaxEffectiveTime();
 					break;
 				}
 				case FULL: {
-					releaseImporter.loadFullReleaseFiles(releaseFileStream, loadingProfile, getFullImportComponentFactory(branchPath));
+					FullImportComponentFactoryImpl fullImportComponentFactory = getFullImportComponentFactory(branchPath, persistBatchSize, persistParallelism, metrics);
+					importComponentFactory = fullImportComponentFactory;
+					releaseImporter.loadFullReleaseFiles(releaseFileStream, loadingProfile, fullImportComponentFactory);
 					break;
 				}
 			}
@@ -128,6 +142,7 @@ public class ImportService {
 			if (job.isCreateCodeSystemVersion() && importType != FULL) {
 				// Create Code System version if a code system exists on this path
 				if (maxEffectiveTime != null) {
+					metrics.startPhase(ImportMetrics.Phase.VERSIONING);
 					codeSystemService.createVersionIfCodeSystemFoundOnPath(branchPath, maxEffectiveTime);
 				}
 			}
@@ -135,11 +150,17 @@ public class ImportService {
 			job.setStatus(ImportJob.ImportStatus.COMPLETED);
 			long seconds = (new Date().getTime() - start.getTime()) / 1_000;
 			logger.info("Completed RF2 {} import on branch {} in {} seconds. ID {}", importType, branchPath, seconds, importId);
+			logger.info("RF2 import {} phase durations {}, component rows {}, batch latency {}.", importId,
+					metrics.getPhaseDurationsMillis(), metrics.getComponentTypes(), metrics.getBatchLatencyMillis());
 		} catch (Exception e) {
 			logger.error("Failed RF2 {} import on branch {}. ID {}", importType, branchPath, importId, e);
 			job.setStatus(ImportJob.ImportStatus.FAILED);
 			throw e;
 		} finally {
+			metrics.complete();
+			if (importComponentFactory != null) {
+				importComponentFactory.shutdown();
+			}
 			metaData = branchService.findLatest(branchPath).getMetadata();
 			if (metaData != null) {
 				metaData.remove(DISABLE_MRCM_AUTO_UPDATE_METADATA_KEY);
@@ -148,12 +169,15 @@ public class ImportService {
 		}
 	}
 
-	private ImportComponentFactoryImpl getImportComponentFactory(String branchPath, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes) {
-		return new ImportComponentFactoryImpl(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, branchPath, patchReleaseVersion, copyReleaseFields, clearEffectiveTimes);
+	private ImportComponentFactoryImpl getImportComponentFactory(String branchPath, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes,
+			int persistBatchSize, int persistParallelism, ImportMetrics metrics) {
+		return new ImportComponentFactoryImpl(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, branchPath, patchReleaseVersion, copyReleaseFields, clearEffectiveTimes,
+				persistBatchSize, persistParallelism, metrics);
 	}
 
-	private HistoryAwareComponentFactory getFullImportComponentFactory(String branchPath) {
-		return new FullImportComponentFactoryImpl(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, codeSystemService, branchPath, null);
+	private FullImportComponentFactoryImpl getFullImportComponentFactory(String branchPath, int persistBatchSize, int persistParallelism, ImportMetrics metrics) {
+		return new FullImportComponentFactoryImpl(conceptUpdateHelper, memberService, branchService, branchMetadataHelper, codeSystemService, branchPath, null,
+				persistBatchSize, persistParallelism, metrics);
 	}
 
 	@PreAuthorize("hasPermission('AUTHOR', #branchPath)")
@@ -17,6 +17,10 @@ public final class RF2ImportConfiguration {
 	// Used to remove the effectiveTime from imported RF2 rows - for daily build.
 	private Boolean clearEffectiveTimes;
 
+	// Number of rows per bulk request and number of bulk requests per component type in flight, server defaults when null.
+	private Integer persistBatchSize;
+	private Integer persistParallelism;
+
 	public RF2ImportConfiguration() {
 	}
 
@@ -76,4 +80,22 @@ public final class RF2ImportConfiguration {
 		this.patchReleaseVersion = patchReleaseVersion;
 		return this;
 	}
+
+	public Integer getPersistBatchSize() {
+		return persistBatchSize;
+	}
+
+	public RF2ImportConfiguration setPersistBatchSize(Integer persistBatchSize) {
+		this.persistBatchSize = persistBatchSize;
+		return this;
+	}
+
+	public Integer getPersistParallelism() {
+		return persistParallelism;
+	}
+
+	public RF2ImportConfiguration setPersistParallelism(Integer persistParallelism) {
+		this.persistParallelism = persistParallelism;
+		return this;
+	}
 }
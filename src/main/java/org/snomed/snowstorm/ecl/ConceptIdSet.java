@@ -0,0 +1,160 @@
+package org.snomed.snowstorm.ecl;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable set of concept ids held as a sorted primitive array.
+ * Intersection, union and difference are linear merges which only allocate the result,
+ * results are converted to pages of boxed ids only when returned to the caller.
+ */
+public final class ConceptIdSet {
+
+	public static final ConceptIdSet EMPTY = new ConceptIdSet(new long[0], 0);
+
+	private final long[] ids;
+	private final int size;
+
+	private ConceptIdSet(long[] ids, int size) {
+		this.ids = ids;
+		this.size = size;
+	}
+
+	public static ConceptIdSet of(Collection<Long> conceptIds) {
+		long[] ids;
+		if (conceptIds instanceof LongCollection) {
+			ids = ((LongCollection) conceptIds).toLongArray();
+		} else {
+			ids = new long[conceptIds.size()];
+			int i = 0;
+			for (Long conceptId : conceptIds) {
+				ids[i++] = conceptId;
+			}
+		}
+		return ofUnsorted(ids, ids.length);
+	}
+
+	/**
+	 * @param ids array which becomes owned by the set, may be unsorted and contain duplicates.
+	 */
+	public static ConceptIdSet ofUnsorted(long[] ids, int length) {
+		Arrays.sort(ids, 0, length);
+		int size = 0;
+		for (int i = 0; i < length; i++) {
+			if (size == 0 || ids[size - 1] != ids[i]) {
+				ids[size++] = ids[i];
+			}
+		}
+		return new ConceptIdSet(ids, size);
+	}
+
+	public ConceptIdSet and(ConceptIdSet other) {
+		long[] result = new long[Math.min(size, other.size)];
+		int count = 0;
+		int i = 0, j = 0;
+		while (i < size && j < other.size) {
+			long a = ids[i];
+			long b = other.ids[j];
+			if (a == b) {
+				result[count++] = a;
+				i++;
+				j++;
+			} else if (a < b) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return new ConceptIdSet(result, count);
+	}
+
+	public ConceptIdSet or(ConceptIdSet other) {
+		long[] result = new long[size + other.size];
+		int count = 0;
+		int i = 0, j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && ids[i] < other.ids[j])) {
+				result[count++] = ids[i++];
+			} else if (i == size || other.ids[j] < ids[i]) {
+				result[count++] = other.ids[j++];
+			} else {
+				result[count++] = ids[i++];
+				j++;
+			}
+		}
+		return new ConceptIdSet(result, count);
+	}
+
+	public ConceptIdSet minus(ConceptIdSet other) {
+		long[] result = new long[size];
+		int count = 0;
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			long a = ids[i];
+			while (j < other.size && other.ids[j] < a) {
+				j++;
+			}
+			if (j == other.size || other.ids[j] != a) {
+				result[count++] = a;
+			}
+		}
+		return new ConceptIdSet(result, count);
+	}
+
+	public boolean contains(long conceptId) {
+		return Arrays.binarySearch(ids, 0, size, conceptId) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return all ids in descending order, the default ECL result order.
+	 */
+	public LongArrayList toDescendingList() {
+		return toList(0, size, false);
+	}
+
+	/**
+	 * Pages through the set using the same ordering as {@link ConceptSelectorHelper#fetchIds},
+	 * descending unless the page request sorts by concept id ascending.
+	 */
+	public Page<Long> toPage(PageRequest pageRequest) {
+		if (pageRequest == null) {
+			return isEmpty() ? Page.empty() : new PageImpl<>(toDescendingList(), PageRequest.of(0, size), size);
+		}
+		Sort.Order order = pageRequest.getSort().getOrderFor(QueryConcept.Fields.CONCEPT_ID);
+		boolean ascending = order != null && order.isAscending();
+		int fromIndex = (int) Math.min(pageRequest.getOffset(), size);
+		int toIndex = Math.min(fromIndex + pageRequest.getPageSize(), size);
+		return new PageImpl<>(toList(fromIndex, toIndex, ascending), pageRequest, size);
+	}
+
+	private LongArrayList toList(int fromIndex, int toIndex, boolean ascending) {
+		long[] list = new long[toIndex - fromIndex];
+		for (int i = fromIndex; i < toIndex; i++) {
+			list[i - fromIndex] = ascending ? ids[i] : ids[size - 1 - i];
+		}
+		return LongArrayList.wrap(list);
+	}
+
+	/**
+	 * @return approximate heap size in bytes.
+	 */
+	public long getSizeInBytes() {
+		return 32L + ids.length * 8L;
+	}
+}
@@ -2,7 +2,6 @@ package org.snomed.snowstorm.ecl;
 
 import com.google.common.collect.Sets;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongComparators;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.sort.FieldSortBuilder;
@@ -21,6 +20,7 @@ import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilde
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
@@ -61,31 +61,53 @@ public class ConceptSelectorHelper {
 			return new PageImpl<>(ids, pageRequest, queryConcepts.getTotalElements());
 		} else {
 			// Fetch all IDs
-			searchQueryBuilder.withPageable(LARGE_PAGE);
-			List<Long> ids = new LongArrayList();
-			try (SearchHitsIterator<QueryConcept> stream = queryService.streamQueryResults(searchQueryBuilder.build())) {
-				stream.forEachRemaining(hit -> {
-					if (inclusionFilter == null || inclusionFilter.apply(hit.getContent())) {
-						ids.add(hit.getContent().getConceptIdL());
-					}
-				});
+			ConceptIdSet ids = fetchAllIds(searchQueryBuilder, inclusionFilter, queryService);
+			if (pageRequest != null && pageRequest.getOffset() >= ids.size()) {
+				return Page.empty();
 			}
+			return ids.toPage(pageRequest);
+		}
+	}
 
-			// Stream search doesn't sort for us
-			ids.sort(LongComparators.OPPOSITE_COMPARATOR);
-
-			int total = ids.size();
-			if (pageRequest != null) {
-				int fromIndex = (int) pageRequest.getOffset();
-				int toIndex = fromIndex + (pageRequest.getPageSize());
-				if (toIndex > total) {
-					toIndex = total;
+	/**
+	 * Streams matching ids to the consumer in batches, in index order, without holding the whole result.
+	 * Each batch is a new list.
+	 */
+	public static void streamIds(BoolQueryBuilder query, Function<QueryConcept, Boolean> inclusionFilter, QueryService queryService, int batchSize, Consumer<List<Long>> batchConsumer) {
+		NativeSearchQueryBuilder searchQueryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(query)
+				.withFields(getRequiredFields(inclusionFilter))
+				.withPageable(LARGE_PAGE);
+		LongArrayList batch = new LongArrayList(batchSize);
+		try (SearchHitsIterator<QueryConcept> stream = queryService.streamQueryResults(searchQueryBuilder.build())) {
+			while (stream.hasNext()) {
+				QueryConcept queryConcept = stream.next().getContent();
+				if (inclusionFilter == null || inclusionFilter.apply(queryConcept)) {
+					batch.add(queryConcept.getConceptIdL());
+					if (batch.size() == batchSize) {
+						batchConsumer.accept(batch);
+						batch = new LongArrayList(batchSize);
+					}
 				}
-				return ids.isEmpty() || fromIndex >= total ? Page.empty() : new PageImpl<>(ids.subList(fromIndex, toIndex), pageRequest, total);
-			} else {
-				return ids.isEmpty() ? Page.empty() : new PageImpl<>(ids, PageRequest.of(0, total), total);
 			}
 		}
+		if (!batch.isEmpty()) {
+			batchConsumer.accept(batch);
+		}
+	}
+
+	private static ConceptIdSet fetchAllIds(NativeSearchQueryBuilder searchQueryBuilder, Function<QueryConcept, Boolean> inclusionFilter, QueryService queryService) {
+		searchQueryBuilder.withPageable(LARGE_PAGE);
+		LongArrayList ids = new LongArrayList();
+		try (SearchHitsIterator<QueryConcept> stream = queryService.streamQueryResults(searchQueryBuilder.build())) {
+			stream.forEachRemaining(hit -> {
+				if (inclusionFilter == null || inclusionFilter.apply(hit.getContent())) {
+					ids.add(hit.getContent().getConceptIdL());
+				}
+			});
+		}
+		// Stream search doesn't sort for us, the set sorts the primitive array
+		return ConceptIdSet.ofUnsorted(ids.elements(), ids.size());
 	}
 
 	public static FieldSortBuilder getDefaultSortForQueryConcept() {
@@ -2,13 +2,17 @@ package org.snomed.snowstorm.ecl;
 
 import ch.qos.logback.classic.Level;
 import io.kaicode.elasticvc.api.BranchCriteria;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.snomed.langauges.ecl.ECLException;
 import org.snomed.langauges.ecl.ECLQueryBuilder;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SCompoundExpressionConstraint;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SDottedExpressionConstraint;
 import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraintHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
@@ -16,7 +20,9 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 public class ECLQueryService {
@@ -27,9 +33,18 @@ public class ECLQueryService {
 	@Autowired
 	private QueryService queryService;
 
+	@Autowired
+	private ECLResultCacheService eclResultCacheService;
+
 	@Value("${timer.ecl.duration-threshold}")
 	private int eclDurationLoggingThreshold;
 
+	@Value("${ecl.planner.enabled:true}")
+	private boolean plannerEnabled;
+
+	@Value("${ecl.planner.max-filter-size:10000}")
+	private int plannerMaxFilterSize;
+
 	public Page<Long> selectConceptIds(String ecl, BranchCriteria branchCriteria, String path, boolean stated, PageRequest pageRequest) throws ECLException {
 		return selectConceptIds(ecl, branchCriteria, path, stated, null, pageRequest);
 	}
@@ -39,13 +54,27 @@ public class ECLQueryService {
 	}
 
 	public Page<Long> selectConceptIds(String ecl, BranchCriteria branchCriteria, String path, boolean stated, Collection<Long> conceptIdFilter, PageRequest pageRequest) throws ECLException {
+		Optional<ECLResultCacheService.ECLResultKey> cacheKey = eclResultCacheService.getKey(ecl, branchCriteria, stated);
+		if (cacheKey.isPresent()) {
+			ConceptIdSet conceptIds = eclResultCacheService.getIfPresent(cacheKey.get());
+			if (conceptIds == null) {
+				conceptIds = selectAllConceptIds(ecl, branchCriteria, path, stated);
+				if (conceptIds != null) {
+					eclResultCacheService.put(cacheKey.get(), conceptIds);
+				}
+			}
+			if (conceptIds != null) {
+				return (conceptIdFilter != null ? conceptIds.and(ConceptIdSet.of(conceptIdFilter)) : conceptIds).toPage(pageRequest);
+			}
+		}
+
 		TimerUtil eclSlowQueryTimer = getEclSlowQueryTimer();
 		SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
 
 		// TODO: Attempt to simplify queries here.
 		// Changing something like "(id) AND (<<id OR >>id)"  to  "(id AND <<id) OR (id AND >>id)" will run in a fraction of the time because there will be no large fetches
 
-		Optional<Page<Long>> pageOptional = expressionConstraint.select(path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService);
+		Optional<Page<Long>> pageOptional = select(expressionConstraint, branchCriteria, path, stated, conceptIdFilter, pageRequest);
 		pageOptional.ifPresent(page -> eclSlowQueryTimer.checkpoint(() -> String.format("ecl:'%s', with %s results in this page.", ecl, page.getNumberOfElements())));
 
 		return pageOptional.orElseGet(() -> {
@@ -54,6 +83,50 @@ public class ECLQueryService {
 		});
 	}
 
+	/**
+	 * Streams the ids of all concepts matching the expression to the consumer in batches, without paging.
+	 * The final query is streamed from Elasticsearch in index order so memory use does not depend on the size of the result,
+	 * cached results and dotted expressions are written in descending id order.
+	 */
+	public void streamConceptIds(String ecl, BranchCriteria branchCriteria, String path, boolean stated, int batchSize, Consumer<List<Long>> batchConsumer) throws ECLException {
+		ConceptIdSet conceptIds = eclResultCacheService.getKey(ecl, branchCriteria, stated).map(eclResultCacheService::getIfPresent).orElse(null);
+		if (conceptIds == null) {
+			SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
+			if (!(expressionConstraint instanceof SDottedExpressionConstraint)) {
+				SExpressionConstraintHelper.streamIds(expressionConstraint, path, branchCriteria, stated, queryService, batchSize, batchConsumer);
+				return;
+			}
+			conceptIds = select(expressionConstraint, branchCriteria, path, stated, null, null).map(page -> ConceptIdSet.of(page.getContent())).orElse(ConceptIdSet.EMPTY);
+		}
+		LongArrayList allIds = conceptIds.toDescendingList();
+		for (int from = 0; from < allIds.size(); from += batchSize) {
+			batchConsumer.accept(allIds.subList(from, Math.min(from + batchSize, allIds.size())));
+		}
+	}
+
+	// Complete result or null if the expression is an unconstrained wildcard, which is not worth caching.
+	private ConceptIdSet selectAllConceptIds(String ecl, BranchCriteria branchCriteria, String path, boolean stated) throws ECLException {
+		TimerUtil eclSlowQueryTimer = getEclSlowQueryTimer();
+		SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
+		Optional<Page<Long>> pageOptional = select(expressionConstraint, branchCriteria, path, stated, null, null);
+		if (!pageOptional.isPresent()) {
+			return null;
+		}
+		ConceptIdSet conceptIds = ConceptIdSet.of(pageOptional.get().getContent());
+		eclSlowQueryTimer.checkpoint(() -> String.format("ecl:'%s', with %s results cached.", ecl, conceptIds.size()));
+		return conceptIds;
+	}
+
+	private Optional<Page<Long>> select(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, String path, boolean stated,
+			Collection<Long> conceptIdFilter, PageRequest pageRequest) {
+
+		if (plannerEnabled && expressionConstraint instanceof SCompoundExpressionConstraint) {
+			return ((SCompoundExpressionConstraint) expressionConstraint)
+					.selectConjunctionInSteps(path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService, plannerMaxFilterSize);
+		}
+		return expressionConstraint.select(path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService);
+	}
+
 	private TimerUtil getEclSlowQueryTimer() {
 		return new TimerUtil(String.format("ECL took more than %s seconds.", eclDurationLoggingThreshold), Level.INFO, eclDurationLoggingThreshold);
 	}
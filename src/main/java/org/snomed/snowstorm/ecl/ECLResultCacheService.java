@@ -0,0 +1,173 @@
+package org.snomed.snowstorm.ecl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.domain.Commit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.services.BranchHeadCriteriaService;
+import org.snomed.snowstorm.core.pojo.BranchHead;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Opt-in, memory bounded cache of complete ECL results.
+ * Results are held as primitive concept id sets, keyed by the normalised expression, branch head and form.
+ * Only branch criteria created through {@link BranchHeadCriteriaService} are cached because only they select a fixed branch head.
+ */
+@Service
+public class ECLResultCacheService implements CommitListener {
+
+	@Value("${cache.ecl.enabled:false}")
+	private boolean enabled;
+
+	@Value("${cache.ecl.max-size-mb:256}")
+	private int maxSizeMb;
+
+	@Autowired
+	private BranchHeadCriteriaService branchHeadCriteriaService;
+
+	private Cache<ECLResultKey, ConceptIdSet> results;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		results = Caffeine.newBuilder()
+				// Weight in kilobytes
+				.maximumWeight(maxSizeMb * 1024L)
+				.weigher((ECLResultKey key, ConceptIdSet conceptIds) -> (int) Math.min(Integer.MAX_VALUE, 1 + conceptIds.getSizeInBytes() / 1024))
+				.recordStats()
+				.build();
+		if (enabled) {
+			logger.info("ECL result cache enabled with a maximum size of {} MB.", maxSizeMb);
+		}
+	}
+
+	/**
+	 * @return a key for the cached result or empty if caching is disabled or the branch criteria is not at a branch head.
+	 */
+	public Optional<ECLResultKey> getKey(String ecl, BranchCriteria branchCriteria, boolean stated) {
+		if (!enabled) {
+			return Optional.empty();
+		}
+		return branchHeadCriteriaService.getBranchHead(branchCriteria)
+				.map(branchHead -> new ECLResultKey(normalise(ecl), branchHead, stated));
+	}
+
+	public ConceptIdSet getIfPresent(ECLResultKey key) {
+		return results.getIfPresent(key);
+	}
+
+	public void put(ECLResultKey key, ConceptIdSet conceptIds) {
+		// Not computed inside the cache so a slow query does not block other entries
+		results.put(key, conceptIds);
+	}
+
+	/**
+	 * Removes terms and redundant whitespace so equivalent expressions share a cache entry.
+	 * Quoted strings are kept as they are because they are matched literally.
+	 */
+	static String normalise(String ecl) {
+		StringBuilder builder = new StringBuilder(ecl.length());
+		boolean inTerm = false;
+		boolean inString = false;
+		boolean pendingSpace = false;
+		for (int i = 0; i < ecl.length(); i++) {
+			char c = ecl.charAt(i);
+			if (inString) {
+				builder.append(c);
+				if (c == '\\' && i + 1 < ecl.length()) {
+					builder.append(ecl.charAt(++i));
+				} else if (c == '"') {
+					inString = false;
+				}
+			} else if (inTerm) {
+				inTerm = c != '|';
+			} else if (c == '|') {
+				inTerm = true;
+			} else if (Character.isWhitespace(c)) {
+				pendingSpace = true;
+			} else {
+				if (pendingSpace && builder.length() > 0) {
+					builder.append(' ');
+				}
+				pendingSpace = false;
+				builder.append(c);
+				inString = c == '"';
+			}
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		if (enabled) {
+			// Requests after this commit select the new head so results of older heads can only take space from new results.
+			String path = commit.getBranch().getPath();
+			results.asMap().keySet().removeIf(key -> key.branchHead.getPath().equals(path));
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		CacheStats stats = results.stats();
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("enabled", enabled);
+		map.put("entries", results.estimatedSize());
+		map.put("hits", stats.hitCount());
+		map.put("misses", stats.missCount());
+		map.put("hitRate", stats.hitRate());
+		map.put("evictions", stats.evictionCount());
+		return map;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		results.invalidateAll();
+	}
+
+	public static final class ECLResultKey {
+
+		private final String ecl;
+		private final BranchHead branchHead;
+		private final boolean stated;
+
+		private ECLResultKey(String ecl, BranchHead branchHead, boolean stated) {
+			this.ecl = ecl;
+			this.branchHead = branchHead;
+			this.stated = stated;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			ECLResultKey that = (ECLResultKey) o;
+			return stated == that.stated && ecl.equals(that.ecl) && branchHead.equals(that.branchHead);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(ecl, branchHead, stated);
+		}
+
+		@Override
+		public String toString() {
+			return ecl + " " + branchHead + (stated ? " stated" : " inferred");
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package org.snomed.snowstorm.ecl;
+
+import com.google.common.collect.Iterables;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.langauges.ecl.ECLQueryBuilder;
+import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.repositories.ECLViewMemberRepository;
+import org.snomed.snowstorm.core.data.repositories.ECLViewRepository;
+import org.snomed.snowstorm.core.data.services.BranchHeadCriteriaService;
+import org.snomed.snowstorm.core.data.services.NotFoundException;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraintHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Maintains named ECL definitions per branch with their members materialised in a dedicated index.
+ * Members are updated from the commit listener chain, after the semantic index, by re-evaluating the expression for only the concepts
+ * changed in the commit where the expression allows it, see {@link SExpressionConstraintHelper#isEvaluatedPerConcept(SExpressionConstraint)}.
+ * Views which were not updated for the current branch head, for example because maintenance failed, are flagged as stale when read and keep
+ * serving their persisted members until the next commit on the branch or an explicit {@link #refreshView(String, String)}.
+ * Updates of a view are serialised with a lock per view within this instance. A full refresh writes the new members before removing the
+ * old ones so readers never see an empty view.
+ */
+@Service
+public class ECLViewService implements CommitListener {
+
+	private static final int BATCH_SIZE = 10_000;
+
+	@Autowired
+	private ECLViewRepository viewRepository;
+
+	@Autowired
+	private ECLViewMemberRepository memberRepository;
+
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private ECLQueryBuilder eclQueryBuilder;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private BranchHeadCriteriaService branchHeadCriteriaService;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	@Value("${ecl.views.incremental-max-changes:50000}")
+	private int incrementalMaxChanges;
+
+	private final Map<String, Object> viewLocks = new ConcurrentHashMap<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public ECLView createView(String branch, String name, String ecl, boolean stated) {
+		if (Strings.isNullOrEmpty(name) || Strings.isNullOrEmpty(ecl)) {
+			throw new IllegalArgumentException("View name and ecl are required.");
+		}
+		long headTimestamp = branchService.findBranchOrThrow(branch).getHeadTimestamp();
+		if (viewRepository.existsById(ECLView.toId(branch, name))) {
+			throw new IllegalArgumentException("An ECL view already exists with this name on this branch.");
+		}
+		// Fail early on invalid syntax
+		eclQueryBuilder.createQuery(ecl);
+
+		ECLView view = new ECLView(branch, name, ecl, stated);
+		refreshAll(view, branchHeadCriteriaService.getBranchCriteria(branch), headTimestamp);
+		return view;
+	}
+
+	public List<ECLView> findViews(String branch) {
+		List<ECLView> views = viewRepository.findByBranch(branch);
+		if (!views.isEmpty()) {
+			long headTimestamp = branchService.findBranchOrThrow(branch).getHeadTimestamp();
+			views.forEach(view -> setStale(view, headTimestamp));
+		}
+		return views;
+	}
+
+	public ECLView findView(String branch, String name) {
+		ECLView view = viewRepository.findById(ECLView.toId(branch, name)).orElse(null);
+		if (view != null) {
+			setStale(view, branchService.findBranchOrThrow(branch).getHeadTimestamp());
+		}
+		return view;
+	}
+
+	public ECLView findViewOrThrow(String branch, String name) {
+		ECLView view = findView(branch, name);
+		if (view == null) {
+			throw new NotFoundException("ECL view '" + name + "' not found on branch '" + branch + "'.");
+		}
+		return view;
+	}
+
+	public void deleteView(String branch, String name) {
+		ECLView view = findViewOrThrow(branch, name);
+		synchronized (getLock(view)) {
+			deleteMembers(view);
+			viewRepository.delete(view);
+		}
+		viewLocks.remove(view.getId());
+	}
+
+	/**
+	 * Evaluates the expression of the view in full against the current branch head.
+	 */
+	public ECLView refreshView(String branch, String name) {
+		ECLView view = findViewOrThrow(branch, name);
+		synchronized (getLock(view)) {
+			// Read the head within the lock so a concurrent commit update is not overwritten with older content
+			long headTimestamp = branchService.findBranchOrThrow(branch).getHeadTimestamp();
+			refreshAll(view, branchHeadCriteriaService.getBranchCriteria(branch), headTimestamp);
+			setStale(view, headTimestamp);
+		}
+		return view;
+	}
+
+	/**
+	 * Members are served as persisted, they may be stale, see {@link ECLView#isStale()}.
+	 * @return members of the view in ascending concept id order.
+	 */
+	public Page<Long> findMembers(String branch, String name, PageRequest pageRequest) {
+		ECLView view = findViewOrThrow(branch, name);
+		NativeSearchQuery query = new NativeSearchQueryBuilder()
+				.withQuery(termQuery(ECLViewMember.Fields.VIEW_ID, view.getId()))
+				.withSort(SortBuilders.fieldSort(ECLViewMember.Fields.CONCEPT_ID))
+				.withPageable(pageRequest)
+				.build();
+		query.setTrackTotalHits(true);
+		SearchHits<ECLViewMember> members = elasticsearchTemplate.search(query, ECLViewMember.class);
+		List<Long> conceptIds = members.get().map(hit -> hit.getContent().getConceptId()).collect(Collectors.toList());
+		return new PageImpl<>(conceptIds, pageRequest, members.getTotalHits());
+	}
+
+	/**
+	 * Membership is tested against the persisted members, they may be stale, see {@link ECLView#isStale()}.
+	 */
+	public boolean isMember(String branch, String name, Long conceptId) {
+		ECLView view = findViewOrThrow(branch, name);
+		return memberRepository.existsById(ECLViewMember.toId(view.getId(), conceptId));
+	}
+
+	private void setStale(ECLView view, long headTimestamp) {
+		view.setStale(view.getHeadTimestamp() == null || view.getHeadTimestamp() != headTimestamp);
+	}
+
+	private Object getLock(ECLView view) {
+		return viewLocks.computeIfAbsent(view.getId(), id -> new Object());
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		String path = commit.getBranch().getPath();
+		List<ECLView> views = viewRepository.findByBranch(path);
+		if (views.isEmpty()) {
+			return;
+		}
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+		long previousHeadTimestamp = commit.getBranch().getHeadTimestamp();
+		long headTimestamp = commit.getTimepoint().getTime();
+		// Rebase and promotion bring in changes from other branches, refresh in full.
+		Set<Long> changedConceptIds = commit.getCommitType() == Commit.CommitType.CONTENT ? getConceptsChangedInCommit(commit) : null;
+		for (ECLView listedView : views) {
+			synchronized (getLock(listedView)) {
+				try {
+					// Reload within the lock in case the view was refreshed or deleted since it was listed
+					ECLView view = viewRepository.findById(listedView.getId()).orElse(null);
+					if (view == null) {
+						continue;
+					}
+					// Changes can only be applied to members which were up to date before this commit
+					boolean incremental = changedConceptIds != null && view.getHeadTimestamp() != null && view.getHeadTimestamp() == previousHeadTimestamp;
+					if (incremental && changedConceptIds.isEmpty()) {
+						// Nothing in the semantic index or reference sets changed
+						view.setHeadTimestamp(headTimestamp);
+						viewRepository.save(view);
+					} else if (incremental && changedConceptIds.size() <= incrementalMaxChanges
+							&& SExpressionConstraintHelper.isEvaluatedPerConcept((SExpressionConstraint) eclQueryBuilder.createQuery(view.getEcl()))) {
+						refreshConcepts(view, changedConceptIds, branchCriteria, headTimestamp);
+					} else {
+						refreshAll(view, branchCriteria, headTimestamp);
+					}
+				} catch (RuntimeException e) {
+					// Not fatal for the commit, the view will be flagged as stale until the next commit or an explicit refresh
+					logger.error("Failed to update ECL view {} on {}.", listedView.getName(), path, e);
+				}
+			}
+		}
+	}
+
+	private Set<Long> getConceptsChangedInCommit(Commit commit) {
+		BranchCriteria changesCriteria = versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit);
+		Set<Long> conceptIds = new LongOpenHashSet();
+		try (SearchHitsIterator<QueryConcept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(changesCriteria.getEntityBranchCriteria(QueryConcept.class))
+				.withFields(QueryConcept.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), QueryConcept.class)) {
+			stream.forEachRemaining(hit -> conceptIds.add(hit.getContent().getConceptIdL()));
+		}
+		// Member changes affect member-of expressions without changing the semantic index
+		try (SearchHitsIterator<ReferenceSetMember> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(changesCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+				.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), ReferenceSetMember.class)) {
+			stream.forEachRemaining(hit -> {
+				String referencedComponentId = hit.getContent().getReferencedComponentId();
+				if (referencedComponentId != null && referencedComponentId.matches("\\d+")) {
+					conceptIds.add(Long.parseLong(referencedComponentId));
+				}
+			});
+		}
+		return conceptIds;
+	}
+
+	private void refreshConcepts(ECLView view, Set<Long> conceptIds, BranchCriteria branchCriteria, long headTimestamp) {
+		int added = 0;
+		int removed = 0;
+		for (List<Long> batch : Iterables.partition(conceptIds, BATCH_SIZE)) {
+			Set<Long> matching = new LongOpenHashSet(eclQueryService.selectConceptIds(view.getEcl(), branchCriteria, view.getBranch(), view.isStated(), batch).getContent());
+			Set<Long> existing = new LongOpenHashSet();
+			try (SearchHitsIterator<ECLViewMember> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(termQuery(ECLViewMember.Fields.VIEW_ID, view.getId()))
+							.filter(termsQuery(ECLViewMember.Fields.CONCEPT_ID, batch)))
+					.withPageable(LARGE_PAGE)
+					.build(), ECLViewMember.class)) {
+				stream.forEachRemaining(hit -> existing.add(hit.getContent().getConceptId()));
+			}
+			List<ECLViewMember> toAdd = matching.stream().filter(id -> !existing.contains(id))
+					.map(id -> new ECLViewMember(view.getId(), id, view.getRefreshId())).collect(Collectors.toList());
+			List<ECLViewMember> toRemove = existing.stream().filter(id -> !matching.contains(id))
+					.map(id -> new ECLViewMember(view.getId(), id, view.getRefreshId())).collect(Collectors.toList());
+			if (!toAdd.isEmpty()) {
+				memberRepository.saveAll(toAdd);
+			}
+			if (!toRemove.isEmpty()) {
+				memberRepository.deleteAll(toRemove);
+			}
+			added += toAdd.size();
+			removed += toRemove.size();
+		}
+		logger.info("ECL view {} on {} updated using {} changed concepts, {} members added, {} removed.", view.getName(), view.getBranch(), conceptIds.size(), added, removed);
+		view.setMemberCount(view.getMemberCount() + added - removed);
+		view.setHeadTimestamp(headTimestamp);
+		viewRepository.save(view);
+		elasticsearchTemplate.indexOps(ECLViewMember.class).refresh();
+	}
+
+	private void refreshAll(ECLView view, BranchCriteria branchCriteria, long headTimestamp) {
+		// Overwrite matching members then remove those not written by this refresh, the view is never empty while refreshing
+		String refreshId = UUID.randomUUID().toString();
+		int[] count = {0};
+		eclQueryService.streamConceptIds(view.getEcl(), branchCriteria, view.getBranch(), view.isStated(), BATCH_SIZE, conceptIds -> {
+			memberRepository.saveAll(conceptIds.stream().map(id -> new ECLViewMember(view.getId(), id, refreshId)).collect(Collectors.toList()));
+			count[0] += conceptIds.size();
+		});
+		elasticsearchTemplate.indexOps(ECLViewMember.class).refresh();
+		elasticsearchTemplate.delete(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(termQuery(ECLViewMember.Fields.VIEW_ID, view.getId()))
+						.mustNot(termQuery(ECLViewMember.Fields.REFRESH_ID, refreshId)))
+				.build(), ECLViewMember.class);
+		logger.info("ECL view {} on {} refreshed with {} members.", view.getName(), view.getBranch(), count[0]);
+		view.setMemberCount(count[0]);
+		view.setHeadTimestamp(headTimestamp);
+		view.setRefreshId(refreshId);
+		viewRepository.save(view);
+		elasticsearchTemplate.indexOps(ECLViewMember.class).refresh();
+	}
+
+	private void deleteMembers(ECLView view) {
+		elasticsearchTemplate.delete(new NativeSearchQueryBuilder()
+				.withQuery(termQuery(ECLViewMember.Fields.VIEW_ID, view.getId()))
+				.build(), ECLViewMember.class);
+		elasticsearchTemplate.indexOps(ECLViewMember.class).refresh();
+	}
+}
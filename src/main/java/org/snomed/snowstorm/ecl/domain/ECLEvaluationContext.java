@@ -0,0 +1,74 @@
+package org.snomed.snowstorm.ecl.domain;
+
+import org.springframework.data.domain.Page;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * State shared by all nodes of one ECL evaluation.
+ * Identical sub-expressions and concept lookups are resolved once and reused, the branch, form and
+ * query service are the same for the whole evaluation so results are safe to share.
+ * Not thread safe, an evaluation runs on a single thread.
+ */
+public class ECLEvaluationContext {
+
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	public Optional<Page<Long>> select(String key, Supplier<Optional<Page<Long>>> selector) {
+		return memoise("select " + key, selector, selection -> selection.map(page -> (int) page.getTotalElements()).orElse(-1));
+	}
+
+	public <T extends Collection<Long>> T lookup(String key, Supplier<T> supplier) {
+		return memoise("lookup " + key, supplier, Collection::size);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T memoise(String key, Supplier<T> supplier, Function<T, Integer> counter) {
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			entry.reuseCount++;
+			return (T) entry.value;
+		}
+		// Not computeIfAbsent because the supplier may add nested entries
+		T value = supplier.get();
+		entries.put(key, new Entry(value, counter.apply(value)));
+		return value;
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * @return one line per resolved node in resolution order, with the number of results and how many times the node was reused.
+	 */
+	public String explain() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+			Entry entry = mapEntry.getValue();
+			builder.append(mapEntry.getKey())
+					.append(" -> ").append(entry.resultCount < 0 ? "wildcard" : entry.resultCount + " ids")
+					.append(entry.reuseCount > 0 ? ", reused " + entry.reuseCount + "x" : "")
+					.append("\n");
+		}
+		return builder.toString();
+	}
+
+	public int getReuseCount() {
+		return entries.values().stream().mapToInt(entry -> entry.reuseCount).sum();
+	}
+
+	private static final class Entry {
+
+		private final Object value;
+		private final int resultCount;
+		private int reuseCount;
+
+		private Entry(Object value, int resultCount) {
+			this.value = value;
+			this.resultCount = resultCount;
+		}
+	}
+}
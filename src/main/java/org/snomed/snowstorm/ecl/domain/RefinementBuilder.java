@@ -26,4 +26,6 @@ public interface RefinementBuilder {
 	void inclusionFilterRequired();
 
 	boolean isInclusionFilterRequired();
+
+	ECLEvaluationContext getEvaluationContext();
 }
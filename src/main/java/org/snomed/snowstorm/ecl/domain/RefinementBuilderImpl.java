@@ -14,15 +14,18 @@ public class RefinementBuilderImpl implements RefinementBuilder {
 	private final BranchCriteria branchCriteria;
 	private final boolean stated;
 	private final QueryService queryService;
+	private final ECLEvaluationContext evaluationContext;
 	private Function<QueryConcept, Boolean> inclusionFilter;
 	private boolean inclusionFilterRequired;
 
-	public RefinementBuilderImpl(BoolQueryBuilder query, String path, BranchCriteria branchCriteria, boolean stated, QueryService queryService) {
+	public RefinementBuilderImpl(BoolQueryBuilder query, String path, BranchCriteria branchCriteria, boolean stated, QueryService queryService,
+			ECLEvaluationContext evaluationContext) {
 		this.query = query;
 		this.path = path;
 		this.branchCriteria = branchCriteria;
 		this.stated = stated;
 		this.queryService = queryService;
+		this.evaluationContext = evaluationContext;
 	}
 
 	public BoolQueryBuilder getQuery() {
@@ -64,4 +67,9 @@ public class RefinementBuilderImpl implements RefinementBuilder {
 	public boolean isInclusionFilterRequired() {
 		return inclusionFilterRequired;
 	}
+
+	@Override
+	public ECLEvaluationContext getEvaluationContext() {
+		return evaluationContext;
+	}
 }
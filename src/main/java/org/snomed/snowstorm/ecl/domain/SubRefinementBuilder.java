@@ -61,4 +61,9 @@ public class SubRefinementBuilder implements RefinementBuilder {
 	public boolean isInclusionFilterRequired() {
 		return refinementBuilder.isInclusionFilterRequired();
 	}
+
+	@Override
+	public ECLEvaluationContext getEvaluationContext() {
+		return refinementBuilder.getEvaluationContext();
+	}
 }
@@ -5,15 +5,15 @@ import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.snomed.langauges.ecl.domain.expressionconstraint.CompoundExpressionConstraint;
 import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
 import org.snomed.snowstorm.core.data.services.QueryService;
+import org.snomed.snowstorm.ecl.ConceptIdSet;
+import org.snomed.snowstorm.ecl.domain.ECLEvaluationContext;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.SubRefinementBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Function;
 
 import static com.google.common.collect.Sets.newHashSet;
 import static java.util.stream.Collectors.toSet;
@@ -27,11 +27,116 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 		return SExpressionConstraintHelper.select(this, path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService);
 	}
 
+	/**
+	 * Evaluates a conjunction one step at a time, passing the intermediate result of each step into the next as a concept id filter.
+	 * Operands that are plain query criteria are combined into one step, bracketed operands like refinements form a step each.
+	 * The criteria step is counted first and runs first when its result is small enough to be used as a filter, otherwise it runs last.
+	 * Expressions that are not a conjunction with a bracketed operand are selected as usual.
+	 */
+	public Optional<Page<Long>> selectConjunctionInSteps(String path, BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter,
+			PageRequest pageRequest, QueryService queryService, int maxFilterSize) {
+
+		if (isEmpty(conjunctionExpressionConstraints) || conjunctionExpressionConstraints.size() < 2
+				|| !isEmpty(disjunctionExpressionConstraints) || exclusionExpressionConstraint != null) {
+			return select(path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService);
+		}
+
+		List<SSubExpressionConstraint> criteriaOperands = new ArrayList<>();
+		List<Function<Collection<Long>, Optional<Page<Long>>>> steps = new ArrayList<>();
+		for (SubExpressionConstraint conjunctionExpressionConstraint : conjunctionExpressionConstraints) {
+			SSubExpressionConstraint subExpressionConstraint = (SSubExpressionConstraint) conjunctionExpressionConstraint;
+			SExpressionConstraint bracketed = subExpressionConstraint.getBracketedExpressionConstraint();
+			if (bracketed != null) {
+				steps.add(filter -> bracketed.select(path, branchCriteria, stated, filter, null, queryService));
+			} else {
+				criteriaOperands.add(subExpressionConstraint);
+			}
+		}
+		if (steps.isEmpty()) {
+			// Already a single query
+			return select(path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService);
+		}
+
+		ECLEvaluationContext evaluationContext = new ECLEvaluationContext();
+		if (!criteriaOperands.isEmpty()) {
+			Function<Collection<Long>, Optional<Page<Long>>> criteriaStep = filter ->
+					SExpressionConstraintHelper.select(criteriaOperands, path, branchCriteria, stated, filter, null, queryService, evaluationContext);
+			long estimate = SExpressionConstraintHelper.select(criteriaOperands, path, branchCriteria, stated, conceptIdFilter, PageRequest.of(0, 1), queryService, evaluationContext)
+					.map(Page::getTotalElements).orElse(Long.MAX_VALUE);
+			if (estimate <= maxFilterSize) {
+				steps.add(0, criteriaStep);
+			} else {
+				steps.add(criteriaStep);
+			}
+		}
+
+		// Null means no constraint yet
+		ConceptIdSet conceptIds = null;
+		for (Function<Collection<Long>, Optional<Page<Long>>> step : steps) {
+			if (conceptIds != null && conceptIds.isEmpty()) {
+				break;
+			}
+			if (conceptIds == null || conceptIds.size() <= maxFilterSize) {
+				Optional<Page<Long>> stepResult = step.apply(conceptIds != null ? conceptIds.toDescendingList() : conceptIdFilter);
+				if (stepResult.isPresent()) {
+					conceptIds = ConceptIdSet.of(stepResult.get().getContent());
+				}
+			} else {
+				// Too large to pass as a filter, intersect in memory
+				Optional<Page<Long>> stepResult = step.apply(conceptIdFilter);
+				if (stepResult.isPresent()) {
+					conceptIds = conceptIds.and(ConceptIdSet.of(stepResult.get().getContent()));
+				}
+			}
+		}
+		if (conceptIds == null) {
+			// Every operand was a wildcard
+			return select(path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService);
+		}
+		return Optional.of(conceptIds.toPage(pageRequest));
+	}
+
 	@Override
 	public Optional<Page<Long>> select(RefinementBuilder refinementBuilder) {
+		String memoKey = toMemoKey();
+		if (memoKey != null) {
+			return refinementBuilder.getEvaluationContext().select(memoKey, () -> SExpressionConstraintHelper.select(this, refinementBuilder));
+		}
 		return SExpressionConstraintHelper.select(this, refinementBuilder);
 	}
 
+	/**
+	 * @return key identifying an identical compound expression within the same evaluation or null if any part is not memoised.
+	 */
+	String toMemoKey() {
+		StringBuilder key = new StringBuilder();
+		if (!appendMemoKeys(key, conjunctionExpressionConstraints, " AND ") || !appendMemoKeys(key, disjunctionExpressionConstraints, " OR ")) {
+			return null;
+		}
+		if (exclusionExpressionConstraint != null) {
+			String exclusionKey = ((SSubExpressionConstraint) exclusionExpressionConstraint).toMemoKey();
+			if (exclusionKey == null) {
+				return null;
+			}
+			key.append(" MINUS ").append(exclusionKey);
+		}
+		return key.toString();
+	}
+
+	private boolean appendMemoKeys(StringBuilder key, List<SubExpressionConstraint> subExpressionConstraints, String separator) {
+		if (subExpressionConstraints == null) {
+			return true;
+		}
+		for (int i = 0; i < subExpressionConstraints.size(); i++) {
+			String subKey = ((SSubExpressionConstraint) subExpressionConstraints.get(i)).toMemoKey();
+			if (subKey == null) {
+				return false;
+			}
+			key.append(i > 0 ? separator : "").append(subKey);
+		}
+		return true;
+	}
+
 	@Override
 	public Set<String> getConceptIds() {
 		Set<String> conceptIds = newHashSet();
@@ -2,16 +2,24 @@ package org.snomed.snowstorm.ecl.domain.expressionconstraint;
 
 import io.kaicode.elasticvc.api.BranchCriteria;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.ecl.ConceptSelectorHelper;
+import org.snomed.snowstorm.ecl.domain.ECLEvaluationContext;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilderImpl;
+import org.snomed.snowstorm.ecl.domain.SRefinement;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public class SExpressionConstraintHelper {
 
@@ -19,15 +27,75 @@ public class SExpressionConstraintHelper {
 	public static final String MISSING = "missing";
 	public static final Long MISSING_LONG = 111L;
 
+	private static final Logger logger = LoggerFactory.getLogger(SExpressionConstraintHelper.class);
+
 	protected static Optional<Page<Long>> select(SExpressionConstraint sExpressionConstraint, String path, BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter, PageRequest pageRequest, QueryService queryService) {
+		ECLEvaluationContext evaluationContext = new ECLEvaluationContext();
+		Optional<Page<Long>> page = select(sExpressionConstraint, path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService, evaluationContext);
+		if (logger.isDebugEnabled() && !evaluationContext.isEmpty()) {
+			logger.debug("ECL evaluation on {} reused {} resolved nodes:\n{}", path, evaluationContext.getReuseCount(), evaluationContext.explain());
+		}
+		return page;
+	}
+
+	protected static Optional<Page<Long>> select(SExpressionConstraint sExpressionConstraint, RefinementBuilder refinementBuilder) {
+		// Nested selection, shares the evaluation context of the outer expression
+		return select(sExpressionConstraint, refinementBuilder.getPath(), refinementBuilder.getBranchCriteria(), refinementBuilder.isStated(), null, null,
+				refinementBuilder.getQueryService(), refinementBuilder.getEvaluationContext());
+	}
+
+	private static Optional<Page<Long>> select(SExpressionConstraint sExpressionConstraint, String path, BranchCriteria branchCriteria, boolean stated,
+			Collection<Long> conceptIdFilter, PageRequest pageRequest, QueryService queryService, ECLEvaluationContext evaluationContext) {
+
+		return select(Collections.singletonList(sExpressionConstraint), path, branchCriteria, stated, conceptIdFilter, pageRequest, queryService, evaluationContext);
+	}
+
+	/**
+	 * Streams the ids of matching concepts in batches without sorting or holding the final result.
+	 * Nested expressions are still resolved in full. Not suitable for dotted expressions, which are resolved in several steps.
+	 */
+	public static void streamIds(SExpressionConstraint sExpressionConstraint, String path, BranchCriteria branchCriteria, boolean stated, QueryService queryService,
+			int batchSize, Consumer<List<Long>> batchConsumer) {
+
 		BoolQueryBuilder query = ConceptSelectorHelper.getBranchAndStatedQuery(branchCriteria.getEntityBranchCriteria(QueryConcept.class), stated);
-		RefinementBuilder refinementBuilder = new RefinementBuilderImpl(query, path, branchCriteria, stated, queryService);
+		RefinementBuilder refinementBuilder = new RefinementBuilderImpl(query, path, branchCriteria, stated, queryService, new ECLEvaluationContext());
 		sExpressionConstraint.addCriteria(refinementBuilder);
-		return Optional.of(ConceptSelectorHelper.fetchIds(query, conceptIdFilter, refinementBuilder.getInclusionFilter(), pageRequest, queryService));
+		ConceptSelectorHelper.streamIds(query, refinementBuilder.getInclusionFilter(), queryService, batchSize, batchConsumer);
 	}
 
-	protected static Optional<Page<Long>> select(SExpressionConstraint sExpressionConstraint, RefinementBuilder refinementBuilder) {
-		return select(sExpressionConstraint, refinementBuilder.getPath(), refinementBuilder.getBranchCriteria(), refinementBuilder.isStated(), null, null, refinementBuilder.getQueryService());
+	/**
+	 * @return true if a concept's membership depends only on its own semantic index entry and reference set memberships,
+	 * so the result can be maintained by re-evaluating just the concepts changed in a commit.
+	 * Refinements, dotted expressions, ancestor operators and nested member-of all depend on other concepts.
+	 */
+	public static boolean isEvaluatedPerConcept(SExpressionConstraint sExpressionConstraint) {
+		String key = null;
+		if (sExpressionConstraint instanceof SSubExpressionConstraint) {
+			key = ((SSubExpressionConstraint) sExpressionConstraint).toMemoKey();
+		} else if (sExpressionConstraint instanceof SCompoundExpressionConstraint) {
+			key = ((SCompoundExpressionConstraint) sExpressionConstraint).toMemoKey();
+		}
+		if (key == null) {
+			return false;
+		}
+		for (String token : key.split("[ ()]+")) {
+			if (token.equals(Operator.ancestorof.name()) || token.equals(Operator.ancestororselfof.name()) || token.equals(Operator.parentof.name())) {
+				return false;
+			}
+		}
+		return !key.contains(Operator.memberOf.name()) || !key.contains("(");
+	}
+
+	// Selects concepts matching all of the given refinements in a single query
+	static Optional<Page<Long>> select(List<? extends SRefinement> conjunction, String path, BranchCriteria branchCriteria, boolean stated,
+			Collection<Long> conceptIdFilter, PageRequest pageRequest, QueryService queryService, ECLEvaluationContext evaluationContext) {
+
+		BoolQueryBuilder query = ConceptSelectorHelper.getBranchAndStatedQuery(branchCriteria.getEntityBranchCriteria(QueryConcept.class), stated);
+		RefinementBuilder refinementBuilder = new RefinementBuilderImpl(query, path, branchCriteria, stated, queryService, evaluationContext);
+		for (SRefinement refinement : conjunction) {
+			refinement.addCriteria(refinementBuilder);
+		}
+		return Optional.of(ConceptSelectorHelper.fetchIds(query, conceptIdFilter, refinementBuilder.getInclusionFilter(), pageRequest, queryService));
 	}
 
 }
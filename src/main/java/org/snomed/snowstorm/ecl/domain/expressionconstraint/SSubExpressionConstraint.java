@@ -1,7 +1,7 @@
 package org.snomed.snowstorm.ecl.domain.expressionconstraint;
 
 import io.kaicode.elasticvc.api.BranchCriteria;
-import it.unimi.dsi.fastutil.longs.LongArraySet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.snomed.langauges.ecl.domain.expressionconstraint.ExpressionConstraint;
@@ -10,6 +10,7 @@ import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.services.QueryService;
+import org.snomed.snowstorm.ecl.domain.ECLEvaluationContext;
 import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
 import org.snomed.snowstorm.ecl.domain.SubRefinementBuilder;
 import org.springframework.data.domain.Page;
@@ -44,9 +45,40 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 		if (isUnconstrained()) {
 			return Optional.empty();
 		}
+		String memoKey = toMemoKey();
+		if (memoKey != null) {
+			return refinementBuilder.getEvaluationContext().select(memoKey, () -> SExpressionConstraintHelper.select(this, refinementBuilder));
+		}
 		return SExpressionConstraintHelper.select(this, refinementBuilder);
 	}
 
+	/**
+	 * @return the nested expression if this sub-expression is only a bracketed expression without an operator, otherwise null.
+	 */
+	SExpressionConstraint getBracketedExpressionConstraint() {
+		return operator == null ? (SExpressionConstraint) nestedExpressionConstraint : null;
+	}
+
+	/**
+	 * @return key identifying an identical sub-expression within the same evaluation or null if this form of expression is not memoised.
+	 */
+	String toMemoKey() {
+		String operatorKey = operator != null ? operator.name() + " " : "";
+		if (conceptId != null) {
+			return operatorKey + conceptId;
+		} else if (nestedExpressionConstraint instanceof SSubExpressionConstraint) {
+			String nestedKey = ((SSubExpressionConstraint) nestedExpressionConstraint).toMemoKey();
+			return nestedKey != null ? operatorKey + "(" + nestedKey + ")" : null;
+		} else if (nestedExpressionConstraint instanceof SCompoundExpressionConstraint) {
+			String nestedKey = ((SCompoundExpressionConstraint) nestedExpressionConstraint).toMemoKey();
+			return nestedKey != null ? operatorKey + "(" + nestedKey + ")" : null;
+		} else if (nestedExpressionConstraint == null && wildcard) {
+			return operatorKey + "*";
+		}
+		// Refined and dotted nested expressions are not memoised
+		return null;
+	}
+
 	@Override
 	public Set<String> getConceptIds() {
 		Set<String> conceptIds = newHashSet();
@@ -97,14 +129,16 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 			}
 		} else if (operator == Operator.memberOf) {
 			// Member of wildcard (any reference set)
-			query.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, refinementBuilder.getQueryService().findConceptIdsInReferenceSet(refinementBuilder.getBranchCriteria(), null)));
+			query.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, refinementBuilder.getEvaluationContext().lookup("members of *",
+					() -> refinementBuilder.getQueryService().findConceptIdsInReferenceSet(refinementBuilder.getBranchCriteria(), null))));
 		} else if (operator == Operator.descendantof || operator == Operator.childof) {
 			// Descendant of wildcard / Child of wildcard = anything but root
 			query.mustNot(termQuery(QueryConcept.Fields.CONCEPT_ID, Concepts.SNOMEDCT_ROOT));
 		} else if (operator == Operator.ancestorof || operator == Operator.parentof) {
 			// Ancestor of wildcard / Parent of wildcard = all non-leaf concepts
-			Collection<Long> conceptsWithDescendants = refinementBuilder.getQueryService().findRelationshipDestinationIds(
-					null, Collections.singletonList(parseLong(Concepts.ISA)), refinementBuilder.getBranchCriteria(), refinementBuilder.isStated());
+			Collection<Long> conceptsWithDescendants = refinementBuilder.getEvaluationContext().lookup("concepts with children", () ->
+					refinementBuilder.getQueryService().findRelationshipDestinationIds(
+							null, Collections.singletonList(parseLong(Concepts.ISA)), refinementBuilder.getBranchCriteria(), refinementBuilder.isStated()));
 			query.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, conceptsWithDescendants));
 		}
 		// Else Wildcard! which has no constraints
@@ -116,6 +150,7 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 		BranchCriteria branchCriteria = refinementBuilder.getBranchCriteria();
 		String path = refinementBuilder.getPath();
 		boolean stated = refinementBuilder.isStated();
+		ECLEvaluationContext evaluationContext = refinementBuilder.getEvaluationContext();
 
 		switch (operator) {
 			case childof:
@@ -135,12 +170,12 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 				break;
 			case parentof:
 				for (Long conceptId : conceptIds) {
-					Set<Long> parents = queryService.findParentIds(branchCriteria, stated, conceptId.toString());
+					Set<Long> parents = evaluationContext.lookup("parents of " + conceptId, () -> queryService.findParentIds(branchCriteria, stated, conceptId.toString()));
 					query.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, parents));
 				}
 				break;
 			case ancestororselfof:
-				Set<Long> allAncestors = retrieveAllAncestors(conceptIds, branchCriteria, path, stated, queryService);
+				Set<Long> allAncestors = retrieveAllAncestors(conceptIds, branchCriteria, path, stated, queryService, evaluationContext);
 				query.must(
 						boolQuery()
 								.should(termsQuery(QueryConcept.Fields.CONCEPT_ID, allAncestors))
@@ -149,20 +184,22 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 				break;
 			case ancestorof:
 				// > x
-				Set<Long> allAncestors2 = retrieveAllAncestors(conceptIds, branchCriteria, path, stated, queryService);
+				Set<Long> allAncestors2 = retrieveAllAncestors(conceptIds, branchCriteria, path, stated, queryService, evaluationContext);
 				query.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, allAncestors2));
 				break;
 			case memberOf:
 				// ^
-				query.filter(termsQuery(QueryConcept.Fields.CONCEPT_ID, queryService.findConceptIdsInReferenceSet(branchCriteria, conceptId)));
+				query.filter(termsQuery(QueryConcept.Fields.CONCEPT_ID, evaluationContext.lookup("members of " + conceptId,
+						() -> queryService.findConceptIdsInReferenceSet(branchCriteria, conceptId))));
 				break;
 		}
 	}
 
-	private Set<Long> retrieveAllAncestors(Collection<Long> conceptIds, BranchCriteria branchCriteria, String path, boolean stated, QueryService queryService) {
-		Set<Long> allAncestors = new LongArraySet();
+	private Set<Long> retrieveAllAncestors(Collection<Long> conceptIds, BranchCriteria branchCriteria, String path, boolean stated, QueryService queryService,
+			ECLEvaluationContext evaluationContext) {
+		Set<Long> allAncestors = new LongOpenHashSet();
 		for (Long conceptId : conceptIds) {
-			allAncestors.addAll(queryService.findAncestorIds(branchCriteria, path, stated, conceptId.toString()));
+			allAncestors.addAll(evaluationContext.lookup("ancestors of " + conceptId, () -> queryService.findAncestorIds(branchCriteria, path, stated, conceptId.toString())));
 		}
 		return allAncestors;
 	}
@@ -2,7 +2,6 @@ package org.snomed.snowstorm.mrcm;
 
 import ch.qos.logback.classic.Level;
 import io.kaicode.elasticvc.api.BranchCriteria;
-import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.langauges.ecl.domain.refinement.Operator;
@@ -10,6 +9,7 @@ import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.BranchHeadCriteriaService;
 import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.data.services.ServiceException;
@@ -50,7 +50,7 @@ public class MRCMService {
 	private ConceptService conceptService;
 
 	@Autowired
-	private VersionControlHelper versionControlHelper;
+	private BranchHeadCriteriaService branchHeadCriteriaService;
 
 	@Autowired
 	private ElasticsearchRestTemplate elasticsearchTemplate;
@@ -66,7 +66,7 @@ public class MRCMService {
 	public Collection<ConceptMini> retrieveDomainAttributes(ContentType contentType, boolean proximalPrimitiveModeling, Set<Long> parentIds, String branchPath,
 			List<LanguageDialect> languageDialects) throws ServiceException {
 
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		BranchCriteria branchCriteria = branchHeadCriteriaService.getBranchCriteria(branchPath);
 
 		List<AttributeDomain> attributeDomains = new ArrayList<>();
 
@@ -122,7 +122,7 @@ public class MRCMService {
 	}
 
 	public Collection<ConceptMini> retrieveAttributeValues(ContentType contentType, String attributeId, String termPrefix, String branchPath, List<LanguageDialect> languageDialects) throws ServiceException {
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		BranchCriteria branchCriteria = branchHeadCriteriaService.getBranchCriteria(branchPath);
 
 		MRCM branchMRCM = mrcmLoader.loadActiveMRCM(branchPath, branchCriteria);
 
@@ -174,7 +174,7 @@ public class MRCMService {
 		Set<Long> remainingAttributes = new HashSet<>(attributeMap.keySet());
 		remainingAttributes.remove(topIdLong);
 
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		BranchCriteria branchCriteria = branchHeadCriteriaService.getBranchCriteria(branch);
 
 		NativeSearchQueryBuilder queryConceptQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
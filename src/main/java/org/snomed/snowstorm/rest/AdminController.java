@@ -5,6 +5,7 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.services.*;
+import org.snomed.snowstorm.ecl.ECLResultCacheService;
 import org.snomed.snowstorm.mrcm.MRCMUpdateService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -28,6 +29,9 @@ public class AdminController {
 	@Autowired
 	private ConceptDefinitionStatusUpdateService definitionStatusUpdateService;
 
+	@Autowired
+	private DescriptionFacetUpdateService descriptionFacetUpdateService;
+
 	@Autowired
 	private AdminOperationsService adminOperationsService;
 
@@ -40,6 +44,59 @@ public class AdminController {
 	@Autowired
 	private SBranchService sBranchService;
 
+	@Autowired
+	private ECLResultCacheService eclResultCacheService;
+
+	@Autowired
+	private DescriptionFacetCacheService descriptionFacetCacheService;
+
+	@Autowired
+	private ConceptMiniCacheService conceptMiniCacheService;
+
+	@Autowired
+	private TraceabilityLogService traceabilityLogService;
+
+	@ApiOperation(value = "ECL result cache statistics.",
+			notes = "Hit, miss and eviction counts of the ECL result cache since startup.")
+	@RequestMapping(value = "/cache/ecl/stats", method = RequestMethod.GET)
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	public Map<String, Object> getECLResultCacheStats() {
+		return eclResultCacheService.getStats();
+	}
+
+	@ApiOperation(value = "Description facet cache statistics.",
+			notes = "Hit, miss and eviction counts of the cache of whole branch description search aggregations since startup.")
+	@RequestMapping(value = "/cache/description-facets/stats", method = RequestMethod.GET)
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	public Map<String, Object> getDescriptionFacetCacheStats() {
+		return descriptionFacetCacheService.getStats();
+	}
+
+	@ApiOperation(value = "Concept mini cache statistics.",
+			notes = "Hit, miss and eviction counts of the concept mini cache since startup.")
+	@RequestMapping(value = "/cache/concept-mini/stats", method = RequestMethod.GET)
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	public Map<String, Object> getConceptMiniCacheStats() {
+		return conceptMiniCacheService.getStats();
+	}
+
+	@ApiOperation(value = "Traceability outbox statistics.",
+			notes = "Number and age of traceability messages waiting to be sent to the JMS queue, the number of parked messages " +
+					"which failed to send too many times, with counts of messages sent and failures since startup.")
+	@RequestMapping(value = "/traceability/outbox/stats", method = RequestMethod.GET)
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	public Map<String, Object> getTraceabilityOutboxStats() {
+		return traceabilityLogService.getOutboxStats();
+	}
+
+	@ApiOperation(value = "Retry parked traceability outbox messages.",
+			notes = "Messages which failed to send the maximum number of times are parked. This returns them to the outbox to be sent again in commit order.")
+	@RequestMapping(value = "/traceability/outbox/retry-parked", method = RequestMethod.POST)
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	public int retryParkedTraceabilityOutboxMessages() {
+		return traceabilityLogService.retryParkedOutboxMessages();
+	}
+
 	@ApiOperation(value = "Rebuild the description index.",
 			notes = "Use this if the search configuration for international character handling of a language has been " +
 					"set or updated after importing content of that language. " +
@@ -74,6 +131,16 @@ public class AdminController {
 		definitionStatusUpdateService.updateAllDefinitionStatuses(BranchPathUriUtil.decodePath(branch));
 	}
 
+	@ApiOperation(value = "Force update of the concept semantic tags and refsets held on all descriptions.",
+			notes = "Only relevant when search.description.aggregation.denormalised is enabled. " +
+					"Run this once on each code system branch after enabling the setting, " +
+					"after that the fields are maintained when content is changed.")
+	@RequestMapping(value = "/{branch}/actions/update-description-aggregation-fields", method = RequestMethod.POST)
+	@PreAuthorize("hasPermission('ADMIN', #branch)")
+	public void updateDescriptionAggregationFields(@PathVariable String branch) throws ServiceException {
+		descriptionFacetUpdateService.rebuildAllDescriptionFacets(BranchPathUriUtil.decodePath(branch));
+	}
+
 	@ApiOperation(value = "End duplicate versions of donated components in version control.",
 			notes = "You may need this action if you have used the branch merge operation to upgrade an extension " +
 					"which has donated content to the International Edition. The operation should be run on the extension branch.")
@@ -2,6 +2,7 @@ package org.snomed.snowstorm.rest;
 
 import ch.qos.logback.classic.Level;
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
@@ -21,6 +22,7 @@ import org.snomed.snowstorm.core.pojo.BranchTimepoint;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.ecl.validation.ECLValidator;
 import org.snomed.snowstorm.rest.converter.SearchAfterHelper;
 import org.snomed.snowstorm.rest.pojo.*;
@@ -39,8 +41,15 @@ import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Pattern;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -53,6 +62,14 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 @RequestMapping(produces = "application/json")
 public class ConceptController {
 
+	private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+	private static final String TSV_MEDIA_TYPE = "text/tab-separated-values";
+	private static final int ECL_EXPANSION_BATCH_SIZE = 1_000;
+	private static final Pattern TSV_SPECIAL_CHARACTERS = Pattern.compile("[\t\r\n]");
+
+	// Plain mapper, one object per line
+	private static final ObjectMapper NDJSON_WRITER = new ObjectMapper();
+
 	@Autowired
 	private ConceptService conceptService;
 
@@ -77,6 +94,12 @@ public class ConceptController {
 	@Autowired
 	private ECLValidator eclValidator;
 
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private BranchHeadCriteriaService branchHeadCriteriaService;
+
 	@Value("${snowstorm.rest-api.allowUnlimitedConceptPagination:false}")
 	private boolean allowUnlimitedConceptPagination;
 
@@ -196,6 +219,91 @@ public class ConceptController {
 				acceptLanguageHeader);
 	}
 
+	@ApiOperation(value = "Stream all concepts matching an ECL expression.",
+			notes = "The expression is evaluated once and concept ids are written to the response as they are resolved, without offset paging. " +
+					"Format 'ndjson' writes one JSON object per line, 'tsv' writes a header row then one row per concept. " +
+					"TSV fields are not quoted, tab and line break characters within terms are replaced with a space. " +
+					"When includeTerms is set the FSN and PT are looked up in batches using the Accept-Language header. " +
+					"Results are not sorted.")
+	// No produces condition so that request errors can still be returned as JSON, the content type is set below
+	@RequestMapping(value = "/{branch}/concepts/ecl-expansion", method = RequestMethod.GET)
+	public void streamECLExpansion(
+			@PathVariable String branch,
+			@RequestParam(required = false) String ecl,
+			@RequestParam(required = false) String statedEcl,
+			@ApiParam("Output format, 'ndjson' or 'tsv'.")
+			@RequestParam(required = false, defaultValue = "ndjson") String format,
+			@RequestParam(required = false) boolean includeTerms,
+			@RequestHeader(value = "Accept-Language", defaultValue = Config.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader,
+			HttpServletResponse response) throws IOException {
+
+		branch = BranchPathUriUtil.decodePath(branch);
+
+		if (ecl != null && statedEcl != null) {
+			throw new IllegalArgumentException("Parameters ecl and statedEcl can not be combined.");
+		}
+		boolean stated = true;
+		if (isNotBlank(ecl)) {
+			stated = false;
+		} else {
+			ecl = statedEcl;
+		}
+		ControllerHelper.requiredParam(ecl, "ecl or statedEcl");
+		eclValidator.validate(ecl, branch);
+		boolean tsv;
+		if ("tsv".equals(format)) {
+			tsv = true;
+		} else if ("ndjson".equals(format)) {
+			tsv = false;
+		} else {
+			throw new IllegalArgumentException("Parameter format must be 'ndjson' or 'tsv'.");
+		}
+
+		List<LanguageDialect> languageDialects = ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader);
+		BranchCriteria branchCriteria = branchHeadCriteriaService.getBranchCriteria(branch);
+
+		response.setContentType((tsv ? TSV_MEDIA_TYPE : NDJSON_MEDIA_TYPE) + ";charset=UTF-8");
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+		if (tsv) {
+			writer.write(includeTerms ? "conceptId\tfsn\tpt\n" : "conceptId\n");
+		}
+		eclQueryService.streamConceptIds(ecl, branchCriteria, branch, stated, ECL_EXPANSION_BATCH_SIZE, conceptIds -> {
+			Map<String, ConceptMini> conceptMinis = includeTerms ?
+					conceptService.findConceptMinis(branchCriteria, conceptIds, languageDialects).getResultsMap() : Collections.emptyMap();
+			try {
+				for (Long conceptId : conceptIds) {
+					String id = conceptId.toString();
+					ConceptMini conceptMini = conceptMinis.get(id);
+					String fsn = conceptMini != null && conceptMini.getFsn() != null ? conceptMini.getFsn().getTerm() : null;
+					String pt = conceptMini != null && conceptMini.getPt() != null ? conceptMini.getPt().getTerm() : null;
+					if (tsv) {
+						writer.write(id);
+						if (includeTerms) {
+							writer.write("\t" + toTsvField(fsn) + "\t" + toTsvField(pt));
+						}
+					} else {
+						Map<String, String> row = new LinkedHashMap<>();
+						row.put("conceptId", id);
+						if (includeTerms) {
+							row.put("fsn", fsn);
+							row.put("pt", pt);
+						}
+						writer.write(NDJSON_WRITER.writeValueAsString(row));
+					}
+					writer.write("\n");
+				}
+				writer.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to write ECL expansion.", e);
+			}
+		});
+		writer.flush();
+	}
+
+	private static String toTsvField(String term) {
+		return term != null ? TSV_SPECIAL_CHARACTERS.matcher(term).replaceAll(" ") : "";
+	}
+
 	@ApiOperation(value = "Load concepts in the browser format.",
 			notes = "When enabled 'searchAfter' can be used for unlimited pagination. " +
 					"Load the first page then take the 'searchAfter' value from the response and use that " +
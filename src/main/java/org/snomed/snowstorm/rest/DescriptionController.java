@@ -125,6 +125,38 @@ public class DescriptionController {
 		return pageWithBucketAggregations;
 	}
 
+	@ApiOperation(value = "Search for active concepts as the user types.",
+			notes = "The last word of the term is matched as a prefix. One active description is returned for each active concept, shortest terms first. " +
+					"Only the first page of results is available and no aggregations are calculated. " +
+					"The Accept-Language header is used to chose the best translated FSN and PT values in the response.")
+	@RequestMapping(value = "browser/{branch}/descriptions/typeahead", method = RequestMethod.GET)
+	@JsonView(value = View.Component.class)
+	public ItemsPage<BrowserDescriptionSearchResult> findBrowserDescriptionsTypeahead(
+			@PathVariable String branch,
+			@RequestParam String term,
+
+			@ApiParam(value = "Set of two character language codes to match.")
+			@RequestParam(required = false) Set<String> language,
+
+			@RequestParam(defaultValue = "20") int limit,
+			@RequestHeader(value = "Accept-Language", defaultValue = Config.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader) {
+
+		branch = BranchPathUriUtil.decodePath(branch);
+		if (limit < 1 || limit > 100) {
+			throw new IllegalArgumentException("Limit must be between 1 and 100.");
+		}
+		List<LanguageDialect> languageDialects = ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader);
+
+		List<Description> descriptions = descriptionService.findTypeaheadDescriptions(branch, term, language, limit);
+
+		Set<String> conceptIds = descriptions.stream().map(Description::getConceptId).collect(Collectors.toSet());
+		Map<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branch, conceptIds, languageDialects).getResultsMap();
+
+		List<BrowserDescriptionSearchResult> results = new ArrayList<>();
+		descriptions.forEach(d -> results.add(new BrowserDescriptionSearchResult(d.getTerm(), d.isActive(), d.getLanguageCode(), d.getModuleId(), conceptMinis.get(d.getConceptId()))));
+		return new ItemsPage<>(results);
+	}
+
 	private void addBucketConcepts(@PathVariable String branch, List<LanguageDialect> LanguageDialect, PageWithBucketAggregations<BrowserDescriptionSearchResult> pageWithBucketAggregations) {
 		Map<String, Map<String, Long>> buckets = pageWithBucketAggregations.getBuckets();
 		Set<String> bucketConceptIds = new HashSet<>();
@@ -0,0 +1,80 @@
+package org.snomed.snowstorm.rest;
+
+import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.snomed.snowstorm.core.data.domain.ECLView;
+import org.snomed.snowstorm.ecl.ECLViewService;
+import org.snomed.snowstorm.rest.pojo.ECLViewCreateRequest;
+import org.snomed.snowstorm.rest.pojo.ItemsPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import static org.snomed.snowstorm.rest.ControllerHelper.getPageRequest;
+
+@RestController
+@Api(tags = "ECL Views", description = "-")
+@RequestMapping(produces = "application/json")
+public class ECLViewController {
+
+	@Autowired
+	private ECLViewService eclViewService;
+
+	@ApiOperation(value = "Register a named ECL view on a branch.",
+			notes = "The members of the expression are materialised in a dedicated index and kept up to date as the branch changes. " +
+					"Expressions without refinements or ancestor operators are updated using only the concepts changed in each commit, " +
+					"other expressions are evaluated in full when the branch changes.")
+	@RequestMapping(value = "/{branch}/ecl-views", method = RequestMethod.POST)
+	@PreAuthorize("hasPermission('AUTHOR', #branch)")
+	public ResponseEntity<Void> createView(@PathVariable String branch, @RequestBody ECLViewCreateRequest request) {
+		ECLView view = eclViewService.createView(BranchPathUriUtil.decodePath(branch), request.getName(), request.getEcl(), request.isStated());
+		return ControllerHelper.getCreatedResponse(view.getName());
+	}
+
+	@RequestMapping(value = "/{branch}/ecl-views", method = RequestMethod.GET)
+	public ItemsPage<ECLView> findViews(@PathVariable String branch) {
+		return new ItemsPage<>(eclViewService.findViews(BranchPathUriUtil.decodePath(branch)));
+	}
+
+	@RequestMapping(value = "/{branch}/ecl-views/{name}", method = RequestMethod.GET)
+	public ECLView findView(@PathVariable String branch, @PathVariable String name) {
+		return eclViewService.findViewOrThrow(BranchPathUriUtil.decodePath(branch), name);
+	}
+
+	@ApiOperation(value = "Evaluate the expression of an ECL view in full against the branch head.",
+			notes = "Views are updated as part of each commit on the branch. If that fails the view is flagged as stale " +
+					"and keeps serving the previous members until the next commit or until this refresh is run.")
+	@RequestMapping(value = "/{branch}/ecl-views/{name}/refresh", method = RequestMethod.POST)
+	@PreAuthorize("hasPermission('AUTHOR', #branch)")
+	public ECLView refreshView(@PathVariable String branch, @PathVariable String name) {
+		return eclViewService.refreshView(BranchPathUriUtil.decodePath(branch), name);
+	}
+
+	@RequestMapping(value = "/{branch}/ecl-views/{name}", method = RequestMethod.DELETE)
+	@PreAuthorize("hasPermission('AUTHOR', #branch)")
+	public void deleteView(@PathVariable String branch, @PathVariable String name) {
+		eclViewService.deleteView(BranchPathUriUtil.decodePath(branch), name);
+	}
+
+	@ApiOperation(value = "Page through the members of an ECL view in ascending concept id order.",
+			notes = "Members are served as persisted, check the stale flag of the view to see if they are behind the branch head.")
+	@RequestMapping(value = "/{branch}/ecl-views/{name}/members", method = RequestMethod.GET)
+	public ItemsPage<Long> findMembers(
+			@PathVariable String branch,
+			@PathVariable String name,
+			@RequestParam(required = false, defaultValue = "0") int offset,
+			@RequestParam(required = false, defaultValue = "1000") int limit) {
+
+		return new ItemsPage<>(eclViewService.findMembers(BranchPathUriUtil.decodePath(branch), name, getPageRequest(offset, limit)));
+	}
+
+	@ApiOperation(value = "Test if a concept is a member of an ECL view.",
+			notes = "Membership is tested against the persisted members, check the stale flag of the view to see if they are behind the branch head.")
+	@RequestMapping(value = "/{branch}/ecl-views/{name}/members/{conceptId}", method = RequestMethod.GET)
+	public boolean isMember(@PathVariable String branch, @PathVariable String name, @PathVariable Long conceptId) {
+		return eclViewService.isMember(BranchPathUriUtil.decodePath(branch), name, conceptId);
+	}
+
+}
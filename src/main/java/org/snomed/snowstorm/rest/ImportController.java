@@ -48,6 +48,8 @@ public class ImportController {
 
 		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(importRequest.getType(), importRequest.getBranchPath());
 		importConfiguration.setCreateCodeSystemVersion(importRequest.getCreateCodeSystemVersion());
+		importConfiguration.setPersistBatchSize(importRequest.getPersistBatchSize());
+		importConfiguration.setPersistParallelism(importRequest.getPersistParallelism());
 		String id = importService.createJob(importConfiguration);
 		return ControllerHelper.getCreatedResponse(id);
 	}
@@ -71,6 +73,8 @@ public class ImportController {
 
 		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(importRequest.getType(), importRequest.getBranchPath());
 		importConfiguration.setCreateCodeSystemVersion(importRequest.getCreateCodeSystemVersion());
+		importConfiguration.setPersistBatchSize(importRequest.getPersistBatchSize());
+		importConfiguration.setPersistParallelism(importRequest.getPersistParallelism());
 		String id = importService.createJob(importConfiguration);
 
 		try {
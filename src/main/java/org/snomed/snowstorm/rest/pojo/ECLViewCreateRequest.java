@@ -0,0 +1,35 @@
+package org.snomed.snowstorm.rest.pojo;
+
+public class ECLViewCreateRequest {
+
+	private String name;
+	private String ecl;
+	private boolean stated;
+
+	public ECLViewCreateRequest() {
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getEcl() {
+		return ecl;
+	}
+
+	public void setEcl(String ecl) {
+		this.ecl = ecl;
+	}
+
+	public boolean isStated() {
+		return stated;
+	}
+
+	public void setStated(boolean stated) {
+		this.stated = stated;
+	}
+}
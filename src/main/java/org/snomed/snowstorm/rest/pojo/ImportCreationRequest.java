@@ -9,6 +9,9 @@ public class ImportCreationRequest {
 
 	private boolean createCodeSystemVersion;
 
+	private Integer persistBatchSize;
+	private Integer persistParallelism;
+
 	public RF2Type getType() {
 		return type;
 	}
@@ -32,4 +35,20 @@ public class ImportCreationRequest {
 	public void setCreateCodeSystemVersion(boolean createCodeSystemVersion) {
 		this.createCodeSystemVersion = createCodeSystemVersion;
 	}
+
+	public Integer getPersistBatchSize() {
+		return persistBatchSize;
+	}
+
+	public void setPersistBatchSize(Integer persistBatchSize) {
+		this.persistBatchSize = persistBatchSize;
+	}
+
+	public Integer getPersistParallelism() {
+		return persistParallelism;
+	}
+
+	public void setPersistParallelism(Integer persistParallelism) {
+		this.persistParallelism = persistParallelism;
+	}
 }
@@ -311,6 +311,22 @@ class BranchReviewServiceTest extends AbstractTest {
 		assertReportEquals(reviewService.createConceptChangeReportOnBranchForTimeRange("MAIN", afterDeletion, now(), true), EMPTY_ARRAY);
 	}
 
+	@Test
+	void testChangeReportToBranchHeadReused() throws Exception {
+		createConcept("10000200", "MAIN/A");
+		Date head = branchService.findLatest("MAIN/A").getHead();
+
+		Set<Long> report = reviewService.createConceptChangeReportOnBranchForTimeRange("MAIN/A", setupEndTime, head, false);
+		assertReportEquals(report, new Long[]{10000200L});
+		report.clear();
+		assertReportEquals(reviewService.createConceptChangeReportOnBranchForTimeRange("MAIN/A", setupEndTime, head, false), new Long[]{10000200L});
+
+		// A new commit moves the head so the report is built again
+		createConcept("10000300", "MAIN/A");
+		head = branchService.findLatest("MAIN/A").getHead();
+		assertReportEquals(reviewService.createConceptChangeReportOnBranchForTimeRange("MAIN/A", setupEndTime, head, false), new Long[]{10000200L, 10000300L});
+	}
+
 	@Test
 	void testDescriptionUpdateOnSameBranchInChangeReport() throws Exception {
 		final String path = "MAIN";
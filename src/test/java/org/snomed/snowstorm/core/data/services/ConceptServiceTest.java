@@ -62,6 +62,9 @@ class ConceptServiceTest extends AbstractTest {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private ConceptMiniCacheService conceptMiniCacheService;
+
 	private ServiceTestUtil testUtil;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -1104,6 +1107,63 @@ class ConceptServiceTest extends AbstractTest {
 		assertNotNull(relationship.getType());
 	}
 
+	@Test
+	void testRelationshipTargetMinisCachedPerBranchHead() throws ServiceException {
+		conceptMiniCacheService.setEnabled(true);
+		try {
+			conceptService.create(new Concept(ISA).setDefinitionStatusId(PRIMITIVE).addDescription(fsn("Is a (attribute)")), "MAIN");
+			conceptService.create(new Concept(SNOMEDCT_ROOT).setDefinitionStatusId(PRIMITIVE).addDescription(fsn("SNOMED CT Concept")), "MAIN");
+			conceptService.create(new Concept("100001").addRelationship(new Relationship("100001", ISA, SNOMEDCT_ROOT)), "MAIN");
+
+			Concept concept = conceptService.find("100001", "MAIN");
+			assertEquals("SNOMED CT Concept", concept.getRelationship("100001").getTarget().getFsnTerm());
+			assertEquals("PRIMITIVE", concept.getRelationship("100001").getTarget().getDefinitionStatus());
+
+			long hits = (long) conceptMiniCacheService.getStats().get("hits");
+			concept = conceptService.find("100001", "MAIN");
+			assertEquals("SNOMED CT Concept", concept.getRelationship("100001").getTarget().getFsnTerm());
+			assertTrue("Target mini should be served from the cache.", (long) conceptMiniCacheService.getStats().get("hits") > hits);
+
+			// Changing the target must not leave the old term in the cache
+			Concept root = conceptService.find(SNOMEDCT_ROOT, "MAIN");
+			root.getDescriptions().iterator().next().setTerm("SNOMED CT Concept (SNOMED RT+CTV3)");
+			conceptService.update(root, "MAIN");
+			concept = conceptService.find("100001", "MAIN");
+			assertEquals("SNOMED CT Concept (SNOMED RT+CTV3)", concept.getRelationship("100001").getTarget().getFsnTerm());
+		} finally {
+			conceptMiniCacheService.setEnabled(false);
+		}
+	}
+
+	@Test
+	void testConceptMinisNotCarriedOverByLargeCommit() throws ServiceException {
+		conceptMiniCacheService.setEnabled(true);
+		int carryOverMaxChanges = conceptMiniCacheService.getCarryOverMaxChanges();
+		try {
+			conceptService.create(new Concept(ISA).setDefinitionStatusId(PRIMITIVE).addDescription(fsn("Is a (attribute)")), "MAIN");
+			conceptService.create(new Concept(SNOMEDCT_ROOT).setDefinitionStatusId(PRIMITIVE).addDescription(fsn("SNOMED CT Concept")), "MAIN");
+			conceptService.create(new Concept("100001").addRelationship(new Relationship("100001", ISA, SNOMEDCT_ROOT)), "MAIN");
+			conceptService.find("100001", "MAIN");
+
+			// Small commit, the target mini is carried over to the new head
+			conceptService.create(new Concept("100002"), "MAIN");
+			long hits = (long) conceptMiniCacheService.getStats().get("hits");
+			conceptService.find("100001", "MAIN");
+			assertTrue((long) conceptMiniCacheService.getStats().get("hits") > hits);
+
+			// Commit above the limit, the entries of the branch are dropped
+			conceptMiniCacheService.setCarryOverMaxChanges(0);
+			conceptService.create(new Concept("100003"), "MAIN");
+			long misses = (long) conceptMiniCacheService.getStats().get("misses");
+			Concept concept = conceptService.find("100001", "MAIN");
+			assertTrue((long) conceptMiniCacheService.getStats().get("misses") > misses);
+			assertEquals("SNOMED CT Concept", concept.getRelationship("100001").getTarget().getFsnTerm());
+		} finally {
+			conceptMiniCacheService.setCarryOverMaxChanges(carryOverMaxChanges);
+			conceptMiniCacheService.setEnabled(false);
+		}
+	}
+
 	@Test
 	public void testDuplicateAxiomsDoNotReplaceEachOther() throws ServiceException {
 		conceptService.create(new Concept(ISA).setDefinitionStatusId(PRIMITIVE).addDescription(fsn("Is a (attribute)")), "MAIN");
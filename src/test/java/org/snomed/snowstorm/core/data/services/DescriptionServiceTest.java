@@ -34,6 +34,9 @@ class DescriptionServiceTest extends AbstractTest {
 	@Autowired
 	private BranchService branchService;
 
+	@Autowired
+	private BranchMergeService branchMergeService;
+
 	@Autowired
 	private ConceptService conceptService;
 
@@ -49,6 +52,9 @@ class DescriptionServiceTest extends AbstractTest {
 	@Autowired
 	private SearchLanguagesConfiguration searchLanguagesConfiguration;
 
+	@Autowired
+	private DescriptionFacetUpdateService descriptionFacetUpdateService;
+
 	private ServiceTestUtil testUtil;
 
 	@BeforeEach
@@ -87,6 +93,31 @@ class DescriptionServiceTest extends AbstractTest {
 		assertEquals(newArrayList("Foot cramps"), actualTerms);
 	}
 
+	@Test
+	void testTypeaheadSearch() throws ServiceException {
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100001", "Heart attack", "Heart attack (disorder)");
+		testUtil.createConceptWithPathIdAndTerm("MAIN", "100002", "Heart");
+		testUtil.createConceptWithPathIdAndTerm("MAIN", "100003", "Head");
+		testUtil.createConceptWithPathIdAndTerm("MAIN", "100004", "Lung");
+		Concept inactive = testUtil.createConceptWithPathIdAndTerm("MAIN", "100005", "Heart structure");
+		inactive.setActive(false);
+		conceptService.update(inactive, "MAIN");
+
+		// One description per active concept, shortest first
+		List<String> terms = descriptionService.findTypeaheadDescriptions("MAIN", "hea", null, 10).stream().map(Description::getTerm).collect(Collectors.toList());
+		assertEquals(newArrayList("Head", "Heart", "Heart attack"), terms);
+
+		terms = descriptionService.findTypeaheadDescriptions("MAIN", "heart at", null, 10).stream().map(Description::getTerm).collect(Collectors.toList());
+		assertEquals(newArrayList("Heart attack"), terms);
+
+		assertEquals(1, descriptionService.findTypeaheadDescriptions("MAIN", "hea", null, 1).size());
+
+		// Also available as a search mode of the full description search
+		List<Description> content = descriptionService.findDescriptionsWithAggregations("MAIN",
+				new DescriptionCriteria().term("heart at").searchMode(DescriptionService.SearchMode.TYPEAHEAD), ServiceTestUtil.PAGE_REQUEST).getContent();
+		assertEquals(newArrayList("Heart attack", "Heart attack (disorder)"), content.stream().map(Description::getTerm).collect(Collectors.toList()));
+	}
+
 	@Test
 	void testDescriptionSearchCharacterFolding() throws ServiceException {
 		testUtil.createConceptWithPathIdAndTermWithLang("MAIN", "100001", "Heart", "en");
@@ -263,6 +294,37 @@ class DescriptionServiceTest extends AbstractTest {
 		assertEquals("{723592007=1}", getAggregationString("membership", soPizzaAggs));
 	}
 
+	@Test
+	void testUnfilteredDescriptionSearchAggregationsCached() throws ServiceException {
+		String path = "MAIN";
+		Concept root = new Concept(SNOMEDCT_ROOT);
+		Concept pizza_2 = new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Food (food)");
+		Concept cheesePizza_3 = new Concept("100003").addRelationship(new Relationship(ISA, pizza_2.getId())).addFSN("Cheese Pizza (pizza)");
+		Concept reallyCheesyPizza_4 = new Concept("100004").addRelationship(new Relationship(ISA, cheesePizza_3.getId())).addFSN("Really Cheesy Pizza (pizza)");
+		List<Concept> concepts = newArrayList(root, pizza_2, cheesePizza_3, reallyCheesyPizza_4);
+		setModulesAndLanguage(concepts);
+		conceptService.batchCreate(concepts, path);
+		referenceSetMemberService.createMembers(path, Sets.newHashSet(
+				new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_DOMAIN, "100003"),
+				new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_DOMAIN, "100004")
+		));
+
+		PageWithBucketAggregations<Description> page = descriptionService.findDescriptionsWithAggregations(path, new DescriptionCriteria(), PageRequest.of(0, 2));
+		assertEquals(3, page.getTotalElements());
+		assertEquals(2, page.getContent().size());
+		Map<String, Map<String, Long>> aggs = page.getBuckets();
+		assertEquals("{900000000000207008=3}", getAggregationString("module", aggs));
+		assertEquals("{en=3}", getAggregationString("language", aggs));
+		assertEquals("{food=1, pizza=2}", getAggregationString("semanticTags", aggs));
+		assertEquals("{723589008=2}", getAggregationString("membership", aggs));
+		assertEquals("{food=1, pizza=2}", descriptionService.countActiveConceptsPerSemanticTag(path).toString());
+
+		// Commit replaces the cached entry of the branch
+		reallyCheesyPizza_4.setActive(false);
+		conceptService.update(reallyCheesyPizza_4, path);
+		assertEquals("{food=1, pizza=1}", descriptionService.countActiveConceptsPerSemanticTag(path).toString());
+	}
+
 	@Test
 	void testDescriptionSearchGroupByConcept() throws ServiceException {
 		String path = "MAIN";
@@ -354,6 +416,88 @@ class DescriptionServiceTest extends AbstractTest {
 
 	}
 
+	@Test
+	void testDescriptionSearchDenormalisedAggregations() throws ServiceException {
+		descriptionFacetUpdateService.setEnabled(true);
+		try {
+			String path = "MAIN";
+			Concept root = new Concept(SNOMEDCT_ROOT);
+			Concept pizza_2 = new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Food (food)");
+			Concept cheesePizza_3 = new Concept("100003").addRelationship(new Relationship(ISA, pizza_2.getId())).addFSN("Cheese Pizza (pizza)");
+			Concept reallyCheesyPizza_4 = new Concept("100004").addRelationship(new Relationship(ISA, cheesePizza_3.getId())).addFSN("Really Cheesy Pizza (pizza)");
+			Concept reallyCheesyPizza_5 = new Concept("100005").addRelationship(new Relationship(ISA, reallyCheesyPizza_4.getId())).addFSN("So Cheesy Pizza (so pizza)");
+			List<Concept> concepts = newArrayList(root, pizza_2, cheesePizza_3, reallyCheesyPizza_4, reallyCheesyPizza_5);
+			setModulesAndLanguage(concepts);
+			conceptService.batchCreate(concepts, path);
+
+			referenceSetMemberService.createMembers(path, Sets.newHashSet(
+					new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_DOMAIN, "100003"),
+					new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_DOMAIN, "100004")
+			));
+
+			Map<String, Map<String, Long>> pizzaAggs = descriptionService.findDescriptionsWithAggregations(path, "pizza", PageRequest.of(0, 10)).getBuckets();
+			assertEquals("{900000000000207008=3}", getAggregationString("module", pizzaAggs));
+			assertEquals("{en=3}", getAggregationString("language", pizzaAggs));
+			assertEquals("{pizza=2, so pizza=1}", getAggregationString("semanticTags", pizzaAggs));
+			assertEquals("{723589008=2}", getAggregationString("membership", pizzaAggs));
+
+			// Membership added in a later commit is held on the existing descriptions
+			referenceSetMemberService.createMember(path, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_ATTRIBUTE_RANGE, "100005"));
+			pizzaAggs = descriptionService.findDescriptionsWithAggregations(path, "pizza", PageRequest.of(0, 10)).getBuckets();
+			assertEquals("{723592007=1, 723589008=2}", getAggregationString("membership", pizzaAggs));
+
+			PageWithBucketAggregations<Description> page = descriptionService.findDescriptionsWithAggregations(path,
+					new DescriptionCriteria()
+							.term("pizza")
+							.active(true)
+							.semanticTag("so pizza")
+							.conceptActive(true),
+					PageRequest.of(0, 10));
+			assertEquals(1, page.getTotalElements());
+			Map<String, Map<String, Long>> soPizzaAggs = page.getBuckets();
+			assertEquals("{so pizza=1}", getAggregationString("semanticTags", soPizzaAggs));
+			assertEquals("{723592007=1}", getAggregationString("membership", soPizzaAggs));
+		} finally {
+			descriptionFacetUpdateService.setEnabled(false);
+		}
+	}
+
+	@Test
+	void testDescriptionSearchDenormalisedAggregationsAfterRebase() throws ServiceException {
+		descriptionFacetUpdateService.setEnabled(true);
+		try {
+			String path = "MAIN";
+			Concept root = new Concept(SNOMEDCT_ROOT);
+			Concept pizza_2 = new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Food (food)");
+			Concept cheesePizza_3 = new Concept("100003").addRelationship(new Relationship(ISA, pizza_2.getId())).addFSN("Cheese Pizza (pizza)");
+			List<Concept> concepts = newArrayList(root, pizza_2, cheesePizza_3);
+			setModulesAndLanguage(concepts);
+			conceptService.batchCreate(concepts, path);
+
+			String project = "MAIN/PROJECT";
+			branchService.create(project);
+
+			// Membership added on the project writes project versions of the descriptions
+			referenceSetMemberService.createMember(project, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_DOMAIN, "100003"));
+			assertEquals("{723589008=1}", getAggregationString("membership",
+					descriptionService.findDescriptionsWithAggregations(project, "cheese", PageRequest.of(0, 10)).getBuckets()));
+
+			// Membership added on the parent, the project versions of the descriptions do not have it yet
+			referenceSetMemberService.createMember(path, new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_ATTRIBUTE_RANGE, "100003"));
+			assertEquals("{723592007=1}", getAggregationString("membership",
+					descriptionService.findDescriptionsWithAggregations(path, "cheese", PageRequest.of(0, 10)).getBuckets()));
+
+			// Rebase updates the project versions
+			branchMergeService.mergeBranchSync(path, project, Collections.emptySet());
+			Map<String, Long> membership = descriptionService.findDescriptionsWithAggregations(project, "cheese", PageRequest.of(0, 10)).getBuckets().get("membership");
+			assertEquals(2, membership.size());
+			assertEquals(Long.valueOf(1), membership.get(Concepts.REFSET_MRCM_DOMAIN));
+			assertEquals(Long.valueOf(1), membership.get(Concepts.REFSET_MRCM_ATTRIBUTE_RANGE));
+		} finally {
+			descriptionFacetUpdateService.setEnabled(false);
+		}
+	}
+
 	@Test
 	void testDescriptionSearchAggregationsActiveConcept() throws ServiceException {
 		String path = "MAIN";
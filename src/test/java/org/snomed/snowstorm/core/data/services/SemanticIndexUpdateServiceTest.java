@@ -1,8 +1,10 @@
 package org.snomed.snowstorm.core.data.services;
 
 import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Commit;
 import org.elasticsearch.index.query.MatchAllQueryBuilder;
 import org.junit.Assert;
@@ -16,7 +18,10 @@ import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.hierarchy.HierarchyCacheService;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilderException;
+import org.snomed.snowstorm.ecl.ECLResultCacheService;
+import org.snomed.snowstorm.ecl.ECLViewService;
 import org.snomed.snowstorm.mrcm.MRCMUpdateService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -61,17 +66,26 @@ class SemanticIndexUpdateServiceTest extends AbstractTest {
 	@Autowired
 	private ElasticsearchRestTemplate elasticsearchTemplate;
 
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
 	private static final PageRequest PAGE_REQUEST = PageRequest.of(0, 50);
 
 	@Test
 	void testCommitListenerOrderingConfig() {
 		List<CommitListener> commitListeners = branchService.getCommitListeners();
-		assertEquals(6, commitListeners.size());
+		assertEquals(12, commitListeners.size());
 		assertEquals(ConceptDefinitionStatusUpdateService.class, commitListeners.get(0).getClass());
-		assertEquals(SemanticIndexUpdateService.class, commitListeners.get(1).getClass());
-		assertEquals(MRCMUpdateService.class, commitListeners.get(2).getClass());
-		assertEquals(TraceabilityLogService.class, commitListeners.get(3).getClass());
-		assertEquals(IntegrityService.class, commitListeners.get(4).getClass());
+		assertEquals(DescriptionFacetUpdateService.class, commitListeners.get(1).getClass());
+		assertEquals(SemanticIndexUpdateService.class, commitListeners.get(2).getClass());
+		assertEquals(MRCMUpdateService.class, commitListeners.get(3).getClass());
+		assertEquals(TraceabilityLogService.class, commitListeners.get(4).getClass());
+		assertEquals(IntegrityService.class, commitListeners.get(5).getClass());
+		assertEquals(HierarchyCacheService.class, commitListeners.get(6).getClass());
+		assertEquals(ECLResultCacheService.class, commitListeners.get(7).getClass());
+		assertEquals(ECLViewService.class, commitListeners.get(8).getClass());
+		assertEquals(DescriptionFacetCacheService.class, commitListeners.get(9).getClass());
+		assertEquals(ConceptMiniCacheService.class, commitListeners.get(10).getClass());
 	}
 
 	@Test
@@ -825,6 +839,181 @@ class SemanticIndexUpdateServiceTest extends AbstractTest {
 				1, queryService.search(queryService.createQueryBuilder(false).ecl("100100000001"), projectBranch, QueryService.PAGE_OF_ONE).getTotalElements());
 	}
 
+	@Test
+	void testParallelIndexingMatchesSerialIndexing() throws ServiceException {
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(SNOMEDCT_ROOT));
+		concepts.add(new Concept(FINDING_SITE).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)));
+		concepts.add(new Concept("100001001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)));
+		concepts.add(new Concept("100002001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)));
+		// Two parents
+		concepts.add(new Concept("100003001")
+				.addRelationship(new Relationship(ISA, "100001001")).addRelationship(new Relationship(ISA, "100002001"))
+				.addRelationship(new Relationship(ISA, "100001001").setInferred(true)).addRelationship(new Relationship(ISA, "100002001").setInferred(true)));
+		concepts.add(new Concept("100004001")
+				.addRelationship(new Relationship(ISA, "100003001")).addRelationship(new Relationship(FINDING_SITE, "100002001"))
+				.addRelationship(new Relationship(ISA, "100003001").setInferred(true)).addRelationship(new Relationship(FINDING_SITE, "100002001").setInferred(true)));
+		conceptService.batchCreate(concepts, "MAIN");
+
+		String serialBranch = "MAIN/SERIAL";
+		String parallelBranch = "MAIN/PARALLEL";
+		branchService.create(serialBranch);
+		branchService.create(parallelBranch);
+
+		makeIndexingTestChanges(serialBranch);
+		updateService.setParallelIndexingEnabled(true);
+		try {
+			makeIndexingTestChanges(parallelBranch);
+			assertEquals(getSemanticIndex(serialBranch), getSemanticIndex(parallelBranch));
+			assertTC(conceptService.find("100004001", parallelBranch), parallelBranch,
+					new Concept("100003001"), new Concept("100002001"), new Concept(SNOMEDCT_ROOT));
+
+			// Rebase both branches, rebuilding the index of each
+			conceptService.create(new Concept("100006001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), "MAIN");
+			updateService.setParallelIndexingEnabled(false);
+			try (Commit rebaseCommit = branchService.openRebaseCommit(serialBranch)) {
+				rebaseCommit.markSuccessful();
+			}
+			updateService.setParallelIndexingEnabled(true);
+			try (Commit rebaseCommit = branchService.openRebaseCommit(parallelBranch)) {
+				rebaseCommit.markSuccessful();
+			}
+			assertEquals(getSemanticIndex(serialBranch), getSemanticIndex(parallelBranch));
+		} finally {
+			updateService.setParallelIndexingEnabled(false);
+		}
+	}
+
+	private void makeIndexingTestChanges(String branch) throws ServiceException {
+		// New node below an existing one
+		conceptService.create(new Concept("100005001")
+				.addRelationship(new Relationship(ISA, "100004001"))
+				.addRelationship(new Relationship(ISA, "100004001").setInferred(true)), branch);
+
+		// Move a concept with two parents under one of them, descendants are updated
+		Concept concept = conceptService.find("100003001", branch);
+		concept.setRelationships(concept.getRelationships().stream()
+				.filter(r -> !r.getDestinationId().equals("100001001"))
+				.collect(Collectors.toSet()));
+		conceptService.update(concept, branch);
+
+		// Attribute change on an existing node
+		concept = conceptService.find("100004001", branch);
+		concept.getRelationships().add(new Relationship(FINDING_SITE, "100001001"));
+		concept.getRelationships().add(new Relationship(FINDING_SITE, "100001001").setInferred(true));
+		conceptService.update(concept, branch);
+	}
+
+	@Test
+	void testSmallCommitUpdateMatchesFullUpdate() throws ServiceException {
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(SNOMEDCT_ROOT));
+		concepts.add(new Concept(FINDING_SITE).addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)));
+		concepts.add(new Concept("100001001").addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)));
+		concepts.add(new Concept("100002001").addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)));
+		// Two parents
+		concepts.add(new Concept("100003001")
+				.addAxiom(new Relationship(ISA, "100001001"), new Relationship(ISA, "100002001"))
+				.addRelationship(new Relationship(ISA, "100001001").setInferred(true)).addRelationship(new Relationship(ISA, "100002001").setInferred(true)));
+		concepts.add(new Concept("100004001")
+				.addAxiom(new Relationship(ISA, "100003001"), new Relationship(FINDING_SITE, "100002001"))
+				.addRelationship(new Relationship(ISA, "100003001").setInferred(true)).addRelationship(new Relationship(FINDING_SITE, "100002001").setInferred(true)));
+		// Two axioms
+		concepts.add(new Concept("100005001")
+				.addAxiom(new Relationship(ISA, "100004001"))
+				.addAxiom(new Relationship(ISA, "100001001"))
+				.addRelationship(new Relationship(ISA, "100004001").setInferred(true)).addRelationship(new Relationship(ISA, "100001001").setInferred(true)));
+		concepts.add(new Concept("100006001")
+				.addAxiom(new Relationship(ISA, "100005001"))
+				.addRelationship(new Relationship(ISA, "100005001").setInferred(true)));
+		conceptService.batchCreate(concepts, "MAIN");
+
+		String fullUpdateBranch = "MAIN/FULL";
+		String smallCommitBranch = "MAIN/SMALL";
+		branchService.create(fullUpdateBranch);
+		branchService.create(smallCommitBranch);
+
+		int smallCommitMaxChanges = updateService.getSmallCommitMaxChanges();
+		assertTrue(smallCommitMaxChanges > 0);
+		updateService.setSmallCommitMaxChanges(0);
+		try {
+			makeSmallCommits(fullUpdateBranch);
+		} finally {
+			updateService.setSmallCommitMaxChanges(smallCommitMaxChanges);
+		}
+		makeSmallCommits(smallCommitBranch);
+
+		assertEquals(getSemanticIndex(fullUpdateBranch), getSemanticIndex(smallCommitBranch));
+
+		// Check the index is what we expect, not only the same
+		assertTC(conceptService.find("100004001", smallCommitBranch), smallCommitBranch,
+				new Concept("100003001"), new Concept("100002001"), new Concept(FINDING_SITE), new Concept(SNOMEDCT_ROOT));
+		assertEquals(0, queryService.eclSearch("100004001 : " + FINDING_SITE + " = *", false, smallCommitBranch, LARGE_PAGE).getTotalElements());
+		assertEquals(1, queryService.eclSearch("100004001 : " + FINDING_SITE + " = *", true, smallCommitBranch, LARGE_PAGE).getTotalElements());
+		assertEquals(Collections.singleton(100004001L), queryService.findParentIds(versionControlHelper.getBranchCriteria(smallCommitBranch), true, "100005001"));
+		Map<String, List<Object>> semanticIndex = getSemanticIndex(smallCommitBranch);
+		assertFalse(semanticIndex.containsKey(QueryConcept.toConceptIdForm(100006001L, true)));
+		assertFalse(semanticIndex.containsKey(QueryConcept.toConceptIdForm(100006001L, false)));
+	}
+
+	@Test
+	void testSmallCommitDoesNotLoadSiblingsOfNewLeaf() throws ServiceException {
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(SNOMEDCT_ROOT));
+		concepts.add(new Concept("100001001").addAxiom(new Relationship(ISA, SNOMEDCT_ROOT)).addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)));
+		for (int i = 0; i < 50; i++) {
+			String conceptId = (200001 + i) + "001";
+			concepts.add(new Concept(conceptId).addAxiom(new Relationship(ISA, "100001001")).addRelationship(new Relationship(ISA, "100001001").setInferred(true)));
+		}
+		conceptService.batchCreate(concepts, "MAIN");
+		assertEquals(50, queryService.eclSearch("<! 100001001", true, "MAIN", LARGE_PAGE).getTotalElements());
+
+		// New leaf under a parent with many children
+		conceptService.create(new Concept("100002001").addAxiom(new Relationship(ISA, "100001001")).addRelationship(new Relationship(ISA, "100001001").setInferred(true)), "MAIN");
+
+		assertEquals("Only the parent and root are loaded, not the existing children of the parent.", 2, updateService.getLastExistingNodeCount());
+		assertTC(conceptService.find("100002001", "MAIN"), new Concept("100001001"), new Concept(SNOMEDCT_ROOT));
+		assertEquals(51, queryService.eclSearch("<! 100001001", true, "MAIN", LARGE_PAGE).getTotalElements());
+	}
+
+	private void makeSmallCommits(String branch) throws ServiceException {
+		// Move a concept with two parents to a different pair of parents, descendants are updated
+		Concept concept = conceptService.find("100003001", branch);
+		concept.getClassAxioms().clear();
+		concept.addAxiom(new Relationship(ISA, "100002001"), new Relationship(ISA, FINDING_SITE));
+		concept.getRelationships().removeIf(relationship -> relationship.getDestinationId().equals("100001001"));
+		concept.addRelationship(new Relationship(ISA, FINDING_SITE).setInferred(true));
+		conceptService.update(concept, branch);
+
+		// Delete an inferred attribute relationship
+		concept = conceptService.find("100004001", branch);
+		concept.getRelationships().removeIf(relationship -> relationship.getTypeId().equals(FINDING_SITE));
+		conceptService.update(concept, branch);
+
+		// Delete one of two axioms and the matching inferred relationship
+		concept = conceptService.find("100005001", branch);
+		concept.getClassAxioms().removeIf(axiom -> axiom.getRelationships().iterator().next().getDestinationId().equals("100001001"));
+		concept.getRelationships().removeIf(relationship -> relationship.getDestinationId().equals("100001001"));
+		conceptService.update(concept, branch);
+
+		// Inactivate a concept
+		concept = conceptService.find("100006001", branch);
+		concept.setActive(false);
+		concept.getClassAxioms().forEach(axiom -> axiom.setActive(false));
+		concept.getRelationships().forEach(relationship -> relationship.setActive(false));
+		conceptService.update(concept, branch);
+	}
+
+	private Map<String, List<Object>> getSemanticIndex(String branch) {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		return elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+				.withPageable(LARGE_PAGE).build(), QueryConcept.class)
+				.stream().map(SearchHit::getContent)
+				.collect(Collectors.toMap(QueryConcept::getConceptIdForm,
+						queryConcept -> Arrays.asList(queryConcept.getParents(), queryConcept.getAncestors(), queryConcept.getAttr())));
+	}
+
 	private void simulateRF2Import(String path, List<Concept> concepts) {
 		try (Commit commit = branchService.openCommit(path)) {
 			concepts.forEach(Concept::markChanged);
@@ -6,26 +6,30 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.Description;
 import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.domain.jobs.TraceabilityOutboxMessage;
+import org.snomed.snowstorm.core.data.repositories.jobs.TraceabilityOutboxMessageRepository;
+import org.snomed.snowstorm.core.data.services.pojo.PersistedComponents;
 import org.snomed.snowstorm.core.data.services.traceability.Activity;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
-import java.util.Stack;
+import java.util.*;
 
 import static junit.framework.TestCase.assertNull;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 @ExtendWith(SpringExtension.class)
 @ContextConfiguration(classes = TestConfig.class)
@@ -37,10 +41,15 @@ class TraceabilityLogServiceTest extends AbstractTest {
 	@Autowired
 	private ConceptService conceptService;
 
+	@Autowired
+	private TraceabilityOutboxMessageRepository outboxRepository;
+
 	private static Stack<Activity> activitiesLogged = new Stack<>();
 
 	private boolean testContextTraceabilityEnabled;
 
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
 	@BeforeEach
 	void setup() {
 		testContextTraceabilityEnabled = traceabilityLogService.isEnabled();
@@ -107,6 +116,141 @@ class TraceabilityLogServiceTest extends AbstractTest {
 		assertEquals(1, activity.getChanges().size());
 	}
 
+	@Test
+	void createConceptSentAsync() throws ServiceException, InterruptedException {
+		traceabilityLogService.setAsync(true);
+		try {
+			conceptService.create(new Concept().addFSN("Async concept"), MAIN);
+			Activity activity = getActivity();
+			assertNotNull(activity);
+			assertEquals("Creating concept Async concept", activity.getCommitComment());
+			assertEquals(1, activity.getChanges().size());
+			assertNull("Activities which are not split have no part number", activity.getPart());
+			assertNull(activity.getTotalParts());
+		} finally {
+			traceabilityLogService.setAsync(false);
+		}
+	}
+
+	@Test
+	void createConceptSentThroughOutbox() throws ServiceException, InterruptedException {
+		traceabilityLogService.setOutboxEnabled(true);
+		try {
+			conceptService.create(new Concept().addFSN("Outbox concept"), MAIN);
+			assertEquals(1L, traceabilityLogService.getOutboxStats().get("pending"));
+
+			traceabilityLogService.publishOutbox();
+			Map<String, Object> stats = traceabilityLogService.getOutboxStats();
+			assertEquals(0L, stats.get("pending"));
+			assertEquals(0L, stats.get("failures"));
+
+			Activity activity = getActivity();
+			assertNotNull(activity);
+			assertEquals("Creating concept Outbox concept", activity.getCommitComment());
+		} finally {
+			traceabilityLogService.setOutboxEnabled(false);
+		}
+	}
+
+	@Test
+	void failingOutboxMessageParked() throws ServiceException, InterruptedException {
+		traceabilityLogService.setOutboxEnabled(true);
+		try {
+			conceptService.create(new Concept().addFSN("First concept"), MAIN);
+			conceptService.create(new Concept().addFSN("Second concept"), MAIN);
+			assertEquals(2L, traceabilityLogService.getOutboxStats().get("pending"));
+
+			// Simulate the first message failing every time it is sent
+			TraceabilityOutboxMessage first = outboxRepository.findAll(Sort.by(TraceabilityOutboxMessage.Fields.COMMIT_TIMESTAMP)).iterator().next();
+			int attempts = 0;
+			while (!traceabilityLogService.recordFailedAttempt(first, new IllegalStateException("Test failure")) && attempts < 100) {
+				attempts++;
+			}
+			assertTrue(first.isParked());
+			assertEquals(10, first.getAttempts());
+			Map<String, Object> stats = traceabilityLogService.getOutboxStats();
+			assertEquals(1L, stats.get("pending"));
+			assertEquals(1L, stats.get("parked"));
+
+			// The parked message does not block the next one
+			traceabilityLogService.publishOutbox();
+			Activity activity = getActivity();
+			assertNotNull(activity);
+			assertEquals("Creating concept Second concept", activity.getCommitComment());
+			stats = traceabilityLogService.getOutboxStats();
+			assertEquals(0L, stats.get("pending"));
+			assertEquals(1L, stats.get("parked"));
+
+			assertEquals(1, traceabilityLogService.retryParkedOutboxMessages());
+			stats = traceabilityLogService.getOutboxStats();
+			assertEquals(1L, stats.get("pending"));
+			assertEquals(0L, stats.get("parked"));
+			traceabilityLogService.publishOutbox();
+			activity = getActivity();
+			assertNotNull(activity);
+			assertEquals("Creating concept First concept", activity.getCommitComment());
+			assertEquals(0L, traceabilityLogService.getOutboxStats().get("pending"));
+		} finally {
+			traceabilityLogService.setOutboxEnabled(false);
+			outboxRepository.deleteAll();
+		}
+	}
+
+	@Test
+	void logActivityOfLargeCommit() {
+		// Synthetic commit of 100k components, 20k concepts each with two descriptions and two relationships
+		List<Concept> concepts = new ArrayList<>();
+		List<Description> descriptions = new ArrayList<>();
+		List<Relationship> relationships = new ArrayList<>();
+		for (int i = 0; i < 20_000; i++) {
+			String conceptId = (1_000_000 + i) + "00";
+			Concept concept = new Concept(conceptId);
+			concept.setCreating(true);
+			concept.markChanged();
+			concepts.add(concept);
+			for (int d = 0; d < 2; d++) {
+				Description description = new Description((1_000_000 + i) + "1" + d, "Term " + d).setConceptId(conceptId);
+				description.setCreating(true);
+				description.markChanged();
+				descriptions.add(description);
+				Relationship relationship = new Relationship((1_000_000 + i) + "2" + d, Concepts.ISA, Concepts.SNOMEDCT_ROOT).setSourceId(conceptId);
+				relationship.setCreating(true);
+				relationship.markChanged();
+				relationships.add(relationship);
+			}
+		}
+
+		List<Activity> messages = new ArrayList<>();
+		int maxChangesPerMessage = traceabilityLogService.getMaxChangesPerMessage();
+		traceabilityLogService.setActivityConsumer(messages::add);
+		traceabilityLogService.setMaxChangesPerMessage(1_000);
+		try {
+			long start = System.currentTimeMillis();
+			traceabilityLogService.logActivity("test", new Commit(new Branch("MAIN"), Commit.CommitType.CONTENT, null, null),
+					new PersistedComponents(concepts, descriptions, relationships, Collections.emptySet()));
+			long millis = System.currentTimeMillis() - start;
+			logger.info("Traceability activity of 100000 components built and sent in {} ms, {} components per second.", millis, 100_000_000L / Math.max(millis, 1));
+		} finally {
+			traceabilityLogService.setActivityConsumer(null);
+			traceabilityLogService.setMaxChangesPerMessage(maxChangesPerMessage);
+		}
+
+		assertEquals(20, messages.size());
+		Set<String> conceptIds = new HashSet<>();
+		for (int i = 0; i < messages.size(); i++) {
+			Activity message = messages.get(i);
+			assertEquals(Integer.valueOf(i + 1), message.getPart());
+			assertEquals(Integer.valueOf(20), message.getTotalParts());
+			assertEquals("Bulk update to 20000 concepts.", message.getCommitComment());
+			assertEquals(1_000, message.getChanges().size());
+			for (Activity.ConceptActivity conceptActivity : message.getChanges().values()) {
+				assertEquals(5, conceptActivity.getChanges().size());
+			}
+			conceptIds.addAll(message.getChanges().keySet());
+		}
+		assertEquals(20_000, conceptIds.size());
+	}
+
 	public Activity getActivity() throws InterruptedException {
 		return getActivityWithTimeout(20);
 	}
@@ -17,6 +17,7 @@ import org.snomed.snowstorm.core.data.repositories.ClassificationRepository;
 import org.snomed.snowstorm.core.data.repositories.classification.RelationshipChangeRepository;
 import org.snomed.snowstorm.core.data.services.CodeSystemService;
 import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.RelationshipService;
 import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -49,6 +50,9 @@ class ClassificationServiceTest extends AbstractTest {
 	@Autowired
 	private ConceptService conceptService;
 
+	@Autowired
+	private RelationshipService relationshipService;
+
 	@Autowired
 	private CodeSystemService codeSystemService;
 
@@ -126,6 +130,99 @@ class ClassificationServiceTest extends AbstractTest {
 		}
 	}
 
+	@Test
+	void testSaveRelationshipChangesInBulkMode() throws IOException, ServiceException, InterruptedException {
+		int bulkSaveMinChanges = classificationService.getBulkSaveMinChanges();
+		classificationService.setBulkSaveMinChanges(1);
+		try {
+			conceptService.create(
+					new Concept("123123123001")
+							.addAxiom(
+									new Relationship(Concepts.ISA, Concepts.SNOMEDCT_ROOT),
+									new Relationship("363698007", "84301002")
+							), "MAIN");
+
+			String extensionBranchPath = "MAIN/SNOMEDCT-SE";
+			codeSystemService.createCodeSystem(new CodeSystem("SNOMEDCT-SE", extensionBranchPath));
+			branchService.updateMetadata(extensionBranchPath, ImmutableMap.of(Config.DEFAULT_MODULE_ID_KEY, "45991000052106", Config.DEFAULT_NAMESPACE_KEY, "1000052"));
+
+			Classification classification = createClassification(extensionBranchPath, UUID.randomUUID().toString());
+			classificationService.saveRelationshipChanges(classification, new ByteArrayInputStream(("" +
+					"id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId\n" +
+					"\t\t1\t\t123123123001\t138875005\t0\t116680003\t900000000000227009\t900000000000451002\n" +
+					"\t\t1\t\t123123123001\t84301002\t0\t363698007\t900000000000227009\t900000000000451002\n" +
+					"\t\t1\t\t123123123001\t50960005\t0\t116676008\t900000000000227009\t900000000000451002\n" +
+					"\t\t1\t\t123123123001\t247247001\t0\t116680003\t900000000000227009\t900000000000451002\n" +
+					"").getBytes()));
+
+			assertEquals(SAVED, saveClassificationAndWaitForCompletion(extensionBranchPath, classification.getId()));
+			classification = classificationService.findClassification(extensionBranchPath, classification.getId());
+			assertEquals(Integer.valueOf(4), classification.getInferredRelationshipChangesToSave());
+			assertEquals(Integer.valueOf(4), classification.getInferredRelationshipChangesSaved());
+
+			Concept concept = conceptService.find("123123123001", extensionBranchPath);
+			assertEquals(4, concept.getRelationships().size());
+			for (Relationship relationship : concept.getRelationships()) {
+				assertTrue(relationship.isActive());
+				assertEquals("New inferred relationships have the configured module applied.", "45991000052106", relationship.getModuleId());
+				assertTrue("New inferred relationships have SCTIDs in the configured namespace and correct partition ID", relationship.getId().contains("1000052" + "12"));
+			}
+
+			// Not released redundant relationship is deleted
+			Relationship redundant = concept.getRelationships().stream().filter(r -> r.getDestinationId().equals("247247001")).findFirst().orElseThrow(IllegalStateException::new);
+			String classificationId = UUID.randomUUID().toString();
+			classificationService.saveRelationshipChanges(createClassification(extensionBranchPath, classificationId), new ByteArrayInputStream(("" +
+					"id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId\n" +
+					redundant.getId() + "\t\t0\t\t123123123001\t247247001\t0\t116680003\t900000000000011006\t900000000000451002\n" +
+					"").getBytes()));
+			assertEquals(SAVED, saveClassificationAndWaitForCompletion(extensionBranchPath, classificationId));
+			assertEquals(3, conceptService.find("123123123001", extensionBranchPath).getRelationships().size());
+
+			// Release content
+			codeSystemService.createVersion(codeSystemService.find("SNOMEDCT-SE"), 20200131, "");
+			concept = conceptService.find("123123123001", extensionBranchPath);
+			Relationship morphology = concept.getRelationships().stream().filter(r -> r.getDestinationId().equals("50960005")).findFirst().orElseThrow(IllegalStateException::new);
+			Relationship findingSite = concept.getRelationships().stream().filter(r -> r.getDestinationId().equals("84301002")).findFirst().orElseThrow(IllegalStateException::new);
+			assertEquals("20200131", morphology.getEffectiveTime());
+
+			// Released redundant relationship is inactivated, group change of existing relationship, change of missing concept is skipped
+			classificationId = UUID.randomUUID().toString();
+			classificationService.saveRelationshipChanges(createClassification(extensionBranchPath, classificationId), new ByteArrayInputStream(("" +
+					"id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId\n" +
+					morphology.getId() + "\t\t0\t\t123123123001\t50960005\t0\t116676008\t900000000000011006\t900000000000451002\n" +
+					findingSite.getId() + "\t\t1\t\t123123123001\t84301002\t1\t363698007\t900000000000011006\t900000000000451002\n" +
+					"\t\t1\t\t456456456001\t138875005\t0\t116680003\t900000000000227009\t900000000000451002\n" +
+					"").getBytes()));
+			assertEquals(SAVED, saveClassificationAndWaitForCompletion(extensionBranchPath, classificationId));
+
+			concept = conceptService.find("123123123001", extensionBranchPath);
+			assertEquals("Released redundant relationship not removed.", 3, concept.getRelationships().size());
+			morphology = concept.getRelationship(morphology.getId());
+			assertFalse("Released redundant relationship made inactive.", morphology.isActive());
+			assertNull(morphology.getEffectiveTime());
+			findingSite = concept.getRelationship(findingSite.getId());
+			assertTrue(findingSite.isActive());
+			assertEquals(1, findingSite.getGroupId());
+			assertNull(findingSite.getEffectiveTime());
+			assertEquals("Change of missing concept skipped.", 0, relationshipService.findRelationships(extensionBranchPath, null, null, null, null,
+					"456456456001", null, null, null, null, LARGE_PAGE).getTotalElements());
+
+			// Released relationship is reactivated
+			classificationId = UUID.randomUUID().toString();
+			classificationService.saveRelationshipChanges(createClassification(extensionBranchPath, classificationId), new ByteArrayInputStream(("" +
+					"id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId\n" +
+					morphology.getId() + "\t\t1\t\t123123123001\t50960005\t0\t116676008\t900000000000011006\t900000000000451002\n" +
+					"").getBytes()));
+			assertEquals(SAVED, saveClassificationAndWaitForCompletion(extensionBranchPath, classificationId));
+
+			morphology = conceptService.find("123123123001", extensionBranchPath).getRelationship(morphology.getId());
+			assertTrue("Released relationship reactivated.", morphology.isActive());
+			assertEquals("Reactivation restores the released effective time.", "20200131", morphology.getEffectiveTime());
+		} finally {
+			classificationService.setBulkSaveMinChanges(bulkSaveMinChanges);
+		}
+	}
+
 	@Test
 	void testRemoveNotReleasedRedundantRelationships() throws IOException, ServiceException, InterruptedException {
 		// Create concept with some stated modeling in an axiom
@@ -0,0 +1,40 @@
+package org.snomed.snowstorm.core.data.services.hierarchy;
+
+import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+class BranchHierarchyTest {
+
+	@Test
+	void ancestorsDescendantsAndParents() {
+		// 1 <- 2 <- 3, 1 <- 4 <- 3, 1 <- 5
+		BranchHierarchy hierarchy = new BranchHierarchy(
+				LongArrayList.wrap(new long[]{5, 4, 3, 2, 1}),
+				LongArrayList.wrap(new long[]{2, 3, 4, 3, 5, 9}),
+				LongArrayList.wrap(new long[]{1, 2, 1, 4, 1, 1}));
+
+		assertEquals(5, hierarchy.getConceptCount());
+		assertTrue(hierarchy.contains(3));
+		assertFalse(hierarchy.contains(9));
+
+		assertEquals(Sets.newHashSet(2L, 4L), hierarchy.getParentIds(3));
+		assertEquals(Collections.emptySet(), hierarchy.getParentIds(1));
+		assertEquals(Collections.emptySet(), hierarchy.getParentIds(100));
+
+		assertEquals(Sets.newHashSet(1L, 2L, 4L), hierarchy.getAncestorIds(3));
+		assertEquals(Collections.emptySet(), hierarchy.getAncestorIds(1));
+		assertEquals(Sets.newHashSet(1L, 2L, 4L), hierarchy.getAncestorIdsAsUnion(Arrays.asList(3L, 5L)));
+
+		assertEquals(Arrays.asList(2L, 3L, 4L, 5L), hierarchy.getDescendantIdsAsUnion(Collections.singleton(1L)));
+		assertEquals(Collections.singletonList(3L), hierarchy.getDescendantIdsAsUnion(Arrays.asList(2L, 4L)));
+		// Requested concepts are included when they descend from another requested concept
+		assertEquals(Arrays.asList(2L, 3L, 4L, 5L), hierarchy.getDescendantIdsAsUnion(Arrays.asList(4L, 1L)));
+	}
+
+}
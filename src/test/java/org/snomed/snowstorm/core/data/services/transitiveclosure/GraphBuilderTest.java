@@ -0,0 +1,85 @@
+package org.snomed.snowstorm.core.data.services.transitiveclosure;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GraphBuilderTest {
+
+	@Test
+	void transitiveClosure() throws GraphBuilderException {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(2, 1);
+		graphBuilder.addParent(3, 2);
+		graphBuilder.addParent(4, 2);
+		graphBuilder.addParent(4, 10);
+		graphBuilder.addParent(10, 1);
+		// Duplicate edges are ignored
+		graphBuilder.addParent(4, 10);
+
+		Graph graph = graphBuilder.build();
+		assertEquals(5, graph.getNodeCount());
+		assertEquals(-1, graph.getNodeIndex(100));
+
+		assertEquals(Sets.newHashSet(), graph.getTransitiveClosure(graph.getNodeIndex(1), "MAIN", true));
+		assertEquals(Sets.newHashSet(1L), graph.getTransitiveClosure(graph.getNodeIndex(2), "MAIN", true));
+		assertEquals(Sets.newHashSet(1L, 2L), graph.getTransitiveClosure(graph.getNodeIndex(3), "MAIN", true));
+		assertEquals(Sets.newHashSet(1L, 2L, 10L), graph.getTransitiveClosure(graph.getNodeIndex(4), "MAIN", true));
+		assertEquals(Sets.newHashSet(2L, 10L), graph.getParentIds(graph.getNodeIndex(4)));
+	}
+
+	@Test
+	void clearParentsAndMarkUpdated() throws GraphBuilderException {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(2, 1);
+		graphBuilder.addParent(3, 2);
+		graphBuilder.addParent(5, 1);
+		graphBuilder.addParent(6, 5);
+
+		// Move 3 from 2 to 6
+		graphBuilder.clearParentsAndMarkUpdated(3);
+		graphBuilder.addParent(3, 6);
+
+		Graph graph = graphBuilder.build();
+		assertEquals(Sets.newHashSet(1L, 5L, 6L), graph.getTransitiveClosure(graph.getNodeIndex(3), "MAIN", true));
+		assertEquals(Sets.newHashSet(6L), graph.getParentIds(graph.getNodeIndex(3)));
+		assertTrue(graph.isAncestorOrSelfUpdated(graph.getNodeIndex(3)));
+		assertFalse(graph.isAncestorOrSelfUpdated(graph.getNodeIndex(2)));
+		assertFalse(graph.isAncestorOrSelfUpdated(graph.getNodeIndex(6)));
+
+		graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(2, 1);
+		graphBuilder.addParent(3, 2);
+		graphBuilder.clearParentsAndMarkUpdated(2);
+		graphBuilder.addParent(2, 1);
+		graph = graphBuilder.build();
+		assertTrue(graph.isAncestorOrSelfUpdated(graph.getNodeIndex(3)));
+		assertFalse(graph.isAncestorOrSelfUpdated(graph.getNodeIndex(1)));
+	}
+
+	@Test
+	void loopDetection() throws GraphBuilderException {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(1000012, 138875005);
+		graphBuilder.addParent(1000013, 1000012);
+		graphBuilder.addParent(1000012, 1000011);
+		graphBuilder.addParent(1000011, 138875005);
+		graphBuilder.addParent(1000011, 1000013);
+		graphBuilder.addParent(1000020, 1000013);
+
+		Graph graph = graphBuilder.build();
+		GraphBuilderException exception = assertThrows(GraphBuilderException.class,
+				() -> graph.getTransitiveClosure(graph.getNodeIndex(1000011), "MAIN", true));
+		assertEquals("Loop found in transitive closure for concept 1000011 on branch MAIN. " +
+				"The concept 1000011 is in its own set of ancestors: [1000013, 1000012, 1000011, 138875005]", exception.getMessage());
+
+		// Loop is logged rather than thrown
+		assertEquals(Sets.newHashSet(1000012L, 1000013L, 138875005L), graph.getTransitiveClosure(graph.getNodeIndex(1000011), "MAIN", false));
+
+		// Descendants of a loop are not in a loop themselves
+		assertEquals(Sets.newHashSet(1000011L, 1000012L, 1000013L, 138875005L), graph.getTransitiveClosure(graph.getNodeIndex(1000020), "MAIN", true));
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.snomed.snowstorm.core.rf2.export;
 
+import io.kaicode.elasticvc.api.BranchService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,8 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -49,6 +49,9 @@ class ExportServiceTest extends AbstractTest {
 	@Autowired
 	private ReleaseService releaseService;
 
+	@Autowired
+	private BranchService branchService;
+
 	private String descriptionId;
 	private String textDefId;
 	private ReferenceSetMember owlMember;
@@ -395,6 +398,71 @@ class ExportServiceTest extends AbstractTest {
 
 	}
 
+	@Test
+	void exportFull() throws Exception {
+		// Change a released concept and version again so it has two versions in the history
+		Concept gbLangRefsetConcept = conceptService.find(Concepts.GB_EN_LANG_REFSET, "MAIN");
+		gbLangRefsetConcept.setDefinitionStatusId(Concepts.FULLY_DEFINED);
+		conceptService.update(gbLangRefsetConcept, "MAIN");
+		releaseService.createVersion(20200131, "MAIN");
+		branchService.create("MAIN/A");
+		conceptService.create(new Concept("100123001"), "MAIN/A");
+
+		File exportFile = getTempFile("export", ".zip");
+		try (FileOutputStream outputStream = new FileOutputStream(exportFile)) {
+			ExportConfiguration exportConfiguration = new ExportConfiguration("MAIN/A", RF2Type.FULL);
+			exportConfiguration.setFilenameEffectiveDate("20200731");
+			exportService.createJob(exportConfiguration);
+			exportService.exportRF2Archive(exportConfiguration, outputStream);
+		}
+
+		try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(exportFile))) {
+			ZipEntry concepts = zipInputStream.getNextEntry();
+			assertEquals("SnomedCT_Export/RF2Release/Terminology/sct2_Concept_Full_INT_20200731.txt", concepts.getName());
+			List<String> lines = getLines(zipInputStream);
+			printLines(lines);
+
+			assertEquals(11, lines.size());
+			assertEquals(RF2Constants.CONCEPT_HEADER, lines.get(0));
+			int firstVersion = lines.indexOf("900000000000508004\t20100131\t1\t900000000000207008\t900000000000074008");
+			assertTrue(firstVersion > 0);
+			assertEquals("900000000000508004\t20200131\t1\t900000000000207008\t900000000000073002", lines.get(firstVersion + 1));
+			assertTrue(lines.contains("123001\t20200131\t1\t900000000000207008\t900000000000074008"));
+			assertTrue(lines.contains("100123001\t\t1\t900000000000207008\t900000000000074008"));
+		}
+	}
+
+	@Test
+	void exportForClassificationUsesBase() throws Exception {
+		branchService.create("MAIN/A");
+		conceptService.create(new Concept("100123001").addAxiom(new Relationship(Concepts.ISA, "123001")), "MAIN/A");
+		Concept concept = conceptService.find("123001", "MAIN/A");
+		concept.getRelationships().stream().filter(relationship -> relationship.getId().equals("125022")).forEach(relationship -> relationship.setActive(false));
+		conceptService.update(concept, "MAIN/A");
+
+		// Second export reuses the same base
+		for (int i = 0; i < 2; i++) {
+			File incremental = exportService.exportRF2ArchiveFileForClassification("MAIN/A", "20200731");
+			File complete = exportService.exportRF2ArchiveFile("MAIN/A", "20200731", RF2Type.DELTA, true);
+			Map<String, Set<String>> incrementalFiles = getFileLines(incremental);
+			assertEquals(getFileLines(complete), incrementalFiles);
+			assertTrue(incrementalFiles.get("SnomedCT_Export/RF2Release/Terminology/sct2_Relationship_Delta_INT_20200731.txt").stream()
+					.anyMatch(line -> line.startsWith("125022\t\t0\t")));
+		}
+	}
+
+	private Map<String, Set<String>> getFileLines(File archive) throws IOException {
+		Map<String, Set<String>> fileLines = new HashMap<>();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(archive))) {
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				fileLines.put(entry.getName(), new HashSet<>(getLines(zipInputStream)));
+			}
+		}
+		archive.delete();
+		return fileLines;
+	}
+
 	@Test
 	void testExportRefsetMemberWithBlankFields() throws IOException {
 		String path = "MAIN";
@@ -1,7 +1,9 @@
 package org.snomed.snowstorm.core.rf2.rf2import;
 
 import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.junit.Assert;
@@ -18,6 +20,9 @@ import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
@@ -26,6 +31,7 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import static io.kaicode.elasticvc.api.VersionControlHelper.LARGE_PAGE;
 import static org.junit.Assert.*;
 import static org.snomed.snowstorm.mrcm.MRCMUpdateService.DISABLE_MRCM_AUTO_UPDATE_METADATA_KEY;
 
@@ -57,6 +63,12 @@ class ImportServiceTest extends AbstractTest {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
 	private File rf2Archive;
 	private File completeOwlRf2Archive;
 
@@ -398,6 +410,74 @@ class ImportServiceTest extends AbstractTest {
 				emptyReport, integrityService.findAllComponentsWithBadIntegrity(branchService.findLatest(branchPath), false));
 	}
 
+	@Test
+	void testImportSnapshotWithConcurrentPersistBatches() throws ReleaseImportException, FileNotFoundException, ServiceException {
+		final String branchPath = "MAIN";
+
+		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(RF2Type.SNAPSHOT, branchPath)
+				.setPersistBatchSize(50)
+				.setPersistParallelism(3);
+		importConfiguration.setModuleIds(Collections.singleton(Concepts.MODEL_MODULE));
+		String importId = importService.createJob(importConfiguration);
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+
+		ImportJob importJob = importService.getImportJobOrThrow(importId);
+		assertEquals(ImportJob.ImportStatus.COMPLETED, importJob.getStatus());
+		ImportMetrics metrics = importJob.getMetrics();
+		assertNull(metrics.getPhase());
+		assertTrue(metrics.getPhaseDurationsMillis().containsKey(ImportMetrics.Phase.COMMITTING));
+		assertEquals(78L, metrics.getComponentTypes().get("Concept").get("rowsWritten"));
+		assertTrue(metrics.getBatchLatencyMillis().get("count").intValue() > 4);
+		final Page<Concept> conceptPage = conceptService.findAll(branchPath, PageRequest.of(0, 200));
+		Assert.assertEquals(78, conceptPage.getNumberOfElements());
+
+		IntegrityIssueReport emptyReport = new IntegrityIssueReport();
+		assertEquals("Branch " + branchPath + " should contain no invalid stated relationships.",
+				emptyReport, integrityService.findAllComponentsWithBadIntegrity(branchService.findLatest(branchPath), true));
+	}
+
+	@Test
+	void testConcurrentPersistBatchesRecordVersionsReplacedOnCommit() throws ReleaseImportException, FileNotFoundException {
+		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(RF2Type.SNAPSHOT, "MAIN");
+		importConfiguration.setModuleIds(Collections.singleton(Concepts.MODEL_MODULE));
+		String importId = importService.createJob(importConfiguration);
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+		Map<String, Map<String, Number>> mainComponentTypes = importService.getImportJobOrThrow(importId).getMetrics().getComponentTypes();
+
+		// Import the same content again on a child branch, replacing every version on MAIN using many small concurrent batches
+		branchService.create("MAIN/A");
+		importConfiguration = new RF2ImportConfiguration(RF2Type.SNAPSHOT, "MAIN/A")
+				.setPatchReleaseVersion(-1)
+				.setPersistBatchSize(5)
+				.setPersistParallelism(4);
+		importConfiguration.setModuleIds(Collections.singleton(Concepts.MODEL_MODULE));
+		importId = importService.createJob(importConfiguration);
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+		ImportJob importJob = importService.getImportJobOrThrow(importId);
+		assertEquals(ImportJob.ImportStatus.COMPLETED, importJob.getStatus());
+
+		Branch branch = branchService.findLatest("MAIN/A");
+		Map<String, Set<String>> versionsReplaced = branch.getVersionsReplaced();
+		for (String typeName : Arrays.asList("Concept", "Description", "Relationship", "ReferenceSetMember")) {
+			long rowsWritten = mainComponentTypes.get(typeName).get("rowsWritten").longValue();
+			assertTrue(rowsWritten > 5);
+			assertEquals(rowsWritten, importJob.getMetrics().getComponentTypes().get(typeName).get("rowsWritten").longValue());
+			assertEquals("Every replaced " + typeName + " version is recorded on the commit.", rowsWritten, versionsReplaced.getOrDefault(typeName, Collections.emptySet()).size());
+		}
+
+		assertEquals(getSemanticIndex("MAIN"), getSemanticIndex("MAIN/A"));
+	}
+
+	private Map<String, List<Object>> getSemanticIndex(String branch) {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		return elasticsearchOperations.search(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+				.withPageable(LARGE_PAGE).build(), QueryConcept.class)
+				.stream().map(SearchHit::getContent)
+				.collect(Collectors.toMap(QueryConcept::getConceptIdForm,
+						queryConcept -> Arrays.asList(queryConcept.getParents(), queryConcept.getAncestors(), queryConcept.getAttr())));
+	}
+
 	@Test
 	void testImportOnlyComponentsWithBlankOrLaterEffectiveTime() throws IOException, ReleaseImportException {
 
@@ -0,0 +1,53 @@
+package org.snomed.snowstorm.ecl;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import static org.junit.Assert.*;
+
+class ConceptIdSetTest {
+
+	@Test
+	void setOperations() {
+		ConceptIdSet a = ConceptIdSet.of(Lists.newArrayList(30L, 10L, 20L, 10L, 50L));
+		ConceptIdSet b = ConceptIdSet.of(Lists.newArrayList(20L, 40L, 50L, 60L));
+
+		assertEquals(4, a.size());
+		assertTrue(a.contains(30L));
+		assertFalse(a.contains(40L));
+
+		assertEquals(Lists.newArrayList(50L, 30L, 20L, 10L), a.toDescendingList());
+		assertEquals(Lists.newArrayList(50L, 20L), a.and(b).toDescendingList());
+		assertEquals(Lists.newArrayList(60L, 50L, 40L, 30L, 20L, 10L), a.or(b).toDescendingList());
+		assertEquals(Lists.newArrayList(30L, 10L), a.minus(b).toDescendingList());
+		assertEquals(Lists.newArrayList(60L, 40L), b.minus(a).toDescendingList());
+		assertTrue(a.and(ConceptIdSet.EMPTY).isEmpty());
+		assertEquals(a.toDescendingList(), a.or(ConceptIdSet.EMPTY).toDescendingList());
+	}
+
+	@Test
+	void toPage() {
+		ConceptIdSet conceptIds = ConceptIdSet.of(Lists.newArrayList(10L, 20L, 30L, 40L, 50L));
+
+		Page<Long> all = conceptIds.toPage(null);
+		assertEquals(Lists.newArrayList(50L, 40L, 30L, 20L, 10L), all.getContent());
+		assertEquals(5, all.getTotalElements());
+
+		Page<Long> page = conceptIds.toPage(PageRequest.of(1, 2));
+		assertEquals(Lists.newArrayList(30L, 20L), page.getContent());
+		assertEquals(5, page.getTotalElements());
+
+		Page<Long> ascending = conceptIds.toPage(PageRequest.of(0, 2, Sort.by("conceptIdL")));
+		assertEquals(Lists.newArrayList(10L, 20L), ascending.getContent());
+
+		Page<Long> beyondEnd = conceptIds.toPage(PageRequest.of(3, 2));
+		assertTrue(beyondEnd.getContent().isEmpty());
+		assertEquals(5, beyondEnd.getTotalElements());
+
+		assertTrue(ConceptIdSet.EMPTY.toPage(null).getContent().isEmpty());
+	}
+
+}
@@ -405,6 +405,22 @@ class ECLQueryServiceTest extends AbstractTest {
 				strings(selectConceptIds("<" + DISORDER + " AND <" + CLINICAL_FINDING)));
 	}
 
+	@Test
+	void focusConceptConjunctionWithRefinement() {
+		// Evaluated in steps by the planner
+		assertEquals(
+				Sets.newHashSet(BLEEDING, BLEEDING_SKIN),
+				strings(selectConceptIds("<" + CLINICAL_FINDING + " AND (*:" + ASSOCIATED_MORPHOLOGY + "=" + HEMORRHAGE + ")")));
+
+		assertEquals(
+				Sets.newHashSet(BLEEDING_SKIN),
+				strings(selectConceptIds("(*:" + ASSOCIATED_MORPHOLOGY + "=" + HEMORRHAGE + ") AND <" + BLEEDING)));
+
+		assertEquals(
+				Collections.singletonList(Long.parseLong(BLEEDING_SKIN)),
+				selectConceptIds("<" + CLINICAL_FINDING + " AND (*:" + ASSOCIATED_MORPHOLOGY + "=" + HEMORRHAGE + ")", PageRequest.of(0, 1)));
+	}
+
 	@Test
 	void focusConceptDisjunction() {
 		assertEquals(
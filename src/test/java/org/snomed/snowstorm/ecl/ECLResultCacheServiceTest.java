@@ -0,0 +1,135 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.BranchHeadCriteriaService;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class ECLResultCacheServiceTest extends AbstractTest {
+
+	private static final String ECL = "<< " + SNOMEDCT_ROOT;
+
+	@Autowired
+	private ECLResultCacheService eclResultCacheService;
+
+	@Autowired
+	private ECLQueryService eclQueryService;
+
+	@Autowired
+	private BranchHeadCriteriaService branchHeadCriteriaService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@BeforeEach
+	void setup() throws ServiceException {
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(SNOMEDCT_ROOT));
+		for (int i = 1; i <= 5; i++) {
+			concepts.add(new Concept("10000" + i + "001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)));
+		}
+		conceptService.batchCreate(concepts, "MAIN");
+		eclResultCacheService.setEnabled(true);
+	}
+
+	@AfterEach
+	void tearDown() {
+		eclResultCacheService.setEnabled(false);
+	}
+
+	@Test
+	void testSameExpressionServedFromCache() {
+		long hits = getStat("hits");
+		long misses = getStat("misses");
+
+		assertEquals(6, select(ECL, PageRequest.of(0, 100)).getTotalElements());
+		assertEquals(misses + 1, getStat("misses"));
+		assertEquals(hits, getStat("hits"));
+
+		// Terms and whitespace do not change the key
+		assertEquals(6, select("<<  " + SNOMEDCT_ROOT + " |SNOMED CT Concept|", PageRequest.of(0, 100)).getTotalElements());
+		assertEquals(misses + 1, getStat("misses"));
+		assertEquals(hits + 1, getStat("hits"));
+		assertEquals(1L, getStat("entries"));
+	}
+
+	@Test
+	void testPagesServedFromOneCachedResult() {
+		long hits = getStat("hits");
+		long misses = getStat("misses");
+
+		List<Long> allIds = new ArrayList<>();
+		Page<Long> page = select(ECL, PageRequest.of(0, 2));
+		allIds.addAll(page.getContent());
+		assertEquals(6, page.getTotalElements());
+		assertEquals(3, page.getTotalPages());
+		for (int pageNumber = 1; pageNumber < page.getTotalPages(); pageNumber++) {
+			allIds.addAll(select(ECL, PageRequest.of(pageNumber, 2)).getContent());
+		}
+
+		assertEquals("The expression is executed once.", misses + 1, getStat("misses"));
+		assertEquals(hits + 2, getStat("hits"));
+		assertEquals(1L, getStat("entries"));
+		assertEquals(6, allIds.size());
+		assertEquals(new HashSet<>(select(ECL, PageRequest.of(0, 100)).getContent()), new HashSet<>(allIds));
+	}
+
+	@Test
+	void testCommitInvalidatesBranchEntries() throws ServiceException {
+		assertEquals(6, select(ECL, PageRequest.of(0, 100)).getTotalElements());
+		assertEquals(1L, getStat("entries"));
+
+		conceptService.create(new Concept("100006001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)), "MAIN");
+		assertEquals("Entries of the old branch head are removed by the commit.", 0L, getStat("entries"));
+
+		long hits = getStat("hits");
+		long misses = getStat("misses");
+		Page<Long> page = select(ECL, PageRequest.of(0, 100));
+		assertEquals("New branch head is a miss.", misses + 1, getStat("misses"));
+		assertEquals(hits, getStat("hits"));
+		assertEquals(7, page.getTotalElements());
+		assertTrue(page.getContent().contains(100006001L));
+	}
+
+	@Test
+	void normalise() {
+		assertEquals("<< 404684003", ECLResultCacheService.normalise("  <<  404684003 |Clinical finding|  "));
+		assertEquals("<< 404684003 : 363698007 = << 39057004",
+				ECLResultCacheService.normalise("<< 404684003 |Clinical finding (finding)|:\n\t363698007 |Finding site| = << 39057004 |Pulmonary valve|"));
+		// Quoted strings are not changed
+		assertEquals("< 404684003 {{ term = \"heart  |attack|\" }}", ECLResultCacheService.normalise("< 404684003 {{ term = \"heart  |attack|\" }}"));
+	}
+
+	private Page<Long> select(String ecl, PageRequest pageRequest) {
+		BranchCriteria branchCriteria = branchHeadCriteriaService.getBranchCriteria("MAIN");
+		return eclQueryService.selectConceptIds(ecl, branchCriteria, "MAIN", false, pageRequest);
+	}
+
+	private long getStat(String name) {
+		return ((Number) eclResultCacheService.getStats().get(name)).longValue();
+	}
+
+}
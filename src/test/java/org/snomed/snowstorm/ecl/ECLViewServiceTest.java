@@ -0,0 +1,150 @@
+package org.snomed.snowstorm.ecl;
+
+import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Commit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.ECLView;
+import org.snomed.snowstorm.core.data.domain.ECLViewMember;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.repositories.ECLViewMemberRepository;
+import org.snomed.snowstorm.core.data.repositories.ECLViewRepository;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
+import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class ECLViewServiceTest extends AbstractTest {
+
+	private static final String BRANCH = "MAIN/VIEWS";
+	private static final String VIEW = "test-view";
+
+	@Autowired
+	private ECLViewService eclViewService;
+
+	@Autowired
+	private ECLViewRepository viewRepository;
+
+	@Autowired
+	private ECLViewMemberRepository memberRepository;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Test
+	void testMembersMaintainedByCommits() throws ServiceException {
+		conceptService.batchCreate(Lists.newArrayList(
+				new Concept(SNOMEDCT_ROOT),
+				new Concept("100001001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true))
+		), "MAIN");
+		branchService.create(BRANCH);
+
+		ECLView view = eclViewService.createView(BRANCH, VIEW, "<< 100001001", false);
+		String createRefreshId = view.getRefreshId();
+		assertNotNull(createRefreshId);
+		assertEquals(Lists.newArrayList(100001001L), getMembers());
+
+		// Content commit adds a member using the changed concepts only
+		conceptService.create(new Concept("100002001").addRelationship(new Relationship(ISA, "100001001").setInferred(true)), BRANCH);
+		view = eclViewService.findViewOrThrow(BRANCH, VIEW);
+		assertFalse(view.isStale());
+		assertEquals(2, view.getMemberCount());
+		assertEquals(Lists.newArrayList(100001001L, 100002001L), getMembers());
+		assertEquals("Incremental update does not rewrite existing members", createRefreshId, getMemberRefreshId(100001001L));
+		assertEquals(createRefreshId, view.getRefreshId());
+
+		// Content commit removes a member
+		Concept concept = conceptService.find("100002001", BRANCH);
+		concept.getRelationships().forEach(relationship -> relationship.setActive(false));
+		concept.addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true));
+		conceptService.update(concept, BRANCH);
+		view = eclViewService.findViewOrThrow(BRANCH, VIEW);
+		assertFalse(view.isStale());
+		assertEquals(1, view.getMemberCount());
+		assertEquals(Lists.newArrayList(100001001L), getMembers());
+		assertFalse(eclViewService.isMember(BRANCH, VIEW, 100002001L));
+		assertEquals(createRefreshId, view.getRefreshId());
+
+		// Rebase brings in content from the parent branch, the view is refreshed in full
+		conceptService.create(new Concept("100003001").addRelationship(new Relationship(ISA, "100001001").setInferred(true)), "MAIN");
+		try (Commit rebaseCommit = branchService.openRebaseCommit(BRANCH)) {
+			rebaseCommit.markSuccessful();
+		}
+		view = eclViewService.findViewOrThrow(BRANCH, VIEW);
+		assertFalse(view.isStale());
+		assertNotEquals(createRefreshId, view.getRefreshId());
+		assertEquals(2, view.getMemberCount());
+		assertEquals(Lists.newArrayList(100001001L, 100003001L), getMembers());
+		assertEquals(view.getRefreshId(), getMemberRefreshId(100001001L));
+		assertEquals(2, memberRepository.count());
+	}
+
+	@Test
+	void testStaleViewNotRefreshedByReads() throws ServiceException {
+		conceptService.batchCreate(Lists.newArrayList(
+				new Concept(SNOMEDCT_ROOT),
+				new Concept("100001001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT).setInferred(true)),
+				new Concept("100002001").addRelationship(new Relationship(ISA, "100001001").setInferred(true))
+		), "MAIN");
+		branchService.create(BRANCH);
+		eclViewService.createView(BRANCH, VIEW, "<< 100001001", false);
+
+		// Simulate a failed update during a commit
+		ECLView view = viewRepository.findById(ECLView.toId(BRANCH, VIEW)).orElseThrow(IllegalStateException::new);
+		view.setHeadTimestamp(1L);
+		viewRepository.save(view);
+		String refreshId = view.getRefreshId();
+
+		view = eclViewService.findViewOrThrow(BRANCH, VIEW);
+		assertTrue(view.isStale());
+		assertTrue(eclViewService.findViews(BRANCH).get(0).isStale());
+
+		// Reads serve the persisted members
+		assertEquals(Lists.newArrayList(100001001L, 100002001L), getMembers());
+		assertTrue(eclViewService.isMember(BRANCH, VIEW, 100002001L));
+		view = eclViewService.findViewOrThrow(BRANCH, VIEW);
+		assertTrue(view.isStale());
+		assertEquals(refreshId, view.getRefreshId());
+
+		view = eclViewService.refreshView(BRANCH, VIEW);
+		assertFalse(view.isStale());
+		assertNotEquals(refreshId, view.getRefreshId());
+		assertFalse(eclViewService.findViewOrThrow(BRANCH, VIEW).isStale());
+		assertEquals(Lists.newArrayList(100001001L, 100002001L), getMembers());
+		assertEquals(2, memberRepository.count());
+	}
+
+	private List<Long> getMembers() {
+		return eclViewService.findMembers(BRANCH, VIEW, PageRequest.of(0, 100)).getContent();
+	}
+
+	private String getMemberRefreshId(Long conceptId) {
+		return memberRepository.findById(ECLViewMember.toId(ECLView.toId(BRANCH, VIEW), conceptId))
+				.map(ECLViewMember::getRefreshId).orElse(null);
+	}
+
+	@AfterEach
+	void tearDown() {
+		viewRepository.deleteAll();
+		memberRepository.deleteAll();
+	}
+
+}
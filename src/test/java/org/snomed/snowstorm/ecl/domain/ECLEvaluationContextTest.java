@@ -0,0 +1,40 @@
+package org.snomed.snowstorm.ecl.domain;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+class ECLEvaluationContextTest {
+
+	@Test
+	void memoise() {
+		ECLEvaluationContext context = new ECLEvaluationContext();
+		AtomicInteger selections = new AtomicInteger();
+
+		for (int i = 0; i < 3; i++) {
+			Optional<Page<Long>> page = context.select("descendantorselfof 39057004", () -> {
+				selections.incrementAndGet();
+				// Nested entries may be added while resolving
+				context.lookup("ancestors of 39057004", () -> Sets.newHashSet(138875005L));
+				return Optional.of(new PageImpl<>(Collections.singletonList(39057004L)));
+			});
+			assertEquals(Collections.singletonList(39057004L), page.get().getContent());
+		}
+		Set<Long> ancestors = context.lookup("ancestors of 39057004", Collections::emptySet);
+
+		assertEquals(1, selections.get());
+		assertEquals(Sets.newHashSet(138875005L), ancestors);
+		assertEquals(3, context.getReuseCount());
+		assertEquals("lookup ancestors of 39057004 -> 1 ids, reused 1x\n" +
+				"select descendantorselfof 39057004 -> 1 ids, reused 2x\n", context.explain());
+	}
+
+}
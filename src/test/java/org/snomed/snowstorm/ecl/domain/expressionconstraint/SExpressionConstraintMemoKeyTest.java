@@ -0,0 +1,54 @@
+package org.snomed.snowstorm.ecl.domain.expressionconstraint;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.langauges.ecl.ECLQueryBuilder;
+import org.snomed.snowstorm.TestConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.junit.Assert.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class SExpressionConstraintMemoKeyTest {
+
+	@Autowired
+	private ECLQueryBuilder eclQueryBuilder;
+
+	@Test
+	void identicalSubExpressionsShareKey() {
+		assertEquals(memoKey("<< 39057004 |Pulmonary valve|"), memoKey("<<39057004"));
+		assertNotEquals(memoKey("<< 39057004"), memoKey("< 39057004"));
+		assertEquals("memberOf 723264001", memoKey("^ 723264001"));
+		assertEquals("descendantof (descendantorselfof 404684003 OR 39057004)", memoKey("< (<< 404684003 OR 39057004)"));
+	}
+
+	@Test
+	void refinedExpressionsNotMemoised() {
+		assertNull(memoKey("< (<< 404684003 : 363698007 = << 39057004)"));
+	}
+
+	@Test
+	void evaluatedPerConcept() {
+		assertTrue(isEvaluatedPerConcept("<< 404684003 MINUS << 39057004"));
+		assertTrue(isEvaluatedPerConcept("^ 723264001 AND < 404684003"));
+		assertFalse(isEvaluatedPerConcept("> 404684003"));
+		assertFalse(isEvaluatedPerConcept("< (^ 723264001)"));
+		assertFalse(isEvaluatedPerConcept("<< 404684003 : 363698007 = << 39057004"));
+	}
+
+	private boolean isEvaluatedPerConcept(String ecl) {
+		return SExpressionConstraintHelper.isEvaluatedPerConcept((SExpressionConstraint) eclQueryBuilder.createQuery(ecl));
+	}
+
+	private String memoKey(String ecl) {
+		SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
+		if (expressionConstraint instanceof SCompoundExpressionConstraint) {
+			return ((SCompoundExpressionConstraint) expressionConstraint).toMemoKey();
+		}
+		return ((SSubExpressionConstraint) expressionConstraint).toMemoKey();
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.snomed.snowstorm.rest;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.kaicode.elasticvc.api.BranchService;
 import org.json.JSONException;
@@ -378,4 +379,77 @@ class ConceptControllerTest extends AbstractTest {
 		String conceptIdFromSecondPage = page.getItems().iterator().next().getConceptId();
 		assertNotEquals(conceptIdFromFirstPage, conceptIdFromSecondPage);
 	}
+
+	@Test
+	void testECLExpansionNDJSON() throws IOException {
+		ResponseEntity<String> responseEntity = this.restTemplate.exchange("http://localhost:" + port + "/MAIN/concepts/ecl-expansion?ecl=257751006&includeTerms=true",
+				HttpMethod.GET, new HttpEntity<>(null), String.class);
+		assertEquals(200, responseEntity.getStatusCode().value());
+		assertEquals("application/x-ndjson;charset=UTF-8", String.valueOf(responseEntity.getHeaders().getContentType()));
+		String responseBody = responseEntity.getBody();
+		assertNotNull(responseBody);
+		try (BufferedReader reader = new BufferedReader(new StringReader(responseBody))) {
+			JsonNode row = objectMapper.readTree(reader.readLine());
+			assertEquals("257751006", row.get("conceptId").asText());
+			assertEquals("Wallace \"69\" side-to-end anastomosis - action (qualifier value)", row.get("fsn").asText());
+			assertEquals("Wallace \"69\" side-to-end anastomosis - action", row.get("pt").asText());
+			assertNull(reader.readLine());
+		}
+
+		// Ids only
+		responseEntity = this.restTemplate.exchange("http://localhost:" + port + "/MAIN/concepts/ecl-expansion?statedEcl=257751006",
+				HttpMethod.GET, new HttpEntity<>(null), String.class);
+		assertEquals(200, responseEntity.getStatusCode().value());
+		assertEquals("{\"conceptId\":\"257751006\"}\n", responseEntity.getBody());
+	}
+
+	@Test
+	void testECLExpansionTSV() throws IOException, ServiceException {
+		conceptService.create(new Concept("100000101")
+				.addDescription(new Description("Term with\ttab (finding)")
+						.setTypeId(Concepts.FSN)
+						.addLanguageRefsetMember(Concepts.US_EN_LANG_REFSET, Concepts.PREFERRED))
+				.addDescription(new Description("Term with\r\nline break")
+						.setTypeId(Concepts.SYNONYM)
+						.addLanguageRefsetMember(Concepts.US_EN_LANG_REFSET, Concepts.PREFERRED))
+				.addAxiom(new Relationship(Concepts.ISA, Concepts.SNOMEDCT_ROOT)), "MAIN");
+
+		ResponseEntity<String> responseEntity = this.restTemplate.exchange("http://localhost:" + port + "/MAIN/concepts/ecl-expansion?ecl=100000101&format=tsv&includeTerms=true",
+				HttpMethod.GET, new HttpEntity<>(null), String.class);
+		assertEquals(200, responseEntity.getStatusCode().value());
+		assertEquals("text/tab-separated-values;charset=UTF-8", String.valueOf(responseEntity.getHeaders().getContentType()));
+		String responseBody = responseEntity.getBody();
+		assertNotNull(responseBody);
+		try (BufferedReader reader = new BufferedReader(new StringReader(responseBody))) {
+			assertEquals("conceptId\tfsn\tpt", reader.readLine());
+			// Tab and line break characters within terms are replaced so the row stays intact
+			assertEquals("100000101\tTerm with tab (finding)\tTerm with  line break", reader.readLine());
+			assertNull(reader.readLine());
+		}
+
+		// Ids only
+		responseEntity = this.restTemplate.exchange("http://localhost:" + port + "/MAIN/concepts/ecl-expansion?ecl=100000101&format=tsv",
+				HttpMethod.GET, new HttpEntity<>(null), String.class);
+		assertEquals(200, responseEntity.getStatusCode().value());
+		assertEquals("conceptId\n100000101\n", responseEntity.getBody());
+	}
+
+	@Test
+	void testECLExpansionRequestErrors() throws JSONException {
+		ResponseEntity<String> responseEntity = this.restTemplate.exchange("http://localhost:" + port + "/MAIN/concepts/ecl-expansion?ecl=257751006&statedEcl=257751006",
+				HttpMethod.GET, new HttpEntity<>(null), String.class);
+		assertEquals(400, responseEntity.getStatusCode().value());
+		assertEquals("Parameters ecl and statedEcl can not be combined.", new JSONObject(responseEntity.getBody()).get("message"));
+
+		responseEntity = this.restTemplate.exchange("http://localhost:" + port + "/MAIN/concepts/ecl-expansion?ecl=257751006&format=csv",
+				HttpMethod.GET, new HttpEntity<>(null), String.class);
+		assertEquals(400, responseEntity.getStatusCode().value());
+		assertEquals("Parameter format must be 'ndjson' or 'tsv'.", new JSONObject(responseEntity.getBody()).get("message"));
+
+		// Stated ECL is validated in the same way as inferred ECL
+		responseEntity = this.restTemplate.exchange("http://localhost:" + port + "/MAIN/concepts/ecl-expansion?statedEcl=987654001",
+				HttpMethod.GET, new HttpEntity<>(null), String.class);
+		assertEquals(400, responseEntity.getStatusCode().value());
+		assertEquals("Concepts in the ECL request do not exist or are inactive on branch MAIN: 987654001.", new JSONObject(responseEntity.getBody()).get("message"));
+	}
 }